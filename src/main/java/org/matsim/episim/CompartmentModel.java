@@ -0,0 +1,480 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.episim.events.EpisimInfectionEvent;
+import org.matsim.episim.model.InfectionModel;
+import org.matsim.episim.model.VirusStrain;
+import org.matsim.episim.policy.Restriction;
+
+import java.time.DayOfWeek;
+import java.util.*;
+
+/**
+ * Aggregated infection dynamics used instead of the event replay while only few persons are contagious.
+ * <p>
+ * Persons are stratified by age group and district. For each weekday, the mean number of contacts a contagious person of one age group
+ * has with persons of every other age group is calibrated from the {@link ContactStatistics} of the replayed days, the districts of the
+ * contacts are distributed according to the observed mixing between districts. During a day of the compartment model, the contacts of each
+ * contagious person are drawn from these rates, the contact persons are drawn uniformly from their stratum, and the infection probability
+ * is computed by the {@link InfectionModel} with a sampled contact of the same pair of age groups. The immunity of each person is therefore
+ * still taken into account individually.
+ * <p>
+ * Susceptible and contagious persons are counted by a {@link Census} during the daily state update, so that neither the calibration nor
+ * the compartment days need to scan all persons. The calibration is not part of snapshots, after a restart the events are replayed until
+ * all weekdays have been calibrated again.
+ *
+ * @see EpisimConfigGroup#getHybridThreshold()
+ */
+final class CompartmentModel {
+
+	private static final Logger log = LogManager.getLogger(CompartmentModel.class);
+
+	/**
+	 * Age groups of ten years, the last group contains persons of 80 years and older, followed by a group for unknown age.
+	 */
+	static final int AGE_GROUPS = 10;
+
+	/**
+	 * Number of sampled contacts per pair of age groups.
+	 */
+	static final int RECORDS = 16;
+
+	/**
+	 * Weight of the calibration of previous days, so that recent contacts dominate.
+	 */
+	private static final double DECAY = 0.5;
+
+	/**
+	 * Number of replayed days needed before the compartment model can be used, so that all weekdays are calibrated.
+	 */
+	static final int MIN_CALIBRATION_DAYS = 7;
+
+	private final EpisimConfigGroup episimConfig;
+	private final InfectionModel infectionModel;
+	private final SplittableRandom rnd;
+
+	private final List<String> districts;
+
+	/**
+	 * Stratum of each person, indexed by the index of the person id. Persons that were not known at creation have stratum -1.
+	 */
+	private final int[] strata;
+	private final EpisimPerson[][] members;
+
+	/**
+	 * Number of persons by age group.
+	 */
+	private final double[] total = new double[AGE_GROUPS];
+
+	/**
+	 * Susceptible persons by age group and contagious persons of the current day, as counted by the census.
+	 */
+	private final double[] susceptible = new double[AGE_GROUPS];
+	private final List<EpisimPerson> contagious = new ArrayList<>();
+
+	/**
+	 * Calibrated contacts by weekday, age group of the contagious person and age group of the contact.
+	 */
+	private final double[][][] contacts = new double[7][AGE_GROUPS][AGE_GROUPS];
+	/**
+	 * Days of contagious persons by weekday and age group, which had the contacts above.
+	 */
+	private final double[][] personDays = new double[7][AGE_GROUPS];
+	private final double[][] districtContacts;
+
+	private final ContactStatistics.Record[][] records = new ContactStatistics.Record[AGE_GROUPS * AGE_GROUPS][RECORDS];
+	private final int[] numRecords = new int[records.length];
+	private final double[] seen = new double[records.length];
+
+	private int calibratedDays = 0;
+
+	/**
+	 * Create model for the given persons.
+	 *
+	 * @param infectionModel infection model exclusively used by this instance
+	 * @param rnd            random number generator, seeded each day by the caller
+	 */
+	CompartmentModel(EpisimConfigGroup episimConfig, InfectionModel infectionModel, SplittableRandom rnd, Collection<EpisimPerson> persons) {
+		this.episimConfig = episimConfig;
+		this.infectionModel = infectionModel;
+		this.rnd = rnd;
+
+		SortedSet<String> names = new TreeSet<>();
+		for (EpisimPerson person : persons)
+			names.add(getDistrictName(person));
+
+		this.districts = new ArrayList<>(names);
+		this.districtContacts = new double[districts.size()][districts.size()];
+
+		List<List<EpisimPerson>> m = new ArrayList<>();
+		for (int i = 0; i < AGE_GROUPS * districts.size(); i++)
+			m.add(new ArrayList<>());
+
+		this.strata = new int[persons.stream().mapToInt(p -> p.getPersonId().index()).max().orElse(-1) + 1];
+		Arrays.fill(strata, -1);
+
+		for (EpisimPerson person : persons) {
+			int stratum = ageGroup(person.getAgeOrDefault(-1)) * districts.size() + Collections.binarySearch(districts, getDistrictName(person));
+			strata[person.getPersonId().index()] = stratum;
+			m.get(stratum).add(person);
+			total[getAgeGroup(stratum)]++;
+		}
+
+		this.members = m.stream().map(l -> l.toArray(new EpisimPerson[0])).toArray(EpisimPerson[][]::new);
+
+		log.info("Created compartment model with {} age groups and {} districts", AGE_GROUPS, districts.size());
+	}
+
+	private static String getDistrictName(EpisimPerson person) {
+		Object district = person.getAttributes().getAttribute("district");
+		return district == null ? "unknown" : district.toString();
+	}
+
+	static int ageGroup(int age) {
+		if (age < 0)
+			return AGE_GROUPS - 1;
+
+		return Math.min(age / 10, AGE_GROUPS - 2);
+	}
+
+	static int pair(int infectorAgeGroup, int contactAgeGroup) {
+		return infectorAgeGroup * AGE_GROUPS + contactAgeGroup;
+	}
+
+	int getNumDistricts() {
+		return districts.size();
+	}
+
+	/**
+	 * Stratum of a person, or -1 if not known.
+	 */
+	int getStratum(EpisimPerson person) {
+		int i = person.getPersonId().index();
+		return i < strata.length ? strata[i] : -1;
+	}
+
+	int getAgeGroup(int stratum) {
+		return stratum / districts.size();
+	}
+
+	int getDistrict(int stratum) {
+		return stratum % districts.size();
+	}
+
+	/**
+	 * Create a collector of contacts for one contact model.
+	 */
+	ContactStatistics createStatistics(long seed) {
+		return new ContactStatistics(this, new SplittableRandom(seed));
+	}
+
+	/**
+	 * Create a census for one partition of persons.
+	 */
+	Census createCensus() {
+		return new Census(this);
+	}
+
+	/**
+	 * Take the counts of all censuses for the current day and clear them. Censuses are merged in the given order,
+	 * which needs to be the iteration order of the persons.
+	 */
+	void setCensus(List<Census> censuses) {
+
+		Arrays.fill(susceptible, 0);
+		contagious.clear();
+
+		for (Census census : censuses) {
+			for (int a = 0; a < AGE_GROUPS; a++)
+				susceptible[a] += census.susceptible[a];
+
+			contagious.addAll(census.contagious);
+			census.clear();
+		}
+	}
+
+	/**
+	 * Whether all weekdays have been calibrated and contacts of contagious persons have been observed.
+	 */
+	boolean isCalibrated() {
+		if (calibratedDays < MIN_CALIBRATION_DAYS)
+			return false;
+
+		for (int n : numRecords) {
+			if (n > 0)
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Whether a person is able to infect others in this model. Persons in full quarantine have no contacts, persons in quarantine at home
+	 * only have contacts in their household, which are not represented by the mixing within strata. Both are left out.
+	 */
+	static boolean isInfector(EpisimPerson person) {
+		EpisimPerson.DiseaseStatus status = person.getDiseaseStatus();
+		if (status != EpisimPerson.DiseaseStatus.contagious && status != EpisimPerson.DiseaseStatus.showingSymptoms)
+			return false;
+
+		EpisimPerson.QuarantineStatus quarantine = person.getQuarantineStatus();
+		return quarantine != EpisimPerson.QuarantineStatus.full && quarantine != EpisimPerson.QuarantineStatus.atHome;
+	}
+
+	/**
+	 * Add the contacts of a replayed day to the calibration and clear the statistics.
+	 * Persons are counted as they were at the start of the day, see {@link #setCensus(List)}.
+	 */
+	void calibrate(DayOfWeek day, List<ContactStatistics> statistics) {
+
+		int d = day.getValue() - 1;
+
+		// quarantine may have changed after the census, so it is checked again
+		double[] infectors = new double[AGE_GROUPS];
+		for (EpisimPerson person : contagious) {
+			if (isInfector(person))
+				infectors[getAgeGroup(getStratum(person))]++;
+		}
+
+		// with status lists only contacts with susceptible persons are evaluated, see EpisimConfigGroup#isStatusPartitionedContacts()
+		boolean susceptibleOnly = episimConfig.isStatusPartitionedContacts();
+
+		for (int b = 0; b < AGE_GROUPS; b++) {
+			personDays[d][b] = personDays[d][b] * DECAY + infectors[b];
+
+			for (int a = 0; a < AGE_GROUPS; a++)
+				contacts[d][b][a] *= DECAY;
+		}
+
+		for (double[] row : districtContacts) {
+			for (int i = 0; i < row.length; i++)
+				row[i] *= DECAY;
+		}
+
+		for (int i = 0; i < seen.length; i++)
+			seen[i] *= DECAY;
+
+		for (ContactStatistics s : statistics) {
+
+			for (int b = 0; b < AGE_GROUPS; b++) {
+				for (int a = 0; a < AGE_GROUPS; a++) {
+					if (susceptibleOnly && susceptible[a] > 0)
+						contacts[d][b][a] += s.contacts[b][a] * total[a] / susceptible[a];
+					else
+						contacts[d][b][a] += s.contacts[b][a];
+				}
+			}
+
+			for (int i = 0; i < districtContacts.length; i++) {
+				for (int j = 0; j < districtContacts.length; j++)
+					districtContacts[i][j] += s.districtContacts[i][j];
+			}
+
+			for (int pair = 0; pair < records.length; pair++) {
+				// each kept record represents this many contacts of its handler
+				int n = (int) Math.min(s.seen[pair], RECORDS);
+				double weight = n > 0 ? (double) s.seen[pair] / n : 0;
+				for (int i = 0; i < n; i++)
+					offer(pair, s.records[pair][i], weight);
+			}
+
+			s.clear();
+		}
+
+		calibratedDays++;
+	}
+
+	/**
+	 * Weighted reservoir sampling of a contact record.
+	 */
+	private void offer(int pair, ContactStatistics.Record record, double weight) {
+		seen[pair] += weight;
+
+		if (numRecords[pair] < RECORDS)
+			records[pair][numRecords[pair]++] = record;
+		else if (rnd.nextDouble() < RECORDS * weight / seen[pair])
+			records[pair][rnd.nextInt(RECORDS)] = record;
+	}
+
+	/**
+	 * Mean number of contacts a contagious person of age group {@code b} has with persons of age group {@code a}.
+	 */
+	double getContactRate(DayOfWeek day, int b, int a) {
+		int d = day.getValue() - 1;
+		if (personDays[d][b] > 0)
+			return contacts[d][b][a] / personDays[d][b];
+
+		// use all weekdays if this age group has no observations for this day
+		double c = 0, p = 0;
+		for (int i = 0; i < contacts.length; i++) {
+			c += contacts[i][b][a];
+			p += personDays[i][b];
+		}
+
+		return p > 0 ? c / p : 0;
+	}
+
+	/**
+	 * Draw infections for one day from the contagious persons of the census. The random number generator needs to be seeded beforehand.
+	 *
+	 * @param buffer collects the found infections
+	 * @return number of drawn contacts
+	 */
+	int step(int iteration, DayOfWeek day, Map<String, Restriction> restrictions, InfectionBuffer buffer) {
+
+		infectionModel.setIteration(iteration);
+
+		int numDistricts = districts.size();
+
+		double[][] rates = new double[AGE_GROUPS][AGE_GROUPS];
+		for (int b = 0; b < AGE_GROUPS; b++) {
+			for (int a = 0; a < AGE_GROUPS; a++)
+				rates[b][a] = getContactRate(day, b, a);
+		}
+
+		// cumulative distribution of the district of a contact
+		double[][] mixing = new double[numDistricts][numDistricts];
+		for (int i = 0; i < numDistricts; i++) {
+			double sum = 0;
+			for (int j = 0; j < numDistricts; j++) {
+				sum += districtContacts[i][j];
+				mixing[i][j] = sum;
+			}
+
+			// without observations contacts stay in the own district
+			if (sum == 0)
+				Arrays.fill(mixing[i], i, numDistricts, 1);
+		}
+
+		int numContacts = 0;
+
+		for (EpisimPerson infector : contagious) {
+
+			if (!isInfector(infector))
+				continue;
+
+			int stratum = getStratum(infector);
+
+			// person can only infect others x days after being contagious
+			if (infector.hadDiseaseStatus(EpisimPerson.DiseaseStatus.contagious) &&
+					infector.daysSince(EpisimPerson.DiseaseStatus.contagious, iteration) > episimConfig.getDaysInfectious())
+				continue;
+
+			int b = getAgeGroup(stratum);
+			double[] districtMixing = mixing[getDistrict(stratum)];
+
+			for (int a = 0; a < AGE_GROUPS; a++) {
+
+				int n = poisson(rates[b][a]);
+				int pair = pair(b, a);
+
+				for (int i = 0; i < n && numRecords[pair] > 0; i++) {
+
+					numContacts++;
+
+					int district = Arrays.binarySearch(districtMixing, rnd.nextDouble() * districtMixing[numDistricts - 1]);
+					district = Math.min(district < 0 ? -district - 1 : district, numDistricts - 1);
+
+					EpisimPerson[] candidates = members[a * numDistricts + district];
+					if (candidates.length == 0)
+						continue;
+
+					EpisimPerson target = candidates[rnd.nextInt(candidates.length)];
+					if (target == infector || target.getDiseaseStatus() != EpisimPerson.DiseaseStatus.susceptible ||
+							target.getQuarantineStatus() == EpisimPerson.QuarantineStatus.full)
+						continue;
+
+					ContactStatistics.Record r = records[pair][rnd.nextInt(numRecords[pair])];
+
+					double prob = infectionModel.calcInfectionProbability(target, infector, restrictions,
+							r.contactParams, r.infectorParams, r.contactIntensity, r.jointTime);
+
+					if (rnd.nextDouble() < prob) {
+						double now = EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), r.timeOfDay, iteration);
+						VirusStrain strain = infector.getVirusStrain();
+
+						buffer.addInfection(target, new EpisimInfectionEvent(now, target.getPersonId(), infector.getPersonId(), r.containerId,
+								r.infectionType, r.groupSize, strain, prob, target.getAntibodies(strain), target.getMaxAntibodies(strain),
+								target.getNumVaccinations()));
+					}
+				}
+			}
+		}
+
+		return numContacts;
+	}
+
+	/**
+	 * Draw from a poisson distribution, using the multiplication method suitable for small means.
+	 */
+	int poisson(double mean) {
+		if (mean <= 0)
+			return 0;
+
+		double limit = Math.exp(-mean);
+		double p = rnd.nextDouble();
+		int k = 0;
+		while (p > limit) {
+			p *= rnd.nextDouble();
+			k++;
+		}
+
+		return k;
+	}
+
+	/**
+	 * Counts susceptible and contagious persons of one partition, while their state is updated for the day.
+	 * Must only be used by one thread at a time.
+	 */
+	static final class Census {
+
+		private final CompartmentModel model;
+		private final double[] susceptible = new double[AGE_GROUPS];
+		private final List<EpisimPerson> contagious = new ArrayList<>();
+
+		private Census(CompartmentModel model) {
+			this.model = model;
+		}
+
+		/**
+		 * Count a person with its state for the current day.
+		 */
+		void add(EpisimPerson person) {
+			int stratum = model.getStratum(person);
+			if (stratum == -1)
+				return;
+
+			EpisimPerson.DiseaseStatus status = person.getDiseaseStatus();
+			if (status == EpisimPerson.DiseaseStatus.susceptible)
+				susceptible[model.getAgeGroup(stratum)]++;
+			else if (status == EpisimPerson.DiseaseStatus.contagious || status == EpisimPerson.DiseaseStatus.showingSymptoms)
+				contagious.add(person);
+		}
+
+		private void clear() {
+			Arrays.fill(susceptible, 0);
+			contagious.clear();
+		}
+	}
+}
@@ -0,0 +1,146 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+import org.matsim.api.core.v01.Id;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Contacts of contagious persons found by one contact model during a day, used to calibrate the {@link CompartmentModel}.
+ * Contacts are counted per age group and district, additionally a small sample of contacts is kept for each pair of age groups.
+ * <p>
+ * Like the {@link InfectionBuffer}, an instance must only be used by one thread at a time.
+ */
+public final class ContactStatistics {
+
+	private final CompartmentModel model;
+	private final SplittableRandom rnd;
+
+	/**
+	 * Number of contacts by age group of the contagious person and age group of the contact.
+	 */
+	final double[][] contacts;
+
+	/**
+	 * Number of contacts by district of the contagious person and district of the contact.
+	 */
+	final double[][] districtContacts;
+
+	/**
+	 * Sampled contacts for each pair of age groups, see {@link CompartmentModel#pair(int, int)}.
+	 */
+	final Record[][] records;
+	final long[] seen;
+
+	ContactStatistics(CompartmentModel model, SplittableRandom rnd) {
+		this.model = model;
+		this.rnd = rnd;
+		this.contacts = new double[CompartmentModel.AGE_GROUPS][CompartmentModel.AGE_GROUPS];
+		this.districtContacts = new double[model.getNumDistricts()][model.getNumDistricts()];
+		this.records = new Record[CompartmentModel.AGE_GROUPS * CompartmentModel.AGE_GROUPS][CompartmentModel.RECORDS];
+		this.seen = new long[records.length];
+	}
+
+	/**
+	 * Add a contact of a contagious person.
+	 *
+	 * @param infector         contagious person
+	 * @param contact          other person, regardless of its status
+	 * @param groupSize        number of persons in the container
+	 * @param contactIntensity contact intensity as passed to the infection model
+	 * @param now              time of the contact
+	 */
+	public void add(EpisimPerson infector, EpisimPerson contact, EpisimConfigGroup.InfectionParams infectorParams,
+	                EpisimConfigGroup.InfectionParams contactParams, String infectionType, EpisimContainer<?> container,
+	                int groupSize, double contactIntensity, double jointTime, double now) {
+
+		// contacts of persons that do not infect others in the compartment model would distort the contact rates
+		if (!CompartmentModel.isInfector(infector))
+			return;
+
+		int s1 = model.getStratum(infector);
+		int s2 = model.getStratum(contact);
+
+		// persons unknown to the model are ignored
+		if (s1 == -1 || s2 == -1)
+			return;
+
+		int b = model.getAgeGroup(s1);
+		int a = model.getAgeGroup(s2);
+
+		contacts[b][a]++;
+		districtContacts[model.getDistrict(s1)][model.getDistrict(s2)]++;
+
+		int pair = CompartmentModel.pair(b, a);
+		long n = ++seen[pair];
+
+		// reservoir sampling, the record is only created when it is kept
+		int slot = n <= CompartmentModel.RECORDS ? (int) (n - 1) : (int) rnd.nextLong(n);
+		if (slot < CompartmentModel.RECORDS)
+			records[pair][slot] = new Record(infectorParams, contactParams, infectionType, container.getContainerId(),
+					groupSize, contactIntensity, jointTime, now % 86400);
+	}
+
+	/**
+	 * Remove all collected contacts.
+	 */
+	void clear() {
+		for (double[] row : contacts)
+			Arrays.fill(row, 0);
+
+		for (double[] row : districtContacts)
+			Arrays.fill(row, 0);
+
+		for (Record[] r : records)
+			Arrays.fill(r, null);
+
+		Arrays.fill(seen, 0);
+	}
+
+	/**
+	 * A single contact, with everything needed to compute an infection probability for other persons.
+	 */
+	static final class Record {
+
+		final EpisimConfigGroup.InfectionParams infectorParams;
+		final EpisimConfigGroup.InfectionParams contactParams;
+		final String infectionType;
+		final Id<?> containerId;
+		final int groupSize;
+		final double contactIntensity;
+		final double jointTime;
+		final double timeOfDay;
+
+		Record(EpisimConfigGroup.InfectionParams infectorParams, EpisimConfigGroup.InfectionParams contactParams, String infectionType,
+		       Id<?> containerId, int groupSize, double contactIntensity, double jointTime, double timeOfDay) {
+			this.infectorParams = infectorParams;
+			this.contactParams = contactParams;
+			this.infectionType = infectionType;
+			this.containerId = containerId;
+			this.groupSize = groupSize;
+			this.contactIntensity = contactIntensity;
+			this.jointTime = jointTime;
+			this.timeOfDay = timeOfDay;
+		}
+	}
+}
@@ -0,0 +1,337 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.*;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.vehicles.Vehicle;
+
+import javax.annotation.Nullable;
+import java.time.DayOfWeek;
+import java.util.*;
+
+/**
+ * Compact, column based storage of the events of one day.
+ * <p>
+ * Instead of full MATSim {@link Event} objects only the attributes needed for the replay are stored in primitive arrays.
+ * Persons, containers and links are referenced by their {@link Id#index()}, activity types by an index into a table of interned strings.
+ * Coordinates and other attributes of the original events are not retained. If a network is set, activity start events are created
+ * with the coordinate of the to-node of their link.
+ */
+public final class DayEvents {
+
+	/**
+	 * Kind of the stored event.
+	 */
+	public static final byte ACTIVITY_START = 0;
+	public static final byte ACTIVITY_END = 1;
+	public static final byte ENTERS_VEHICLE = 2;
+	public static final byte LEAVES_VEHICLE = 3;
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private byte[] kind = new byte[INITIAL_CAPACITY];
+	private double[] time = new double[INITIAL_CAPACITY];
+	private int[] person = new int[INITIAL_CAPACITY];
+	private int[] container = new int[INITIAL_CAPACITY];
+	private int[] link = new int[INITIAL_CAPACITY];
+	private int[] actType = new int[INITIAL_CAPACITY];
+
+	private int size = 0;
+
+	/**
+	 * Activity types referenced by the {@link #actType} column.
+	 */
+	private final List<String> actTypes = new ArrayList<>();
+	private final Object2IntMap<String> actTypeIndex = new Object2IntOpenHashMap<>();
+
+	/**
+	 * Network to look up coordinates of activity start events, may be null.
+	 */
+	@Nullable
+	private Network network;
+
+	public DayEvents() {
+		actTypeIndex.defaultReturnValue(-1);
+	}
+
+	/**
+	 * Create store from existing columns. All arrays need to have the same length.
+	 */
+	DayEvents(byte[] kind, double[] time, int[] person, int[] container, int[] link, int[] actType, List<String> actTypes) {
+		this();
+		this.kind = kind;
+		this.time = time;
+		this.person = person;
+		this.container = container;
+		this.link = link;
+		this.actType = actType;
+		this.size = kind.length;
+
+		for (String act : actTypes) {
+			actTypeIndex.put(act, this.actTypes.size());
+			this.actTypes.add(act.intern());
+		}
+	}
+
+	/**
+	 * Create store from a list of MATSim events.
+	 */
+	public static DayEvents of(List<Event> events) {
+		DayEvents store = new DayEvents();
+		events.forEach(store::add);
+		store.trim();
+		return store;
+	}
+
+	/**
+	 * Convert events for each weekday. Lists that are shared between days will also result in the same store.
+	 */
+	public static Map<DayOfWeek, DayEvents> of(Map<DayOfWeek, List<Event>> events) {
+		Map<List<Event>, DayEvents> converted = new IdentityHashMap<>();
+		Map<DayOfWeek, DayEvents> result = new EnumMap<>(DayOfWeek.class);
+		for (Map.Entry<DayOfWeek, List<Event>> e : events.entrySet()) {
+			result.put(e.getKey(), converted.computeIfAbsent(e.getValue(), DayEvents::of));
+		}
+		return result;
+	}
+
+	/**
+	 * Provide views of all stores as lists of MATSim events. Stores shared between days will also share the same list.
+	 *
+	 * @see #asList()
+	 */
+	public static Map<DayOfWeek, List<Event>> asLists(Map<DayOfWeek, DayEvents> events) {
+		Map<DayEvents, List<Event>> converted = new IdentityHashMap<>();
+		Map<DayOfWeek, List<Event>> result = new EnumMap<>(DayOfWeek.class);
+		for (Map.Entry<DayOfWeek, DayEvents> e : events.entrySet()) {
+			result.put(e.getKey(), converted.computeIfAbsent(e.getValue(), DayEvents::asList));
+		}
+		return result;
+	}
+
+	/**
+	 * Set the network used for the coordinates of created activity start events.
+	 */
+	public void setNetwork(@Nullable Network network) {
+		this.network = network;
+	}
+
+	/**
+	 * Add a MATSim event, which has to be one of the four event types used during replay.
+	 */
+	public void add(Event event) {
+		if (event instanceof ActivityStartEvent) {
+			ActivityStartEvent e = (ActivityStartEvent) event;
+			addActivity(ACTIVITY_START, e.getTime(), e.getPersonId(), e.getFacilityId(), e.getLinkId(), e.getActType());
+		} else if (event instanceof ActivityEndEvent) {
+			ActivityEndEvent e = (ActivityEndEvent) event;
+			addActivity(ACTIVITY_END, e.getTime(), e.getPersonId(), e.getFacilityId(), e.getLinkId(), e.getActType());
+		} else if (event instanceof PersonEntersVehicleEvent) {
+			PersonEntersVehicleEvent e = (PersonEntersVehicleEvent) event;
+			addVehicle(ENTERS_VEHICLE, e.getTime(), e.getPersonId(), e.getVehicleId());
+		} else if (event instanceof PersonLeavesVehicleEvent) {
+			PersonLeavesVehicleEvent e = (PersonLeavesVehicleEvent) event;
+			addVehicle(LEAVES_VEHICLE, e.getTime(), e.getPersonId(), e.getVehicleId());
+		} else
+			throw new IllegalArgumentException("Unsupported event type: " + event.getEventType());
+	}
+
+	/**
+	 * Add an activity start or end event.
+	 */
+	public void addActivity(byte kind, double time, Id<Person> personId, Id<ActivityFacility> facilityId, Id<Link> linkId, String actType) {
+		if (kind != ACTIVITY_START && kind != ACTIVITY_END)
+			throw new IllegalArgumentException("Not an activity event kind: " + kind);
+
+		int act = actTypeIndex.getInt(actType);
+		if (act == -1) {
+			act = actTypes.size();
+			actTypes.add(actType.intern());
+			actTypeIndex.put(actType, act);
+		}
+
+		append(kind, time, personId.index(), facilityId != null ? facilityId.index() : -1, linkId != null ? linkId.index() : -1, act);
+	}
+
+	/**
+	 * Add a person enters or leaves vehicle event.
+	 */
+	public void addVehicle(byte kind, double time, Id<Person> personId, Id<Vehicle> vehicleId) {
+		if (kind != ENTERS_VEHICLE && kind != LEAVES_VEHICLE)
+			throw new IllegalArgumentException("Not a vehicle event kind: " + kind);
+
+		append(kind, time, personId.index(), vehicleId.index(), -1, -1);
+	}
+
+	private void append(byte k, double t, int p, int c, int l, int a) {
+		if (size == kind.length)
+			resize(Math.max(INITIAL_CAPACITY, size + (size >> 1)));
+
+		kind[size] = k;
+		time[size] = t;
+		person[size] = p;
+		container[size] = c;
+		link[size] = l;
+		actType[size] = a;
+		size++;
+	}
+
+	private void resize(int capacity) {
+		kind = Arrays.copyOf(kind, capacity);
+		time = Arrays.copyOf(time, capacity);
+		person = Arrays.copyOf(person, capacity);
+		container = Arrays.copyOf(container, capacity);
+		link = Arrays.copyOf(link, capacity);
+		actType = Arrays.copyOf(actType, capacity);
+	}
+
+	/**
+	 * Release unused capacity, should be called after all events have been added.
+	 */
+	public void trim() {
+		if (size < kind.length)
+			resize(size);
+	}
+
+	/**
+	 * Number of stored events.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Kind of the i-th event, one of the constants of this class.
+	 */
+	public byte getKind(int i) {
+		return kind[i];
+	}
+
+	public double getTime(int i) {
+		return time[i];
+	}
+
+	public Id<Person> getPersonId(int i) {
+		return Id.get(person[i], Person.class);
+	}
+
+	/**
+	 * Facility of an activity event, may be null if not present in the original event.
+	 */
+	public Id<ActivityFacility> getFacilityId(int i) {
+		return container[i] >= 0 ? Id.get(container[i], ActivityFacility.class) : null;
+	}
+
+	/**
+	 * Vehicle of a vehicle event.
+	 */
+	public Id<Vehicle> getVehicleId(int i) {
+		return Id.get(container[i], Vehicle.class);
+	}
+
+	/**
+	 * Link of an activity event, may be null.
+	 */
+	public Id<Link> getLinkId(int i) {
+		return link[i] >= 0 ? Id.get(link[i], Link.class) : null;
+	}
+
+	/**
+	 * Index of the activity type, refers to {@link #getActTypes()}.
+	 */
+	int getActTypeIndex(int i) {
+		return actType[i];
+	}
+
+	/**
+	 * All activity types referenced by this store.
+	 */
+	List<String> getActTypes() {
+		return Collections.unmodifiableList(actTypes);
+	}
+
+	/**
+	 * Activity type of an activity event. This string is always interned.
+	 */
+	public String getActType(int i) {
+		return actTypes.get(actType[i]);
+	}
+
+	/**
+	 * Creates the MATSim event for the i-th entry.
+	 */
+	public Event getEvent(int i) {
+		Id<Link> linkId = getLinkId(i);
+		switch (kind[i]) {
+			case ACTIVITY_START:
+				return new ActivityStartEvent(time[i], getPersonId(i), linkId, getFacilityId(i), getActType(i), getCoord(linkId));
+			case ACTIVITY_END:
+				return new ActivityEndEvent(time[i], getPersonId(i), linkId, getFacilityId(i), getActType(i));
+			case ENTERS_VEHICLE:
+				return new PersonEntersVehicleEvent(time[i], getPersonId(i), getVehicleId(i));
+			case LEAVES_VEHICLE:
+				return new PersonLeavesVehicleEvent(time[i], getPersonId(i), getVehicleId(i));
+			default:
+				throw new IllegalStateException("Unknown event kind: " + kind[i]);
+		}
+	}
+
+	/**
+	 * Coordinate of the to-node of a link, null if it is not known.
+	 */
+	@Nullable
+	private Coord getCoord(Id<Link> linkId) {
+		if (network == null || linkId == null)
+			return null;
+
+		Link link = network.getLinks().get(linkId);
+		return link != null ? link.getToNode().getCoord() : null;
+	}
+
+	/**
+	 * Read-only view of this store as list of MATSim events. Events are created on each access.
+	 */
+	public List<Event> asList() {
+		return new EventList();
+	}
+
+	private final class EventList extends AbstractList<Event> implements RandomAccess {
+
+		@Override
+		public Event get(int index) {
+			Objects.checkIndex(index, size);
+			return getEvent(index);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+}
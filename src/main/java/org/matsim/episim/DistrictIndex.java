@@ -0,0 +1,162 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.facilities.ActivityFacility;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Assigns each facility the index of its district, as given by {@link EpisimConfigGroup#getDistrictLevelRestrictionsAttribute()}.
+ * <p>
+ * Districts are numbered in alphabetical order of their names. The district of containers and activities is resolved once
+ * and then stored within these objects, so that location based restrictions can be looked up without any string hashing.
+ */
+public final class DistrictIndex {
+
+	/**
+	 * Index of facilities without district.
+	 */
+	public static final int NONE = -1;
+
+	/**
+	 * District of containers and activities that were not resolved yet.
+	 */
+	static final int UNRESOLVED = -2;
+
+	private static final String ELEMENT = "episimDistrictIndex";
+
+	private static final DistrictIndex EMPTY = new DistrictIndex(new TreeSet<>());
+
+	private final List<String> names;
+	private final Object2IntMap<String> ids = new Object2IntOpenHashMap<>();
+
+	/**
+	 * District of each facility by its id index.
+	 */
+	private final Int2IntMap facilities = new Int2IntOpenHashMap();
+
+	private DistrictIndex(TreeSet<String> names) {
+		this.names = new ArrayList<>(names);
+
+		ids.defaultReturnValue(NONE);
+		facilities.defaultReturnValue(NONE);
+
+		for (String name : this.names)
+			ids.put(name, ids.size());
+	}
+
+	/**
+	 * Get the index of a scenario, which is created only once and then stored as scenario element.
+	 * The index is empty if there is no scenario or district level restrictions are not used.
+	 */
+	public static synchronized DistrictIndex of(@Nullable Scenario scenario, EpisimConfigGroup episimConfig) {
+
+		if (scenario == null || episimConfig.getDistrictLevelRestrictions() != EpisimConfigGroup.DistrictLevelRestrictions.yes)
+			return EMPTY;
+
+		String attribute = episimConfig.getDistrictLevelRestrictionsAttribute();
+		String element = ELEMENT + ":" + attribute;
+
+		DistrictIndex index = (DistrictIndex) scenario.getScenarioElement(element);
+		if (index != null)
+			return index;
+
+		TreeSet<String> names = new TreeSet<>();
+		for (ActivityFacility facility : scenario.getActivityFacilities().getFacilities().values()) {
+			String district = (String) facility.getAttributes().getAttribute(attribute);
+			if (district != null)
+				names.add(district);
+		}
+
+		index = new DistrictIndex(names);
+		for (ActivityFacility facility : scenario.getActivityFacilities().getFacilities().values()) {
+			String district = (String) facility.getAttributes().getAttribute(attribute);
+			if (district != null)
+				index.facilities.put(facility.getId().index(), index.ids.getInt(district));
+		}
+
+		scenario.addScenarioElement(element, index);
+		return index;
+	}
+
+	/**
+	 * Number of districts.
+	 */
+	public int size() {
+		return names.size();
+	}
+
+	/**
+	 * Name of the district with index {@code i}.
+	 */
+	public String getName(int i) {
+		return names.get(i);
+	}
+
+	/**
+	 * Index of a district name or {@link #NONE} if unknown.
+	 */
+	public int indexOf(String name) {
+		return ids.getInt(name);
+	}
+
+	/**
+	 * District of a facility or {@link #NONE}.
+	 */
+	public int getDistrict(@Nullable Id<ActivityFacility> facilityId) {
+		return facilityId != null ? facilities.get(facilityId.index()) : NONE;
+	}
+
+	/**
+	 * District of a container, which will be resolved on first access. Vehicles have no district.
+	 */
+	public int getDistrict(EpisimContainer<?> container) {
+		int district = container.getDistrict();
+		if (district == UNRESOLVED) {
+			district = container instanceof InfectionEventHandler.EpisimFacility ?
+					getDistrict(((InfectionEventHandler.EpisimFacility) container).getContainerId()) : NONE;
+			container.setDistrict(district);
+		}
+
+		return district;
+	}
+
+	/**
+	 * District of the facility of an activity, which will be resolved on first access.
+	 */
+	public int getDistrict(EpisimPerson.PerformedActivity activity) {
+		if (activity.district == UNRESOLVED)
+			activity.district = getDistrict(activity.getFacilityId());
+
+		return activity.district;
+	}
+}
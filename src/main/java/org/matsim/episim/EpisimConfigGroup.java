@@ -81,6 +81,15 @@ public final class EpisimConfigGroup extends ReflectiveConfigGroup {
 	private static final String REPORT_TIME_USE = "reportTimeUse";
 	private static final String SINGLE_EVENT_FILE = "singleEventFile";
 	private static final String END_EARLY = "endEarly";
+	private static final String EVENT_CACHE = "eventCache";
+	private static final String REBALANCE_INTERVAL = "rebalanceInterval";
+	private static final String STATE_UPDATE_PARTITIONS = "stateUpdatePartitions";
+	private static final String PIPELINE_REPORTING = "pipelineReporting";
+	private static final String REPLAY_ACTIVE_CONTAINERS_ONLY = "replayActiveContainersOnly";
+	private static final String OCCUPANCY_INDEX = "occupancyIndex";
+	private static final String STATUS_PARTITIONED_CONTACTS = "statusPartitionedContacts";
+	private static final String HOME_CONTACT_ENGINE = "homeContactEngine";
+	private static final String HYBRID_THRESHOLD = "hybridThreshold";
 
 	private static final Logger log = LogManager.getLogger(EpisimConfigGroup.class);
 	private static final String GROUPNAME = "episim";
@@ -167,6 +176,42 @@ public final class EpisimConfigGroup extends ReflectiveConfigGroup {
 	private SingleEventFile singleEventFile = SingleEventFile.yes;
 	private boolean endEarly = false;
 	private int threads = 2;
+	/**
+	 * Directory for the binary cache of preprocessed input events, disabled if null.
+	 */
+	private String eventCache = null;
+	/**
+	 * Redistribute containers to threads based on measured run time every x days, disabled if 0.
+	 */
+	private int rebalanceInterval = 0;
+	/**
+	 * Number of person partitions for the parallel state update at the start of each day.
+	 */
+	private int stateUpdatePartitions = 1;
+	/**
+	 * Write daily reports in the background.
+	 */
+	private boolean pipelineReporting = false;
+	/**
+	 * Only replay events of containers visited by contagious persons.
+	 */
+	private boolean replayActiveContainersOnly = false;
+	/**
+	 * Evaluate contacts from occupancy intervals instead of replaying events.
+	 */
+	private boolean occupancyIndex = false;
+	/**
+	 * Only evaluate contacts between susceptible and contagious persons.
+	 */
+	private boolean statusPartitionedContacts = false;
+	/**
+	 * Evaluate contacts in households once per day instead of replaying their events.
+	 */
+	private boolean homeContactEngine = false;
+	/**
+	 * Number of contagious persons up to which the compartment model is used, -1 to disable.
+	 */
+	private int hybridThreshold = -1;
 
 
 	/**
@@ -878,6 +923,155 @@ public final class EpisimConfigGroup extends ReflectiveConfigGroup {
 		this.endEarly = endEarly;
 	}
 
+	/**
+	 * Directory where preprocessed input events are cached in binary form. Caching is disabled if not set.
+	 */
+	@StringGetter(EVENT_CACHE)
+	public String getEventCache() {
+		return eventCache;
+	}
+
+	@StringSetter(EVENT_CACHE)
+	public void setEventCache(String eventCache) {
+		this.eventCache = eventCache;
+	}
+
+	/**
+	 * Interval in days after which containers are redistributed to the threads, using the measured processing time of each container.
+	 * If 0, the distribution is only estimated once from the container sizes.
+	 * Note that results are not reproducible when this is enabled, because the assignment depends on measured run times.
+	 */
+	@StringGetter(REBALANCE_INTERVAL)
+	public int getRebalanceInterval() {
+		return rebalanceInterval;
+	}
+
+	@StringSetter(REBALANCE_INTERVAL)
+	public void setRebalanceInterval(int rebalanceInterval) {
+		this.rebalanceInterval = rebalanceInterval;
+	}
+
+	/**
+	 * Number of fixed person partitions for which disease progression, participation, testing and antibodies are updated in parallel at the
+	 * start of each day. Each partition uses its own random number stream, testing and tracing capacity is shared and granted in partition
+	 * order. Tracing is performed after the progression of all partitions. Results are reproducible for the same seed and number of partitions,
+	 * but differ between different numbers of partitions. 1 means serial update.
+	 */
+	@StringGetter(STATE_UPDATE_PARTITIONS)
+	public int getStateUpdatePartitions() {
+		return stateUpdatePartitions;
+	}
+
+	@StringSetter(STATE_UPDATE_PARTITIONS)
+	public void setStateUpdatePartitions(int stateUpdatePartitions) {
+		if (stateUpdatePartitions < 1)
+			throw new IllegalArgumentException("Number of partitions must be at least 1");
+
+		this.stateUpdatePartitions = stateUpdatePartitions;
+	}
+
+	/**
+	 * Whether daily reports are formatted and written on a background thread, while the simulation continues with the next day.
+	 * The content of all output files is the same as with sequential reporting.
+	 */
+	@StringGetter(PIPELINE_REPORTING)
+	public boolean isPipelineReporting() {
+		return pipelineReporting;
+	}
+
+	@StringSetter(PIPELINE_REPORTING)
+	public void setPipelineReporting(boolean pipelineReporting) {
+		this.pipelineReporting = pipelineReporting;
+	}
+
+	/**
+	 * Whether only events of containers that are visited by a contagious person during the day are replayed.
+	 * Other containers can not produce infections, because the disease status only changes between days.
+	 * Containers where persons stay over night are always replayed to keep their occupancy correct.
+	 * <p>
+	 * This is only applied on days without contact tracing, when no input or contact events are written, and if time use is not reported.
+	 * The number of reported contacts will be lower. Because fewer random numbers are drawn, results are statistically
+	 * equivalent, but not identical to a full replay.
+	 */
+	@StringGetter(REPLAY_ACTIVE_CONTAINERS_ONLY)
+	public boolean isReplayActiveContainersOnly() {
+		return replayActiveContainersOnly;
+	}
+
+	@StringSetter(REPLAY_ACTIVE_CONTAINERS_ONLY)
+	public void setReplayActiveContainersOnly(boolean replayActiveContainersOnly) {
+		this.replayActiveContainersOnly = replayActiveContainersOnly;
+	}
+
+	/**
+	 * Whether contacts in facilities and vehicles are evaluated from an index of occupancy intervals instead of replaying the events.
+	 * The index is built once for each distinct day, each container is then processed as a sweep over the intervals of its visitors,
+	 * with the daily activity participation applied on top. Containers without contagious visitors are not swept.
+	 * Persons staying over night are kept in their container as during the replay, their contacts are evaluated once when they leave.
+	 * Infections are always collected and resolved at the end of the day, so that the earliest infection of a person is used as in chronological replay.
+	 * Random numbers are drawn in a different order, so results are statistically equivalent but not identical.
+	 * Requires {@link ActivityHandling#startOfDay}, an {@link org.matsim.episim.model.OccupancyContactModel} and no written input events.
+	 */
+	@StringGetter(OCCUPANCY_INDEX)
+	public boolean isOccupancyIndex() {
+		return occupancyIndex;
+	}
+
+	@StringSetter(OCCUPANCY_INDEX)
+	public void setOccupancyIndex(boolean occupancyIndex) {
+		this.occupancyIndex = occupancyIndex;
+	}
+
+	/**
+	 * Whether containers keep their persons partitioned by disease status, so that the contact model only pairs a leaving susceptible
+	 * person with contagious persons and vice versa. Only used by the {@link org.matsim.episim.model.SymmetricContactModel} while tracing is not active.
+	 * Infections are statistically equivalent, but contacts between persons that can not infect each other are neither counted nor reported.
+	 */
+	@StringGetter(STATUS_PARTITIONED_CONTACTS)
+	public boolean isStatusPartitionedContacts() {
+		return statusPartitionedContacts;
+	}
+
+	@StringSetter(STATUS_PARTITIONED_CONTACTS)
+	public void setStatusPartitionedContacts(boolean statusPartitionedContacts) {
+		this.statusPartitionedContacts = statusPartitionedContacts;
+	}
+
+	/**
+	 * Whether contacts in households, i.e. facilities with only {@code home*} activities, are evaluated in one pass at the end of each day.
+	 * The joint time of all household members is computed from the trajectories once per distinct day and the events of these facilities
+	 * are not replayed. Requires {@link ActivityHandling#startOfDay} and a {@link org.matsim.episim.model.HouseholdContactModel},
+	 * participation in home activities is assumed.
+	 * Joint time of members staying at home over night is evaluated once, on the day one of them leaves.
+	 */
+	@StringGetter(HOME_CONTACT_ENGINE)
+	public boolean isHomeContactEngine() {
+		return homeContactEngine;
+	}
+
+	@StringSetter(HOME_CONTACT_ENGINE)
+	public void setHomeContactEngine(boolean homeContactEngine) {
+		this.homeContactEngine = homeContactEngine;
+	}
+
+	/**
+	 * Number of contagious persons (including persons showing symptoms, scaled to the full population) up to which the events are not
+	 * replayed, but infections are drawn from an age and district stratified compartment model. The compartment model is calibrated from the
+	 * contacts of contagious persons during the preceding replayed days, while the state of each person is still updated individually.
+	 * As soon as the number of contagious persons exceeds the threshold the events are replayed again. A negative value disables this mode.
+	 * Contagious persons in quarantine do not infect others in the compartment model. Requires a contact model that records the contacts
+	 * for the calibration, i.e. a {@link org.matsim.episim.model.RecordingContactModel}.
+	 */
+	@StringGetter(HYBRID_THRESHOLD)
+	public int getHybridThreshold() {
+		return hybridThreshold;
+	}
+
+	@StringSetter(HYBRID_THRESHOLD)
+	public void setHybridThreshold(int hybridThreshold) {
+		this.hybridThreshold = hybridThreshold;
+	}
+
 	/**
 	 * Defines how facilities should be handled.
 	 */
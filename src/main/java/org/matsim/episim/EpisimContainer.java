@@ -29,10 +29,7 @@ import org.matsim.api.core.v01.population.Person;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 import static org.matsim.episim.EpisimUtils.*;
 
@@ -46,22 +43,49 @@ public class EpisimContainer<T> {
 
 	private static final Logger log = LogManager.getLogger(EpisimContainer.class);
 
+	private static final int INITIAL_CAPACITY = 4;
+
+	private static final byte NO_STATUS_LIST = 0;
+	private static final byte SUSCEPTIBLE = 1;
+	private static final byte CONTAGIOUS = 2;
+
+	/**
+	 * Slot of each person in this container, by {@link Id#index()} of the person.
+	 */
+	private final Int2IntMap slots = new Int2IntOpenHashMap(INITIAL_CAPACITY);
+
+	/**
+	 * Persons currently in this container, the first {@link #size} slots are occupied.
+	 * Removed persons are replaced by the person of the last slot.
+	 */
+	private EpisimPerson[] persons = new EpisimPerson[INITIAL_CAPACITY];
+
+	/**
+	 * Entering time of the person in the same slot.
+	 */
+	private double[] enterTimes = new double[INITIAL_CAPACITY];
+
+	/**
+	 * Activity of the person in the same slot.
+	 */
+	private EpisimPerson.PerformedActivity[] activities = new EpisimPerson.PerformedActivity[INITIAL_CAPACITY];
+
 	/**
-	 * Persons currently in this container. Stored only as Ids.
+	 * Status list of the person in the same slot, one of {@link #NO_STATUS_LIST}, {@link #SUSCEPTIBLE} or {@link #CONTAGIOUS}.
 	 */
-	private final IntSet persons = new IntOpenHashSet(4);
+	private byte[] statusListOfSlot = new byte[INITIAL_CAPACITY];
 
 	/**
-	 * Person list needed to draw random persons within container.
+	 * Position within its status list of the person in the same slot.
 	 */
-	private final List<EpisimPerson> personsAsList = new ArrayList<>();
+	private int[] statusPositions = new int[INITIAL_CAPACITY];
 
-	private final Int2DoubleMap containerEnterTimes = new Int2DoubleOpenHashMap(4);
+	private int size = 0;
 
 	/**
-	 * Activities of persons in the container.
+	 * List view on the occupied slots, needed to draw random persons within container.
 	 */
-	private final Int2ObjectMap<EpisimPerson.PerformedActivity> personActivities = new Int2ObjectArrayMap<>(4);
+	private final PersonList personList = new PersonList();
 
 	/**
 	 * The maximum number of persons simultaneously in this container. Negative if unknown.
@@ -89,6 +113,42 @@ public class EpisimContainer<T> {
 	 */
 	private int taskId = 0;
 
+	/**
+	 * Measured processing time in nanoseconds since the last reset.
+	 * Only accessed by the task responsible for this container.
+	 */
+	private long cpuTime = 0;
+
+	/**
+	 * Whether persons can stay in this container across day boundaries, which requires the container to be always replayed.
+	 */
+	private boolean alwaysActive = false;
+
+	/**
+	 * Last iteration on which this container is visited by a contagious person.
+	 */
+	private int activeIteration = -1;
+
+	/**
+	 * District of this container, resolved by the {@link DistrictIndex}.
+	 */
+	private int district = DistrictIndex.UNRESOLVED;
+
+	/**
+	 * Whether persons are additionally kept in lists partitioned by disease status.
+	 */
+	private boolean statusLists = false;
+
+	/**
+	 * Susceptible persons in this container, only maintained if {@link #statusLists} is enabled.
+	 */
+	private final StatusList susceptiblePersons = new StatusList();
+
+	/**
+	 * Contagious persons and persons showing symptoms in this container, only maintained if {@link #statusLists} is enabled.
+	 */
+	private final StatusList contagiousPersons = new StatusList();
+
 	/**
 	 * This counts the number of persons in this container
 	 * which have the DiseaseStatus contagious or showingSymptoms. 	
@@ -97,6 +157,7 @@ public class EpisimContainer<T> {
 
 	EpisimContainer(Id<T> containerId) {
 		this.containerId = containerId;
+		this.slots.defaultReturnValue(-1);
 	}
 
 	/**
@@ -104,17 +165,15 @@ public class EpisimContainer<T> {
 	 */
 	void read(ObjectInput in, Map<Id<Person>, EpisimPerson> persons) throws IOException {
 
-		this.persons.clear();
-		this.personsAsList.clear();
-		this.containerEnterTimes.clear();
+		clearSlots();
 
 		int n = in.readInt();
 		for (int i = 0; i < n; i++) {
 			Id<Person> id = Id.create(readChars(in), Person.class);
-			this.persons.add(id.index());
-			personsAsList.add(persons.get(id));
-			containerEnterTimes.put(id.index(), in.readDouble());
+			addSlot(persons.get(id), in.readDouble(), null);
 		}
+
+		updateStatusLists();
 	}
 
 	/**
@@ -122,28 +181,72 @@ public class EpisimContainer<T> {
 	 */
 	void write(ObjectOutput out) throws IOException {
 
-		out.writeInt(containerEnterTimes.size());
-		for (EpisimPerson p : personsAsList) {
-			writeChars(out, p.getPersonId().toString());
-			out.writeDouble(containerEnterTimes.get(p.getPersonId().index()));
+		out.writeInt(size);
+		for (int i = 0; i < size; i++) {
+			writeChars(out, persons[i].getPersonId().toString());
+			out.writeDouble(enterTimes[i]);
 		}
 	}
 
 	boolean containsPerson(EpisimPerson person) {
 		final int index = person.getPersonId().index();
-		return persons.contains(index);
+		return slots.containsKey(index);
 	}
 
 	void addPerson(EpisimPerson person, double now, EpisimPerson.PerformedActivity act) {
-		final int index = person.getPersonId().index();
 
 		//assert !persons.contains(index) : "Person already contained in this container.";
-		assert !persons.contains(index) : String.format("Person %s was already in container %s", person.getPersonId(), containerId);
+		assert !containsPerson(person) : String.format("Person %s was already in container %s", person.getPersonId(), containerId);
+
+		addSlot(person, now, act);
+
+		if (statusLists)
+			addToStatusList(size - 1);
+	}
+
+	private void addSlot(EpisimPerson person, double now, EpisimPerson.PerformedActivity act) {
+		if (size == persons.length) {
+			int capacity = size + (size >> 1) + 1;
+			persons = Arrays.copyOf(persons, capacity);
+			enterTimes = Arrays.copyOf(enterTimes, capacity);
+			activities = Arrays.copyOf(activities, capacity);
+			statusListOfSlot = Arrays.copyOf(statusListOfSlot, capacity);
+			statusPositions = Arrays.copyOf(statusPositions, capacity);
+		}
+
+		persons[size] = person;
+		enterTimes[size] = now;
+		activities[size] = act;
+		statusListOfSlot[size] = NO_STATUS_LIST;
+		slots.put(person.getPersonId().index(), size);
+		size++;
+	}
 
-		persons.add(index);
-		personsAsList.add(person);
-		containerEnterTimes.put(index, now);
-		personActivities.put(index, act);
+	/**
+	 * Remove the person in a slot by moving the last person into it.
+	 */
+	private void removeSlot(int slot) {
+		slots.remove(persons[slot].getPersonId().index());
+
+		int last = --size;
+		if (slot != last) {
+			persons[slot] = persons[last];
+			enterTimes[slot] = enterTimes[last];
+			activities[slot] = activities[last];
+			statusListOfSlot[slot] = statusListOfSlot[last];
+			statusPositions[slot] = statusPositions[last];
+			slots.put(persons[slot].getPersonId().index(), slot);
+		}
+
+		persons[last] = null;
+		activities[last] = null;
+	}
+
+	private void clearSlots() {
+		Arrays.fill(persons, 0, size, null);
+		Arrays.fill(activities, 0, size, null);
+		slots.clear();
+		size = 0;
 	}
 
 	/**
@@ -152,13 +255,14 @@ public class EpisimContainer<T> {
 	 * @throws RuntimeException if the person was not in the container.
 	 */
 	void removePerson(EpisimPerson person) {
-		int index = person.getPersonId().index();
+		int slot = slots.get(person.getPersonId().index());
+
+		if (slot >= 0) {
+			if (statusLists)
+				removeFromStatusList(slot);
 
-		containerEnterTimes.remove(index);
-		personActivities.remove(index);
-		persons.remove(index);
-		boolean wasRemoved = personsAsList.remove(person);
-		if (!wasRemoved)
+			removeSlot(slot);
+		} else
 			log.warn( "Person {} was not in container {}", person.getPersonId(), containerId);
 
 		if (person.infectedButNotSerious())
@@ -170,11 +274,9 @@ public class EpisimContainer<T> {
 	 * This allows to remove persons while iterating through them.
 	 */
 	void removePerson(EpisimPerson person, Iterator<EpisimPerson> it) {
-		int index = person.getPersonId().index();
+		if (statusLists)
+			removeFromStatusList(slots.get(person.getPersonId().index()));
 
-		containerEnterTimes.remove(index);
-		personActivities.remove(index);
-		persons.remove(index);
 		it.remove();
 	}
 
@@ -238,30 +340,150 @@ public class EpisimContainer<T> {
 		return taskId;
 	}
 
+	/**
+	 * District index of this container, use {@link DistrictIndex#getDistrict(EpisimContainer)} to resolve it.
+	 */
+	int getDistrict() {
+		return district;
+	}
+
+	void setDistrict(int district) {
+		this.district = district;
+	}
+
+	/**
+	 * Add processing time spent for this container.
+	 */
+	void addCpuTime(long nanos) {
+		this.cpuTime += nanos;
+	}
+
+	/**
+	 * Processing time spent for this container since last {@link #resetCpuTime()}.
+	 */
+	long getCpuTime() {
+		return cpuTime;
+	}
+
+	void resetCpuTime() {
+		this.cpuTime = 0;
+	}
+
+	void setAlwaysActive(boolean alwaysActive) {
+		this.alwaysActive = alwaysActive;
+	}
+
+	/**
+	 * Mark this container as visited by a contagious person during the given iteration.
+	 */
+	void setActive(int iteration) {
+		this.activeIteration = iteration;
+	}
+
+	/**
+	 * Whether the events of this container need to be replayed, when only active containers are replayed.
+	 *
+	 * @see EpisimConfigGroup#isReplayActiveContainersOnly()
+	 */
+	boolean isActive(int iteration) {
+		return alwaysActive || activeIteration == iteration;
+	}
+
 	
 	void clearPersons() {
-		this.persons.clear();
-		this.personsAsList.clear();
-		this.containerEnterTimes.clear();
+		clearSlots();
+		this.susceptiblePersons.reset();
+		this.contagiousPersons.reset();
+	}
+
+	/**
+	 * Enable or disable maintaining persons partitioned by disease status.
+	 *
+	 * @see EpisimConfigGroup#isStatusPartitionedContacts()
+	 */
+	void setStatusLists(boolean statusLists) {
+		this.statusLists = statusLists;
+		updateStatusLists();
+	}
+
+	/**
+	 * Rebuild the status lists, needs to be called when the disease status of persons in this container has changed.
+	 */
+	void updateStatusLists() {
+		susceptiblePersons.reset();
+		contagiousPersons.reset();
+		Arrays.fill(statusListOfSlot, 0, size, NO_STATUS_LIST);
+
+		if (!statusLists)
+			return;
+
+		for (int i = 0; i < size; i++)
+			addToStatusList(i);
+	}
+
+	private void addToStatusList(int slot) {
+		EpisimPerson.DiseaseStatus status = persons[slot].getDiseaseStatus();
+		if (status == EpisimPerson.DiseaseStatus.susceptible) {
+			statusListOfSlot[slot] = SUSCEPTIBLE;
+			statusPositions[slot] = susceptiblePersons.append(persons[slot]);
+		} else if (status == EpisimPerson.DiseaseStatus.contagious || status == EpisimPerson.DiseaseStatus.showingSymptoms) {
+			statusListOfSlot[slot] = CONTAGIOUS;
+			statusPositions[slot] = contagiousPersons.append(persons[slot]);
+		} else
+			statusListOfSlot[slot] = NO_STATUS_LIST;
+	}
+
+	/**
+	 * Removes the person in a slot from the list it was added to. Status may have changed since then, if it got infected during the day.
+	 */
+	private void removeFromStatusList(int slot) {
+		if (statusListOfSlot[slot] == SUSCEPTIBLE)
+			susceptiblePersons.removeAt(statusPositions[slot]);
+		else if (statusListOfSlot[slot] == CONTAGIOUS)
+			contagiousPersons.removeAt(statusPositions[slot]);
+
+		statusListOfSlot[slot] = NO_STATUS_LIST;
 	}
 
 	/**
 	 * Returns the time the person entered the container, or {@link Double#NEGATIVE_INFINITY} if it never entered.
 	 */
 	public double getContainerEnteringTime(Id<Person> personId) {
-		return containerEnterTimes.getOrDefault(personId.index(), Double.NEGATIVE_INFINITY);
+		int slot = slots.get(personId.index());
+		return slot >= 0 ? enterTimes[slot] : Double.NEGATIVE_INFINITY;
 	}
 
 	/**
 	 * Return the activity that a person is performing in this container.
 	 */
 	public EpisimPerson.PerformedActivity getPerformedActivity(Id<Person> personId) {
-		return personActivities.get(personId.index());
+		int slot = slots.get(personId.index());
+		return slot >= 0 ? activities[slot] : null;
 	}
 
+	/**
+	 * Persons in this container. The list is a view, which changes when persons enter or leave.
+	 * Removing a person moves the last person to its position.
+	 */
 	public List<EpisimPerson> getPersons() {
 		// Using Collections.unmodifiableList(...) puts huge pressure on the GC if its called hundred thousand times per second
-		return personsAsList;
+		return personList;
+	}
+
+	/**
+	 * Persons that were susceptible when entering the container or at the start of the day.
+	 * Only available if {@link EpisimConfigGroup#isStatusPartitionedContacts()} is enabled.
+	 */
+	public List<EpisimPerson> getSusceptiblePersons() {
+		return susceptiblePersons;
+	}
+
+	/**
+	 * Persons that were contagious or showing symptoms when entering the container or at the start of the day.
+	 * Only available if {@link EpisimConfigGroup#isStatusPartitionedContacts()} is enabled.
+	 */
+	public List<EpisimPerson> getContagiousPersons() {
+		return contagiousPersons;
 	}
 
 
@@ -277,4 +499,102 @@ public class EpisimContainer<T> {
 	public boolean containsContagious() {
 		return contagiousCounter > 0;
 	}
+
+	/**
+	 * Read-only list of the occupied slots. Its iterator supports removal, which does not skip the person moved into the removed slot.
+	 */
+	private final class PersonList extends AbstractList<EpisimPerson> implements RandomAccess {
+
+		@Override
+		public EpisimPerson get(int index) {
+			Objects.checkIndex(index, size);
+			return persons[index];
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public Iterator<EpisimPerson> iterator() {
+			return new Iterator<>() {
+
+				private int cursor = 0;
+				private int last = -1;
+
+				@Override
+				public boolean hasNext() {
+					return cursor < size;
+				}
+
+				@Override
+				public EpisimPerson next() {
+					if (cursor >= size)
+						throw new NoSuchElementException();
+
+					last = cursor++;
+					return persons[last];
+				}
+
+				@Override
+				public void remove() {
+					if (last < 0)
+						throw new IllegalStateException();
+
+					removeSlot(last);
+
+					// the last person was moved into the removed slot and still needs to be visited
+					cursor = last;
+					last = -1;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Persons of one disease status. Removed persons are replaced by the last person of the list, whose position is updated in its slot.
+	 */
+	private final class StatusList extends AbstractList<EpisimPerson> implements RandomAccess {
+
+		private EpisimPerson[] items = new EpisimPerson[INITIAL_CAPACITY];
+		private int n = 0;
+
+		@Override
+		public EpisimPerson get(int index) {
+			Objects.checkIndex(index, n);
+			return items[index];
+		}
+
+		@Override
+		public int size() {
+			return n;
+		}
+
+		/**
+		 * Appends a person and returns its position.
+		 */
+		private int append(EpisimPerson person) {
+			if (n == items.length)
+				items = Arrays.copyOf(items, n + (n >> 1) + 1);
+
+			items[n] = person;
+			return n++;
+		}
+
+		private void removeAt(int pos) {
+			int last = --n;
+			if (pos != last) {
+				items[pos] = items[last];
+				statusPositions[slots.get(items[pos].getPersonId().index())] = pos;
+			}
+
+			items[last] = null;
+		}
+
+		private void reset() {
+			Arrays.fill(items, 0, n, null);
+			n = 0;
+		}
+	}
 }
@@ -21,12 +21,11 @@
 package org.matsim.episim;
 
 import com.google.common.annotations.Beta;
-import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
 import it.unimi.dsi.fastutil.doubles.DoubleList;
-import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntList;
 import it.unimi.dsi.fastutil.objects.Object2DoubleLinkedOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
+import it.unimi.dsi.fastutil.objects.Object2DoubleMaps;
 import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.population.Person;
@@ -53,6 +52,8 @@ import static org.matsim.episim.EpisimUtils.*;
 
 /**
  * Persons current state in the simulation.
+ * <p>
+ * Most of the state is not held by this object, but in a row of the {@link PersonStore}.
  */
 public final class EpisimPerson implements Immunizable, Attributable {
 
@@ -96,14 +97,19 @@ public final class EpisimPerson implements Immunizable, Attributable {
 	private final boolean[] staysInContainer = new boolean[7];
 
 	/**
-	 * Traced contacts with other persons.
+	 * Storage of the person state.
 	 */
-	private final Object2DoubleMap<EpisimPerson> traceableContactPersons = new Object2DoubleLinkedOpenHashMap<>(4);
+	private final PersonStore store;
 
 	/**
-	 * Stores first time of status changes to specific type.
+	 * Index of this person in the {@link #store}.
 	 */
-	private final EnumMap<DiseaseStatus, Double> statusChanges = new EnumMap<>(DiseaseStatus.class);
+	private final int index;
+
+	/**
+	 * Traced contacts with other persons, only created when needed.
+	 */
+	private Object2DoubleMap<EpisimPerson> traceableContactPersons = null;
 
 	/**
 	 * Total spent time during activities.
@@ -119,14 +125,14 @@ public final class EpisimPerson implements Immunizable, Attributable {
 	 * In the parallel version of the {@link ReplayHandler}, the infections
 	 * are not happen in a chronically order. The earliestInfections
 	 * check therefore, that the first infection is valued as the important
-	 * infection
+	 * infection. Candidates are merged from the {@link InfectionBuffer} of each handler at the end of the day.
 	 */
 	private EpisimInfectionEvent earliestInfection = null;
 
 	/**
-	 * List of all potential infection that happened during the day.
+	 * List of all potential infection that happened during the day, only created when needed.
 	 */
-	private final List<EpisimPotentialInfectionEvent> potentialInfectionEvents = new ArrayList<>();
+	private List<EpisimPotentialInfectionEvent> potentialInfectionEvents = null;
 
 	/**
 	 * The facility where the person got infected. Can be null if person was initially infected.
@@ -138,90 +144,6 @@ public final class EpisimPerson implements Immunizable, Attributable {
 	 */
 	private String infectionType = null;
 
-	/**
-	 * Current {@link DiseaseStatus}.
-	 */
-	private DiseaseStatus status = DiseaseStatus.susceptible;
-	/**
-	 * Current {@link QuarantineStatus}.
-	 */
-	private QuarantineStatus quarantineStatus = QuarantineStatus.no;
-
-	/**
-	 * Current {@link TestStatus}.
-	 */
-	private TestStatus testStatus = TestStatus.untested;
-
-	/**
-	 * Iteration when this person got into quarantine. Negative if person was never quarantined.
-	 */
-	private int quarantineDate = Integer.MIN_VALUE;
-
-	/**
-	 * Iteration when this person was tested. Negative if person was never tested.
-	 */
-	private int testDate = -1;
-
-	/**
-	 * Age of the person in years.
-	 */
-	private final int age;
-
-	/**
-	 * Whether this person can be traced.
-	 */
-	private boolean traceable;
-
-	/**
-	 * Whether this person can be vaccinated.
-	 */
-	private boolean vaccinable = true;
-
-	/**
-	 * Individual susceptibility of a person.
-	 */
-	private double susceptibility = 1;
-
-	/**
-	 * Types of received vaccination. Index 0 is the first received.
-	 */
-	private final List<VaccinationType> vaccinations = new ArrayList<>();
-
-	/**
-	 * Iteration when this person was vaccinated. Negative if person was never vaccinated.
-	 */
-	private final IntList vaccinationDates = new IntArrayList();
-
-	/**
-	 * Second at which a person is infected (divide by 24*60*60 to get iteration/day)
-	 */
-	private final DoubleList infectionDates = new DoubleArrayList();
-
-	/**
-	 * Strain of the virus the person was infected with.
-	 */
-	private final List<VirusStrain> virusStrains = new ArrayList<>();
-
-	/**
-	 * Antibody level for each virus strain.
-	 */
-	private final Object2DoubleMap<VirusStrain> antibodies = new Object2DoubleOpenHashMap<>();
-
-	/**
-	 * Maximal antibody level reached by agent w/ respect to each strain
-	 */
-	private final Object2DoubleMap<VirusStrain> maxAntibodies = new Object2DoubleOpenHashMap<>();
-
-	/**
-	 * Antibody level at last infection.
-	 */
-	private double antibodyLevelAtInfection = 0.;
-
-	/**
-	 * Immune response multiplier, which is used to scale the antibody increase due to an immunity event
-	 */
-	private double immuneResponseMultiplier = 1.0;
-
 	/**
 	 * Lookup age from attributes.
 	 */
@@ -242,16 +164,20 @@ public final class EpisimPerson implements Immunizable, Attributable {
 		return trajectory;
 	}
 
+	/**
+	 * Creates a person with its own store, persons of a simulation should share one {@link PersonStore}.
+	 * Antibody levels of such a person do not decay.
+	 */
 	public EpisimPerson(Id<Person> personId, Attributes attrs, EpisimReporting reporting) {
-		this(personId, attrs, true, reporting);
+		this(personId, attrs, true, reporting, new PersonStore(1));
 	}
 
-	EpisimPerson(Id<Person> personId, Attributes attrs, boolean traceable, EpisimReporting reporting) {
+	EpisimPerson(Id<Person> personId, Attributes attrs, boolean traceable, EpisimReporting reporting, PersonStore store) {
 		this.personId = personId;
 		this.attributes = attrs;
-		this.traceable = traceable;
-		this.age = getAge(attrs);
 		this.reporting = reporting;
+		this.store = store;
+		this.index = store.add(getAge(attrs), traceable);
 	}
 
 	/**
@@ -262,17 +188,19 @@ public final class EpisimPerson implements Immunizable, Attributable {
 	void read(ObjectInput in, Map<Id<Person>, EpisimPerson> persons) throws IOException {
 
 		int n = in.readInt();
-		traceableContactPersons.clear();
+		traceableContactPersons = null;
 		for (int i = 0; i < n; i++) {
 			Id<Person> id = Id.create(readChars(in), Person.class);
-			traceableContactPersons.put(persons.get(id), in.readDouble());
+			getTraceableContacts().put(persons.get(id), in.readDouble());
 		}
 
 		n = in.readInt();
-		statusChanges.clear();
+		for (DiseaseStatus status : DiseaseStatus.values())
+			store.setStatusChange(index, status, Double.NaN);
+
 		for (int i = 0; i < n; i++) {
 			int status = in.readInt();
-			statusChanges.put(DiseaseStatus.values()[status], in.readDouble());
+			store.setStatusChange(index, DiseaseStatus.values()[status], in.readDouble());
 		}
 
 		if (in.readBoolean()) {
@@ -292,41 +220,48 @@ public final class EpisimPerson implements Immunizable, Attributable {
 
 		n = in.readInt();
 		for (int i = 0; i < n; i++) {
-			vaccinations.add(VaccinationType.values()[in.readInt()]);
-			vaccinationDates.add(in.readInt());
+			int type = in.readInt();
+			int day = in.readInt();
+			store.vaccinations.add(index, type, day);
+			// events of the last day before the snapshot are handled on the next day
+			store.addImmunityEvent(this, day);
 		}
 
 		n = in.readInt();
 		for (int i = 0; i < n; i++) {
-			infectionDates.add(in.readDouble());
-			virusStrains.add(VirusStrain.values()[in.readInt()]);
+			double date = in.readDouble();
+			store.infections.add(index, in.readInt(), date);
+			store.addImmunityEvent(this, (int) Math.floor(date / EpisimUtils.DAY));
 		}
 
+		store.antibodyRefDay[index] = store.antibodyDay;
+
 		n = in.readInt();
+		store.setFlag(index, PersonStore.ANTIBODIES, n > 0);
 		for (int i = 0; i < n; i++) {
-			VirusStrain strain = VirusStrain.values()[in.readInt()];
-			antibodies.put(strain, in.readDouble());
+			int strain = in.readInt();
+			store.antibodies[offset() + strain] = in.readDouble();
 		}
 
 		n = in.readInt();
 		for (int i = 0; i < n; i++) {
-			VirusStrain strain = VirusStrain.values()[in.readInt()];
-			maxAntibodies.put(strain, in.readDouble());
+			int strain = in.readInt();
+			store.maxAntibodies[offset() + strain] = in.readDouble();
 		}
 
-		status = DiseaseStatus.values()[in.readInt()];
-		quarantineStatus = QuarantineStatus.values()[in.readInt()];
-		quarantineDate = in.readInt();
-		testStatus = TestStatus.values()[in.readInt()];
-		testDate = in.readInt();
-		traceable = in.readBoolean();
+		store.status[index] = (byte) in.readInt();
+		store.quarantineStatus[index] = (byte) in.readInt();
+		store.quarantineDate[index] = in.readInt();
+		store.testStatus[index] = (byte) in.readInt();
+		store.testDate[index] = in.readInt();
+		store.setFlag(index, PersonStore.TRACEABLE, in.readBoolean());
 
 		// vaccinable, which is not restored from snapshot
 		in.readBoolean();
 
-		susceptibility = in.readDouble();
-		antibodyLevelAtInfection = in.readDouble();
-		immuneResponseMultiplier = in.readDouble();
+		store.susceptibility[index] = in.readDouble();
+		store.antibodyLevelAtInfection[index] = in.readDouble();
+		store.immuneResponseMultiplier[index] = in.readDouble();
 
 	}
 
@@ -335,16 +270,18 @@ public final class EpisimPerson implements Immunizable, Attributable {
 	 */
 	void write(ObjectOutput out) throws IOException {
 
-		out.writeInt(traceableContactPersons.size());
-		for (Object2DoubleMap.Entry<EpisimPerson> kv : traceableContactPersons.object2DoubleEntrySet()) {
+		Object2DoubleMap<EpisimPerson> contacts = traceableContactPersons != null ? traceableContactPersons : Object2DoubleMaps.emptyMap();
+		out.writeInt(contacts.size());
+		for (Object2DoubleMap.Entry<EpisimPerson> kv : contacts.object2DoubleEntrySet()) {
 			writeChars(out, kv.getKey().getPersonId().toString());
 			out.writeDouble(kv.getDoubleValue());
 		}
 
-		out.writeInt(statusChanges.size());
-		for (Map.Entry<DiseaseStatus, Double> e : statusChanges.entrySet()) {
-			out.writeInt(e.getKey().ordinal());
-			out.writeDouble(e.getValue());
+		List<DiseaseStatus> attained = Arrays.stream(DiseaseStatus.values()).filter(this::hadDiseaseStatus).collect(Collectors.toList());
+		out.writeInt(attained.size());
+		for (DiseaseStatus status : attained) {
+			out.writeInt(status.ordinal());
+			out.writeDouble(store.getStatusChange(index, status));
 		}
 
 		out.writeBoolean(infectionContainer != null);
@@ -363,61 +300,90 @@ public final class EpisimPerson implements Immunizable, Attributable {
 			out.writeDouble(kv.getDoubleValue());
 		}
 
-		out.writeInt(vaccinations.size());
-		for (int i = 0; i < vaccinations.size(); i++) {
-			out.writeInt(vaccinations.get(i).ordinal());
-			out.writeInt(vaccinationDates.getInt(i));
+		out.writeInt(getNumVaccinations());
+		for (int i = 0; i < getNumVaccinations(); i++) {
+			out.writeInt(store.vaccinations.getType(index, i));
+			out.writeInt((int) store.vaccinations.getValue(index, i));
 		}
 
-		out.writeInt(infectionDates.size());
-		for (int i = 0; i < infectionDates.size(); i++) {
-			out.writeDouble(infectionDates.getDouble(i));
-			out.writeInt(virusStrains.get(i).ordinal());
+		out.writeInt(getNumInfections());
+		for (int i = 0; i < getNumInfections(); i++) {
+			out.writeDouble(store.infections.getValue(index, i));
+			out.writeInt(store.infections.getType(index, i));
 		}
 
-		out.writeInt(antibodies.size());
-		for (Object2DoubleMap.Entry<VirusStrain> kv : antibodies.object2DoubleEntrySet()) {
-			out.writeInt(kv.getKey().ordinal());
-			out.writeDouble(kv.getDoubleValue());
-		}
+		writeStrains(out, store.antibodies, antibodyDecay(getAntibodyDay()));
+		writeStrains(out, store.maxAntibodies, 1);
 
-		out.writeInt(maxAntibodies.size());
-		for (Object2DoubleMap.Entry<VirusStrain> kv : maxAntibodies.object2DoubleEntrySet()) {
-			out.writeInt(kv.getKey().ordinal());
-			out.writeDouble(kv.getDoubleValue());
+		out.writeInt(store.status[index]);
+		out.writeInt(store.quarantineStatus[index]);
+		out.writeInt(store.quarantineDate[index]);
+		out.writeInt(store.testStatus[index]);
+		out.writeInt(store.testDate[index]);
+		out.writeBoolean(isTraceable());
+		out.writeBoolean(isVaccinable());
+		out.writeDouble(store.susceptibility[index]);
+		out.writeDouble(store.antibodyLevelAtInfection[index]);
+		out.writeDouble(store.immuneResponseMultiplier[index]);
+
+	}
+
+	/**
+	 * Write the non zero entries of this persons row in a per strain column, multiplied by factor.
+	 */
+	private void writeStrains(ObjectOutput out, double[] column, double factor) throws IOException {
+		int offset = offset();
+
+		int n = 0;
+		for (int i = 0; i < PersonStore.NUM_STRAINS; i++) {
+			if (column[offset + i] != 0)
+				n++;
 		}
 
-		out.writeInt(status.ordinal());
-		out.writeInt(quarantineStatus.ordinal());
-		out.writeInt(quarantineDate);
-		out.writeInt(testStatus.ordinal());
-		out.writeInt(testDate);
-		out.writeBoolean(traceable);
-		out.writeBoolean(vaccinable);
-		out.writeDouble(susceptibility);
-		out.writeDouble(antibodyLevelAtInfection);
-		out.writeDouble(immuneResponseMultiplier);
+		out.writeInt(n);
+		for (int i = 0; i < PersonStore.NUM_STRAINS; i++) {
+			if (column[offset + i] != 0) {
+				out.writeInt(i);
+				out.writeDouble(column[offset + i] * factor);
+			}
+		}
+	}
 
+	/**
+	 * Offset of this persons row in the per strain columns.
+	 */
+	private int offset() {
+		return index * PersonStore.NUM_STRAINS;
 	}
 
 	public Id<Person> getPersonId() {
 		return personId;
 	}
 
+	/**
+	 * Index of this person in its {@link PersonStore}.
+	 */
+	int getIndex() {
+		return index;
+	}
+
 	public DiseaseStatus getDiseaseStatus() {
-		return status;
+		return DISEASE_STATUS[store.status[index]];
 	}
 
 	public void setDiseaseStatus(double now, DiseaseStatus status) {
-		this.status = status;
+		store.status[index] = (byte) status.ordinal();
 
 		// when person goes back to susceptible, old states are removed
 		if (status == DiseaseStatus.susceptible || status == DiseaseStatus.deceased) {
-			statusChanges.keySet().removeIf(p -> p != DiseaseStatus.recovered);
+			for (DiseaseStatus s : DISEASE_STATUS) {
+				if (s != DiseaseStatus.recovered)
+					store.setStatusChange(index, s, Double.NaN);
+			}
 		}
 
-		if (!statusChanges.containsKey(status) || status == DiseaseStatus.recovered)
-			statusChanges.put(status, now);
+		if (!hadDiseaseStatus(status) || status == DiseaseStatus.recovered)
+			store.setStatusChange(index, status, now);
 
 		reporting.reportPersonStatus(this, new EpisimPersonStatusEvent(now, personId, status));
 	}
@@ -427,30 +393,34 @@ public final class EpisimPerson implements Immunizable, Attributable {
 	 */
 	public void setInitialInfection(double now, VirusStrain strain) {
 
-		reporting.reportInfection(new EpisimInitialInfectionEvent(now, getPersonId(), strain, antibodies.getDouble(strain), maxAntibodies.getDouble(strain),getNumInfections()));
+		reporting.reportInfection(new EpisimInitialInfectionEvent(now, getPersonId(), strain, getAntibodies(strain), getMaxAntibodies(strain),getNumInfections()));
 
-		virusStrains.add(strain);
 		setDiseaseStatus(now, EpisimPerson.DiseaseStatus.infectedButNotContagious);
-		infectionDates.add(now);
+		store.infections.add(index, strain.ordinal(), now);
+		store.addImmunityEvent(this, (int) Math.floor(now / EpisimUtils.DAY));
 
-		antibodyLevelAtInfection = antibodies.getDouble(strain);
+		store.antibodyLevelAtInfection[index] = getAntibodies(strain);
 
 		// TODO: add max antibodies
 	}
 
 	/**
 	 * Adds an infection possibility to this person. Will be executed in {@link #checkInfection()}
+	 * This method is not thread-safe, during parallel replay infections are collected in an {@link InfectionBuffer} instead.
 	 */
-	synchronized public void possibleInfection(EpisimInfectionEvent event) {
+	public void possibleInfection(EpisimInfectionEvent event) {
 		if (earliestInfection == null || event.compareTo(earliestInfection) < 0) {
 			earliestInfection = event;
 		}
 	}
 
 	/**
-	 * Adds a potential infection to the list.
+	 * Adds a potential infection to the list. Not thread-safe, see {@link #possibleInfection(EpisimInfectionEvent)}.
 	 */
-	synchronized public void potentialInfection(EpisimPotentialInfectionEvent event) {
+	public void potentialInfection(EpisimPotentialInfectionEvent event) {
+		if (potentialInfectionEvents == null)
+			potentialInfectionEvents = new ArrayList<>(2);
+
 		potentialInfectionEvents.add(event);
 	}
 
@@ -465,14 +435,14 @@ public final class EpisimPerson implements Immunizable, Attributable {
 			EpisimInfectionEvent event = this.earliestInfection;
 			setDiseaseStatus(event.getTime(), EpisimPerson.DiseaseStatus.infectedButNotContagious);
 
-			virusStrains.add(event.getVirusStrain());
+			store.infections.add(index, event.getVirusStrain().ordinal(), event.getTime());
+			store.addImmunityEvent(this, (int) Math.floor(event.getTime() / EpisimUtils.DAY));
 			infectionContainer = (Id<ActivityFacility>) event.getContainerId();
 
 			infectionType = event.getInfectionType();
-			infectionDates.add(event.getTime());
 
 			earliestInfection = null;
-			antibodyLevelAtInfection = antibodies.getDouble(event.getVirusStrain());
+			store.antibodyLevelAtInfection[index] = getAntibodies(event.getVirusStrain());
 			return event;
 		}
 
@@ -483,16 +453,16 @@ public final class EpisimPerson implements Immunizable, Attributable {
 	 * Get all potential infection events.
 	 */
 	List<EpisimPotentialInfectionEvent> getPotentialInfections() {
-		return potentialInfectionEvents;
+		return potentialInfectionEvents != null ? potentialInfectionEvents : Collections.emptyList();
 	}
 
 	public QuarantineStatus getQuarantineStatus() {
-		return quarantineStatus;
+		return QUARANTINE_STATUS[store.quarantineStatus[index]];
 	}
 
 	public void setQuarantineStatus(QuarantineStatus quarantineStatus, int iteration) {
-		this.quarantineStatus = quarantineStatus;
-		this.quarantineDate = iteration;
+		store.quarantineStatus[index] = (byte) quarantineStatus.ordinal();
+		store.quarantineDate[index] = iteration;
 
 		// this function should receive now instead of iteration
 		// only for testing currently
@@ -501,10 +471,11 @@ public final class EpisimPerson implements Immunizable, Attributable {
 
 	public VirusStrain getVirusStrain() {
 		// Backwards compatibility
-		if (virusStrains.isEmpty())
+		int n = getNumInfections();
+		if (n == 0)
 			return VirusStrain.SARS_CoV_2;
 
-		return virusStrains.get(virusStrains.size() - 1);
+		return getVirusStrain(n - 1);
 	}
 
 	/**
@@ -512,25 +483,25 @@ public final class EpisimPerson implements Immunizable, Attributable {
 	 * @param idx index of infection starting at 0
 	 */
 	public VirusStrain getVirusStrain(int idx) {
-		return virusStrains.get(idx);
+		return VIRUS_STRAIN[store.infections.getType(index, idx)];
 	}
 
 	/**
-	 * List of dates (in second format) on which agent was infected
+	 * List of dates (in second format) on which agent was infected. The returned list is a read-only view.
 	 */
 	public DoubleList getInfectionDates(){
-		return infectionDates;
+		return store.infections.values(index);
 	}
 
 	/**
 	 * Number of received vaccinations
 	 */
 	public int getNumVaccinations() {
-		return vaccinations.size();
+		return store.vaccinations.size(index);
 	}
 
 	public VaccinationStatus getVaccinationStatus() {
-		return vaccinations.size() > 0 ? VaccinationStatus.yes : VaccinationStatus.no;
+		return getNumVaccinations() > 0 ? VaccinationStatus.yes : VaccinationStatus.no;
 	}
 
 	/**
@@ -538,18 +509,18 @@ public final class EpisimPerson implements Immunizable, Attributable {
 	 */
 	@Deprecated
 	public VaccinationType getVaccinationType() {
-		return vaccinations.get(0);
+		return getVaccinationType(0);
 	}
 
 	public VaccinationType getVaccinationType(int idx) {
-		return vaccinations.get(idx);
+		return VACCINATION_TYPE[store.vaccinations.getType(index, idx)];
 	}
 
 	/**
-	 * List of days that agent was infected on
+	 * List of days that agent was vaccinated on. The returned list is a read-only view.
 	 */
 	public IntList getVaccinationDates() {
-		return vaccinationDates;
+		return store.vaccinations.intValues(index);
 	}
 
 	/**
@@ -557,54 +528,55 @@ public final class EpisimPerson implements Immunizable, Attributable {
 	 */
 	@Deprecated
 	public VaccinationStatus getReVaccinationStatus() {
-		return vaccinations.size() > 1 ? VaccinationStatus.yes : VaccinationStatus.no;
+		return getNumVaccinations() > 1 ? VaccinationStatus.yes : VaccinationStatus.no;
 	}
 
 	public void setVaccinationStatus(VaccinationStatus vaccinationStatus, VaccinationType type, int iteration) {
 		if (vaccinationStatus != VaccinationStatus.yes) throw new IllegalArgumentException("Vaccination can only be set to yes.");
 
-		vaccinations.add(type);
-		vaccinationDates.add(iteration);
+		store.vaccinations.add(index, type.ordinal(), iteration);
+		store.addImmunityEvent(this, iteration);
 
-		reporting.reportVaccination(personId, iteration, type, vaccinations.size());
+		reporting.reportVaccination(personId, iteration, type, getNumVaccinations());
 	}
 
 	public TestStatus getTestStatus() {
-		return testStatus;
+		return TEST_STATUS[store.testStatus[index]];
 	}
 
 	public void setTestStatus(TestStatus testStatus, int iteration) {
-		this.testStatus = testStatus;
-		this.testDate = iteration;
+		store.testStatus[index] = (byte) testStatus.ordinal();
+		store.testDate[index] = iteration;
 	}
 
 	public void setSusceptibility(double susceptibility) {
-		this.susceptibility = susceptibility;
+		store.susceptibility[index] = susceptibility;
 	}
 
 	public double getSusceptibility() {
-		return susceptibility;
+		return store.susceptibility[index];
 	}
 
 	/**
 	 * Immunity factor based on antibody level at infection.
 	 */
 	public double getAntibodyLevelAtInfection() {
-		return antibodyLevelAtInfection;
+		return store.antibodyLevelAtInfection[index];
 	}
 
 	/**
-	 * get map with max antibodies reached per strain (before current infection)
+	 * get map with max antibodies reached per strain (before current infection).
+	 * The map is a copy and only contains strains with non-zero level.
 	 */
 	public Object2DoubleMap<VirusStrain> getMaxAntibodies() {
-		return maxAntibodies;
+		return toMap(store.maxAntibodies);
 	}
 
 	/**
 	 * Get max antibodies reached for a particular strain (before current infection)
 	 */
 	public double getMaxAntibodies(VirusStrain virusStrain) {
-		return maxAntibodies.getDouble(virusStrain);
+		return store.maxAntibodies[offset() + virusStrain.ordinal()];
 	}
 
 	/**
@@ -613,24 +585,149 @@ public final class EpisimPerson implements Immunizable, Attributable {
 	 */
 	public void updateMaxAntibodies(VirusStrain strain, double maxAb) {
 
-		if (!this.maxAntibodies.containsKey(strain) || maxAb > this.maxAntibodies.getDouble(strain)) {
-			this.maxAntibodies.put(strain, maxAb);
+		int i = offset() + strain.ordinal();
+		if (maxAb > store.maxAntibodies[i]) {
+			store.maxAntibodies[i] = maxAb;
 		}
 
 	}
 
+	/**
+	 * Antibody level against a strain, at the current antibody day. See {@link #getAntibodyDay()}.
+	 */
 	public double getAntibodies(VirusStrain strain) {
-		return antibodies.getDouble(strain);
+		return getAntibodies(strain, getAntibodyDay());
+	}
+
+	/**
+	 * Antibody level against a strain, evaluated at the given day.
+	 * Levels decay exponentially from the day they were set on, which is evaluated in closed form.
+	 */
+	public double getAntibodies(VirusStrain strain, int day) {
+		return store.antibodies[offset() + strain.ordinal()] * antibodyDecay(day);
 	}
 
+	/**
+	 * Antibody levels of this person at the current antibody day. The map is a copy, which is empty until levels were set or decayed
+	 * for the first time. Afterwards it contains all strains, including the ones with zero level.
+	 */
 	public Object2DoubleMap<VirusStrain> getAntibodies() {
-		return antibodies;
+		Object2DoubleMap<VirusStrain> map = new Object2DoubleOpenHashMap<>();
+		if (!store.getFlag(index, PersonStore.ANTIBODIES))
+			return map;
+
+		double factor = antibodyDecay(getAntibodyDay());
+		int offset = offset();
+		for (int i = 0; i < PersonStore.NUM_STRAINS; i++) {
+			map.put(VIRUS_STRAIN[i], store.antibodies[offset + i] * factor);
+		}
+
+		return map;
 	}
 
+	/**
+	 * Set the antibody level against a strain at the current antibody day.
+	 *
+	 * @return previous level
+	 */
 	public double setAntibodies(VirusStrain strain, double value) {
+		return setAntibodies(strain, value, getAntibodyDay());
+	}
+
+	/**
+	 * Set the antibody level against a strain at the given day, from which on it decays.
+	 * Levels against other strains are decayed until this day.
+	 *
+	 * @return previous level, at the given day
+	 */
+	public double setAntibodies(VirusStrain strain, double value, int day) {
+
+		decayAntibodies(day);
+
+		int i = offset() + strain.ordinal();
+		double old = store.antibodies[i];
+		store.antibodies[i] = value;
+
+		return old;
+	}
+
+	/**
+	 * Day at which the antibody levels of this person are evaluated. This is the current day of the simulation,
+	 * or the last day its levels were set or decayed to, if that is later (i.e. for persons outside of a simulation).
+	 */
+	public int getAntibodyDay() {
+		return Math.max(store.antibodyDay, store.antibodyRefDay[index]);
+	}
+
+	/**
+	 * Decay the stored antibody levels of this person until the given day.
+	 * The decay is evaluated lazily anyway, this only moves the day at which levels are stored, see {@link #getAntibodyDay()}.
+	 */
+	public void decayAntibodies(int day) {
+		store.setFlag(index, PersonStore.ANTIBODIES, true);
+		if (store.antibodyRefDay[index] == day)
+			return;
+
+		double[] antibodies = store.antibodies;
+		int offset = offset();
+		double factor = antibodyDecay(day);
+		for (int i = offset; i < offset + PersonStore.NUM_STRAINS; i++)
+			antibodies[i] *= factor;
+
+		store.antibodyRefDay[index] = day;
+	}
+
+	/**
+	 * Whether this person has antibodies against any strain.
+	 */
+	public boolean hasAntibodies() {
+		double[] antibodies = store.antibodies;
+		int offset = offset();
+		for (int i = offset; i < offset + PersonStore.NUM_STRAINS; i++) {
+			if (antibodies[i] > 0)
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Add the antibody levels of this person at the current antibody day to a sum, indexed by the ordinal of the strain.
+	 */
+	public void sumAntibodies(double[] sum) {
+		sumAntibodies(sum, getAntibodyDay(), 1);
+	}
 
-		return antibodies.put(strain, value);
+	/**
+	 * Add the antibody levels of this person at a given day, multiplied by weight, to a sum indexed by the ordinal of the strain.
+	 */
+	public void sumAntibodies(double[] sum, int day, double weight) {
+		double[] antibodies = store.antibodies;
+		int offset = offset();
+		double factor = antibodyDecay(day) * weight;
+		for (int i = 0; i < PersonStore.NUM_STRAINS; i++)
+			sum[i] += antibodies[offset + i] * factor;
+	}
 
+	/**
+	 * Decay factor of the stored antibody levels until given day.
+	 */
+	private double antibodyDecay(int day) {
+		return store.antibodyDecay(day - store.antibodyRefDay[index]);
+	}
+
+	/**
+	 * Copy the non-zero entries of a strain column.
+	 */
+	private Object2DoubleMap<VirusStrain> toMap(double[] column) {
+		Object2DoubleMap<VirusStrain> map = new Object2DoubleOpenHashMap<>();
+		int offset = offset();
+		for (int i = 0; i < PersonStore.NUM_STRAINS; i++) {
+			if (column[offset + i] != 0)
+				map.put(VIRUS_STRAIN[i], column[offset + i]);
+		}
+
+		return map;
 	}
 
 	/**
@@ -642,9 +739,10 @@ public final class EpisimPerson implements Immunizable, Attributable {
 	 * @throws IllegalStateException when the requested status was never set
 	 */
 	public int daysSince(DiseaseStatus status, int currentDay) {
-		if (!statusChanges.containsKey(status)) throw new IllegalStateException("Person was never " + status);
+		double time = store.getStatusChange(index, status);
+		if (Double.isNaN(time)) throw new IllegalStateException("Person was never " + status);
 
-		double day = Math.floor(statusChanges.get(status) / EpisimUtils.DAY);
+		double day = Math.floor(time / EpisimUtils.DAY);
 
 		return currentDay - (int) day;
 	}
@@ -655,9 +753,9 @@ public final class EpisimPerson implements Immunizable, Attributable {
 	 * @param idx index starting at 0
 	 */
 	public int daysSinceInfection(int idx, int currentDay) {
-		if (infectionDates.size() <= idx) throw new IllegalStateException("Person did not had infection with index " + idx);
+		if (getNumInfections() <= idx) throw new IllegalStateException("Person did not had infection with index " + idx);
 
-		double day = Math.floor(infectionDates.getDouble(idx) / EpisimUtils.DAY);
+		double day = Math.floor(store.infections.getValue(index, idx) / EpisimUtils.DAY);
 		return currentDay - (int) day;
 
 	}
@@ -673,21 +771,21 @@ public final class EpisimPerson implements Immunizable, Attributable {
 	 * Return whether a person had (or currently has) a certain disease status.
 	 */
 	public boolean hadDiseaseStatus(DiseaseStatus status) {
-		return statusChanges.containsKey(status);
+		return !Double.isNaN(store.getStatusChange(index, status));
 	}
 
 	/**
 	 * Return whether a person received certain vaccination type.
 	 */
 	public boolean hadVaccinationType(VaccinationType type) {
-		return vaccinations.contains(type);
+		return store.vaccinations.containsType(index, type.ordinal());
 	}
 
 	/**
 	 * Return whether a person was infected with certain virus strain.
 	 */
 	public boolean hadStrain(VirusStrain strain) {
-		return virusStrains.contains(strain);
+		return store.infections.containsType(index, strain.ordinal());
 	}
 
 	/**
@@ -702,13 +800,13 @@ public final class EpisimPerson implements Immunizable, Attributable {
 		// -> api now marked as unstable and containing an api note, because it is used by the models it has to be public. chr, apr'20
 
 		//check removed; when starting simulation with immunisation history, quarantine date can very well be negative. -jr, nov'22
-		if (quarantineDate == Integer.MIN_VALUE) {
+		if (store.quarantineDate[index] == Integer.MIN_VALUE) {
 
 			throw new IllegalStateException("Person was never quarantined");
 
 		}
 
-		return currentDay - quarantineDate;
+		return currentDay - store.quarantineDate[index];
 	}
 
 	/**
@@ -718,18 +816,19 @@ public final class EpisimPerson implements Immunizable, Attributable {
 	 */
 	public int daysSince(VaccinationStatus status, int currentDay) {
 		if (status != VaccinationStatus.yes) throw new IllegalArgumentException("Only supports querying when person was vaccinated");
-		if (vaccinations.isEmpty()) throw new IllegalStateException("Person was never vaccinated");
+		int n = getNumVaccinations();
+		if (n == 0) throw new IllegalStateException("Person was never vaccinated");
 
-		return currentDay - vaccinationDates.getInt(vaccinationDates.size() - 1);
+		return currentDay - (int) store.vaccinations.getValue(index, n - 1);
 	}
 
 	/**
 	 * Days since the nth vaccination (starting at 0)
 	 */
 	public int daysSinceVaccination(int idx, int currentDay) {
-		if (vaccinations.size() <= idx) throw new IllegalStateException("Person did not receive vaccination with index " + idx);
+		if (getNumVaccinations() <= idx) throw new IllegalStateException("Person did not receive vaccination with index " + idx);
 
-		return currentDay - vaccinationDates.getInt(idx);
+		return currentDay - (int) store.vaccinations.getValue(index, idx);
 	}
 
 	/**
@@ -738,6 +837,7 @@ public final class EpisimPerson implements Immunizable, Attributable {
 	 * @param currentDay current day (iteration)
 	 */
 	public int daysSinceTest(int currentDay) {
+		int testDate = store.testDate[index];
 		if (testDate < 0)
 			return Integer.MAX_VALUE;
 
@@ -748,7 +848,7 @@ public final class EpisimPerson implements Immunizable, Attributable {
 	 * Number of times person was infected.
 	 */
 	public int getNumInfections() {
-		return infectionDates.size();
+		return store.infections.size(index);
 	}
 
 	/**
@@ -757,14 +857,15 @@ public final class EpisimPerson implements Immunizable, Attributable {
 	 * @param threshold after how many days the status will expire
 	 */
 	public boolean isRecentlyRecovered(int currentDay, int threshold) {
-		return status == DiseaseStatus.recovered || (status == DiseaseStatus.susceptible && infectionDates.size() >= 1 && daysSince(DiseaseStatus.recovered, currentDay) <= threshold);
+		DiseaseStatus status = getDiseaseStatus();
+		return status == DiseaseStatus.recovered || (status == DiseaseStatus.susceptible && getNumInfections() >= 1 && daysSince(DiseaseStatus.recovered, currentDay) <= threshold);
 	}
 
 	public synchronized void addTraceableContactPerson(EpisimPerson personWrapper, double now) {
 		// check if both persons have tracing capability
 		if (isTraceable() && personWrapper.isTraceable()) {
 			// Always use the latest tracking date
-			traceableContactPersons.put(personWrapper, now);
+			getTraceableContacts().put(personWrapper, now);
 			reporting.reportTracing(now, this, personWrapper);
 		}
 	}
@@ -773,6 +874,9 @@ public final class EpisimPerson implements Immunizable, Attributable {
 	 * Get all traced contacts that happened after certain time.
 	 */
 	public synchronized List<EpisimPerson> getTraceableContactPersons(double after) {
+		if (traceableContactPersons == null)
+			return new ArrayList<>();
+
 		// needs to be sorted or results will be non deterministic with multithreading
 		return traceableContactPersons.object2DoubleEntrySet()
 				.stream().filter(p -> p.getDoubleValue() >= after)
@@ -790,33 +894,38 @@ public final class EpisimPerson implements Immunizable, Attributable {
 	 */
 	public void clearTraceableContractPersons(double before) {
 
-		int oldSize = traceableContactPersons.size();
-
-		if (oldSize == 0) return;
+		if (traceableContactPersons == null || traceableContactPersons.isEmpty()) return;
 
 		traceableContactPersons.keySet().removeIf(k -> traceableContactPersons.getDouble(k) < before);
 	}
 
+	private Object2DoubleMap<EpisimPerson> getTraceableContacts() {
+		if (traceableContactPersons == null)
+			traceableContactPersons = new Object2DoubleLinkedOpenHashMap<>(4);
+
+		return traceableContactPersons;
+	}
+
 	/**
 	 * Returns whether the person can be traced.
 	 */
 	public boolean isTraceable() {
-		return traceable;
+		return store.getFlag(index, PersonStore.TRACEABLE);
 	}
 
 	void setTraceable(boolean traceable) {
-		this.traceable = traceable;
+		store.setFlag(index, PersonStore.TRACEABLE, traceable);
 	}
 
 	public boolean isVaccinable() {
-		return vaccinable;
+		return store.getFlag(index, PersonStore.VACCINABLE);
 	}
 
 	/**
 	 * Set vaccinable status.
 	 */
 	public void setVaccinable(boolean vaccinable) {
-		this.vaccinable = vaccinable;
+		store.setFlag(index, PersonStore.VACCINABLE, vaccinable);
 	}
 
 	public PerformedActivity addToTrajectory(double time, EpisimConfigGroup.InfectionParams trajectoryElement, Id<ActivityFacility> facilityId) {
@@ -899,6 +1008,32 @@ public final class EpisimPerson implements Immunizable, Attributable {
 		return activityParticipation;
 	}
 
+	/**
+	 * Number of slots for masks of the current day, see {@link org.matsim.episim.model.FaceMaskModel#getMaskSlots()}.
+	 */
+	public int getMaskSlots() {
+		return store.getMaskSlots();
+	}
+
+	/**
+	 * Mask worn during the current day in a slot, as ordinal of {@link org.matsim.episim.model.FaceMask} or -1 if not assigned.
+	 */
+	public byte getWornMask(int slot) {
+		return store.wornMasks[index * store.getMaskSlots() + slot];
+	}
+
+	public void setWornMask(int slot, byte mask) {
+		store.wornMasks[index * store.getMaskSlots() + slot] = mask;
+	}
+
+	/**
+	 * Remove all masks of the current day.
+	 */
+	public void clearWornMasks() {
+		int slots = store.getMaskSlots();
+		Arrays.fill(store.wornMasks, index * slots, (index + 1) * slots, (byte) -1);
+	}
+
 	/**
 	 * Defines that day {@code target} has the same trajectory as {@code source}.
 	 */
@@ -928,6 +1063,7 @@ public final class EpisimPerson implements Immunizable, Attributable {
 	}
 
 	public int getAge() {
+		int age = store.age[index];
 		assert age != -1 : "Person=" + getPersonId().toString() + " has no age.";
 		assert age >= 0 && age <= 120 : "Age of person=" + getPersonId().toString() + " is not plausible. Age is=" + age;
 
@@ -938,6 +1074,7 @@ public final class EpisimPerson implements Immunizable, Attributable {
 	 * Return the age of a person or the default age if no age is specified.
 	 */
 	public int getAgeOrDefault(int defaultAge) {
+		int age = store.age[index];
 		return age != -1 ? age : defaultAge;
 	}
 
@@ -993,7 +1130,7 @@ public final class EpisimPerson implements Immunizable, Attributable {
 	 * @return
 	 */
 	public double getImmuneResponseMultiplier() {
-		return immuneResponseMultiplier;
+		return store.immuneResponseMultiplier[index];
 	}
 
 	/**
@@ -1001,7 +1138,7 @@ public final class EpisimPerson implements Immunizable, Attributable {
 	 * @param immuneResponseMultiplier
 	 */
 	public void setImmuneResponseMultiplier(double immuneResponseMultiplier) {
-		this.immuneResponseMultiplier = immuneResponseMultiplier;
+		store.immuneResponseMultiplier[index] = immuneResponseMultiplier;
 	}
 
 	@Override
@@ -1097,6 +1234,12 @@ public final class EpisimPerson implements Immunizable, Attributable {
 	}
 
 
+	private static final DiseaseStatus[] DISEASE_STATUS = DiseaseStatus.values();
+	private static final QuarantineStatus[] QUARANTINE_STATUS = QuarantineStatus.values();
+	private static final TestStatus[] TEST_STATUS = TestStatus.values();
+	private static final VirusStrain[] VIRUS_STRAIN = VirusStrain.values();
+	private static final VaccinationType[] VACCINATION_TYPE = VaccinationType.values();
+
 	/**
 	 * Disease status of a person.
 	 */
@@ -1129,6 +1272,10 @@ public final class EpisimPerson implements Immunizable, Attributable {
 		public final EpisimConfigGroup.InfectionParams params;
 		public final Id<ActivityFacility> facilityId;
 
+		/**
+		 * District of the facility, resolved by the {@link DistrictIndex}.
+		 */
+		int district = DistrictIndex.UNRESOLVED;
 
 		public PerformedActivity(double time, EpisimConfigGroup.InfectionParams params, Id<ActivityFacility> facilityId) {
 			this.time = time;
@@ -1181,6 +1328,7 @@ public final class EpisimPerson implements Immunizable, Attributable {
 	 * inform other persons later thanks to tracking).
 	 */
 	public boolean infectedButNotSerious() {
+		DiseaseStatus status = getDiseaseStatus();
 		return (status == DiseaseStatus.infectedButNotContagious ||
 				status == DiseaseStatus.contagious ||
 				status == DiseaseStatus.showingSymptoms);
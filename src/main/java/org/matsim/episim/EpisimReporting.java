@@ -48,6 +48,7 @@ import org.matsim.episim.model.VirusStrain;
 import org.matsim.episim.policy.Restriction;
 import org.matsim.episim.reporting.EpisimWriter;
 
+import javax.annotation.Nullable;
 import java.io.*;
 import java.nio.file.*;
 import java.text.DecimalFormat;
@@ -55,8 +56,12 @@ import java.text.NumberFormat;
 import java.time.LocalDate;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.GZIPOutputStream;
 
 import static org.matsim.episim.EpisimUtils.readChars;
@@ -90,6 +95,11 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 	private final EpisimWriter writer;
 	private final EventsManager manager;
 
+	/**
+	 * Person status reports of the current thread are buffered here, if set. See {@link #bufferPersonStatus(List)}.
+	 */
+	private final ThreadLocal<List<Runnable>> statusBuffer = new ThreadLocal<>();
+
 	private final String base;
 	private final String outDir;
 
@@ -177,6 +187,17 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 	 */
 	private final AtomicBoolean writeFlag = new AtomicBoolean(false);
 
+	/**
+	 * Background stage that formats and writes daily reports, null if reporting is not pipelined.
+	 * Tasks are executed in submission order, so the content of all files is the same as without pipelining.
+	 */
+	private final ExecutorService stage;
+
+	/**
+	 * First failure of a report task on the background stage, rethrown by {@link #awaitReports()}.
+	 */
+	private final AtomicReference<RuntimeException> stageFailure = new AtomicReference<>();
+
 
 	@Inject
 	EpisimReporting(Config config, EpisimWriter writer, EventsManager manager) {
@@ -235,6 +256,12 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 		sampleSize = episimConfig.getSampleSize();
 		writeEvents = episimConfig.getWriteEvents();
 
+		stage = episimConfig.isPipelineReporting() ? Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "episim-reporting");
+			t.setDaemon(true);
+			return t;
+		}) : null;
+
 		// Init cumulative cases
 		cumulativeCases.put(EpisimPerson.DiseaseStatus.infectedButNotContagious, new Object2IntOpenHashMap<>());
 		cumulativeCases.put(EpisimPerson.DiseaseStatus.contagious, new Object2IntOpenHashMap<>());
@@ -329,6 +356,50 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 		return writer;
 	}
 
+	/**
+	 * Run a reporting task, on the background stage if reporting is pipelined.
+	 * The task must only use data that is not modified afterwards.
+	 */
+	private void submit(Runnable task) {
+		if (stage == null) {
+			task.run();
+			return;
+		}
+
+		stage.execute(() -> {
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				log.error("Could not write report", e);
+				stageFailure.compareAndSet(null, e);
+			}
+		});
+	}
+
+	/**
+	 * Wait until all pending reports have been written. Needs to be called before output files are accessed.
+	 *
+	 * @throws RuntimeException first failure of a report task since the last call
+	 */
+	void awaitReports() {
+		if (stage == null)
+			return;
+
+		try {
+			stage.submit(() -> {
+			}).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for reports", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+
+		RuntimeException failure = stageFailure.getAndSet(null);
+		if (failure != null)
+			throw failure;
+	}
+
 	/**
 	 * Appends some content asynchronously to a writer in thread-safe manner.
 	 */
@@ -584,7 +655,6 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 		for (int i = 0; i < VirusStrain.values().length; i++) {
 			strainOut[i + 2] = String.valueOf(strains.getOrDefault(VirusStrain.values()[i], 0) * (1 / sampleSize));
 		}
-		writer.append(virusStrains, strainOut);
 		strains.clear();
 
 		String[] vacOut = new String[VaccinationType.values().length + 2];
@@ -593,23 +663,29 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 		for (int i = 0; i < VaccinationType.values().length; i++) {
 			vacOut[i + 2] = String.valueOf(vaccinations.getOrDefault(VaccinationType.values()[i], 0) * (1 / sampleSize));
 		}
-		writer.append(vaccinationsPerType, vacOut);
 		vaccinations.clear();
 
-		vacOut = new String[5];
-		vacOut[0] = String.valueOf(iteration);
-		vacOut[1] = date;
+		List<String[]> vacDetailed = new ArrayList<>();
 		for (Object2IntMap.Entry<ObjectIntPair<VaccinationType>> e : vaccinationStats.object2IntEntrySet()) {
-
-			vacOut[2] = e.getKey().key().toString();
-			vacOut[3] = Integer.toString(e.getKey().valueInt());
-			vacOut[4] = Integer.toString(e.getIntValue());
-
-			writer.append(vaccinationsPerTypeAndNumber, vacOut);
+			vacDetailed.add(new String[]{String.valueOf(iteration), date, e.getKey().key().toString(),
+					Integer.toString(e.getKey().valueInt()), Integer.toString(e.getIntValue())});
 		}
 
 		vaccinationStats.clear();
 
+		// daily counters have been copied, reports are newly created each day and not modified anymore
+		submit(() -> writeReports(reports, strainOut, vacOut, vacDetailed));
+	}
+
+	private void writeReports(Map<String, InfectionReport> reports, String[] strainOut, String[] vacOut, List<String[]> vacDetailed) {
+
+		writer.append(virusStrains, strainOut);
+		writer.append(vaccinationsPerType, vacOut);
+
+		for (String[] row : vacDetailed) {
+			writer.append(vaccinationsPerTypeAndNumber, row);
+		}
+
 		// Write all reports for each district
 		for (InfectionReport r : reports.values()) {
 			if (r.name.equals("total")) continue;
@@ -713,11 +789,11 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 	 * @see EpisimContactEvent
 	 */
 	public synchronized void reportContact(double now, EpisimPerson person, EpisimPerson contactPerson, EpisimContainer<?> container,
-	                                       StringBuilder actType, double duration) {
+	                                       String actType, double duration) {
 
 		if (writeEvents == EpisimConfigGroup.WriteEvents.tracing || writeEvents == EpisimConfigGroup.WriteEvents.all) {
 			manager.processEvent(new EpisimContactEvent(now, person.getPersonId(), contactPerson.getPersonId(), container.getContainerId(),
-					actType.toString(), duration, container.getPersons().size()));
+					actType, duration, container.getPersons().size()));
 		}
 
 	}
@@ -747,8 +823,9 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 	void reportRestrictions(Map<String, Restriction> restrictions, long iteration, String date) {
 		if (iteration == 0) return;
 
-		writer.append(restrictionReport, EpisimWriter.JOINER.join(iteration, date, restrictions.values().toArray()));
-		writer.append(restrictionReport, "\n");
+		// restrictions are modified later, so they are converted immediately
+		String row = EpisimWriter.JOINER.join(iteration, date, restrictions.values().toArray()) + "\n";
+		submit(() -> writer.append(restrictionReport, row));
 	}
 
 	void reportTimeUse(Set<String> activities, Collection<EpisimPerson> persons, long iteration, String date) {
@@ -777,8 +854,20 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 		// report minutes
 		avg.forEach((k, v) -> array[order.indexOf(k)] = String.valueOf(v / 60d));
 
-		writer.append(timeUse, EpisimWriter.JOINER.join(iteration, date, array));
-		writer.append(timeUse, "\n");
+		submit(() -> writer.append(timeUse, EpisimWriter.JOINER.join(iteration, date, array) + "\n"));
+	}
+
+	/**
+	 * Buffer the person status reports of the current thread, so that persons can be updated in parallel and reported in fixed order.
+	 * Buffered reports are run by the caller afterwards.
+	 *
+	 * @param buffer list to collect reports in, null to stop buffering
+	 */
+	void bufferPersonStatus(@Nullable List<Runnable> buffer) {
+		if (buffer == null)
+			statusBuffer.remove();
+		else
+			statusBuffer.set(buffer);
 	}
 
 	/**
@@ -786,6 +875,12 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 	 */
 	void reportPersonStatus(EpisimPerson person, EpisimPersonStatusEvent event) {
 
+		List<Runnable> buffer = statusBuffer.get();
+		if (buffer != null) {
+			buffer.add(() -> reportPersonStatus(person, event));
+			return;
+		}
+
 		EpisimPerson.DiseaseStatus newStatus = event.getDiseaseStatus();
 
 		if (newStatus == EpisimPerson.DiseaseStatus.infectedButNotContagious || newStatus == EpisimPerson.DiseaseStatus.seriouslySick ||
@@ -846,7 +941,7 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 			out[1] = date;
 			out[2] = strain.toString();
 			out[3] = String.valueOf(infectedByStrain.getInt(strain) / sampleSize);
-			writer.append(diseaseImport, out);
+			submit(() -> writer.append(diseaseImport, out));
 		}
 	}
 
@@ -864,7 +959,7 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 			out[i + 2] = String.valueOf(antibodies.getDouble(VirusStrain.values()[i]) / n);
 		}
 
-		writer.append(antibodiesPerPerson, out);
+		submit(() -> writer.append(antibodiesPerPerson, out));
 	}
 
 	/**
@@ -940,6 +1035,27 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 
 	@Override
 	public void close() {
+		try {
+			closeWriters();
+		} finally {
+			if (stage != null)
+				stage.shutdown();
+		}
+	}
+
+	/**
+	 * Waits for pending reports and closes all output files. The background stage is kept running,
+	 * so that the files can be opened again with {@link #append(String)}.
+	 */
+	void closeWriters() {
+
+		// writers are closed even if a report failed, the failure is rethrown afterwards
+		RuntimeException failure = null;
+		try {
+			awaitReports();
+		} catch (RuntimeException e) {
+			failure = e;
+		}
 
 		writer.close(infectionReport);
 		writer.close(infectionEvents);
@@ -965,6 +1081,8 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 			}
 		}
 
+		if (failure != null)
+			throw failure;
 	}
 
 	/**
@@ -1020,6 +1138,17 @@ public final class EpisimReporting implements BasicEventHandler, Closeable, Exte
 	 */
 	void flushEvents() {
 		if (events != null) {
+
+			// all events of the day have been written, closing the file can be done in the background
+			if (!singleEvents) {
+				Writer out = events;
+				submit(() -> {
+					writer.append(out, "</events>");
+					writer.close(out);
+				});
+				return;
+			}
+
 			writer.append(events, "</events>");
 			writer.close(events);
 
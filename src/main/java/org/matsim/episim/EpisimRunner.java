@@ -98,7 +98,7 @@ public final class EpisimRunner {
 
 		ControlerUtils.checkConfigConsistencyAndWriteToLog(config, "Just before starting iterations");
 
-		handler.init(replay.getEvents());
+		handler.init(replay.getDayEvents());
 
 		Path output = Path.of(config.controler().getOutputDirectory());
 
@@ -106,7 +106,7 @@ public final class EpisimRunner {
 		if (episimConfig.getStartFromSnapshot() != null && episimConfig.getStartFromImmunization() != null) {
 			throw new RuntimeException("Cannot start from snapshot and immunization history simultaneously. Choose one.");
 		} else if (episimConfig.getStartFromSnapshot() != null) {
-			reporting.close();
+			reporting.closeWriters();
 			iteration = readSnapshot(output, Path.of(episimConfig.getStartFromSnapshot()));
 			try {
 				reporting.append(episimConfig.getStartDate().plusDays(iteration - 1).toString());
@@ -161,6 +161,15 @@ public final class EpisimRunner {
 	 * @param events
 	 */
 	public void updateEvents(Map<DayOfWeek, List<Event>> events) {
+		updateDayEvents(DayEvents.of(events));
+	}
+
+	/**
+	 * Update events data and internal person data structure.
+	 *
+	 * @param events compact events for all weekdays
+	 */
+	public void updateDayEvents(Map<DayOfWeek, DayEvents> events) {
 
 		ReplayHandler replay = replayProvider.get();
 
@@ -175,8 +184,8 @@ public final class EpisimRunner {
 	 */
 	public void updateEvents(EpisimConfigGroup config) {
 		ReplayHandler replay = replayProvider.get();
-		Map<DayOfWeek, List<Event>> events = replay.readEvents(config);
-		updateEvents(events);
+		Map<DayOfWeek, DayEvents> events = replay.readDayEvents(config);
+		updateDayEvents(events);
 	}
 
 	/**
@@ -196,8 +205,11 @@ public final class EpisimRunner {
 
 		DayOfWeek day = EpisimUtils.getDayOfWeek(episimConfig, iteration);
 
-		// Process all events
-		replay.replayEvents(handler, day);
+		// Process all events, or draw infections from the aggregated model during quiet periods
+		if (handler.isCompartmentMode())
+			handler.handleCompartments(day);
+		else
+			replay.replayEvents(handler, day);
 
 		reporting.flushEvents();
 
@@ -225,6 +237,9 @@ public final class EpisimRunner {
 
 		log.info("Writing snapshot to {}", path);
 
+		// output files need to be complete before they are copied
+		reporting.awaitReports();
+
 		try (var out = Files.newOutputStream(path)) {
 
 			ArchiveOutputStream archive = new ArchiveStreamFactory()
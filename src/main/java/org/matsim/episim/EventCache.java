@@ -0,0 +1,356 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.facilities.ActivityFacility;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.ToIntFunction;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary cache of preprocessed input events, so that the XML only needs to be parsed once.
+ * <p>
+ * Cache entries are identified by the path and content hash of the input file, the {@link EpisimConfigGroup.FacilitiesHandling}
+ * and the event filter of the {@link ReplayHandler}. The cache file contains string tables for all ids, followed by
+ * the columns of {@link DayEvents}, which are read via memory mapping.
+ */
+final class EventCache {
+
+	private static final Logger log = LogManager.getLogger(EventCache.class);
+
+	/**
+	 * Version of the binary format, needs to be increased when it changes.
+	 */
+	static final int VERSION = 1;
+
+	private static final int MAGIC = 0x45504556;
+
+	private final Path directory;
+	private final EpisimConfigGroup.FacilitiesHandling facilitiesHandling;
+
+	EventCache(Path directory, EpisimConfigGroup.FacilitiesHandling facilitiesHandling) {
+		this.directory = directory;
+		this.facilitiesHandling = facilitiesHandling;
+	}
+
+	/**
+	 * Create the key identifying cache entries of an input file.
+	 *
+	 * @return null if the input is not a local file and can not be cached
+	 */
+	@Nullable
+	String createKey(String input) {
+
+		Path path;
+		try {
+			path = Path.of(input).toAbsolutePath().normalize();
+		} catch (InvalidPathException e) {
+			return null;
+		}
+
+		if (!Files.isRegularFile(path))
+			return null;
+
+		CRC32C crc = new CRC32C();
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+			while (channel.read(buffer) > 0) {
+				buffer.flip();
+				crc.update(buffer);
+				buffer.clear();
+			}
+		} catch (IOException e) {
+			log.warn("Could not hash {}, events will not be cached", path, e);
+			return null;
+		}
+
+		return String.join("|", path.toString(), Long.toHexString(crc.getValue()), facilitiesHandling.name(),
+				ReplayHandler.EVENT_FILTER, String.valueOf(VERSION));
+	}
+
+	private Path getFile(String key) {
+		return directory.resolve("events-" + UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)) + ".bin");
+	}
+
+	/**
+	 * Read events from the cache.
+	 *
+	 * @return null if not present or invalid
+	 */
+	@Nullable
+	DayEvents read(String key) {
+
+		Path file = getFile(key);
+		if (!Files.isRegularFile(file))
+			return null;
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+			MappedReader in = new MappedReader(channel);
+
+			ByteBuffer header = in.map(12);
+			if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+				log.warn("Ignoring cache file {} with unknown format", file);
+				return null;
+			}
+
+			String storedKey = StandardCharsets.UTF_8.decode(in.map(header.getInt())).toString();
+			if (!storedKey.equals(key)) {
+				log.warn("Ignoring cache file {} created for {}", file, storedKey);
+				return null;
+			}
+
+			int[] persons = in.readTable(s -> Id.createPersonId(s).index());
+			int[] facilities = in.readTable(s -> Id.create(s, ActivityFacility.class).index());
+			int[] vehicles = in.readTable(s -> Id.createVehicleId(s).index());
+			int[] links = in.readTable(s -> Id.createLinkId(s).index());
+			List<String> actTypes = in.readStrings();
+
+			int n = in.map(4).getInt();
+
+			byte[] kind = new byte[n];
+			double[] time = new double[n];
+			int[] person = new int[n];
+			int[] container = new int[n];
+			int[] link = new int[n];
+			int[] actType = new int[n];
+
+			in.map(n).get(kind);
+			in.map(n * 8L).asDoubleBuffer().get(time);
+			in.map(n * 4L).asIntBuffer().get(person);
+			in.map(n * 4L).asIntBuffer().get(container);
+			in.map(n * 4L).asIntBuffer().get(link);
+			in.map(n * 4L).asIntBuffer().get(actType);
+
+			// translate to the id indices of this process
+			for (int i = 0; i < n; i++) {
+				person[i] = persons[person[i]];
+
+				if (kind[i] == DayEvents.ACTIVITY_START || kind[i] == DayEvents.ACTIVITY_END) {
+					if (container[i] >= 0)
+						container[i] = facilities[container[i]];
+				} else
+					container[i] = vehicles[container[i]];
+
+				if (link[i] >= 0)
+					link[i] = links[link[i]];
+			}
+
+			log.info("Read {} events from cache {}", n, file);
+
+			return new DayEvents(kind, time, person, container, link, actType, actTypes);
+
+		} catch (IOException | RuntimeException e) {
+			log.warn("Could not read cache file {}", file, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Write events to the cache. Failures are only logged, because the events are still usable.
+	 */
+	void write(String key, DayEvents events) {
+
+		Path file = getFile(key);
+
+		try {
+			Files.createDirectories(directory);
+
+			// write to temporary file first, other runs may read or write the same entry concurrently
+			Path tmp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+
+				byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(keyBytes.length);
+				out.write(keyBytes);
+
+				int n = events.size();
+
+				int[] person = new int[n];
+				int[] container = new int[n];
+				int[] link = new int[n];
+
+				StringTable persons = new StringTable();
+				StringTable facilities = new StringTable();
+				StringTable vehicles = new StringTable();
+				StringTable links = new StringTable();
+
+				for (int i = 0; i < n; i++) {
+					person[i] = persons.add(events.getPersonId(i));
+
+					byte kind = events.getKind(i);
+					if (kind == DayEvents.ACTIVITY_START || kind == DayEvents.ACTIVITY_END)
+						container[i] = facilities.add(events.getFacilityId(i));
+					else
+						container[i] = vehicles.add(events.getVehicleId(i));
+
+					link[i] = links.add(events.getLinkId(i));
+				}
+
+				persons.write(out);
+				facilities.write(out);
+				vehicles.write(out);
+				links.write(out);
+				writeStrings(out, events.getActTypes());
+
+				out.writeInt(n);
+				for (int i = 0; i < n; i++)
+					out.writeByte(events.getKind(i));
+				for (int i = 0; i < n; i++)
+					out.writeDouble(events.getTime(i));
+				for (int i = 0; i < n; i++)
+					out.writeInt(person[i]);
+				for (int i = 0; i < n; i++)
+					out.writeInt(container[i]);
+				for (int i = 0; i < n; i++)
+					out.writeInt(link[i]);
+				for (int i = 0; i < n; i++)
+					out.writeInt(events.getActTypeIndex(i));
+			}
+
+			try {
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+
+			log.info("Wrote {} events to cache {}", events.size(), file);
+
+		} catch (IOException e) {
+			log.warn("Could not write cache file {}", file, e);
+		}
+	}
+
+	/**
+	 * Write strings as one section prefixed with its length in bytes.
+	 */
+	private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream section = new DataOutputStream(bytes);
+
+		section.writeInt(strings.size());
+		for (String s : strings) {
+			byte[] b = s.getBytes(StandardCharsets.UTF_8);
+			section.writeInt(b.length);
+			section.write(b);
+		}
+
+		section.flush();
+		out.writeLong(bytes.size());
+		bytes.writeTo(out);
+	}
+
+	/**
+	 * Assigns local indices to ids that occur in the events.
+	 */
+	private static final class StringTable {
+
+		private final Int2IntMap local = new Int2IntOpenHashMap();
+		private final List<String> strings = new ArrayList<>();
+
+		private StringTable() {
+			local.defaultReturnValue(-1);
+		}
+
+		private int add(@Nullable Id<?> id) {
+			if (id == null)
+				return -1;
+
+			int idx = local.get(id.index());
+			if (idx == -1) {
+				idx = strings.size();
+				strings.add(id.toString());
+				local.put(id.index(), idx);
+			}
+
+			return idx;
+		}
+
+		private void write(DataOutputStream out) throws IOException {
+			writeStrings(out, strings);
+		}
+	}
+
+	/**
+	 * Maps consecutive regions of a file.
+	 */
+	private static final class MappedReader {
+
+		private final FileChannel channel;
+		private long position = 0;
+
+		private MappedReader(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		private ByteBuffer map(long length) throws IOException {
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+			position += length;
+			return buffer;
+		}
+
+		private List<String> readStrings() throws IOException {
+
+			long length = map(8).getLong();
+			ByteBuffer buffer = map(length);
+
+			int size = buffer.getInt();
+			List<String> result = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				byte[] b = new byte[buffer.getInt()];
+				buffer.get(b);
+				result.add(new String(b, StandardCharsets.UTF_8));
+			}
+
+			return result;
+		}
+
+		/**
+		 * Read a string table and convert each entry to an index.
+		 */
+		private int[] readTable(ToIntFunction<String> toIndex) throws IOException {
+			List<String> strings = readStrings();
+			int[] result = new int[strings.size()];
+			for (int i = 0; i < result.length; i++)
+				result[i] = toIndex.applyAsInt(strings.get(i));
+
+			return result;
+		}
+	}
+}
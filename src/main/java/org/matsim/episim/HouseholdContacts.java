@@ -0,0 +1,403 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.facilities.ActivityFacility;
+
+import java.time.DayOfWeek;
+import java.util.*;
+
+/**
+ * Precomputed contacts in households for the events of one day, used instead of replaying the events of these facilities.
+ * <p>
+ * For every member the presence intervals in its household are derived from the trajectory, the joint time of each pair of members
+ * is the total overlap of these intervals. Persons staying over night are kept in the household facility like during the replay.
+ * The joint time of a pair present at midnight is carried into the next days and evaluated once, on the day one of them leaves.
+ *
+ * @see EpisimConfigGroup#isHomeContactEngine()
+ */
+public final class HouseholdContacts {
+
+	private final Household[] households;
+
+	/**
+	 * Households of each task, derived from the task id of the facilities.
+	 */
+	private Household[][] tasks;
+
+	private HouseholdContacts(Household[] households) {
+		this.households = households;
+	}
+
+	/**
+	 * Compute contacts of all household facilities from the events of one day.
+	 *
+	 * @param day        day the events are used for, needed to look up the activities of the persons
+	 * @param persons    all persons, with trajectories already initialized
+	 * @param facilities all facilities, households need to be marked
+	 * @param numTasks   number of tasks to partition the households
+	 */
+	static HouseholdContacts create(DayEvents events, DayOfWeek day, Map<Id<Person>, EpisimPerson> persons,
+	                                Map<Id<ActivityFacility>, InfectionEventHandler.EpisimFacility> facilities, int numTasks) {
+
+		// linked map, so that members are always added in the same order
+		Map<EpisimPerson, Visit> open = new LinkedHashMap<>();
+		Map<InfectionEventHandler.EpisimFacility, Map<EpisimPerson, Member>> members = new IdentityHashMap<>();
+
+		// all persons are in their first facility at the start of the day
+		for (EpisimPerson person : persons.values()) {
+			InfectionEventHandler.EpisimFacility first = facilities.get(person.getFirstFacilityId(day));
+			if (first != null && first.isHousehold())
+				open.put(person, new Visit(first, 0, person.getFirstActivity(day), true));
+		}
+
+		for (int i = 0; i < events.size(); i++) {
+
+			byte kind = events.getKind(i);
+			if (kind != DayEvents.ACTIVITY_START && kind != DayEvents.ACTIVITY_END)
+				continue;
+
+			InfectionEventHandler.EpisimFacility facility = facilities.get(events.getFacilityId(i));
+			if (facility == null)
+				continue;
+
+			EpisimPerson person = persons.get(events.getPersonId(i));
+			double time = events.getTime(i);
+			Visit visit = open.get(person);
+
+			if (kind == DayEvents.ACTIVITY_START) {
+				if (visit != null) {
+					if (visit.facility == facility)
+						continue;
+
+					// the person can only be at one place
+					close(members, person, open.remove(person), time);
+				}
+
+				if (facility.isHousehold())
+					open.put(person, new Visit(facility, time, person.getActivity(day, time), false));
+
+			} else if (visit != null && visit.facility == facility)
+				close(members, person, open.remove(person), time);
+		}
+
+		for (Map.Entry<EpisimPerson, Visit> e : open.entrySet()) {
+			EpisimPerson person = e.getKey();
+			Visit visit = e.getValue();
+
+			// persons staying over night are only removed when they leave on one of the next days
+			if (person.getStaysInContainer(day) && visit.facility.getContainerId().equals(person.getLastFacilityId(day)))
+				close(members, person, visit, Double.POSITIVE_INFINITY);
+			else
+				close(members, person, visit, Math.max(86400, visit.start));
+		}
+
+		// iteration order of the facilities is used, so that results are deterministic
+		List<Household> households = new ArrayList<>();
+		for (InfectionEventHandler.EpisimFacility facility : facilities.values()) {
+			Map<EpisimPerson, Member> m = members.get(facility);
+			if (m != null)
+				households.add(new Household(facility, m.values().toArray(new Member[0])));
+		}
+
+		HouseholdContacts contacts = new HouseholdContacts(households.toArray(new Household[0]));
+		contacts.partition(numTasks);
+
+		return contacts;
+	}
+
+	private static void close(Map<InfectionEventHandler.EpisimFacility, Map<EpisimPerson, Member>> members, EpisimPerson person, Visit visit, double end) {
+		// the first visit is kept even without duration, persons staying over night leave the household with it
+		if (end <= visit.start && !visit.first)
+			return;
+
+		Member member = members.computeIfAbsent(visit.facility, k -> new LinkedHashMap<>())
+				.computeIfAbsent(person, k -> new Member(person, visit.activity));
+
+		member.intervals.add(visit.start, end);
+
+		if (visit.first)
+			member.firstEnd = end;
+
+		if (end == Double.POSITIVE_INFINITY) {
+			member.openStart = visit.start;
+			member.openActivity = visit.activity;
+		}
+	}
+
+	/**
+	 * Total overlap of two chronologically sorted lists of intervals, given as consecutive start and end times.
+	 * Overlaps that have not ended at the end of the day are left out.
+	 */
+	static double overlap(double[] a, double[] b) {
+
+		double total = 0;
+		int i = 0, j = 0;
+		while (i < a.length && j < b.length) {
+			double start = Math.max(a[i], b[j]);
+			double end = Math.min(a[i + 1], b[j + 1]);
+			if (end > start && end != Double.POSITIVE_INFINITY)
+				total += end - start;
+
+			// advance the interval that ends first
+			if (a[i + 1] < b[j + 1])
+				i += 2;
+			else
+				j += 2;
+		}
+
+		return total;
+	}
+
+	/**
+	 * Assign households to tasks, needs to be called whenever the task ids of the facilities change.
+	 */
+	void partition(int numTasks) {
+
+		int[] counts = new int[numTasks];
+		for (Household h : households)
+			counts[h.facility.getTaskId()]++;
+
+		tasks = new Household[numTasks][];
+		for (int i = 0; i < numTasks; i++)
+			tasks[i] = new Household[counts[i]];
+
+		Arrays.fill(counts, 0);
+		for (Household h : households) {
+			int task = h.facility.getTaskId();
+			tasks[task][counts[task]++] = h;
+		}
+	}
+
+	/**
+	 * Households the task is responsible for.
+	 */
+	Household[] getHouseholds(int taskId) {
+		return tasks[taskId];
+	}
+
+	/**
+	 * Number of households with at least one member present during the day.
+	 */
+	int size() {
+		return households.length;
+	}
+
+	/**
+	 * Members of one household facility and their joint time during the day.
+	 * <p>
+	 * Members staying in the household since a previous day are looked up in the facility by {@link #startDay(double)}, their joint time
+	 * before midnight is added on the day they leave. {@link #endDay()} keeps the members that stay over night in the facility.
+	 */
+	public static final class Household {
+
+		private final InfectionEventHandler.EpisimFacility facility;
+		private final EpisimPerson[] members;
+		private final EpisimPerson.PerformedActivity[] activities;
+		private final double[] timeSpent;
+
+		/**
+		 * End of the presence since the start of the day, NaN if the member was not present at the start of the day.
+		 */
+		private final double[] firstEnd;
+
+		/**
+		 * Start of the presence that has not ended at the end of the day, NaN if the member is not present at the end of the day.
+		 */
+		private final double[] openStart;
+		private final EpisimPerson.PerformedActivity[] openActivities;
+
+		/**
+		 * Joint time of each pair, stored as upper triangular matrix.
+		 */
+		private final double[] jointTime;
+
+		/**
+		 * Entering time of the members staying since a previous day, NaN for all others. Only valid for the current day.
+		 */
+		private final double[] carriedSince;
+		private double startOfDay;
+
+		private Household(InfectionEventHandler.EpisimFacility facility, Member[] m) {
+			this.facility = facility;
+			this.members = new EpisimPerson[m.length];
+			this.activities = new EpisimPerson.PerformedActivity[m.length];
+			this.timeSpent = new double[m.length];
+			this.firstEnd = new double[m.length];
+			this.openStart = new double[m.length];
+			this.openActivities = new EpisimPerson.PerformedActivity[m.length];
+			this.jointTime = new double[m.length * (m.length - 1) / 2];
+			this.carriedSince = new double[m.length];
+
+			Arrays.fill(carriedSince, Double.NaN);
+
+			double[][] intervals = new double[m.length][];
+			for (int i = 0; i < m.length; i++) {
+				members[i] = m[i].person;
+				activities[i] = m[i].activity;
+				firstEnd[i] = m[i].firstEnd;
+				openStart[i] = m[i].openStart;
+				openActivities[i] = m[i].openActivity;
+				intervals[i] = m[i].intervals.toDoubleArray();
+
+				for (int k = 0; k < intervals[i].length; k += 2) {
+					if (intervals[i][k + 1] != Double.POSITIVE_INFINITY)
+						timeSpent[i] += intervals[i][k + 1] - intervals[i][k];
+				}
+			}
+
+			for (int i = 0; i < m.length; i++) {
+				for (int j = i + 1; j < m.length; j++)
+					jointTime[index(i, j)] = overlap(intervals[i], intervals[j]);
+			}
+		}
+
+		private int index(int i, int j) {
+			// row offset of i in the upper triangle without diagonal
+			return i * (2 * members.length - i - 1) / 2 + j - i - 1;
+		}
+
+		public InfectionEventHandler.EpisimFacility getFacility() {
+			return facility;
+		}
+
+		/**
+		 * Number of members present during the day.
+		 */
+		public int size() {
+			return members.length;
+		}
+
+		public EpisimPerson getMember(int i) {
+			return members[i];
+		}
+
+		/**
+		 * Home activity of the i-th member, the first one if there are several during the day.
+		 */
+		public EpisimPerson.PerformedActivity getActivity(int i) {
+			return activities[i];
+		}
+
+		/**
+		 * Total time both members have been present in the household, including the time since a previous day if one of them leaves today.
+		 * Joint time that has not ended at the end of the day is evaluated on one of the next days.
+		 */
+		public double getJointTime(int i, int j) {
+			if (i == j)
+				throw new IllegalArgumentException("No joint time with itself");
+
+			double time = i < j ? jointTime[index(i, j)] : jointTime[index(j, i)];
+
+			if (isCarriedOver(i) && isCarriedOver(j) && Math.min(firstEnd[i], firstEnd[j]) != Double.POSITIVE_INFINITY)
+				time += startOfDay - Math.max(carriedSince[i], carriedSince[j]);
+
+			return time;
+		}
+
+		/**
+		 * Total time the i-th member has been present in the household, a stay over night is counted on the day it ends.
+		 */
+		double getTimeSpent(int i) {
+			if (isCarriedOver(i) && firstEnd[i] != Double.POSITIVE_INFINITY)
+				return timeSpent[i] + startOfDay - carriedSince[i];
+
+			return timeSpent[i];
+		}
+
+		private boolean isCarriedOver(int i) {
+			return !Double.isNaN(carriedSince[i]);
+		}
+
+		/**
+		 * Look up the members staying in the household since a previous day, needs to be called before the contacts of a day are evaluated.
+		 *
+		 * @param startOfDay corrected time at the start of the day
+		 */
+		void startDay(double startOfDay) {
+			this.startOfDay = startOfDay;
+
+			for (int i = 0; i < members.length; i++) {
+				EpisimPerson person = members[i];
+				carriedSince[i] = !Double.isNaN(firstEnd[i]) && facility.containsPerson(person) ?
+						facility.getContainerEnteringTime(person.getPersonId()) : Double.NaN;
+			}
+		}
+
+		/**
+		 * Update the members present in the household facility over night, needs to be called after the contacts of a day have been evaluated.
+		 */
+		void endDay() {
+			for (int i = 0; i < members.length; i++) {
+
+				// still present with its original entering time
+				if (isCarriedOver(i) && firstEnd[i] == Double.POSITIVE_INFINITY)
+					continue;
+
+				if (isCarriedOver(i))
+					facility.removePerson(members[i]);
+
+				if (!Double.isNaN(openStart[i]))
+					facility.addPerson(members[i], startOfDay + openStart[i], openActivities[i]);
+			}
+		}
+	}
+
+	/**
+	 * Presence of a person that has not ended yet.
+	 */
+	private static final class Visit {
+
+		private final InfectionEventHandler.EpisimFacility facility;
+		private final double start;
+		private final EpisimPerson.PerformedActivity activity;
+
+		/**
+		 * Whether this is the presence since the start of the day.
+		 */
+		private final boolean first;
+
+		private Visit(InfectionEventHandler.EpisimFacility facility, double start, EpisimPerson.PerformedActivity activity, boolean first) {
+			this.facility = facility;
+			this.start = start;
+			this.activity = activity;
+			this.first = first;
+		}
+	}
+
+	private static final class Member {
+
+		private final EpisimPerson person;
+		private final EpisimPerson.PerformedActivity activity;
+		private final DoubleArrayList intervals = new DoubleArrayList(4);
+		private double firstEnd = Double.NaN;
+		private double openStart = Double.NaN;
+		private EpisimPerson.PerformedActivity openActivity;
+
+		private Member(EpisimPerson person, EpisimPerson.PerformedActivity activity) {
+			this.person = person;
+			this.activity = activity;
+		}
+	}
+}
@@ -0,0 +1,108 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.HasPersonId;
+import org.matsim.episim.events.EpisimInfectionEvent;
+import org.matsim.episim.events.EpisimPotentialInfectionEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the infections found by one {@link TrajectoryHandler} during a day, so that persons do not need to be
+ * synchronized during the replay and only infected persons need to be processed afterwards.
+ * <p>
+ * A buffer must only be used by one thread at a time.
+ */
+public final class InfectionBuffer {
+
+	private final List<EpisimPerson> persons = new ArrayList<>();
+	private final List<EpisimInfectionEvent> infections = new ArrayList<>();
+	private final List<EpisimPotentialInfectionEvent> potentialInfections = new ArrayList<>();
+
+	/**
+	 * Add a candidate infection of a person.
+	 */
+	public void addInfection(EpisimPerson person, EpisimInfectionEvent event) {
+		persons.add(person);
+		infections.add(event);
+	}
+
+	/**
+	 * Add a potential infection.
+	 */
+	public void addPotentialInfection(EpisimPotentialInfectionEvent event) {
+		potentialInfections.add(event);
+	}
+
+	private void clear() {
+		persons.clear();
+		infections.clear();
+		potentialInfections.clear();
+	}
+
+	/**
+	 * Merge all buffers and clear them. The earliest infection of each person is applied to its state.
+	 *
+	 * @return infections and potential infections of the day, sorted by time. Ties are ordered by the index of the person id.
+	 */
+	static List<Event> merge(List<InfectionBuffer> buffers) {
+
+		List<EpisimPerson> candidates = new ArrayList<>();
+		List<Event> potential = new ArrayList<>();
+
+		for (InfectionBuffer buffer : buffers) {
+			for (int i = 0; i < buffer.persons.size(); i++) {
+				EpisimPerson person = buffer.persons.get(i);
+				person.possibleInfection(buffer.infections.get(i));
+				candidates.add(person);
+			}
+
+			potential.addAll(buffer.potentialInfections);
+			buffer.clear();
+		}
+
+		List<Event> result = new ArrayList<>(candidates.size() + potential.size());
+
+		// persons may be contained multiple times, but only the first check returns the infection
+		for (EpisimPerson person : candidates) {
+			EpisimInfectionEvent e = person.checkInfection();
+			if (e != null)
+				result.add(e);
+		}
+
+		result.addAll(potential);
+		result.sort(InfectionBuffer::compare);
+
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static int compare(Event a, Event b) {
+		int cmp = ((Comparable<Event>) a).compareTo(b);
+		if (cmp != 0)
+			return cmp;
+
+		return Integer.compare(((HasPersonId) a).getPersonId().index(), ((HasPersonId) b).getPersonId().index());
+	}
+}
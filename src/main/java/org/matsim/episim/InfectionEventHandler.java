@@ -33,13 +33,13 @@ import org.matsim.api.core.v01.IdMap;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.events.*;
 import org.matsim.api.core.v01.population.Person;
-import org.matsim.core.api.internal.HasPersonId;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.utils.collections.Tuple;
 import org.matsim.episim.events.*;
 import org.matsim.episim.model.*;
 import org.matsim.episim.model.activity.ActivityParticipationModel;
+import org.matsim.episim.model.progression.DiseaseStatusTransitionModel;
 import org.matsim.episim.model.testing.TestingModel;
 import org.matsim.episim.model.vaccination.VaccinationModel;
 import org.matsim.episim.policy.Restriction;
@@ -49,6 +49,7 @@ import org.matsim.run.AnalysisCommand;
 import org.matsim.utils.objectattributes.attributable.Attributes;
 import org.matsim.vehicles.Vehicle;
 
+import javax.annotation.Nullable;
 import java.io.*;
 import java.nio.file.Path;
 import java.time.DayOfWeek;
@@ -58,6 +59,8 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
 
 import static org.matsim.episim.EpisimUtils.*;
 
@@ -99,6 +102,17 @@ public final class InfectionEventHandler implements Externalizable {
 	private final List<TrajectoryHandler> handlers = new ArrayList<>();
 
 	private final Map<Id<Person>, EpisimPerson> personMap = new IdMap<>(Person.class);
+
+	/**
+	 * Holds the state of all persons.
+	 */
+	private final PersonStore personStore;
+
+	/**
+	 * Sum of antibodies per strain of all persons, as of {@link #antibodySumDay}.
+	 */
+	private double[] antibodySum;
+	private int antibodySumDay = -1;
 	private final Map<Id<Vehicle>, EpisimVehicle> vehicleMap = new IdMap<>(Vehicle.class);
 	private final Map<Id<ActivityFacility>, EpisimFacility> pseudoFacilityMap = new IdMap<>(ActivityFacility.class,
 			// the number of facility ids is not known beforehand, so we use this as initial estimate
@@ -110,6 +124,42 @@ public final class InfectionEventHandler implements Externalizable {
 	 */
 	private final Map<String, EpisimConfigGroup.InfectionParams> paramsMap = new IdentityHashMap<>();
 
+	/**
+	 * Indices of the events of each distinct day, split by the task that is responsible for their container.
+	 * This is an identity map because the same events are shared between several days.
+	 */
+	private final Map<DayEvents, int[][]> taskEvents = new IdentityHashMap<>();
+
+	/**
+	 * Containers and persons each task is responsible for at the start of a day.
+	 */
+	private TaskPartition[] taskPartitions;
+
+	/**
+	 * Contacts in households for each distinct day, only used if {@link EpisimConfigGroup#isHomeContactEngine()} is enabled.
+	 */
+	private final Map<DayEvents, HouseholdContacts> householdContacts = new IdentityHashMap<>();
+
+	/**
+	 * Occupancy of facilities and vehicles for each distinct day, only used if {@link EpisimConfigGroup#isOccupancyIndex()} is enabled.
+	 */
+	private final Map<DayEvents, OccupancyIndex> occupancyIndex = new IdentityHashMap<>();
+
+	/**
+	 * Containers visited by each person for each distinct day, only used if only active containers are replayed.
+	 */
+	private final Map<DayEvents, PersonVisits> personVisits = new IdentityHashMap<>();
+
+	/**
+	 * Fixed partitions of all persons for the parallel state update, see {@link EpisimConfigGroup#getStateUpdatePartitions()}.
+	 */
+	private EpisimPerson[][] personPartitions;
+
+	/**
+	 * Separate model instances for each person partition, only present if there is more than one partition.
+	 */
+	private final List<StateUpdateModels> stateUpdateModels = new ArrayList<>();
+
 	/**
 	 * Holds the current restrictions in place for all the activities.
 	 */
@@ -147,6 +197,11 @@ public final class InfectionEventHandler implements Externalizable {
 
 	private final TestingModel testingModel;
 
+	/**
+	 * Assigns the masks worn during the day.
+	 */
+	private final FaceMaskModel faceMaskModel;
+
 	/**
 	 * Scenario with population information.
 	 */
@@ -187,6 +242,36 @@ public final class InfectionEventHandler implements Externalizable {
 	 */
 	private Set<VaccinationModel> vaccinations;
 
+	/**
+	 * Aggregated model used during quiet periods, null if the hybrid mode is disabled.
+	 */
+	private CompartmentModel compartments;
+
+	/**
+	 * Random number generator of the compartment model, the seed state is set on each reset.
+	 */
+	private final SplittableRandom compartmentRnd = new SplittableRandom(0);
+
+	/**
+	 * Collected contacts of each trajectory handler.
+	 */
+	private final List<ContactStatistics> contactStatistics = new ArrayList<>();
+
+	/**
+	 * Counts of the compartment model, one for each state update partition.
+	 */
+	private final List<CompartmentModel.Census> censuses = new ArrayList<>();
+
+	/**
+	 * Infections found by the compartment model.
+	 */
+	private final InfectionBuffer compartmentInfections = new InfectionBuffer();
+
+	/**
+	 * Whether the current iteration is computed by the compartment model.
+	 */
+	private boolean compartmentMode = false;
+
 	@Inject
 	public InfectionEventHandler(Injector injector, SplittableRandom rnd) {
 		this.injector = injector;
@@ -197,17 +282,22 @@ public final class InfectionEventHandler implements Externalizable {
 		this.tracingConfig = ConfigUtils.addOrGetModule(config, TracingConfigGroup.class);
 		this.vaccinationConfig = ConfigUtils.addOrGetModule(config, VaccinationConfigGroup.class);
 		this.scenario = injector.getInstance(Scenario.class);
+		this.personStore = new PersonStore(scenario.getPopulation().getPersons().size());
 		this.policy = injector.getInstance(ShutdownPolicy.class);
 		this.restrictions = episimConfig.createInitialRestrictions();
 		this.reporting = injector.getInstance(EpisimReporting.class);
 		this.localRnd = new SplittableRandom(65536); // fixed seed, because it should not change between snapshots
 		this.progressionModel = injector.getInstance(ProgressionModel.class);
 		this.antibodyModel = injector.getInstance(AntibodyModel.class);
+		if (!Double.isNaN(antibodyModel.getDailyDecay()))
+			this.personStore.setAntibodyDecay(antibodyModel.getDailyDecay());
 		this.initialInfections = injector.getInstance(InitialInfectionHandler.class);
 		this.initialInfections.setInfectionsLeft(episimConfig.getInitialInfections());
 		this.vaccinationModel = injector.getInstance(VaccinationModel.class);
 		this.activityParticipationModel = injector.getInstance(ActivityParticipationModel.class);
 		this.testingModel = injector.getInstance(TestingModel.class);
+		this.faceMaskModel = injector.getInstance(FaceMaskModel.class);
+		this.personStore.setMaskSlots(faceMaskModel.getMaskSlots());
 		this.executor = injector.getInstance(ExecutorService.class);
 	}
 
@@ -235,12 +325,14 @@ public final class InfectionEventHandler implements Externalizable {
 	 *
 	 * @param events All events in the simulation
 	 */
-	void init(Map<DayOfWeek, List<Event>> events) {
+	void init(Map<DayOfWeek, DayEvents> events) {
 
 		iteration = 0;
 
 		updateEvents(events);
 
+		log.info("Person store holds {} persons using {} MB", personStore.size(), personStore.getMemoryUsage() / (1024 * 1024));
+
 		policy.init(episimConfig.getStartDate(), ImmutableMap.copyOf(this.restrictions));
 
 		// Clear time-use after first iteration
@@ -275,6 +367,11 @@ public final class InfectionEventHandler implements Externalizable {
 		}
 
 		createTrajectoryHandlers();
+		checkContactModel(handlers.get(0).getContactModel());
+		createStateUpdateModels();
+
+		if (episimConfig.getHybridThreshold() >= 0)
+			createCompartmentModel();
 
 		init = true;
 	}
@@ -284,7 +381,7 @@ public final class InfectionEventHandler implements Externalizable {
 	 *
 	 * @param events
 	 */
-	void updateEvents(Map<DayOfWeek, List<Event>> events) {
+	void updateEvents(Map<DayOfWeek, DayEvents> events) {
 		Object2IntMap<EpisimContainer<?>> groupSize = new Object2IntOpenHashMap<>();
 		Object2IntMap<EpisimContainer<?>> totalUsers = new Object2IntOpenHashMap<>();
 		Object2IntMap<EpisimContainer<?>> maxGroupSize = new Object2IntOpenHashMap<>();
@@ -294,14 +391,32 @@ public final class InfectionEventHandler implements Externalizable {
 
 		Map<EpisimContainer<?>, Object2IntMap<String>> activityUsage = new HashMap<>();
 
-		Map<List<Event>, DayOfWeek> sameDay = new IdentityHashMap<>(7);
+		Map<DayEvents, DayOfWeek> sameDay = new IdentityHashMap<>(7);
+
+		final boolean homeContactEngine = episimConfig.isHomeContactEngine();
+		if (homeContactEngine && episimConfig.getActivityHandling() != EpisimConfigGroup.ActivityHandling.startOfDay)
+			throw new IllegalStateException("The home contact engine requires activity handling " + EpisimConfigGroup.ActivityHandling.startOfDay);
+
+		// contact models are created together with the trajectory handlers, after the events have been set for the first time
+		if (!handlers.isEmpty())
+			checkContactModel(handlers.get(0).getContactModel());
+
+		final boolean useOccupancyIndex = episimConfig.isOccupancyIndex();
+		if (useOccupancyIndex && episimConfig.getActivityHandling() != EpisimConfigGroup.ActivityHandling.startOfDay)
+			throw new IllegalStateException("The occupancy index requires activity handling " + EpisimConfigGroup.ActivityHandling.startOfDay);
+
+		if (useOccupancyIndex && (episimConfig.getWriteEvents() == EpisimConfigGroup.WriteEvents.all || episimConfig.getWriteEvents() == EpisimConfigGroup.WriteEvents.input))
+			throw new IllegalStateException("Input events can not be written when the occupancy index is used");
+
+		// facilities used for other than home activities, these are never households
+		Set<EpisimFacility> nonHome = Collections.newSetFromMap(new IdentityHashMap<>());
 
 		this.personMap.values().forEach(EpisimPerson::resetTrajectory);
 
-		for (Map.Entry<DayOfWeek, List<Event>> entry : events.entrySet()) {
+		for (Map.Entry<DayOfWeek, DayEvents> entry : events.entrySet()) {
 
 			DayOfWeek day = entry.getKey();
-			List<Event> eventsForDay = entry.getValue();
+			DayEvents eventsForDay = entry.getValue();
 
 			if (sameDay.containsKey(eventsForDay)) {
 				DayOfWeek same = sameDay.get(eventsForDay);
@@ -314,77 +429,77 @@ public final class InfectionEventHandler implements Externalizable {
 
 			this.personMap.values().forEach(p -> p.setStartOfDay(day));
 
-			for (Event event : eventsForDay) {
+			for (int i = 0; i < eventsForDay.size(); i++) {
 
-				EpisimPerson person = null;
-				EpisimFacility facility = null;
+				final byte kind = eventsForDay.getKind(i);
 
 				// Add all person and facilities
-				if (event instanceof HasPersonId) {
-					person = this.personMap.computeIfAbsent(((HasPersonId) event).getPersonId(), this::createPerson);
-
-					// If a person was added late, previous days are initialized at home
-					for (int i = 1; i < day.getValue(); i++) {
-						DayOfWeek it = DayOfWeek.of(i);
-						if (!person.hasActivity(it)) {
-							person.setStartOfDay(it);
-							Id<ActivityFacility> homeId = createHomeFacility(person).getContainerId();
-
-							person.setFirstFacilityId(homeId, it);
-							person.setLastFacilityId(homeId, it, true);
-
-							EpisimConfigGroup.InfectionParams home = paramsMap.computeIfAbsent("home", this::createActivityType);
-							person.addToTrajectory(0, home, homeId);
-							person.setEndOfDay(it);
-							person.setStartOfDay(it.plus(1));
-						}
+				EpisimPerson person = this.personMap.computeIfAbsent(eventsForDay.getPersonId(i), this::createPerson);
+
+				// If a person was added late, previous days are initialized at home
+				for (int d = 1; d < day.getValue(); d++) {
+					DayOfWeek it = DayOfWeek.of(d);
+					if (!person.hasActivity(it)) {
+						person.setStartOfDay(it);
+						Id<ActivityFacility> homeId = createHomeFacility(person).getContainerId();
+
+						person.setFirstFacilityId(homeId, it);
+						person.setLastFacilityId(homeId, it, true);
+
+						EpisimConfigGroup.InfectionParams home = paramsMap.computeIfAbsent("home", this::createActivityType);
+						person.addToTrajectory(0, home, homeId);
+						person.setEndOfDay(it);
+						person.setStartOfDay(it.plus(1));
 					}
 				}
 
-				if (event instanceof HasFacilityId) {
-					Id<ActivityFacility> episimFacilityId = ((HasFacilityId) event).getFacilityId();
-					facility = this.pseudoFacilityMap.computeIfAbsent(episimFacilityId, EpisimFacility::new);
-				}
-
-				if (event instanceof ActivityStartEvent) {
+				if (kind == DayEvents.ACTIVITY_START) {
 
-					String actType = ((ActivityStartEvent) event).getActType();
+					Id<ActivityFacility> facilityId = eventsForDay.getFacilityId(i);
+					EpisimFacility facility = this.pseudoFacilityMap.computeIfAbsent(facilityId, EpisimFacility::new);
+					String actType = eventsForDay.getActType(i);
 
 					EpisimConfigGroup.InfectionParams act = paramsMap.computeIfAbsent(actType, this::createActivityType);
 					totalUsers.mergeInt(facility, 1, Integer::sum);
 
-					Id<ActivityFacility> facilityId = ((ActivityStartEvent) event).getFacilityId();
-					person.addToTrajectory(event.getTime(), act, facilityId);
+					if (homeContactEngine && !actType.startsWith("home"))
+						nonHome.add(facility);
+
+					person.addToTrajectory(eventsForDay.getTime(i), act, facilityId);
 
 					person.setLastFacilityId(facility.getContainerId(), day, true);
 
-				} else if (event instanceof ActivityEndEvent) {
-					String actType = ((ActivityEndEvent) event).getActType();
+				} else if (kind == DayEvents.ACTIVITY_END) {
+
+					Id<ActivityFacility> facilityId = eventsForDay.getFacilityId(i);
+					EpisimFacility facility = this.pseudoFacilityMap.computeIfAbsent(facilityId, EpisimFacility::new);
+					String actType = eventsForDay.getActType(i);
 
 					EpisimConfigGroup.InfectionParams act = paramsMap.computeIfAbsent(actType, this::createActivityType);
 					activityUsage.computeIfAbsent(facility, k -> new Object2IntOpenHashMap<>()).mergeInt(actType, 1, Integer::sum);
 
+					if (homeContactEngine && !actType.startsWith("home"))
+						nonHome.add(facility);
+
 					// if this is the first event, container is saved and trajectory element created
 					if (!person.hasActivity(day)) {
-						Id<ActivityFacility> facilityId = ((ActivityEndEvent) event).getFacilityId();
 						person.addToTrajectory(0, act, facilityId);
 						person.setFirstFacilityId(facility.getContainerId(), day);
 					}
 
 					// person is not in this container anymore
 					person.setLastFacilityId(facility.getContainerId(), day, false);
-				}
 
-				if (event instanceof PersonEntersVehicleEvent) {
-					EpisimVehicle vehicle = this.vehicleMap.computeIfAbsent(((PersonEntersVehicleEvent) event).getVehicleId(), EpisimVehicle::new);
+				} else if (kind == DayEvents.ENTERS_VEHICLE) {
+					EpisimVehicle vehicle = this.vehicleMap.computeIfAbsent(eventsForDay.getVehicleId(i), EpisimVehicle::new);
 
 					maxGroupSize.mergeInt(vehicle, groupSize.mergeInt(vehicle, 1, Integer::sum), Integer::max);
 					totalUsers.mergeInt(vehicle, 1, Integer::sum);
 
 					person.setStaysInContainer(day, false);
 
-				} else if (event instanceof PersonLeavesVehicleEvent) {
-					EpisimVehicle vehicle = this.vehicleMap.computeIfAbsent(((PersonLeavesVehicleEvent) event).getVehicleId(), EpisimVehicle::new);
+				} else {
+					EpisimVehicle vehicle = this.vehicleMap.computeIfAbsent(eventsForDay.getVehicleId(i), EpisimVehicle::new);
 					groupSize.mergeInt(vehicle, -1, Integer::sum);
 					activityUsage.computeIfAbsent(vehicle, k -> new Object2IntOpenHashMap<>()).mergeInt("tr", 1, Integer::sum);
 
@@ -426,14 +541,34 @@ public final class InfectionEventHandler implements Externalizable {
 			}
 		}
 
+		if (homeContactEngine) {
+			pseudoFacilityMap.values().forEach(f -> f.setHousehold(!nonHome.contains(f)));
+			log.info("Contacts of {} household facilities are computed by the home contact engine", pseudoFacilityMap.size() - nonHome.size());
+		}
+
+		// resolve districts once, so that location based restrictions don't need to look them up
+		if (episimConfig.getDistrictLevelRestrictions() == EpisimConfigGroup.DistrictLevelRestrictions.yes) {
+			DistrictIndex districts = DistrictIndex.of(scenario, episimConfig);
+
+			for (EpisimFacility facility : pseudoFacilityMap.values())
+				districts.getDistrict(facility);
+
+			for (EpisimPerson person : personMap.values()) {
+				for (EpisimPerson.PerformedActivity act : person.getTrajectory())
+					districts.getDistrict(act);
+			}
+
+			log.info("Resolved {} districts for location based restrictions", districts.size());
+		}
+
 		double now = EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), 0, iteration);
 
 		// Go through each day again to compute max group sizes
 		sameDay.clear();
-		for (Map.Entry<DayOfWeek, List<Event>> entry : events.entrySet()) {
+		for (Map.Entry<DayOfWeek, DayEvents> entry : events.entrySet()) {
 
 			DayOfWeek day = entry.getKey();
-			List<Event> eventsForDay = entry.getValue();
+			DayEvents eventsForDay = entry.getValue();
 
 			if (sameDay.containsKey(eventsForDay)) {
 				continue;
@@ -460,22 +595,22 @@ public final class InfectionEventHandler implements Externalizable {
 
 			pseudoFacilityMap.forEach((k, v) -> maxGroupSize.mergeInt(v, v.getPersons().size(), Integer::max));
 
-			for (Event event : eventsForDay) {
-				if (event instanceof HasFacilityId && event instanceof HasPersonId) {
-					Id<ActivityFacility> episimFacilityId = ((HasFacilityId) event).getFacilityId();
-					EpisimFacility facility = pseudoFacilityMap.get(episimFacilityId);
-					EpisimPerson person = this.personMap.get(((HasPersonId) event).getPersonId());
+			for (int i = 0; i < eventsForDay.size(); i++) {
+				final byte kind = eventsForDay.getKind(i);
+				if (kind == DayEvents.ACTIVITY_START || kind == DayEvents.ACTIVITY_END) {
+					EpisimFacility facility = pseudoFacilityMap.get(eventsForDay.getFacilityId(i));
+					EpisimPerson person = this.personMap.get(eventsForDay.getPersonId(i));
 
 					// happens on filtered events that are not relevant
 					if (facility == null)
 						continue;
 
-					if (event instanceof ActivityStartEvent) {
+					if (kind == DayEvents.ACTIVITY_START) {
 						if (!facility.containsPerson(person))
-							facility.addPerson(person, now, person.getActivity(day, event.getTime()));
+							facility.addPerson(person, now, person.getActivity(day, eventsForDay.getTime(i)));
 
 						maxGroupSize.mergeInt(facility, facility.getPersons().size(), Integer::max);
-					} else if (event instanceof ActivityEndEvent) {
+					} else {
 						if (facility.containsPerson(person))
 							facility.removePerson(person);
 					}
@@ -488,13 +623,7 @@ public final class InfectionEventHandler implements Externalizable {
 		pseudoFacilityMap.values().forEach(EpisimContainer::clearPersons);
 
 		// Put persons into their correct initial container
-		DayOfWeek startDay = EpisimUtils.getDayOfWeek(episimConfig, iteration);
-		for (EpisimPerson person : personMap.values()) {
-			if (person.getStaysInContainer(startDay)) {
-				EpisimFacility facility = pseudoFacilityMap.get(person.getLastFacilityId(startDay));
-				facility.addPerson(person, now, person.getLastActivity(startDay));
-			}
-		}
+		placePersons(EpisimUtils.getDayOfWeek(episimConfig, iteration), now);
 
 		log.info("Computed max group sizes");
 
@@ -553,6 +682,37 @@ public final class InfectionEventHandler implements Externalizable {
 
 		balanceContainersByLoad(estimatedLoad);
 
+		taskEvents.clear();
+		occupancyIndex.clear();
+		if (useOccupancyIndex) {
+			for (Map.Entry<DayOfWeek, DayEvents> entry : events.entrySet()) {
+				occupancyIndex.computeIfAbsent(entry.getValue(), e -> createOccupancyIndex(e, entry.getKey()));
+			}
+		} else {
+			for (DayEvents eventsForDay : events.values()) {
+				taskEvents.computeIfAbsent(eventsForDay, this::partitionEvents);
+			}
+
+			log.info("Partitioned events of {} distinct days into {} tasks", taskEvents.size(), episimConfig.getThreads());
+		}
+
+		householdContacts.clear();
+		if (homeContactEngine) {
+			// persons share the trajectory of the first day with the same events
+			for (Map.Entry<DayOfWeek, DayEvents> entry : events.entrySet()) {
+				householdContacts.computeIfAbsent(entry.getValue(), e -> createHouseholdContacts(e, entry.getKey()));
+			}
+		}
+
+		createTaskPartitions();
+		createPersonPartitions();
+
+		personVisits.clear();
+		markBoundaryContainers();
+
+		boolean statusLists = episimConfig.isStatusPartitionedContacts();
+		pseudoFacilityMap.values().forEach(f -> f.setStatusLists(statusLists));
+		vehicleMap.values().forEach(v -> v.setStatusLists(statusLists));
 	}
 
 	/**
@@ -611,6 +771,137 @@ public final class InfectionEventHandler implements Externalizable {
 	}
 
 
+	/**
+	 * Redistribute containers using their measured processing time since the last rebalancing.
+	 * Persons that are currently in a container stay there and are handled by the new task from the next day on.
+	 */
+	private void rebalanceContainers() {
+
+		List<Tuple<EpisimContainer<?>, Double>> measuredLoad = new ArrayList<>(pseudoFacilityMap.size() + vehicleMap.size());
+
+		double[] previous = new double[episimConfig.getThreads()];
+
+		// a constant is added, so that containers without measurement are distributed evenly
+		for (EpisimContainer<?> container : pseudoFacilityMap.values()) {
+			previous[container.getTaskId()] += container.getCpuTime();
+			measuredLoad.add(Tuple.of(container, container.getCpuTime() + 1d));
+			container.resetCpuTime();
+		}
+
+		for (EpisimContainer<?> container : vehicleMap.values()) {
+			previous[container.getTaskId()] += container.getCpuTime();
+			measuredLoad.add(Tuple.of(container, container.getCpuTime() + 1d));
+			container.resetCpuTime();
+		}
+
+		log.info("Rebalancing containers, measured load per task (ms): {}", Arrays.toString(Arrays.stream(previous).map(d -> d / 1e6).toArray()));
+
+		balanceContainersByLoad(measuredLoad);
+		repartition();
+	}
+
+	/**
+	 * Rebuild everything that is derived from the task ids of the containers. Persons in a container stay in it and move to its new task.
+	 */
+	void repartition() {
+		taskEvents.replaceAll((events, partitions) -> partitionEvents(events));
+		householdContacts.values().forEach(h -> h.partition(episimConfig.getThreads()));
+		occupancyIndex.values().forEach(o -> o.partition(episimConfig.getThreads()));
+		createTaskPartitions();
+	}
+
+	private HouseholdContacts createHouseholdContacts(DayEvents events, DayOfWeek day) {
+		HouseholdContacts contacts = HouseholdContacts.create(events, day, personMap, pseudoFacilityMap, episimConfig.getThreads());
+		log.info("Computed contacts of {} households for {}", contacts.size(), day);
+		return contacts;
+	}
+
+	private OccupancyIndex createOccupancyIndex(DayEvents events, DayOfWeek day) {
+		OccupancyIndex index = OccupancyIndex.create(events, day, personMap, pseudoFacilityMap, vehicleMap, episimConfig.getThreads());
+		log.info("Computed occupancy of {} containers for {}", index.size(), day);
+		return index;
+	}
+
+	private void createTaskPartitions() {
+		taskPartitions = TaskPartition.create(episimConfig.getThreads(), pseudoFacilityMap.values(), vehicleMap.values(),
+				personMap.values(), pseudoFacilityMap);
+	}
+
+	/**
+	 * Facilities where persons start a day or stay over night always need to be replayed, because they are occupied at day boundaries.
+	 */
+	private void markBoundaryContainers() {
+
+		pseudoFacilityMap.values().forEach(f -> f.setAlwaysActive(false));
+
+		for (EpisimPerson person : personMap.values()) {
+			for (DayOfWeek day : DayOfWeek.values()) {
+				pseudoFacilityMap.get(person.getFirstFacilityId(day)).setAlwaysActive(true);
+
+				if (person.getStaysInContainer(day))
+					pseudoFacilityMap.get(person.getLastFacilityId(day)).setAlwaysActive(true);
+			}
+		}
+	}
+
+	/**
+	 * Put all persons staying over night into the last facility of the given day.
+	 */
+	private void placePersons(DayOfWeek day, double now) {
+		for (EpisimPerson person : personMap.values()) {
+			if (person.getStaysInContainer(day)) {
+				EpisimFacility facility = pseudoFacilityMap.get(person.getLastFacilityId(day));
+				facility.addPerson(person, now, person.getLastActivity(day));
+			}
+		}
+	}
+
+	/**
+	 * Whether only the events of active containers can be replayed for the current iteration.
+	 *
+	 * @see EpisimConfigGroup#isReplayActiveContainersOnly()
+	 */
+	private boolean replayActiveContainersOnly() {
+		return episimConfig.isReplayActiveContainersOnly()
+				&& iteration < tracingConfig.getPutTraceablePersonsInQuarantineAfterDay()
+				&& episimConfig.getReportTimeUse() == EpisimConfigGroup.ReportTimeUse.no
+				&& (episimConfig.getWriteEvents() == EpisimConfigGroup.WriteEvents.none || episimConfig.getWriteEvents() == EpisimConfigGroup.WriteEvents.episim);
+	}
+
+	/**
+	 * Mark all containers that are visited by a contagious person during the current iteration.
+	 * The disease status does not change during the replay, so all other containers can not produce infections.
+	 */
+	private void markActiveContainers(DayEvents events) {
+
+		PersonVisits visits = personVisits.computeIfAbsent(events, e -> PersonVisits.create(e, pseudoFacilityMap, vehicleMap));
+
+		for (EpisimPerson person : personMap.values()) {
+			if (person.getDiseaseStatus() == EpisimPerson.DiseaseStatus.contagious || person.getDiseaseStatus() == EpisimPerson.DiseaseStatus.showingSymptoms)
+				visits.setActive(person, iteration);
+		}
+	}
+
+	/**
+	 * Split all persons into contiguous partitions of similar size, preserving the iteration order of the person map.
+	 */
+	private void createPersonPartitions() {
+
+		EpisimPerson[] persons = personMap.values().toArray(new EpisimPerson[0]);
+
+		int n = episimConfig.getStateUpdatePartitions();
+		int size = (persons.length + n - 1) / n;
+
+		personPartitions = new EpisimPerson[n][];
+		for (int i = 0; i < n; i++) {
+			personPartitions[i] = Arrays.copyOfRange(persons, Math.min(i * size, persons.length), Math.min((i + 1) * size, persons.length));
+		}
+	}
+
+	private int[][] partitionEvents(DayEvents events) {
+		return TaskPartition.partitionEvents(events, episimConfig.getThreads(), pseudoFacilityMap, vehicleMap);
+	}
+
 	/**
 	 * Distribute the containers to the different ReplayEventTasks, using
 	 * the hashCode of the containerId (the original distribution schema)
@@ -662,6 +953,345 @@ public final class InfectionEventHandler implements Externalizable {
 	}
 
 
+	/**
+	 * Create the compartment model with its own infection model and the contact statistics of all trajectory handlers.
+	 */
+	private void createCompartmentModel() {
+
+		AbstractModule childModule = new AbstractModule() {
+			@Override
+			protected void configure() {
+				bind(SplittableRandom.class).toInstance(compartmentRnd);
+			}
+		};
+
+		Injector inj = GuiceUtils.createCopiedInjector(injector, List.of(childModule), InfectionModel.class, FaceMaskModel.class);
+
+		compartments = new CompartmentModel(episimConfig, inj.getInstance(InfectionModel.class), compartmentRnd, personMap.values());
+
+		for (int i = 0; i < handlers.size(); i++) {
+			ContactStatistics statistics = compartments.createStatistics(i);
+			handlers.get(i).setContactStatistics(statistics);
+			contactStatistics.add(statistics);
+		}
+
+		for (int i = 0; i < Math.max(1, stateUpdateModels.size()); i++) {
+			censuses.add(compartments.createCensus());
+		}
+
+		log.info("Using compartment model for at most {} contagious persons", episimConfig.getHybridThreshold());
+	}
+
+	/**
+	 * Decide whether the current iteration is computed by the compartment model.
+	 * Contacts need to be replayed as long as tracing or time use are needed, or events are written.
+	 */
+	private void updateCompartmentMode(int iteration) {
+
+		if (compartments == null)
+			return;
+
+		EpisimUtils.setSeed(compartmentRnd, rnd.nextLong());
+
+		boolean quiet = report.nContagious + report.nShowingSymptoms <= episimConfig.getHybridThreshold()
+				&& compartments.isCalibrated()
+				&& iteration < tracingConfig.getPutTraceablePersonsInQuarantineAfterDay()
+				&& episimConfig.getReportTimeUse() == EpisimConfigGroup.ReportTimeUse.no
+				&& (episimConfig.getWriteEvents() == EpisimConfigGroup.WriteEvents.none || episimConfig.getWriteEvents() == EpisimConfigGroup.WriteEvents.episim);
+
+		if (quiet == compartmentMode)
+			return;
+
+		compartmentMode = quiet;
+
+		if (compartmentMode) {
+			log.info("Switching to compartment model at iteration {} with {} contagious persons", iteration, report.nContagious + report.nShowingSymptoms);
+		} else {
+			log.info("Switching to agent based replay at iteration {} with {} contagious persons", iteration, report.nContagious + report.nShowingSymptoms);
+
+			// containers still hold the persons of the last replayed day
+			pseudoFacilityMap.values().forEach(EpisimContainer::clearPersons);
+			vehicleMap.values().forEach(EpisimContainer::clearPersons);
+			placePersons(EpisimUtils.getDayOfWeek(episimConfig, iteration - 1),
+					EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), 0, iteration - 1));
+		}
+	}
+
+	/**
+	 * Whether the current iteration is computed by the compartment model instead of replaying events.
+	 *
+	 * @see EpisimConfigGroup#getHybridThreshold()
+	 */
+	public boolean isCompartmentMode() {
+		return compartmentMode;
+	}
+
+	/**
+	 * Checks that the contact model supports all enabled options.
+	 */
+	private void checkContactModel(ContactModel model) {
+		if (episimConfig.isHomeContactEngine() && !(model instanceof HouseholdContactModel))
+			throw new IllegalStateException("The home contact engine is not supported by contact model " + model.getClass().getSimpleName());
+
+		if (episimConfig.isOccupancyIndex() && !(model instanceof OccupancyContactModel))
+			throw new IllegalStateException("The occupancy index is not supported by contact model " + model.getClass().getSimpleName());
+
+		// the compartment model is calibrated with the recorded contacts
+		if (episimConfig.getHybridThreshold() >= 0 && !(model instanceof RecordingContactModel))
+			throw new IllegalStateException("The hybrid mode is not supported by contact model " + model.getClass().getSimpleName());
+	}
+
+	/**
+	 * Create separate participation, testing and progression models for each person partition, so that they can be updated in parallel.
+	 */
+	private void createStateUpdateModels() {
+
+		if (episimConfig.getStateUpdatePartitions() <= 1)
+			return;
+
+		log.info("Initializing models for {} state update partitions", episimConfig.getStateUpdatePartitions());
+
+		for (int i = 0; i < episimConfig.getStateUpdatePartitions(); i++) {
+
+			// the seed state is set each day by this class
+			SplittableRandom partitionRnd = new SplittableRandom(0);
+
+			AbstractModule childModule = new AbstractModule() {
+				@Override
+				protected void configure() {
+					bind(SplittableRandom.class).toInstance(partitionRnd);
+				}
+			};
+
+			Injector inj = GuiceUtils.createCopiedInjector(injector, List.of(childModule), ActivityParticipationModel.class, TestingModel.class,
+					FaceMaskModel.class, ProgressionModel.class, DiseaseStatusTransitionModel.class);
+
+			TestingModel testing = inj.getInstance(TestingModel.class);
+			testing.collectTests();
+
+			// models that can not update partitions are not used
+			ProgressionModel progression = inj.getInstance(ProgressionModel.class);
+			if (!progression.collectTracing(progressionModel))
+				progression = null;
+
+			stateUpdateModels.add(new StateUpdateModels(partitionRnd, inj.getInstance(ActivityParticipationModel.class), testing,
+					inj.getInstance(FaceMaskModel.class), progression));
+		}
+	}
+
+	/**
+	 * Run a task for each person partition, in parallel if there is more than one.
+	 */
+	private void runPartitioned(IntConsumer task) {
+
+		if (personPartitions.length == 1) {
+			task.accept(0);
+			return;
+		}
+
+		var futures = new CompletableFuture[personPartitions.length];
+		for (int i = 0; i < personPartitions.length; i++) {
+			final int partition = i;
+			futures[i] = CompletableFuture.runAsync(() -> task.accept(partition), executor);
+		}
+
+		try {
+			CompletableFuture.allOf(futures).join();
+		} catch (CompletionException e) {
+			log.error("A state update caused the exception: ", e.getCause());
+			executor.shutdown();
+			throw e;
+		}
+	}
+
+	/**
+	 * Update the antibodies of persons with an immunity event on the previous day, levels of all others only decay.
+	 * The sum is only recomputed from all persons on the first day, afterwards it is decayed and only changes of persons with
+	 * an immunity event are added. Models without lazy decay are called for all persons instead.
+	 *
+	 * @return sum of antibodies per strain, partition sums are added in fixed order
+	 */
+	private Object2DoubleMap<VirusStrain> updateAntibodies(int iteration) {
+
+		VirusStrain[] strains = VirusStrain.values();
+
+		// decay until this day is evaluated lazily for all persons
+		personStore.setAntibodyDay(iteration);
+
+		List<EpisimPerson> immunityEvents = personStore.pollImmunityEvents(iteration - 1);
+
+		if (Double.isNaN(antibodyModel.getDailyDecay())) {
+
+			antibodySum = new double[strains.length];
+			for (EpisimPerson person : personMap.values()) {
+				antibodyModel.updateAntibodies(person, iteration);
+				person.sumAntibodies(antibodySum);
+			}
+
+		} else {
+
+			boolean incremental = antibodySum != null && antibodySumDay == iteration - 1;
+			double[] changes = new double[strains.length];
+
+			// persons are ordered, so that the sum is reproducible
+			for (EpisimPerson person : immunityEvents) {
+				if (incremental)
+					person.sumAntibodies(changes, iteration, -1);
+
+				antibodyModel.updateAntibodies(person, iteration);
+
+				if (incremental)
+					person.sumAntibodies(changes, iteration, 1);
+			}
+
+			if (incremental) {
+				for (int i = 0; i < strains.length; i++)
+					antibodySum[i] = antibodySum[i] * personStore.getAntibodyDecay() + changes[i];
+			} else {
+
+				double[][] sums = new double[personPartitions.length][strains.length];
+				runPartitioned(i -> {
+					for (EpisimPerson person : personPartitions[i]) {
+						person.sumAntibodies(sums[i]);
+					}
+				});
+
+				antibodySum = new double[strains.length];
+				for (double[] sum : sums) {
+					for (int i = 0; i < strains.length; i++) {
+						antibodySum[i] += sum[i];
+					}
+				}
+			}
+		}
+
+		antibodySumDay = iteration;
+
+		Object2DoubleMap<VirusStrain> antibodies = new Object2DoubleOpenHashMap<>();
+		for (int i = 0; i < strains.length; i++) {
+			antibodies.put(strains[i], antibodySum[i]);
+		}
+
+		return antibodies;
+	}
+
+	/**
+	 * Update the disease state of all persons. Partitions are updated in parallel if the progression model supports it,
+	 * tracing of other persons is then performed afterwards.
+	 */
+	private void updateProgression(int iteration) {
+
+		// progression may trace and change other persons, therefore it is performed serially without partition models
+		if (stateUpdateModels.isEmpty() || stateUpdateModels.get(0).progression == null) {
+			for (EpisimPerson person : personMap.values()) {
+				progressionModel.updateState(person, iteration);
+			}
+			return;
+		}
+
+		// seeds are drawn in fixed order, so that results only depend on the number of partitions
+		for (StateUpdateModels models : stateUpdateModels) {
+			EpisimUtils.setSeed(models.rnd, rnd.nextLong());
+			models.progression.setIteration(iteration);
+		}
+
+		List<List<Runnable>> reports = new ArrayList<>();
+		for (int i = 0; i < personPartitions.length; i++) {
+			reports.add(new ArrayList<>());
+		}
+
+		runPartitioned(i -> {
+			ProgressionModel progression = stateUpdateModels.get(i).progression;
+			reporting.bufferPersonStatus(reports.get(i));
+			try {
+				for (EpisimPerson person : personPartitions[i]) {
+					progression.updateState(person, iteration);
+				}
+			} finally {
+				reporting.bufferPersonStatus(null);
+			}
+		});
+
+		// status changes are reported in the same order as the serial update
+		for (List<Runnable> report : reports) {
+			report.forEach(Runnable::run);
+		}
+
+		// tracing capacity of the shared instance is granted in partition order
+		for (StateUpdateModels models : stateUpdateModels) {
+			models.progression.commitTracing(progressionModel);
+		}
+	}
+
+	/**
+	 * Update participation, testing, quarantine and worn masks of all persons for the day.
+	 */
+	private void updateParticipation(int iteration, DayOfWeek day, ImmutableMap<String, Restriction> im) {
+
+		activityParticipationModel.setRestrictionsForIteration(iteration, im);
+
+		RestrictionTable table = RestrictionTable.compile(null, im, episimConfig);
+
+		if (stateUpdateModels.isEmpty()) {
+			testingModel.setIteration(iteration);
+			testingModel.beforeStateUpdates(personMap, iteration, this.report);
+			faceMaskModel.setRestrictionsForIteration(iteration, table);
+			CompartmentModel.Census census = compartments != null ? censuses.get(0) : null;
+			for (EpisimPerson person : personMap.values()) {
+				updateParticipation(person, iteration, day, activityParticipationModel, testingModel, faceMaskModel, census);
+			}
+			return;
+		}
+
+		// seeds are drawn in fixed order, so that results only depend on the number of partitions
+		for (int i = 0; i < stateUpdateModels.size(); i++) {
+			StateUpdateModels models = stateUpdateModels.get(i);
+			EpisimUtils.setSeed(models.rnd, rnd.nextLong());
+
+			models.testing.setIteration(iteration);
+			models.testing.beforeStateUpdates(personMap, iteration, this.report);
+			models.participation.setRestrictionsForIteration(iteration, im);
+			models.masks.setRestrictionsForIteration(iteration, table);
+		}
+
+		runPartitioned(i -> {
+			StateUpdateModels models = stateUpdateModels.get(i);
+			CompartmentModel.Census census = compartments != null ? censuses.get(i) : null;
+			for (EpisimPerson person : personPartitions[i]) {
+				updateParticipation(person, iteration, day, models.participation, models.testing, models.masks, census);
+			}
+		});
+
+		// capacity of the first instance is shared and granted in partition order, i.e. in the same order as the serial update
+		TestingModel shared = stateUpdateModels.get(0).testing;
+		List<EpisimPerson> tested = new ArrayList<>();
+		for (StateUpdateModels models : stateUpdateModels) {
+			models.testing.commitTests(shared, tested::add);
+		}
+
+		for (EpisimPerson person : tested) {
+			activityParticipationModel.applyQuarantine(person, person.getActivityParticipation(), person.getStartOfDay(day), person.getActivities(day));
+		}
+	}
+
+	private static void updateParticipation(EpisimPerson person, int iteration, DayOfWeek day,
+	                                        ActivityParticipationModel participationModel, TestingModel testingModel, FaceMaskModel maskModel,
+	                                        @Nullable CompartmentModel.Census census) {
+
+		// update person activity participation for the day
+		participationModel.updateParticipation(person, person.getActivityParticipation(),
+				person.getStartOfDay(day), person.getActivities(day));
+
+		testingModel.performTesting(person, iteration);
+
+		participationModel.applyQuarantine(person, person.getActivityParticipation(), person.getStartOfDay(day), person.getActivities(day));
+
+		maskModel.assignMasks(person, day);
+
+		if (census != null)
+			census.add(person);
+	}
+
 	/**
 	 * Create a new person and lookup attributes from scenario.
 	 */
@@ -677,7 +1307,7 @@ public final class InfectionEventHandler implements Externalizable {
 
 		boolean traceable = localRnd.nextDouble() < tracingConfig.getEquipmentRate();
 
-		return new EpisimPerson(id, attrs, traceable, reporting);
+		return new EpisimPerson(id, attrs, traceable, reporting, personStore);
 	}
 
 	/**
@@ -763,17 +1393,10 @@ public final class InfectionEventHandler implements Externalizable {
 		progressionModel.setIteration(iteration);
 		progressionModel.beforeStateUpdates(personMap, iteration, this.report);
 
-		// Sum of antibodies
-		Object2DoubleMap<VirusStrain> antibodies = new Object2DoubleOpenHashMap<>();
-
-		for (EpisimPerson person : personMap.values()) {
-			progressionModel.updateState(person, iteration);
-			antibodyModel.updateAntibodies(person, iteration);
+		updateProgression(iteration);
 
-			for (Object2DoubleMap.Entry<VirusStrain> kv : person.getAntibodies().object2DoubleEntrySet()) {
-				antibodies.mergeDouble(kv.getKey(), kv.getDoubleValue(), Double::sum);
-			}
-		}
+		// Sum of antibodies
+		Object2DoubleMap<VirusStrain> antibodies = updateAntibodies(iteration);
 
 		// uncomment if you want immunization stats to be printed on a certain
 		// date or e.g. every month. This produces a lot of large files so use
@@ -828,21 +1451,9 @@ public final class InfectionEventHandler implements Externalizable {
 
 		reporting.reportCpuTime(iteration, "TestingModel", "start", -1);
 		DayOfWeek day = EpisimUtils.getDayOfWeek(episimConfig, iteration);
-		testingModel.setIteration(iteration);
-		testingModel.beforeStateUpdates(personMap, iteration, this.report);
-
-		activityParticipationModel.setRestrictionsForIteration(iteration, im);
-
-		for (EpisimPerson person : personMap.values()) {
-			// update person activity participation for the day
-			activityParticipationModel.updateParticipation(person, person.getActivityParticipation(),
-					person.getStartOfDay(day), person.getActivities(day));
-
-			testingModel.performTesting(person, iteration);
-
-			activityParticipationModel.applyQuarantine(person, person.getActivityParticipation(), person.getStartOfDay(day), person.getActivities(day));
-
-		}
+		updateParticipation(iteration, day, im);
+		if (compartments != null)
+			compartments.setCensus(censuses);
 		reporting.reportCpuTime(iteration, "TestingModel", "finished", -1);
 
 		handlers.forEach(h -> {
@@ -850,6 +1461,8 @@ public final class InfectionEventHandler implements Externalizable {
 			EpisimUtils.setSeed(h.getRnd(), rnd.nextLong());
 		});
 
+		updateCompartmentMode(iteration);
+
 		reporting.reportRestrictions(restrictions, iteration, report.date);
 		reporting.reportCpuTime(iteration, "Reporting", "finished", -1);
 
@@ -862,6 +1475,39 @@ public final class InfectionEventHandler implements Externalizable {
 		return Collections.unmodifiableCollection(personMap.values());
 	}
 
+	Map<Id<ActivityFacility>, EpisimFacility> getFacilityMap() {
+		return Collections.unmodifiableMap(pseudoFacilityMap);
+	}
+
+	Map<Id<Vehicle>, EpisimVehicle> getVehicleMap() {
+		return Collections.unmodifiableMap(vehicleMap);
+	}
+
+	/**
+	 * Containers and persons of each task, as used for the next replay.
+	 */
+	TaskPartition[] getTaskPartitions() {
+		return taskPartitions;
+	}
+
+	/**
+	 * Event indices of each task for the events of one day, or null if they have not been computed.
+	 */
+	@Nullable
+	int[][] getTaskEvents(DayEvents events) {
+		return taskEvents.get(events);
+	}
+
+	@Nullable
+	HouseholdContacts getHouseholdContacts(DayEvents events) {
+		return householdContacts.get(events);
+	}
+
+	@Nullable
+	OccupancyIndex getOccupancyIndex(DayEvents events) {
+		return occupancyIndex.get(events);
+	}
+
 	@Override
 	public void writeExternal(ObjectOutput out) throws IOException {
 
@@ -945,12 +1591,31 @@ public final class InfectionEventHandler implements Externalizable {
 	 * @param day    current day
 	 * @param events events to execute
 	 */
-	void handleEvents(DayOfWeek day, List<Event> events) {
+	void handleEvents(DayOfWeek day, DayEvents events) {
+
+		// processing time is only needed if containers are rebalanced, and only useful with multiple threads
+		final boolean measureCpuTime = episimConfig.getRebalanceInterval() > 0 && handlers.size() > 1;
+
+		// events that were not passed via updateEvents are partitioned or indexed once on first use
+		OccupancyIndex occupancy = episimConfig.isOccupancyIndex() ?
+				occupancyIndex.computeIfAbsent(events, e -> createOccupancyIndex(e, day)) : null;
+
+		int[][] partitions = occupancy == null ? taskEvents.computeIfAbsent(events, this::partitionEvents) : null;
+
+		HouseholdContacts households = episimConfig.isHomeContactEngine() ?
+				householdContacts.computeIfAbsent(events, e -> createHouseholdContacts(e, day)) : null;
+
+		// -1 replays all containers
+		int activeIteration = -1;
+		if (occupancy == null && replayActiveContainersOnly()) {
+			markActiveContainers(events);
+			activeIteration = iteration;
+		}
 
 		if (handlers.size() > 1) {
 			var futures = new CompletableFuture[handlers.size()];
 			for (int i = 0; i < handlers.size(); i++) {
-				ReplayEventsTask task = new ReplayEventsTask(handlers.get(i), events, i, handlers.size());
+				ReplayEventsTask task = new ReplayEventsTask(handlers.get(i), taskPartitions[i], events, partitions == null ? null : partitions[i], occupancy, households, i, handlers.size(), measureCpuTime, activeIteration);
 				futures[i] = CompletableFuture.runAsync(task, executor);
 			}
 
@@ -964,36 +1629,27 @@ public final class InfectionEventHandler implements Externalizable {
 		} else {
 
 			// single threaded task is run directly
-			ReplayEventsTask task = new ReplayEventsTask(handlers.get(0), events, 0, 1);
+			ReplayEventsTask task = new ReplayEventsTask(handlers.get(0), taskPartitions[0], events, partitions == null ? null : partitions[0], occupancy, households, 0, 1, measureCpuTime, activeIteration);
 			task.run();
 
 		}
 
-		// store the infections for a day
-		List<Event> infections = new ArrayList<>();
-
-		// "execute" collected infections
-		for (EpisimPerson person : personMap.values()) {
-			EpisimInfectionEvent e;
-			if ((e = person.checkInfection()) != null)
-				infections.add(e);
-
-			if (!person.getPotentialInfections().isEmpty()) {
-				infections.addAll(person.getPotentialInfections());
-				person.getPotentialInfections().clear();
-			}
-
-		}
+		// "execute" collected infections, only persons found by the handlers need to be processed
+		List<Event> infections = InfectionBuffer.merge(handlers.stream().map(TrajectoryHandler::getInfectionBuffer).collect(Collectors.toList()));
 
 		// report infections in order
-		infections.stream().sorted()
-				.forEach(reporting::reportInfection);
+		infections.forEach(reporting::reportInfection);
 
+		if (compartments != null)
+			compartments.calibrate(day, contactStatistics);
 
 		int totalContacts = handlers.stream().mapToInt(TrajectoryHandler::getNumContacts).sum();
 
 		reporting.reportTotalContacts(totalContacts);
 
+		if (measureCpuTime && iteration % episimConfig.getRebalanceInterval() == 0)
+			rebalanceContainers();
+
 		for (SimulationListener l : listener) {
 			l.onIterationEnd(iteration, episimConfig.getStartDate().plusDays(iteration - 1));
 		}
@@ -1001,6 +1657,26 @@ public final class InfectionEventHandler implements Externalizable {
 	}
 
 
+	/**
+	 * Draw the infections of one day from the compartment model instead of replaying the events.
+	 *
+	 * @param day current day
+	 * @see #isCompartmentMode()
+	 */
+	void handleCompartments(DayOfWeek day) {
+
+		int totalContacts = compartments.step(iteration, day, restrictions, compartmentInfections);
+
+		List<Event> infections = InfectionBuffer.merge(List.of(compartmentInfections));
+		infections.forEach(reporting::reportInfection);
+
+		reporting.reportTotalContacts(totalContacts);
+
+		for (SimulationListener l : listener) {
+			l.onIterationEnd(iteration, episimConfig.getStartDate().plusDays(iteration - 1));
+		}
+	}
+
 	/**
 	 * Read immunization history and init persons.
 	 */
@@ -1031,9 +1707,44 @@ public final class InfectionEventHandler implements Externalizable {
 	 * Container that is a facility and occurred during an activity.
 	 */
 	public static final class EpisimFacility extends EpisimContainer<ActivityFacility> {
+
+		/**
+		 * Whether this facility is only used for home activities and handled by the {@link HouseholdContacts}.
+		 */
+		private boolean household;
+
 		EpisimFacility(Id<ActivityFacility> facilityId) {
 			super(facilityId);
 		}
+
+		public boolean isHousehold() {
+			return household;
+		}
+
+		void setHousehold(boolean household) {
+			this.household = household;
+		}
 	}
-}
 
+	/**
+	 * Models used for the state update of one person partition.
+	 */
+	private static final class StateUpdateModels {
+
+		private final SplittableRandom rnd;
+		private final ActivityParticipationModel participation;
+		private final TestingModel testing;
+		private final FaceMaskModel masks;
+		@Nullable
+		private final ProgressionModel progression;
+
+		private StateUpdateModels(SplittableRandom rnd, ActivityParticipationModel participation, TestingModel testing, FaceMaskModel masks,
+		                          @Nullable ProgressionModel progression) {
+			this.rnd = rnd;
+			this.participation = participation;
+			this.testing = testing;
+			this.masks = masks;
+			this.progression = progression;
+		}
+	}
+}
@@ -0,0 +1,453 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.vehicles.Vehicle;
+
+import java.time.DayOfWeek;
+import java.util.*;
+
+/**
+ * Occupancy intervals of all facilities and vehicles for the events of one day, used to evaluate contacts without replaying the events.
+ * <p>
+ * For every container the visits are stored as (person, enter, leave, activity) intervals sorted by their start. The contacts of a day
+ * are found by sweeping over these intervals, see {@link Sweep}. Visits of persons staying over night have no end, these persons are
+ * kept in the container like during the replay and leave it with their first interval of one of the next days.
+ * Households handled by the {@link HouseholdContacts} are left out.
+ *
+ * @see EpisimConfigGroup#isOccupancyIndex()
+ */
+public final class OccupancyIndex {
+
+	/**
+	 * Interval of the first facility, which the person is at since the start of the day or since a previous day if it stayed over night.
+	 */
+	static final byte FIRST_ACTIVITY = 0;
+	static final byte ACTIVITY = 1;
+	static final byte VEHICLE = 2;
+
+	private final Occupancy[] containers;
+
+	/**
+	 * Containers of each task, derived from their task id.
+	 */
+	private Occupancy[][] tasks;
+
+	private OccupancyIndex(Occupancy[] containers) {
+		this.containers = containers;
+	}
+
+	/**
+	 * Compute the occupancy of all facilities and vehicles from the events of one day.
+	 *
+	 * @param day        day the events are used for, needed to look up the activities of the persons
+	 * @param persons    all persons, with trajectories already initialized
+	 * @param facilities all facilities, households are left out
+	 * @param vehicles   all vehicles
+	 * @param numTasks   number of tasks to partition the containers
+	 */
+	static OccupancyIndex create(DayEvents events, DayOfWeek day, Map<Id<Person>, EpisimPerson> persons,
+	                             Map<Id<ActivityFacility>, InfectionEventHandler.EpisimFacility> facilities,
+	                             Map<Id<Vehicle>, InfectionEventHandler.EpisimVehicle> vehicles, int numTasks) {
+
+		Map<EpisimContainer<?>, List<Interval>> intervals = new IdentityHashMap<>();
+
+		// linked maps, so that intervals are always added in the same order
+		Map<EpisimPerson, Interval> inFacility = new LinkedHashMap<>();
+		Map<EpisimPerson, Interval> inVehicle = new LinkedHashMap<>();
+
+		// all persons are in their first facility at the start of the day
+		for (EpisimPerson person : persons.values()) {
+			InfectionEventHandler.EpisimFacility first = facilities.get(person.getFirstFacilityId(day));
+			if (first != null && !first.isHousehold())
+				inFacility.put(person, new Interval(first, person, 0, person.getFirstActivity(day), FIRST_ACTIVITY));
+		}
+
+		for (int i = 0; i < events.size(); i++) {
+
+			byte kind = events.getKind(i);
+			EpisimPerson person = persons.get(events.getPersonId(i));
+			double time = events.getTime(i);
+
+			if (kind == DayEvents.ACTIVITY_START || kind == DayEvents.ACTIVITY_END) {
+
+				InfectionEventHandler.EpisimFacility facility = facilities.get(events.getFacilityId(i));
+				if (facility == null)
+					continue;
+
+				Interval visit = inFacility.get(person);
+				if (kind == DayEvents.ACTIVITY_START) {
+					if (visit != null) {
+						if (visit.container == facility)
+							continue;
+
+						// the person can only be at one place
+						close(intervals, inFacility.remove(person), time);
+					}
+
+					if (!facility.isHousehold())
+						inFacility.put(person, new Interval(facility, person, time, person.getActivity(day, time), ACTIVITY));
+
+				} else if (visit != null && visit.container == facility)
+					close(intervals, inFacility.remove(person), time);
+
+			} else {
+
+				InfectionEventHandler.EpisimVehicle vehicle = vehicles.get(events.getVehicleId(i));
+				if (vehicle == null)
+					continue;
+
+				Interval visit = inVehicle.get(person);
+				if (kind == DayEvents.ENTERS_VEHICLE) {
+					if (visit != null)
+						close(intervals, inVehicle.remove(person), time);
+
+					inVehicle.put(person, new Interval(vehicle, person, time, EpisimPerson.UNSPECIFIC_ACTIVITY, VEHICLE));
+
+				} else if (visit != null && visit.container == vehicle)
+					close(intervals, inVehicle.remove(person), time);
+			}
+		}
+
+		for (Interval open : inFacility.values()) {
+			// persons staying over night are only removed when they leave on one of the next days
+			if (open.person.getStaysInContainer(day) && open.container.getContainerId().equals(open.person.getLastFacilityId(day)))
+				close(intervals, open, Double.POSITIVE_INFINITY);
+			else
+				close(intervals, open, Math.max(86400, open.start));
+		}
+
+		// persons still in vehicles are removed at the start of the next day
+		for (Interval open : inVehicle.values())
+			close(intervals, open, Double.POSITIVE_INFINITY);
+
+		// iteration order of the maps is used, so that results are deterministic
+		List<Occupancy> result = new ArrayList<>();
+		for (InfectionEventHandler.EpisimFacility facility : facilities.values()) {
+			List<Interval> list = intervals.get(facility);
+			if (list != null)
+				result.add(new Occupancy(facility, list));
+		}
+
+		for (InfectionEventHandler.EpisimVehicle vehicle : vehicles.values()) {
+			List<Interval> list = intervals.get(vehicle);
+			if (list != null)
+				result.add(new Occupancy(vehicle, list));
+		}
+
+		OccupancyIndex index = new OccupancyIndex(result.toArray(new Occupancy[0]));
+		index.partition(numTasks);
+
+		return index;
+	}
+
+	private static void close(Map<EpisimContainer<?>, List<Interval>> intervals, Interval interval, double end) {
+		// the first interval is kept even without duration, persons staying over night leave the container with it
+		if (end <= interval.start && interval.kind != FIRST_ACTIVITY)
+			return;
+
+		interval.end = end;
+		intervals.computeIfAbsent(interval.container, k -> new ArrayList<>()).add(interval);
+	}
+
+	/**
+	 * Assign containers to tasks, needs to be called whenever the task ids of the containers change.
+	 */
+	void partition(int numTasks) {
+
+		int[] counts = new int[numTasks];
+		for (Occupancy o : containers)
+			counts[o.container.getTaskId()]++;
+
+		tasks = new Occupancy[numTasks][];
+		for (int i = 0; i < numTasks; i++)
+			tasks[i] = new Occupancy[counts[i]];
+
+		Arrays.fill(counts, 0);
+		for (Occupancy o : containers) {
+			int task = o.container.getTaskId();
+			tasks[task][counts[task]++] = o;
+		}
+	}
+
+	/**
+	 * Containers the task is responsible for.
+	 */
+	Occupancy[] getContainers(int taskId) {
+		return tasks[taskId];
+	}
+
+	/**
+	 * Number of containers with at least one visitor during the day.
+	 */
+	int size() {
+		return containers.length;
+	}
+
+	/**
+	 * Visits of one container during the day, sorted by their start. Intervals of persons staying over night are last in end order.
+	 */
+	static final class Occupancy {
+
+		private final EpisimContainer<?> container;
+		private final EpisimPerson[] persons;
+		private final double[] start;
+		private final double[] end;
+		private final EpisimPerson.PerformedActivity[] activities;
+		private final byte[] kinds;
+
+		/**
+		 * Indices of the intervals sorted by their end.
+		 */
+		private final int[] endOrder;
+
+		private Occupancy(EpisimContainer<?> container, List<Interval> intervals) {
+
+			// stable, so that intervals with the same start keep the order of the events
+			intervals.sort(Comparator.comparingDouble(i -> i.start));
+
+			int n = intervals.size();
+			this.container = container;
+			this.persons = new EpisimPerson[n];
+			this.start = new double[n];
+			this.end = new double[n];
+			this.activities = new EpisimPerson.PerformedActivity[n];
+			this.kinds = new byte[n];
+			this.endOrder = new int[n];
+
+			for (int i = 0; i < n; i++) {
+				Interval interval = intervals.get(i);
+				persons[i] = interval.person;
+				start[i] = interval.start;
+				end[i] = interval.end;
+				activities[i] = interval.activity;
+				kinds[i] = interval.kind;
+				endOrder[i] = i;
+			}
+
+			IntArrays.mergeSort(endOrder, (a, b) -> Double.compare(end[a], end[b]));
+		}
+
+		EpisimContainer<?> getContainer() {
+			return container;
+		}
+
+		/**
+		 * Number of intervals.
+		 */
+		int size() {
+			return persons.length;
+		}
+
+		EpisimPerson getPerson(int i) {
+			return persons[i];
+		}
+
+		/**
+		 * Time of day the i-th interval starts.
+		 */
+		double getStart(int i) {
+			return start[i];
+		}
+
+		/**
+		 * Time of day the i-th interval ends, infinite if the person stays over night.
+		 */
+		double getEnd(int i) {
+			return end[i];
+		}
+
+		/**
+		 * Whether the person of the i-th interval is still present at the end of the day.
+		 */
+		boolean isOpen(int i) {
+			return end[i] == Double.POSITIVE_INFINITY;
+		}
+
+		EpisimPerson.PerformedActivity getActivity(int i) {
+			return activities[i];
+		}
+
+		/**
+		 * Kind of the i-th interval, one of {@link #FIRST_ACTIVITY}, {@link #ACTIVITY} or {@link #VEHICLE}.
+		 */
+		byte getKind(int i) {
+			return kinds[i];
+		}
+
+		/**
+		 * Index of the interval that ends k-th.
+		 */
+		int getEndOrder(int k) {
+			return endOrder[k];
+		}
+	}
+
+	/**
+	 * Persons present in one container during a sweep over its intervals, in the order they entered.
+	 * Used by the contact models instead of the persons stored in the container.
+	 */
+	public static final class Sweep {
+
+		private EpisimContainer<?> container;
+		private EpisimPerson[] persons = new EpisimPerson[16];
+		private double[] enterTimes = new double[16];
+		private EpisimPerson.PerformedActivity[] activities = new EpisimPerson.PerformedActivity[16];
+		private int[] intervals = new int[16];
+		private int size;
+		private int contagious;
+
+		/**
+		 * Position of each interval of the container, -1 if the person is not present.
+		 */
+		private int[] positions = new int[16];
+
+		/**
+		 * Start a sweep over a container, with all persons removed.
+		 *
+		 * @param numIntervals number of intervals of the container
+		 */
+		void reset(EpisimContainer<?> container, int numIntervals) {
+			this.container = container;
+			this.size = 0;
+			this.contagious = 0;
+
+			if (persons.length < numIntervals) {
+				int capacity = Math.max(numIntervals, persons.length * 2);
+				persons = new EpisimPerson[capacity];
+				enterTimes = new double[capacity];
+				activities = new EpisimPerson.PerformedActivity[capacity];
+				intervals = new int[capacity];
+				positions = new int[capacity];
+			}
+
+			Arrays.fill(positions, 0, numIntervals, -1);
+		}
+
+		/**
+		 * Add the person of an interval.
+		 *
+		 * @param interval  index of the interval in its {@link Occupancy}
+		 * @param enterTime entering time as used by the contact models
+		 */
+		void add(int interval, EpisimPerson person, double enterTime, EpisimPerson.PerformedActivity activity) {
+			persons[size] = person;
+			enterTimes[size] = enterTime;
+			activities[size] = activity;
+			intervals[size] = interval;
+			positions[interval] = size++;
+
+			if (person.infectedButNotSerious())
+				contagious++;
+		}
+
+		/**
+		 * Remove the person of an interval, the last person takes its position.
+		 */
+		void remove(int interval) {
+			int pos = positions[interval];
+			positions[interval] = -1;
+
+			if (persons[pos].infectedButNotSerious())
+				contagious--;
+
+			int last = --size;
+			if (pos != last) {
+				persons[pos] = persons[last];
+				enterTimes[pos] = enterTimes[last];
+				activities[pos] = activities[last];
+				intervals[pos] = intervals[last];
+				positions[intervals[pos]] = pos;
+			}
+
+			persons[last] = null;
+			activities[last] = null;
+		}
+
+		/**
+		 * Position of the person of an interval, -1 if not present.
+		 */
+		int positionOf(int interval) {
+			return positions[interval];
+		}
+
+		/**
+		 * Number of present persons that are infected but not seriously sick, see {@link EpisimPerson#infectedButNotSerious()}.
+		 */
+		int getNumContagious() {
+			return contagious;
+		}
+
+		public EpisimContainer<?> getContainer() {
+			return container;
+		}
+
+		/**
+		 * Number of persons present.
+		 */
+		public int size() {
+			return size;
+		}
+
+		public EpisimPerson getPerson(int i) {
+			return persons[i];
+		}
+
+		/**
+		 * Time the i-th person entered the container.
+		 */
+		public double getEnterTime(int i) {
+			return enterTimes[i];
+		}
+
+		/**
+		 * Activity the i-th person performs in the container.
+		 */
+		public EpisimPerson.PerformedActivity getActivity(int i) {
+			return activities[i];
+		}
+	}
+
+	/**
+	 * Visit of a person, which is open until its end is set.
+	 */
+	private static final class Interval {
+
+		private final EpisimContainer<?> container;
+		private final EpisimPerson person;
+		private final double start;
+		private final EpisimPerson.PerformedActivity activity;
+		private final byte kind;
+		private double end;
+
+		private Interval(EpisimContainer<?> container, EpisimPerson person, double start, EpisimPerson.PerformedActivity activity, byte kind) {
+			this.container = container;
+			this.person = person;
+			this.start = start;
+			this.activity = activity;
+			this.kind = kind;
+		}
+	}
+}
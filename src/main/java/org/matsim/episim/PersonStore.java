@@ -0,0 +1,462 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+
+import it.unimi.dsi.fastutil.doubles.AbstractDoubleList;
+import it.unimi.dsi.fastutil.doubles.DoubleList;
+import it.unimi.dsi.fastutil.ints.AbstractIntList;
+import it.unimi.dsi.fastutil.ints.Int2ObjectAVLTreeMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectSortedMap;
+import it.unimi.dsi.fastutil.ints.IntList;
+import org.matsim.episim.model.VirusStrain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Column based storage of the state of all {@link EpisimPerson}s, which are only views on one row of this store.
+ * <p>
+ * Each person has a fixed index, the state is kept in primitive arrays indexed by it. Histories of variable length, i.e. vaccinations and
+ * infections, are stored as linked entries in shared arrays. Antibody levels are stored as one row per person, indexed by the ordinal of the
+ * {@link VirusStrain}. New persons can only be added while no other thread accesses the store.
+ * <p>
+ * Fixed size columns of different persons may be written concurrently. The histories are not thread safe: entries must only be added by one
+ * thread, while no other thread reads them. The {@link InfectionEventHandler} adds infections and vaccinations only on the main thread,
+ * after all replay threads have finished the day.
+ */
+final class PersonStore {
+
+	private static final int INITIAL_CAPACITY = 16;
+	private static final int NUM_STATUS = EpisimPerson.DiseaseStatus.values().length;
+	static final int NUM_STRAINS = VirusStrain.values().length;
+
+	static final byte TRACEABLE = 1;
+	static final byte VACCINABLE = 2;
+	/**
+	 * Antibody levels of the person have been set or decayed at least once.
+	 */
+	static final byte ANTIBODIES = 4;
+
+	private int size = 0;
+
+	/**
+	 * Daily decay factor of antibodies, given by the {@link org.matsim.episim.model.AntibodyModel}. Levels don't decay until it is set.
+	 */
+	private double antibodyDecay = 1;
+
+	/**
+	 * Precomputed powers of {@link #antibodyDecay}.
+	 */
+	private final double[] decayPowers = new double[1024];
+
+	byte[] status;
+	byte[] quarantineStatus;
+	byte[] testStatus;
+	byte[] flags;
+	short[] age;
+	int[] quarantineDate;
+	int[] testDate;
+	double[] susceptibility;
+	double[] antibodyLevelAtInfection;
+	double[] immuneResponseMultiplier;
+
+	/**
+	 * Time of the first change to each {@link EpisimPerson.DiseaseStatus}, NaN if the status was never attained.
+	 */
+	double[] statusChanges;
+
+	/**
+	 * Antibody level of each person against each strain, at the day given by {@link #antibodyRefDay}.
+	 */
+	double[] antibodies;
+
+	/**
+	 * Day at which the antibody levels of a person were stored. Levels decay from this day on.
+	 */
+	int[] antibodyRefDay;
+
+	/**
+	 * Day at which the antibody levels of all persons are evaluated.
+	 */
+	int antibodyDay;
+
+	/**
+	 * Maximal antibody level reached by each person against each strain.
+	 */
+	double[] maxAntibodies;
+
+	/**
+	 * Number of mask slots of each person, given by the {@link org.matsim.episim.model.FaceMaskModel}.
+	 */
+	private int maskSlots = 0;
+
+	/**
+	 * Masks worn during the current day by each person in each slot, as ordinal of {@link org.matsim.episim.model.FaceMask} or -1 if not assigned.
+	 */
+	byte[] wornMasks = new byte[0];
+
+	/**
+	 * Vaccination type and iteration of all vaccinations.
+	 */
+	final History vaccinations = new History();
+
+	/**
+	 * Virus strain and time of all infections.
+	 */
+	final History infections = new History();
+
+	/**
+	 * Persons with a vaccination or infection on each day, until the day is polled.
+	 */
+	private final Int2ObjectSortedMap<List<EpisimPerson>> immunityEvents = new Int2ObjectAVLTreeMap<>();
+
+	PersonStore() {
+		this(INITIAL_CAPACITY);
+	}
+
+	PersonStore(int capacity) {
+		this(capacity, 1);
+	}
+
+	PersonStore(int capacity, double antibodyDecay) {
+		resize(Math.max(1, capacity));
+		Arrays.fill(decayPowers, 1);
+		setAntibodyDecay(antibodyDecay);
+	}
+
+	/**
+	 * Add a new susceptible person.
+	 *
+	 * @return index of the person
+	 */
+	int add(int age, boolean traceable) {
+		if (size == status.length)
+			resize(size + (size >> 1) + 1);
+
+		int i = size++;
+
+		status[i] = (byte) EpisimPerson.DiseaseStatus.susceptible.ordinal();
+		quarantineStatus[i] = (byte) EpisimPerson.QuarantineStatus.no.ordinal();
+		testStatus[i] = (byte) EpisimPerson.TestStatus.untested.ordinal();
+		flags[i] = (byte) (VACCINABLE | (traceable ? TRACEABLE : 0));
+		this.age[i] = (short) age;
+		quarantineDate[i] = Integer.MIN_VALUE;
+		testDate[i] = -1;
+		susceptibility[i] = 1;
+		antibodyLevelAtInfection[i] = 0;
+		immuneResponseMultiplier[i] = 1;
+		Arrays.fill(statusChanges, i * NUM_STATUS, (i + 1) * NUM_STATUS, Double.NaN);
+		Arrays.fill(wornMasks, i * maskSlots, (i + 1) * maskSlots, (byte) -1);
+
+		vaccinations.add();
+		infections.add();
+
+		return i;
+	}
+
+	private void resize(int capacity) {
+		if (status == null) {
+			status = new byte[capacity];
+			quarantineStatus = new byte[capacity];
+			testStatus = new byte[capacity];
+			flags = new byte[capacity];
+			age = new short[capacity];
+			quarantineDate = new int[capacity];
+			testDate = new int[capacity];
+			antibodyRefDay = new int[capacity];
+			susceptibility = new double[capacity];
+			antibodyLevelAtInfection = new double[capacity];
+			immuneResponseMultiplier = new double[capacity];
+			statusChanges = new double[capacity * NUM_STATUS];
+			antibodies = new double[capacity * NUM_STRAINS];
+			maxAntibodies = new double[capacity * NUM_STRAINS];
+			wornMasks = new byte[capacity * maskSlots];
+			return;
+		}
+
+		status = Arrays.copyOf(status, capacity);
+		quarantineStatus = Arrays.copyOf(quarantineStatus, capacity);
+		testStatus = Arrays.copyOf(testStatus, capacity);
+		flags = Arrays.copyOf(flags, capacity);
+		age = Arrays.copyOf(age, capacity);
+		quarantineDate = Arrays.copyOf(quarantineDate, capacity);
+		testDate = Arrays.copyOf(testDate, capacity);
+		antibodyRefDay = Arrays.copyOf(antibodyRefDay, capacity);
+		susceptibility = Arrays.copyOf(susceptibility, capacity);
+		antibodyLevelAtInfection = Arrays.copyOf(antibodyLevelAtInfection, capacity);
+		immuneResponseMultiplier = Arrays.copyOf(immuneResponseMultiplier, capacity);
+		statusChanges = Arrays.copyOf(statusChanges, capacity * NUM_STATUS);
+		antibodies = Arrays.copyOf(antibodies, capacity * NUM_STRAINS);
+		maxAntibodies = Arrays.copyOf(maxAntibodies, capacity * NUM_STRAINS);
+		wornMasks = Arrays.copyOf(wornMasks, capacity * maskSlots);
+	}
+
+	/**
+	 * Number of stored persons.
+	 */
+	int size() {
+		return size;
+	}
+
+	boolean getFlag(int i, byte flag) {
+		return (flags[i] & flag) != 0;
+	}
+
+	void setFlag(int i, byte flag, boolean value) {
+		if (value)
+			flags[i] |= flag;
+		else
+			flags[i] &= ~flag;
+	}
+
+	double getStatusChange(int i, EpisimPerson.DiseaseStatus status) {
+		return statusChanges[i * NUM_STATUS + status.ordinal()];
+	}
+
+	void setStatusChange(int i, EpisimPerson.DiseaseStatus status, double time) {
+		statusChanges[i * NUM_STATUS + status.ordinal()] = time;
+	}
+
+	int getMaskSlots() {
+		return maskSlots;
+	}
+
+	/**
+	 * Set the number of mask slots per person, all masks are unassigned afterwards.
+	 * Must not be changed while other threads access the store.
+	 */
+	void setMaskSlots(int maskSlots) {
+		if (maskSlots == this.maskSlots)
+			return;
+
+		this.maskSlots = maskSlots;
+		wornMasks = new byte[status.length * maskSlots];
+		Arrays.fill(wornMasks, (byte) -1);
+	}
+
+	/**
+	 * Record that a person was vaccinated or infected on a day. May be called concurrently.
+	 */
+	synchronized void addImmunityEvent(EpisimPerson person, int day) {
+		immunityEvents.computeIfAbsent(day, k -> new ArrayList<>()).add(person);
+	}
+
+	/**
+	 * Persons with an immunity event on a day, ordered by id index and without duplicates.
+	 * Records of this and all previous days are removed.
+	 */
+	synchronized List<EpisimPerson> pollImmunityEvents(int day) {
+		List<EpisimPerson> persons = immunityEvents.get(day);
+		immunityEvents.headMap(day + 1).clear();
+
+		if (persons == null)
+			return List.of();
+
+		persons.sort(Comparator.comparingInt(p -> p.getPersonId().index()));
+
+		List<EpisimPerson> result = new ArrayList<>(persons.size());
+		for (EpisimPerson p : persons) {
+			if (result.isEmpty() || result.get(result.size() - 1) != p)
+				result.add(p);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Set the day at which the antibody levels of all persons are evaluated.
+	 */
+	void setAntibodyDay(int day) {
+		antibodyDay = day;
+	}
+
+	double getAntibodyDecay() {
+		return antibodyDecay;
+	}
+
+	/**
+	 * Set the daily decay factor of antibodies. Must not be changed while other threads access the store.
+	 */
+	void setAntibodyDecay(double antibodyDecay) {
+		if (antibodyDecay == this.antibodyDecay)
+			return;
+
+		this.antibodyDecay = antibodyDecay;
+		for (int i = 0; i < decayPowers.length; i++)
+			decayPowers[i] = Math.pow(antibodyDecay, i);
+	}
+
+	/**
+	 * Factor by which antibodies decay within the given number of days.
+	 */
+	double antibodyDecay(int days) {
+		if (days >= 0 && days < decayPowers.length)
+			return decayPowers[days];
+
+		return Math.pow(antibodyDecay, days);
+	}
+
+	/**
+	 * Approximate memory used by all columns in bytes.
+	 */
+	long getMemoryUsage() {
+		long perPerson = (4 + maskSlots) * Byte.BYTES + Short.BYTES + 3 * Integer.BYTES + (3 + NUM_STATUS + 2 * NUM_STRAINS) * Double.BYTES;
+		return status.length * perPerson + vaccinations.getMemoryUsage() + infections.getMemoryUsage();
+	}
+
+	/**
+	 * Append-only list of (type, value) entries for each person.
+	 * Entries of one person are linked, which is cheap because persons only have few of them.
+	 * Adding an entry may reallocate the shared arrays, so it must not overlap with any other access.
+	 */
+	static final class History {
+
+		/**
+		 * First entry of each person, -1 if there is none.
+		 */
+		private int[] head = new int[0];
+		private byte[] count = new byte[0];
+		private int persons = 0;
+
+		private int size = 0;
+		private int[] next = new int[INITIAL_CAPACITY];
+		private byte[] type = new byte[INITIAL_CAPACITY];
+		private double[] value = new double[INITIAL_CAPACITY];
+
+		private void add() {
+			if (persons == head.length) {
+				int capacity = persons + (persons >> 1) + 1;
+				head = Arrays.copyOf(head, capacity);
+				count = Arrays.copyOf(count, capacity);
+			}
+
+			persons++;
+		}
+
+		/**
+		 * Add an entry for a person.
+		 *
+		 * @param type ordinal of the entry type, at most 255
+		 */
+		void add(int person, int type, double value) {
+			if (count[person] == Byte.MAX_VALUE)
+				throw new IllegalStateException("Too many entries for person " + person);
+
+			if (this.size == next.length) {
+				int capacity = this.size + (this.size >> 1);
+				next = Arrays.copyOf(next, capacity);
+				this.type = Arrays.copyOf(this.type, capacity);
+				this.value = Arrays.copyOf(this.value, capacity);
+			}
+
+			int e = this.size++;
+			next[e] = -1;
+			this.type[e] = (byte) type;
+			this.value[e] = value;
+
+			if (count[person] == 0)
+				head[person] = e;
+			else
+				next[entry(person, count[person] - 1)] = e;
+
+			count[person]++;
+		}
+
+		/**
+		 * Number of entries of a person.
+		 */
+		int size(int person) {
+			return count[person];
+		}
+
+		private int entry(int person, int idx) {
+			if (idx < 0 || idx >= count[person])
+				throw new IndexOutOfBoundsException("Index " + idx + " is out of bounds for length " + count[person]);
+
+			int e = head[person];
+			for (int i = 0; i < idx; i++)
+				e = next[e];
+
+			return e;
+		}
+
+		int getType(int person, int idx) {
+			return type[entry(person, idx)] & 0xFF;
+		}
+
+		double getValue(int person, int idx) {
+			return value[entry(person, idx)];
+		}
+
+		/**
+		 * Whether the person has an entry of given type.
+		 */
+		boolean containsType(int person, int t) {
+			int e = head[person];
+			for (int i = 0; i < count[person]; i++, e = next[e]) {
+				if ((type[e] & 0xFF) == t)
+					return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Read-only view on the values of a person.
+		 */
+		DoubleList values(int person) {
+			return new AbstractDoubleList() {
+				@Override
+				public double getDouble(int index) {
+					return getValue(person, index);
+				}
+
+				@Override
+				public int size() {
+					return count[person];
+				}
+			};
+		}
+
+		/**
+		 * Read-only view on the values of a person, which need to be integers.
+		 */
+		IntList intValues(int person) {
+			return new AbstractIntList() {
+				@Override
+				public int getInt(int index) {
+					return (int) getValue(person, index);
+				}
+
+				@Override
+				public int size() {
+					return count[person];
+				}
+			};
+		}
+
+		private long getMemoryUsage() {
+			return (long) head.length * (Integer.BYTES + Byte.BYTES) + (long) next.length * (Integer.BYTES + Byte.BYTES + Double.BYTES);
+		}
+	}
+}
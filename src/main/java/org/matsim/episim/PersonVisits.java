@@ -0,0 +1,97 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.vehicles.Vehicle;
+
+import java.util.Map;
+
+/**
+ * Containers visited by each person during one day, derived from the events of that day.
+ * Persons are referenced by the index of their id.
+ */
+final class PersonVisits {
+
+	/**
+	 * Start of the visits of each person in {@link #containers}, the last entry is the total number of visits.
+	 */
+	private final int[] offsets;
+	private final EpisimContainer<?>[] containers;
+
+	private PersonVisits(int[] offsets, EpisimContainer<?>[] containers) {
+		this.offsets = offsets;
+		this.containers = containers;
+	}
+
+	/**
+	 * Collect the visited containers from the events of one day.
+	 */
+	static PersonVisits create(DayEvents events,
+	                           Map<Id<ActivityFacility>, InfectionEventHandler.EpisimFacility> facilities,
+	                           Map<Id<Vehicle>, InfectionEventHandler.EpisimVehicle> vehicles) {
+
+		int maxPerson = -1;
+		for (int i = 0; i < events.size(); i++) {
+			maxPerson = Math.max(maxPerson, events.getPersonId(i).index());
+		}
+
+		int[] offsets = new int[maxPerson + 2];
+		for (int i = 0; i < events.size(); i++) {
+			offsets[events.getPersonId(i).index() + 1]++;
+		}
+
+		for (int i = 1; i < offsets.length; i++) {
+			offsets[i] += offsets[i - 1];
+		}
+
+		int[] next = new int[maxPerson + 1];
+		System.arraycopy(offsets, 0, next, 0, next.length);
+
+		EpisimContainer<?>[] containers = new EpisimContainer<?>[events.size()];
+		for (int i = 0; i < events.size(); i++) {
+			byte kind = events.getKind(i);
+			EpisimContainer<?> container;
+			if (kind == DayEvents.ACTIVITY_START || kind == DayEvents.ACTIVITY_END)
+				container = facilities.get(events.getFacilityId(i));
+			else
+				container = vehicles.get(events.getVehicleId(i));
+
+			containers[next[events.getPersonId(i).index()]++] = container;
+		}
+
+		return new PersonVisits(offsets, containers);
+	}
+
+	/**
+	 * Mark all containers visited by a person as active for the given iteration.
+	 */
+	void setActive(EpisimPerson person, int iteration) {
+		int idx = person.getPersonId().index();
+		if (idx + 1 >= offsets.length)
+			return;
+
+		for (int i = offsets[idx]; i < offsets[idx + 1]; i++) {
+			containers[i].setActive(iteration);
+		}
+	}
+}
@@ -20,23 +20,36 @@
  */
 package org.matsim.episim;
 
-import org.matsim.api.core.v01.Id;
-import org.matsim.api.core.v01.events.*;
-import org.matsim.facilities.ActivityFacility;
-import org.matsim.vehicles.Vehicle;
-
-import java.lang.invoke.VarHandle;
-import java.util.Collection;
-import java.util.List;
-
 /**
- * Replays all events for a single day to one {@link TrajectoryHandler}.
+ * Replays the events of a single day to one {@link TrajectoryHandler}.
+ * The events are already partitioned, so that only the indices of events with containers belonging to this task are given.
+ * If the {@link OccupancyIndex} is used, the contacts are evaluated from the occupancy intervals instead.
  */
 final public class ReplayEventsTask implements Runnable {
 
-	private final List<Event> events;
+	private final DayEvents events;
+
+	/**
+	 * Indices of the events to process, null if the occupancy index is used.
+	 */
+	private final int[] indices;
 	private final TrajectoryHandler trajectoryHandler;
 
+	/**
+	 * Containers and persons this task is responsible for.
+	 */
+	private final TaskPartition partition;
+
+	/**
+	 * Occupancy of the containers, which is used instead of replaying the events. May be null.
+	 */
+	private final OccupancyIndex occupancy;
+
+	/**
+	 * Contacts in households, which are evaluated after the events. May be null.
+	 */
+	private final HouseholdContacts households;
+
 	/**
 	 * taskId is in [0, numThreads - 1], and each thread must have
 	 * a different taskId
@@ -44,56 +57,102 @@ final public class ReplayEventsTask implements Runnable {
 	private final int taskId;
 	private final int numThreads;
 
+	/**
+	 * Whether processing time per container should be measured.
+	 */
+	private final boolean measureCpuTime;
+
+	/**
+	 * If not negative, only events of containers active during this iteration are replayed.
+	 */
+	private final int activeIteration;
 
 	public ReplayEventsTask(TrajectoryHandler trajectoryHandler,
-							List<Event> events,
+							TaskPartition partition,
+							DayEvents events,
+							int[] indices,
+							OccupancyIndex occupancy,
+							HouseholdContacts households,
 							int taskId,
-							int numThreads) {
+							int numThreads,
+							boolean measureCpuTime,
+							int activeIteration) {
 		this.trajectoryHandler = trajectoryHandler;
+		this.partition = partition;
 		this.events = events;
+		this.indices = indices;
+		this.occupancy = occupancy;
+		this.households = households;
 		this.taskId = taskId;
 		this.numThreads = numThreads;
+		this.measureCpuTime = measureCpuTime;
+		this.activeIteration = activeIteration;
 	}
 
-	/**
-	 * Check whether the handler is responsible for the facility with this id.
-	 */
-	boolean handlesFacility(Id<ActivityFacility> id) {
-		return trajectoryHandler.getEpisimFacility(id).getTaskId() == taskId;
-	}
+	public void run() {
+		trajectoryHandler.reportCpuTime("start", taskId);
+		trajectoryHandler.onStartDay(partition, measureCpuTime);
 
-	/**
-	 * Check whether the handler is responsible for the vehicle with this id.
-	 */
-	boolean handlesVehicle(Id<Vehicle> id) {
-		return trajectoryHandler.getEpisimVehicle(id).getTaskId() == taskId;
+		if (occupancy != null)
+			trajectoryHandler.onOccupancy(occupancy.getContainers(taskId), measureCpuTime);
+		else
+			replayEvents();
+
+		if (households != null)
+			trajectoryHandler.onEndDay(households.getHouseholds(taskId), measureCpuTime);
+
+		trajectoryHandler.reportCpuTime("finished", taskId);
 	}
 
-	public void run() {
-		trajectoryHandler.reportCpuTime("start", taskId);
-		trajectoryHandler.onStartDay(this::handlesFacility, this::handlesVehicle);
-
-		for (final Event e : events) {
-			if (e instanceof ActivityStartEvent) {
-				ActivityStartEvent ase = (ActivityStartEvent) e;
-				if (handlesFacility(ase.getFacilityId()))
-					trajectoryHandler.handleEvent(ase);
-			} else if (e instanceof ActivityEndEvent) {
-				ActivityEndEvent aee = (ActivityEndEvent) e;
-				if (handlesFacility(aee.getFacilityId())) {
-					trajectoryHandler.handleEvent(aee);
-				}
-			} else if (e instanceof PersonEntersVehicleEvent) {
-				PersonEntersVehicleEvent peve = (PersonEntersVehicleEvent) e;
-				if (handlesVehicle(peve.getVehicleId()))
-					trajectoryHandler.handleEvent(peve);
-			} else {
-				PersonLeavesVehicleEvent plve = (PersonLeavesVehicleEvent) e;
-				if (handlesVehicle(plve.getVehicleId()))
-					trajectoryHandler.handleEvent(plve);
+	private void replayEvents() {
+		if (measureCpuTime) {
+			for (final int i : indices) {
+				if (skip(i))
+					continue;
+
+				long start = System.nanoTime();
+				handleEvent(i);
+				getContainer(i).addCpuTime(System.nanoTime() - start);
+			}
+		} else {
+			for (final int i : indices) {
+				if (!skip(i))
+					handleEvent(i);
 			}
 		}
+	}
 
-		trajectoryHandler.reportCpuTime("finished", taskId);
+	private void handleEvent(int i) {
+		switch (events.getKind(i)) {
+			case DayEvents.ACTIVITY_START:
+				trajectoryHandler.handleActivityStart(events, i);
+				break;
+			case DayEvents.ACTIVITY_END:
+				trajectoryHandler.handleActivityEnd(events, i);
+				break;
+			case DayEvents.ENTERS_VEHICLE:
+				trajectoryHandler.handleEntersVehicle(events, i);
+				break;
+			default:
+				trajectoryHandler.handleLeavesVehicle(events, i);
+		}
+	}
+
+	/**
+	 * Whether the i-th event belongs to an inactive container and does not need to be replayed.
+	 */
+	private boolean skip(int i) {
+		return activeIteration >= 0 && !getContainer(i).isActive(activeIteration);
+	}
+
+	/**
+	 * Container of the i-th event.
+	 */
+	private EpisimContainer<?> getContainer(int i) {
+		byte kind = events.getKind(i);
+		if (kind == DayEvents.ACTIVITY_START || kind == DayEvents.ACTIVITY_END)
+			return trajectoryHandler.getEpisimFacility(events.getFacilityId(i));
+		else
+			return trajectoryHandler.getEpisimVehicle(events.getVehicleId(i));
 	}
 }
@@ -24,11 +24,9 @@ import com.google.inject.Inject;
 import org.apache.commons.lang3.NotImplementedException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.events.*;
-import org.matsim.api.core.v01.network.Link;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.api.internal.HasPersonId;
 import org.matsim.core.events.EventsUtils;
@@ -38,6 +36,7 @@ import org.matsim.core.router.TripStructureUtils;
 import org.matsim.facilities.ActivityFacility;
 
 import javax.annotation.Nullable;
+import java.nio.file.Path;
 import java.time.DayOfWeek;
 import java.util.*;
 
@@ -49,12 +48,16 @@ public final class ReplayHandler {
 	private static final Logger log = LogManager.getLogger(ReplayHandler.class);
 
 	/**
-	 * Needed in createEpisimFacilityId.
+	 * Describes the filtering of {@link #shouldHandleActivityEvent(HasPersonId, String)} and {@link #shouldHandlePersonEvent(HasPersonId)}.
+	 * Needs to be changed together with them, because it is part of the key for cached events.
 	 */
-	private final EpisimConfigGroup episimConfig;
+	static final String EVENT_FILTER = "act:drt,rt,stage;person:pt_pt,pt_tr,drt,rt";
 
+	/**
+	 * Needed for the coordinates of activity start events.
+	 */
 	private final Scenario scenario;
-	private final Map<DayOfWeek, List<Event>> events = new EnumMap<>(DayOfWeek.class);
+	private final Map<DayOfWeek, DayEvents> events = new EnumMap<>(DayOfWeek.class);
 
 	/**
 	 * Constructor with optional scenario. Events will be read from given {@link EpisimConfigGroup#getInputEventsFiles()}.
@@ -62,9 +65,7 @@ public final class ReplayHandler {
 	@Inject
 	public ReplayHandler(EpisimConfigGroup config, @Nullable Scenario scenario) {
 		this.scenario = scenario;
-		this.episimConfig = config;
-
-		this.events.putAll(readEvents(episimConfig));
+		this.events.putAll(readDayEvents(config));
 
 		if (events.size() != 7) {
 			EnumSet<DayOfWeek> missing = EnumSet.complementOf(EnumSet.copyOf(events.keySet()));
@@ -79,9 +80,8 @@ public final class ReplayHandler {
 	 * @param events ordered events for all weekdays
 	 */
 	public ReplayHandler(Map<DayOfWeek, List<Event>> events) {
-		this.events.putAll(events);
+		this.events.putAll(DayEvents.of(events));
 		this.scenario = null;
-		this.episimConfig = null;
 	}
 
 	/**
@@ -92,29 +92,63 @@ public final class ReplayHandler {
 	}
 
 	/**
-	 * All available events.
+	 * All available events as MATSim events. The lists are views that create the events on access.
+	 *
+	 * @see #getDayEvents()
 	 */
 	public Map<DayOfWeek, List<Event>> getEvents() {
+		return DayEvents.asLists(events);
+	}
+
+	/**
+	 * All available events in their compact representation.
+	 */
+	public Map<DayOfWeek, DayEvents> getDayEvents() {
 		return new EnumMap<>(events);
 	}
 
 	/**
 	 * Read events as defined in config.
+	 *
+	 * @see #readDayEvents(EpisimConfigGroup)
 	 */
 	public Map<DayOfWeek, List<Event>> readEvents(EpisimConfigGroup config) {
+		return DayEvents.asLists(readDayEvents(config));
+	}
+
+	/**
+	 * Read events as defined in config into their compact representation.
+	 */
+	public Map<DayOfWeek, DayEvents> readDayEvents(EpisimConfigGroup config) {
+
+		EnumMap<DayOfWeek, DayEvents> map = new EnumMap<>(DayOfWeek.class);
 
-		EnumMap<DayOfWeek, List<Event>> map = new EnumMap<>(DayOfWeek.class);
+		EventCache cache = config.getEventCache() != null ?
+				new EventCache(Path.of(config.getEventCache()), config.getFacilitiesHandling()) : null;
 
 		for (EpisimConfigGroup.EventFileParams input : config.getInputEventsFiles()) {
 
-			List<Event> eventsForDay = new ArrayList<>();
-			EventsManager manager = EventsUtils.createEventsManager();
-			manager.addHandler(new EventReader(eventsForDay));
-			EventsUtils.readEvents(manager, input.getPath());
-			manager.finishProcessing();
+			String key = cache != null ? cache.createKey(input.getPath()) : null;
+			DayEvents eventsForDay = key != null ? cache.read(key) : null;
+
+			if (eventsForDay == null) {
+				eventsForDay = new DayEvents();
+				EventsManager manager = EventsUtils.createEventsManager();
+				manager.addHandler(new EventReader(eventsForDay, config.getFacilitiesHandling()));
+				EventsUtils.readEvents(manager, input.getPath());
+				manager.finishProcessing();
+				eventsForDay.trim();
+
+				if (key != null)
+					cache.write(key, eventsForDay);
+			}
+
+			// coordinates are not stored, but derived from the network when events are created
+			if (scenario != null)
+				eventsForDay.setNetwork(scenario.getNetwork());
 
-			log.info("Read in {} events for {}, with time range {} - {}", eventsForDay.size(), input.getDays(), eventsForDay.get(0).getTime(),
-					eventsForDay.get(eventsForDay.size() - 1).getTime());
+			log.info("Read in {} events for {}, with time range {} - {}", eventsForDay.size(), input.getDays(), eventsForDay.getTime(0),
+					eventsForDay.getTime(eventsForDay.size() - 1));
 
 			for (DayOfWeek day : input.getDays()) {
 				if (map.containsKey(day))
@@ -132,7 +166,7 @@ public final class ReplayHandler {
 	 *
 	 * @param events new events to store
 	 */
-	void setEvents(Map<DayOfWeek, List<Event>> events) {
+	void setEvents(Map<DayOfWeek, DayEvents> events) {
 		this.events.clear();
 		this.events.putAll(events);
 	}
@@ -142,16 +176,17 @@ public final class ReplayHandler {
 	 */
 	private final class EventReader implements BasicEventHandler {
 
-		private final List<Event> events;
+		private final DayEvents events;
+		private final EpisimConfigGroup.FacilitiesHandling facilitiesHandling;
 
-		private EventReader(List<Event> events) {
+		private EventReader(DayEvents events, EpisimConfigGroup.FacilitiesHandling facilitiesHandling) {
 			this.events = events;
+			this.facilitiesHandling = facilitiesHandling;
 		}
 
 		@Override
 		public void handleEvent(Event event) {
 
-			// Add coordinate information if not present
 			if (event instanceof ActivityStartEvent) {
 				ActivityStartEvent e = (ActivityStartEvent) event;
 
@@ -159,15 +194,7 @@ public final class ReplayHandler {
 					return;
 				}
 
-				Coord coord = e.getCoord();
-				if (coord == null && scenario != null && scenario.getNetwork().getLinks().containsKey(e.getLinkId())) {
-					Link link = scenario.getNetwork().getLinks().get(e.getLinkId());
-					coord = link.getToNode().getCoord();
-				}
-
-				event = new ActivityStartEvent(e.getTime(), e.getPersonId(), e.getLinkId(),
-						createEpisimFacilityId(e),
-						e.getActType().intern(), coord);
+				events.addActivity(DayEvents.ACTIVITY_START, e.getTime(), e.getPersonId(), createEpisimFacilityId(e, facilitiesHandling), e.getLinkId(), e.getActType());
 			} else if (event instanceof ActivityEndEvent) {
 				ActivityEndEvent e = (ActivityEndEvent) event;
 
@@ -175,22 +202,22 @@ public final class ReplayHandler {
 					return;
 				}
 
-				String actType = e.getActType().intern();
-				double time = e.getTime();
-				event = new ActivityEndEvent(time, e.getPersonId(), e.getLinkId(),
-						createEpisimFacilityId(e),
-						actType);
+				events.addActivity(DayEvents.ACTIVITY_END, e.getTime(), e.getPersonId(), createEpisimFacilityId(e, facilitiesHandling), e.getLinkId(), e.getActType());
 			} else if (event instanceof PersonEntersVehicleEvent) {
-				if (!shouldHandlePersonEvent((PersonEntersVehicleEvent) event)) {
+				PersonEntersVehicleEvent e = (PersonEntersVehicleEvent) event;
+				if (!shouldHandlePersonEvent(e)) {
 					return;
 				}
+
+				events.addVehicle(DayEvents.ENTERS_VEHICLE, e.getTime(), e.getPersonId(), e.getVehicleId());
 			} else if (event instanceof PersonLeavesVehicleEvent) {
-				if (!shouldHandlePersonEvent((PersonLeavesVehicleEvent) event)) {
+				PersonLeavesVehicleEvent e = (PersonLeavesVehicleEvent) event;
+				if (!shouldHandlePersonEvent(e)) {
 					return;
 				}
-			}
 
-			events.add(event);
+				events.addVehicle(DayEvents.LEAVES_VEHICLE, e.getTime(), e.getPersonId(), e.getVehicleId());
+			}
 		}
 
 
@@ -216,14 +243,14 @@ public final class ReplayHandler {
 		return !id.startsWith("pt_pt") && !id.startsWith("pt_tr") && !id.startsWith("drt") && !id.startsWith("rt");
 	}
 
-	private Id<ActivityFacility> createEpisimFacilityId(HasFacilityId event) {
-		if (episimConfig.getFacilitiesHandling() == EpisimConfigGroup.FacilitiesHandling.snz) {
+	private static Id<ActivityFacility> createEpisimFacilityId(HasFacilityId event, EpisimConfigGroup.FacilitiesHandling facilitiesHandling) {
+		if (facilitiesHandling == EpisimConfigGroup.FacilitiesHandling.snz) {
 			Id<ActivityFacility> id = event.getFacilityId();
 			if (id == null)
 				throw new IllegalStateException("No facility id present. Please switch to episimConfig.setFacilitiesHandling( EpisimConfigGroup.FacilitiesHandling.bln ) ");
 
 			return id;
-		} else if (episimConfig.getFacilitiesHandling() == EpisimConfigGroup.FacilitiesHandling.bln) {
+		} else if (facilitiesHandling == EpisimConfigGroup.FacilitiesHandling.bln) {
 			if (event instanceof ActivityStartEvent) {
 				ActivityStartEvent theEvent = (ActivityStartEvent) event;
 				return Id.create(theEvent.getActType().split("_")[0] + "_" + theEvent.getLinkId().toString(), ActivityFacility.class);
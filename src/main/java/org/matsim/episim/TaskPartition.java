@@ -0,0 +1,168 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.vehicles.Vehicle;
+
+import java.time.DayOfWeek;
+import java.util.*;
+
+/**
+ * Containers and persons a single {@link ReplayEventsTask} is responsible for, derived from the task id of the containers.
+ * Has to be recreated whenever containers are assigned to different tasks.
+ */
+final class TaskPartition {
+
+	private final InfectionEventHandler.EpisimFacility[] facilities;
+	private final InfectionEventHandler.EpisimVehicle[] vehicles;
+
+	/**
+	 * Persons whose first facility of a day belongs to this task, indexed by day of week.
+	 */
+	private final EpisimPerson[][] persons;
+
+	private TaskPartition(InfectionEventHandler.EpisimFacility[] facilities, InfectionEventHandler.EpisimVehicle[] vehicles, EpisimPerson[][] persons) {
+		this.facilities = facilities;
+		this.vehicles = vehicles;
+		this.persons = persons;
+	}
+
+	/**
+	 * Partition all containers and persons by task id, the iteration order of the given collections is preserved.
+	 */
+	static TaskPartition[] create(int numTasks, Collection<InfectionEventHandler.EpisimFacility> facilities,
+	                              Collection<InfectionEventHandler.EpisimVehicle> vehicles,
+	                              Collection<EpisimPerson> persons,
+	                              Map<?, InfectionEventHandler.EpisimFacility> facilityMap) {
+
+		List<List<InfectionEventHandler.EpisimFacility>> f = createLists(numTasks);
+		for (InfectionEventHandler.EpisimFacility facility : facilities) {
+			f.get(facility.getTaskId()).add(facility);
+		}
+
+		List<List<InfectionEventHandler.EpisimVehicle>> v = createLists(numTasks);
+		for (InfectionEventHandler.EpisimVehicle vehicle : vehicles) {
+			v.get(vehicle.getTaskId()).add(vehicle);
+		}
+
+		EpisimPerson[][][] p = new EpisimPerson[numTasks][DayOfWeek.values().length][];
+
+		for (DayOfWeek day : DayOfWeek.values()) {
+
+			List<List<EpisimPerson>> perDay = createLists(numTasks);
+			for (EpisimPerson person : persons) {
+				int task = facilityMap.get(person.getFirstFacilityId(day)).getTaskId();
+				perDay.get(task).add(person);
+			}
+
+			for (int i = 0; i < numTasks; i++) {
+				EpisimPerson[] array = perDay.get(i).toArray(new EpisimPerson[0]);
+
+				// days are often identical, in that case the array is shared
+				if (day.getValue() > 1 && Arrays.equals(array, p[i][day.getValue() - 2]))
+					array = p[i][day.getValue() - 2];
+
+				p[i][day.getValue() - 1] = array;
+			}
+		}
+
+		TaskPartition[] result = new TaskPartition[numTasks];
+		for (int i = 0; i < numTasks; i++) {
+			result[i] = new TaskPartition(
+					f.get(i).toArray(new InfectionEventHandler.EpisimFacility[0]),
+					v.get(i).toArray(new InfectionEventHandler.EpisimVehicle[0]),
+					p[i]
+			);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Split the events of one day by the task id of the container they refer to. The indices of each task are in ascending order.
+	 * Needs to be recomputed whenever the task ids of the containers change.
+	 * Events of households are left out, their contacts are computed by the {@link HouseholdContacts}.
+	 */
+	static int[][] partitionEvents(DayEvents events, int numTasks,
+	                               Map<Id<ActivityFacility>, InfectionEventHandler.EpisimFacility> facilityMap,
+	                               Map<Id<Vehicle>, InfectionEventHandler.EpisimVehicle> vehicleMap) {
+
+		final int[] taskIds = new int[events.size()];
+		final int[] counts = new int[numTasks];
+
+		for (int i = 0; i < events.size(); i++) {
+			final byte kind = events.getKind(i);
+			EpisimContainer<?> container;
+			if (kind == DayEvents.ACTIVITY_START || kind == DayEvents.ACTIVITY_END)
+				container = facilityMap.get(events.getFacilityId(i));
+			else
+				container = vehicleMap.get(events.getVehicleId(i));
+
+			if (container instanceof InfectionEventHandler.EpisimFacility && ((InfectionEventHandler.EpisimFacility) container).isHousehold()) {
+				taskIds[i] = -1;
+				continue;
+			}
+
+			taskIds[i] = container.getTaskId();
+			counts[taskIds[i]]++;
+		}
+
+		int[][] result = new int[numTasks][];
+		for (int i = 0; i < numTasks; i++)
+			result[i] = new int[counts[i]];
+
+		Arrays.fill(counts, 0);
+		for (int i = 0; i < taskIds.length; i++) {
+			final int task = taskIds[i];
+			if (task == -1)
+				continue;
+
+			result[task][counts[task]++] = i;
+		}
+
+		return result;
+	}
+
+	private static <T> List<List<T>> createLists(int n) {
+		List<List<T>> lists = new ArrayList<>(n);
+		for (int i = 0; i < n; i++)
+			lists.add(new ArrayList<>());
+
+		return lists;
+	}
+
+	InfectionEventHandler.EpisimFacility[] getFacilities() {
+		return facilities;
+	}
+
+	InfectionEventHandler.EpisimVehicle[] getVehicles() {
+		return vehicles;
+	}
+
+	/**
+	 * Persons that start the day in a facility of this task.
+	 */
+	EpisimPerson[] getPersons(DayOfWeek day) {
+		return persons[day.getValue() - 1];
+	}
+}
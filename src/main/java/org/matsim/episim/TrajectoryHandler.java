@@ -5,12 +5,11 @@ import com.google.inject.Inject;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Id;
-import org.matsim.api.core.v01.events.ActivityEndEvent;
-import org.matsim.api.core.v01.events.ActivityStartEvent;
-import org.matsim.api.core.v01.events.PersonEntersVehicleEvent;
-import org.matsim.api.core.v01.events.PersonLeavesVehicleEvent;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.episim.model.ContactModel;
+import org.matsim.episim.model.HouseholdContactModel;
+import org.matsim.episim.model.OccupancyContactModel;
+import org.matsim.episim.model.RecordingContactModel;
 import org.matsim.episim.policy.Restriction;
 import org.matsim.facilities.ActivityFacility;
 import org.matsim.vehicles.Vehicle;
@@ -41,8 +40,24 @@ final class TrajectoryHandler {
 	 */
 	private final SplittableRandom rnd;
 
+	/**
+	 * Whether input events need to be passed to the reporting, only then MATSim events are created.
+	 */
+	private final boolean writeInputEvents;
+
+	/**
+	 * Infections found by this handler during the day.
+	 */
+	private final InfectionBuffer infectionBuffer = new InfectionBuffer();
+
+	/**
+	 * Persons present during the sweep over a container, only used with the occupancy index.
+	 */
+	private final OccupancyIndex.Sweep sweep = new OccupancyIndex.Sweep();
+
 	private int iteration = 0;
 	private DayOfWeek day;
+	private DayOfWeek prevDay;
 
 	@Inject
 	public TrajectoryHandler(EpisimConfigGroup episimConfig, EpisimReporting reporting, ContactModel model, SplittableRandom rnd,
@@ -56,15 +71,28 @@ final class TrajectoryHandler {
 		this.personMap = personMap;
 		this.vehicleMap = vehicleMap;
 		this.pseudoFacilityMap = pseudoFacilityMap;
+		this.writeInputEvents = episimConfig.getWriteEvents() == EpisimConfigGroup.WriteEvents.all ||
+				episimConfig.getWriteEvents() == EpisimConfigGroup.WriteEvents.input;
+
+		model.setInfectionBuffer(infectionBuffer);
 	}
 
 	SplittableRandom getRnd() {
 		return rnd;
 	}
 
+	ContactModel getContactModel() {
+		return contactModel;
+	}
+
+	InfectionBuffer getInfectionBuffer() {
+		return infectionBuffer;
+	}
+
 	void setRestrictionsForIteration(int iteration, ImmutableMap<String, Restriction> im) {
 		this.iteration = iteration;
 		this.day = EpisimUtils.getDayOfWeek(episimConfig, iteration);
+		this.prevDay = EpisimUtils.getDayOfWeek(episimConfig, iteration - 1);
 		contactModel.setRestrictionsForIteration(iteration, im);
 	}
 
@@ -75,6 +103,13 @@ final class TrajectoryHandler {
 		return contactModel.getNumContacts();
 	}
 
+	/**
+	 * Set the statistics collecting the contacts of contagious persons.
+	 */
+	void setContactStatistics(ContactStatistics statistics) {
+		((RecordingContactModel) contactModel).setContactStatistics(statistics);
+	}
+
 	/**
 	 * Handle plans with "holes" in their trajectory.
 	 * <p>
@@ -136,10 +171,10 @@ final class TrajectoryHandler {
 	/**
 	 * Called of start of day before any handleEvent method.
 	 *
-	 * @param responsible predicate for checking if the handler is responsible for a certain facility
+	 * @param partition      containers and persons this handler is responsible for
+	 * @param measureCpuTime whether processing time per container should be measured
 	 */
-	public void onStartDay(Predicate<Id<ActivityFacility>> responsibleFacility,
-	                       Predicate<Id<Vehicle>> responsibleVehicle) {
+	void onStartDay(TaskPartition partition, boolean measureCpuTime) {
 
 		double now = EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), 0, iteration);
 		DayOfWeek day = EpisimUtils.getDayOfWeek(episimConfig, iteration);
@@ -147,9 +182,9 @@ final class TrajectoryHandler {
 		// need to use previous as in config
 		DayOfWeek prevDay = EpisimUtils.getDayOfWeek(episimConfig, iteration - 1);
 
-		for (InfectionEventHandler.EpisimFacility facility : pseudoFacilityMap.values()) {
-			if (!responsibleFacility.test(facility.getContainerId()))
-				continue;
+		for (InfectionEventHandler.EpisimFacility facility : partition.getFacilities()) {
+
+			long start = measureCpuTime ? System.nanoTime() : 0;
 
 			facility.resetContagiousCounter();
 
@@ -176,12 +211,18 @@ final class TrajectoryHandler {
 				} else if (person.infectedButNotSerious())
 					facility.countContagious(1);
 			}
+
+			// disease status of remaining persons may have changed over night
+			facility.updateStatusLists();
+
+			if (measureCpuTime)
+				facility.addCpuTime(System.nanoTime() - start);
 		}
 
 		// all persons still in vehicles are removed at the end of the day
-		for (InfectionEventHandler.EpisimVehicle vehicle : vehicleMap.values()) {
-			if (!responsibleVehicle.test(vehicle.getContainerId()))
-				continue;
+		for (InfectionEventHandler.EpisimVehicle vehicle : partition.getVehicles()) {
+
+			long start = measureCpuTime ? System.nanoTime() : 0;
 
 			Iterator<EpisimPerson> it = vehicle.getPersons().iterator();
 			while (it.hasNext()) {
@@ -189,18 +230,23 @@ final class TrajectoryHandler {
 				contactModel.infectionDynamicsVehicle(person, vehicle, now);
 				vehicle.removePerson(person, it);
 			}
+
+			if (measureCpuTime)
+				vehicle.addCpuTime(System.nanoTime() - start);
 		}
 
 
-		for (EpisimPerson person : personMap.values()) {
+		// first activities are part of the occupancy intervals
+		if (episimConfig.isOccupancyIndex())
+			return;
+
+		for (EpisimPerson person : partition.getPersons(day)) {
 
 			Id<ActivityFacility> firstFacilityId = person.getFirstFacilityId(day);
 			InfectionEventHandler.EpisimFacility firstFacility = pseudoFacilityMap.get(firstFacilityId);
 
-			if (!responsibleFacility.test(firstFacilityId))
-				continue;
-
-			if (!person.checkFirstActivity(day, 0))
+			// contacts in households are computed separately
+			if (firstFacility.isHousehold() || !person.checkFirstActivity(day, 0))
 				continue;
 
 			if (!person.getStaysInContainer(prevDay) || !person.getLastFacilityId(prevDay).equals(firstFacilityId)) {
@@ -210,6 +256,200 @@ final class TrajectoryHandler {
 		}
 	}
 
+	/**
+	 * Called at the end of the day after all events, evaluates the contacts in the given households.
+	 * The contact model needs to be a {@link HouseholdContactModel}.
+	 *
+	 * @param measureCpuTime whether processing time per household should be measured
+	 */
+	void onEndDay(HouseholdContacts.Household[] households, boolean measureCpuTime) {
+
+		HouseholdContactModel householdModel = (HouseholdContactModel) contactModel;
+
+		double startOfDay = EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), 0, iteration);
+		double now = EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), 24 * 60 * 60, iteration);
+		boolean reportTimeUse = episimConfig.getReportTimeUse() == EpisimConfigGroup.ReportTimeUse.yes;
+
+		for (HouseholdContacts.Household household : households) {
+
+			long start = measureCpuTime ? System.nanoTime() : 0;
+
+			household.startDay(startOfDay);
+
+			if (reportTimeUse) {
+				for (int i = 0; i < household.size(); i++)
+					household.getMember(i).addSpentTime(household.getActivity(i).actType(), household.getTimeSpent(i));
+			}
+
+			householdModel.infectionDynamicsHousehold(household, now);
+			household.endDay();
+
+			if (measureCpuTime)
+				household.getFacility().addCpuTime(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Evaluates the contacts in the given containers by sweeping over their occupancy intervals, used instead of replaying the events.
+	 * Every person that leaves a container is in contact with all persons present at that time, as during the replay.
+	 * Persons staying over night are kept in the container and taken over by the sweep of the next day, with their original entering time.
+	 * Needs to be called after {@link #onStartDay(TaskPartition, boolean)}, which evaluates the persons leaving at midnight.
+	 * The contact model needs to be an {@link OccupancyContactModel}.
+	 *
+	 * @param measureCpuTime whether processing time per container should be measured
+	 * @see EpisimConfigGroup#isOccupancyIndex()
+	 */
+	void onOccupancy(OccupancyIndex.Occupancy[] containers, boolean measureCpuTime) {
+
+		boolean reportTimeUse = episimConfig.getReportTimeUse() == EpisimConfigGroup.ReportTimeUse.yes;
+		boolean contagiousOptimization = episimConfig.getContagiousOptimization() != EpisimConfigGroup.ContagiousOptimization.no;
+
+		for (OccupancyIndex.Occupancy occupancy : containers) {
+
+			long start = measureCpuTime ? System.nanoTime() : 0;
+
+			// no contacts need to be evaluated without any contagious visitor
+			if (contagiousOptimization && !reportTimeUse && !hasContagiousVisitor(occupancy))
+				carryOver(occupancy);
+			else
+				sweep(occupancy, reportTimeUse, contagiousOptimization);
+
+			if (measureCpuTime)
+				occupancy.getContainer().addCpuTime(System.nanoTime() - start);
+		}
+	}
+
+	private void sweep(OccupancyIndex.Occupancy occupancy, boolean reportTimeUse, boolean contagiousOptimization) {
+
+		OccupancyContactModel occupancyModel = (OccupancyContactModel) contactModel;
+		EpisimContainer<?> container = occupancy.getContainer();
+		sweep.reset(container, occupancy.size());
+
+		// persons staying since a previous day are present from the start
+		for (int i = 0; i < occupancy.size() && occupancy.getStart(i) <= 0; i++) {
+			if (isCarriedOver(occupancy, i)) {
+				EpisimPerson person = occupancy.getPerson(i);
+				sweep.add(i, person, container.getContainerEnteringTime(person.getPersonId()), container.getPerformedActivity(person.getPersonId()));
+			}
+		}
+
+		int next = 0;
+		for (int k = 0; k < occupancy.size(); k++) {
+
+			int leaving = occupancy.getEndOrder(k);
+			double end = occupancy.getEnd(leaving);
+
+			// persons entering at the same time are not in contact with the leaving person
+			for (; next < occupancy.size() && occupancy.getStart(next) < end; next++)
+				enter(occupancy, next);
+
+			// only persons staying over night are left
+			if (occupancy.isOpen(leaving))
+				break;
+
+			int pos = sweep.positionOf(leaving);
+			if (pos == -1)
+				continue;
+
+			EpisimPerson person = occupancy.getPerson(leaving);
+			double now = EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), end, iteration);
+
+			if (!contagiousOptimization || sweep.getNumContagious() > 0)
+				occupancyModel.infectionDynamicsOccupancy(sweep, pos, now);
+
+			if (reportTimeUse) {
+				String actType = occupancy.getKind(leaving) == OccupancyIndex.VEHICLE ? "pt" : sweep.getActivity(pos).actType();
+				person.addSpentTime(actType, now - sweep.getEnterTime(pos));
+			}
+
+			if (container.containsPerson(person))
+				container.removePerson(person);
+
+			sweep.remove(leaving);
+		}
+
+		// remaining persons stay in the container until the next day
+		for (int i = 0; i < sweep.size(); i++) {
+			EpisimPerson person = sweep.getPerson(i);
+			if (!container.containsPerson(person))
+				container.addPerson(person, sweep.getEnterTime(i), sweep.getActivity(i));
+		}
+	}
+
+	/**
+	 * Only updates the persons staying over night in the container, without evaluating any contacts.
+	 */
+	private void carryOver(OccupancyIndex.Occupancy occupancy) {
+
+		EpisimContainer<?> container = occupancy.getContainer();
+
+		for (int i = 0; i < occupancy.size(); i++) {
+
+			EpisimPerson person = occupancy.getPerson(i);
+			boolean carriedOver = isCarriedOver(occupancy, i);
+
+			if (!occupancy.isOpen(i)) {
+				if (carriedOver)
+					container.removePerson(person);
+			} else if (!carriedOver && checkParticipation(occupancy, i))
+				container.addPerson(person, EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), occupancy.getStart(i), iteration),
+						occupancy.getActivity(i));
+		}
+	}
+
+	/**
+	 * Add the person of the i-th interval to the sweep, if it takes part in it and is not already present.
+	 */
+	private void enter(OccupancyIndex.Occupancy occupancy, int i) {
+
+		// intervals without duration have no contacts
+		if (sweep.positionOf(i) != -1 || occupancy.getEnd(i) <= occupancy.getStart(i) || !checkParticipation(occupancy, i))
+			return;
+
+		sweep.add(i, occupancy.getPerson(i), EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), occupancy.getStart(i), iteration),
+				occupancy.getActivity(i));
+	}
+
+	/**
+	 * Whether the i-th interval continues the stay of a person that is in the container since a previous day.
+	 */
+	private boolean isCarriedOver(OccupancyIndex.Occupancy occupancy, int i) {
+		return occupancy.getKind(i) == OccupancyIndex.FIRST_ACTIVITY && occupancy.getContainer().containsPerson(occupancy.getPerson(i));
+	}
+
+	/**
+	 * Whether any person taking part in one of the intervals is infected but not seriously sick.
+	 */
+	private boolean hasContagiousVisitor(OccupancyIndex.Occupancy occupancy) {
+		for (int i = 0; i < occupancy.size(); i++) {
+			if (occupancy.getPerson(i).infectedButNotSerious() && (isCarriedOver(occupancy, i) || checkParticipation(occupancy, i)))
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Checks whether the person of the i-th interval takes part in it, analogous to the checks during the replay.
+	 */
+	private boolean checkParticipation(OccupancyIndex.Occupancy occupancy, int i) {
+		EpisimPerson person = occupancy.getPerson(i);
+		double time = occupancy.getStart(i);
+
+		switch (occupancy.getKind(i)) {
+			case OccupancyIndex.FIRST_ACTIVITY:
+				// persons that stayed over night are only present if they have been carried over from the previous day
+				if (person.getStaysInContainer(prevDay) && occupancy.getContainer().getContainerId().equals(person.getLastFacilityId(prevDay)))
+					return false;
+
+				return person.checkFirstActivity(day, time);
+			case OccupancyIndex.ACTIVITY:
+				return checkParticipation(person, time);
+			default:
+				return checkVehicleUsage(person, time);
+		}
+	}
+
 	/**
 	 * Checks whether this person does perform the activity at {@code time}
 	 */
@@ -227,47 +467,48 @@ final class TrajectoryHandler {
 		return person.checkActivity(day, time) && person.checkNextActivity(day, time);
 	}
 
-	public void handleEvent(ActivityStartEvent activityStartEvent) {
-//		double now = activityStartEvent.getTime();
-		double now = EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), activityStartEvent.getTime(), iteration);
+	/**
+	 * Pass the i-th event to the reporting, if input events are written.
+	 */
+	private void writeEvent(DayEvents events, int i) {
+		if (writeInputEvents)
+			reporting.handleEvent(events.getEvent(i));
+	}
+
+	public void handleActivityStart(DayEvents events, int i) {
+		final double time = events.getTime(i);
+		double now = EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), time, iteration);
 
 		// find the person:
-		EpisimPerson episimPerson = this.personMap.get(activityStartEvent.getPersonId());
+		EpisimPerson episimPerson = this.personMap.get(events.getPersonId(i));
 
-		if (!checkParticipation(episimPerson, activityStartEvent.getTime()))
+		if (!checkParticipation(episimPerson, time))
 			return;
 
-		reporting.handleEvent(activityStartEvent);
-
-		// create pseudo facility id that includes the activity type:
-		Id<ActivityFacility> episimFacilityId = activityStartEvent.getFacilityId();
+		writeEvent(events, i);
 
 		// find the facility
-		InfectionEventHandler.EpisimFacility episimFacility = this.pseudoFacilityMap.get(episimFacilityId);
+		InfectionEventHandler.EpisimFacility episimFacility = this.pseudoFacilityMap.get(events.getFacilityId(i));
 
 		// add person to facility
-		episimFacility.addPerson(episimPerson, now, episimPerson.getActivity(day, activityStartEvent.getTime()));
+		episimFacility.addPerson(episimPerson, now, episimPerson.getActivity(day, time));
 
 		contactModel.notifyEnterFacility(episimPerson, episimFacility, now);
 	}
 
-	public void handleEvent(ActivityEndEvent activityEndEvent) {
-//		double now = activityEndEvent.getTime();
-		double now = EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), activityEndEvent.getTime(), iteration);
-
-		EpisimPerson episimPerson = this.personMap.get(activityEndEvent.getPersonId());
+	public void handleActivityEnd(DayEvents events, int i) {
+		double now = EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), events.getTime(i), iteration);
 
-		// create pseudo facility id that includes the activity type:
-		Id<ActivityFacility> episimFacilityId = activityEndEvent.getFacilityId();
+		EpisimPerson episimPerson = this.personMap.get(events.getPersonId(i));
 
 		// find the facility
-		InfectionEventHandler.EpisimFacility episimFacility = this.pseudoFacilityMap.get(episimFacilityId);
+		InfectionEventHandler.EpisimFacility episimFacility = this.pseudoFacilityMap.get(events.getFacilityId(i));
 
 		// person did not perform this activity
 		if (episimConfig.getActivityHandling() == EpisimConfigGroup.ActivityHandling.startOfDay && !episimFacility.containsPerson(episimPerson))
 			return;
 
-		reporting.handleEvent(activityEndEvent);
+		writeEvent(events, i);
 
 		if (episimConfig.getContagiousOptimization() == EpisimConfigGroup.ContagiousOptimization.no ||
 				episimFacility.containsContagious()) {
@@ -276,26 +517,26 @@ final class TrajectoryHandler {
 
 		if (episimConfig.getReportTimeUse() == EpisimConfigGroup.ReportTimeUse.yes) {
 			double timeSpent = now - episimFacility.getContainerEnteringTime(episimPerson.getPersonId());
-			episimPerson.addSpentTime(activityEndEvent.getActType(), timeSpent);
+			episimPerson.addSpentTime(events.getActType(i), timeSpent);
 		}
 
 		episimFacility.removePerson(episimPerson);
 	}
 
-	public void handleEvent(PersonEntersVehicleEvent entersVehicleEvent) {
-//		double now = entersVehicleEvent.getTime();
-		double now = EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), entersVehicleEvent.getTime(), iteration);
+	public void handleEntersVehicle(DayEvents events, int i) {
+		final double time = events.getTime(i);
+		double now = EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), time, iteration);
 
 		// find the person:
-		EpisimPerson episimPerson = this.personMap.get(entersVehicleEvent.getPersonId());
+		EpisimPerson episimPerson = this.personMap.get(events.getPersonId(i));
 
-		if (!checkVehicleUsage(episimPerson, entersVehicleEvent.getTime()))
+		if (!checkVehicleUsage(episimPerson, time))
 			return;
 
-		reporting.handleEvent(entersVehicleEvent);
+		writeEvent(events, i);
 
 		// find the vehicle:
-		InfectionEventHandler.EpisimVehicle episimVehicle = this.vehicleMap.get(entersVehicleEvent.getVehicleId());
+		InfectionEventHandler.EpisimVehicle episimVehicle = this.vehicleMap.get(events.getVehicleId(i));
 
 		// add person to vehicle and memorize entering time:
 		episimVehicle.addPerson(episimPerson, now, EpisimPerson.UNSPECIFIC_ACTIVITY);
@@ -303,20 +544,19 @@ final class TrajectoryHandler {
 		contactModel.notifyEnterVehicle(episimPerson, episimVehicle, now);
 	}
 
-	public void handleEvent(PersonLeavesVehicleEvent leavesVehicleEvent) {
-//		double now = leavesVehicleEvent.getTime();
-		double now = EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), leavesVehicleEvent.getTime(), iteration);
+	public void handleLeavesVehicle(DayEvents events, int i) {
+		double now = EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), events.getTime(i), iteration);
 
 		// find vehicle:
-		InfectionEventHandler.EpisimVehicle episimVehicle = this.vehicleMap.get(leavesVehicleEvent.getVehicleId());
+		InfectionEventHandler.EpisimVehicle episimVehicle = this.vehicleMap.get(events.getVehicleId(i));
 
-		EpisimPerson episimPerson = this.personMap.get(leavesVehicleEvent.getPersonId());
+		EpisimPerson episimPerson = this.personMap.get(events.getPersonId(i));
 
 		// person did not enter the vehicle
 		if (episimConfig.getActivityHandling() == EpisimConfigGroup.ActivityHandling.startOfDay && !episimVehicle.containsPerson(episimPerson))
 			return;
 
-		reporting.handleEvent(leavesVehicleEvent);
+		writeEvent(events, i);
 
 		if (episimConfig.getContagiousOptimization() == EpisimConfigGroup.ContagiousOptimization.no ||
 				episimVehicle.containsContagious()) {
@@ -7,6 +7,7 @@ import org.matsim.core.config.ReflectiveConfigGroup;
 import org.matsim.episim.model.VirusStrain;
 
 import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.TreeMap;
@@ -22,6 +23,15 @@ public class VirusStrainConfigGroup extends ReflectiveConfigGroup {
 
 	private static final String GROUPNAME = "virusStrains";
 
+	/**
+	 * Index of the strain lineages in {@link #getLineages(boolean)}.
+	 */
+	public static final int LINEAGE_A = 0;
+	public static final int LINEAGE_B = 1;
+
+	private static final boolean[][] LINEAGES = createLineages(false);
+	private static final boolean[][] LINEAGES_WITH_VARIANTS = createLineages(true);
+
 	/**
 	 * Holds all virus strains params.
 	 */
@@ -68,6 +78,37 @@ public class VirusStrainConfigGroup extends ReflectiveConfigGroup {
 		return strains.containsKey(strain);
 	}
 
+	/**
+	 * Membership matrix of strains in the lineages that provide IgA cross protection, indexed by lineage and {@link VirusStrain#ordinal()}.
+	 * Both lineages contain the omicron strains and strains A and B, the "A_" and "B_" variants are only included if {@code withVariants} is true.
+	 * The returned arrays are shared and must not be modified.
+	 */
+	public static boolean[][] getLineages(boolean withVariants) {
+		return withVariants ? LINEAGES_WITH_VARIANTS : LINEAGES;
+	}
+
+	private static boolean[][] createLineages(boolean withVariants) {
+
+		VirusStrain[] strains = VirusStrain.values();
+		boolean[][] lineages = new boolean[2][strains.length];
+
+		for (boolean[] lineage : lineages) {
+			for (VirusStrain strain : List.of(VirusStrain.OMICRON_BA1, VirusStrain.OMICRON_BA2, VirusStrain.OMICRON_BA5, VirusStrain.STRAIN_A, VirusStrain.STRAIN_B))
+				lineage[strain.ordinal()] = true;
+		}
+
+		if (withVariants) {
+			for (VirusStrain strain : strains) {
+				if (strain.name().startsWith("A_"))
+					lineages[LINEAGE_A][strain.ordinal()] = true;
+				else if (strain.name().startsWith("B_"))
+					lineages[LINEAGE_B][strain.ordinal()] = true;
+			}
+		}
+
+		return lineages;
+	}
+
 	@Override
 	public ConfigGroup createParameterSet(String type) {
 		if (StrainParams.SET_TYPE.equals(type)) {
@@ -27,9 +27,7 @@ import org.matsim.episim.*;
 import org.matsim.episim.events.EpisimInfectionEvent;
 import org.matsim.episim.events.EpisimPotentialInfectionEvent;
 import org.matsim.episim.policy.Restriction;
-import org.matsim.facilities.ActivityFacility;
 
-import java.util.HashMap;
 import java.time.DayOfWeek;
 import java.util.Map;
 import java.util.SplittableRandom;
@@ -63,6 +61,11 @@ public abstract class AbstractContactModel implements ContactModel {
 	 */
 	protected final double trackingMinDuration;
 
+	/**
+	 * Ids and interaction rules of all activities.
+	 */
+	final ActivityRegistry activities;
+
 	/**
 	 * Infection probability calculation.
 	 */
@@ -72,20 +75,35 @@ public abstract class AbstractContactModel implements ContactModel {
 	protected DayOfWeek day;
 	private Map<String, Restriction> restrictions;
 
+	/**
+	 * Compiled version of {@link #restrictions}.
+	 */
+	private RestrictionTable restrictionTable;
+
 	/**
 	 * Count number of contacts per day.
 	 */
 	protected int numContacts = 0;
 
+	/**
+	 * Collects infections during parallel replay, may be null.
+	 */
+	private InfectionBuffer infectionBuffer;
+
+	/**
+	 * Collects contacts of contagious persons, may be null.
+	 */
+	private ContactStatistics contactStatistics;
+
 	/**
 	 * Curfew compliance valid for the day.
 	 */
 	private double curfewCompliance;
 
 	/**
-	 * Map of each ActivityFacility with the corresponding subdistrict
+	 * Districts of facilities for location based restrictions.
 	 */
-	private final Map<String, String> subdistrictFacilities;
+	private final DistrictIndex districts;
 
 
 	AbstractContactModel(SplittableRandom rnd, Config config, InfectionModel infectionModel, EpisimReporting reporting, Scenario scenario) {
@@ -97,21 +115,10 @@ public abstract class AbstractContactModel implements ContactModel {
 		this.trParams = episimConfig.selectInfectionParams("tr");
 		this.qhParams = episimConfig.selectInfectionParams(QUARANTINE_HOME);
 		this.trackingMinDuration = ConfigUtils.addOrGetModule(config, TracingConfigGroup.class).getMinDuration();
+		this.activities = new ActivityRegistry(episimConfig.getInfectionParams(), qhParams, tracingConfig.getIgnoredActivities());
 		this.scenario = scenario;
 
-		subdistrictFacilities = new HashMap<>();
-		if (episimConfig.getDistrictLevelRestrictions().equals(EpisimConfigGroup.DistrictLevelRestrictions.yes)
-				&& scenario != null
-				&& !scenario.getActivityFacilities().getFacilities().isEmpty()) {
-
-			for (ActivityFacility facility : scenario.getActivityFacilities().getFacilities().values()) {
-				String subdistrictAttributeName = episimConfig.getDistrictLevelRestrictionsAttribute();
-				String subdistrict = (String) facility.getAttributes().getAttribute(subdistrictAttributeName);
-				if (subdistrict != null) {
-					this.subdistrictFacilities.put(facility.getId().toString(), subdistrict);
-				}
-			}
-		}
+		this.districts = DistrictIndex.of(scenario, episimConfig);
 	}
 
 	AbstractContactModel(SplittableRandom rnd, Config config, InfectionModel infectionModel, EpisimReporting reporting) {
@@ -151,24 +158,6 @@ public abstract class AbstractContactModel implements ContactModel {
 		return (hasDiseaseStatusRelevantForInfectionDynamics(person1) && hasDiseaseStatusRelevantForInfectionDynamics(person2));
 	}
 
-	/**
-	 * Attention: In order to re-use the underlying object, this function returns a buffer.
-	 * Be aware that the old result will be overwritten, when the function is called multiple times.
-	 */
-	protected static StringBuilder getInfectionType(StringBuilder buffer, EpisimContainer<?> container, String leavingPersonsActivity,
-													String otherPersonsActivity) {
-		buffer.setLength(0);
-		if (container instanceof EpisimFacility) {
-			buffer.append(leavingPersonsActivity).append("_").append(otherPersonsActivity);
-			return buffer;
-		} else if (container instanceof EpisimVehicle) {
-			buffer.append("pt");
-			return buffer;
-		} else {
-			throw new RuntimeException("Infection situation is unknown");
-		}
-	}
-
 	/**
 	 * Get the relevant infection parameter based on container and activity and person.
 	 */
@@ -189,19 +178,20 @@ public abstract class AbstractContactModel implements ContactModel {
 
 	}
 
+	/**
+	 * Track contact between two persons in a facility.
+	 *
+	 * @param leavingAct activity id of the leaving person, see {@link ActivityRegistry}
+	 * @param otherAct   activity id of the other person
+	 */
 	protected void trackContactPerson(EpisimPerson personLeavingContainer, EpisimPerson otherPerson, double now, double jointTimeInContainer,
-									  StringBuilder infectionType) {
+									  int leavingAct, int otherAct) {
 
 		// Don't track certain activities
-		if (infectionType.indexOf("pt") >= 0 || infectionType.indexOf("shop") >= 0) {
+		if (!activities.isTraced(leavingAct, otherAct)) {
 			return;
 		}
 
-		for (String act : tracingConfig.getIgnoredActivities()) {
-			if (infectionType.indexOf(act) >= 0)
-				return;
-		}
-
 		// don't track below threshold
 		if (jointTimeInContainer < trackingMinDuration) {
 			return;
@@ -217,18 +207,20 @@ public abstract class AbstractContactModel implements ContactModel {
 		EpisimPerson.PerformedActivity act = container.getPerformedActivity(person.getPersonId());
 
 		// Check if person is home quarantined
-		if (person.getQuarantineStatus() == EpisimPerson.QuarantineStatus.atHome && !act.actType().startsWith("home"))
+		if (person.getQuarantineStatus() == EpisimPerson.QuarantineStatus.atHome && !activities.isHome(activities.getId(act.params)))
 			return false;
 
+		RestrictionTable table = getRestrictionTable(restrictions);
+
 		// enforce max group sizes
-		Restriction r = restrictions.get(act.params.getContainerName());
-		if (r.getMaxGroupSize() != null && r.getMaxGroupSize() > -1 && container.getMaxGroupSize() > 0 &&
-				container.getMaxGroupSize() > r.getMaxGroupSize())
+		int maxGroupSize = table.getMaxGroupSize(act.params);
+		if (maxGroupSize > -1 && container.getMaxGroupSize() > 0 &&
+				container.getMaxGroupSize() > maxGroupSize)
 			return false;
 
 		// reduce group size probabilistically
-		Integer reducedGroupSize = r.getReducedGroupSize();
-		if (reducedGroupSize != null && reducedGroupSize > -1 && reducedGroupSize != Integer.MAX_VALUE) {
+		int reducedGroupSize = table.getReducedGroupSize(act.params);
+		if (reducedGroupSize > -1 && reducedGroupSize != Integer.MAX_VALUE) {
 			double current = (container.getPersons().size() * episimConfig.getSampleSize()) / container.getNumSpaces();
 
 			// always false if current < reduced size
@@ -238,7 +230,7 @@ public abstract class AbstractContactModel implements ContactModel {
 			if (out) return false;
 		}
 
-		if (r.isClosed(container.getContainerId()))
+		if (table.isClosed(act.params, container.getContainerId()))
 			return false;
 
 		return actIsRelevant(act.params, restrictions, rnd, container);
@@ -246,19 +238,15 @@ public abstract class AbstractContactModel implements ContactModel {
 
 	private boolean actIsRelevant(EpisimConfigGroup.InfectionParams params, Map<String, Restriction> restrictions, SplittableRandom rnd,EpisimContainer container) {
 
-		Restriction r = restrictions.get(params.getContainerName());
-		Double remainingFraction = r.getRemainingFraction();
+		RestrictionTable table = getRestrictionTable(restrictions);
+		double remainingFraction;
 
 		// Applies location based restriction, if applicable
 		// So far, they are only applied for EpisimFacilities, not EpisimVehicles
-		if (episimConfig.getDistrictLevelRestrictions().equals(EpisimConfigGroup.DistrictLevelRestrictions.yes) && container != null) {
-			if (subdistrictFacilities.containsKey(container.getContainerId().toString())) {
-				String subdistrict = subdistrictFacilities.get(container.getContainerId().toString());
-				if (r.getLocationBasedRf().containsKey(subdistrict)) {
-					remainingFraction = r.getLocationBasedRf().get(subdistrict);
-				}
-			}
-		}
+		if (episimConfig.getDistrictLevelRestrictions() == EpisimConfigGroup.DistrictLevelRestrictions.yes && container != null)
+			remainingFraction = table.getRemainingFraction(params, districts.getDistrict(container));
+		else
+			remainingFraction = table.getRemainingFraction(params);
 
 		// avoid use of rnd if outcome is known beforehand
 		if (remainingFraction == 1)
@@ -322,23 +310,49 @@ public abstract class AbstractContactModel implements ContactModel {
 		return container instanceof EpisimVehicle && tripRelevantForInfectionDynamics(time, person, restrictions, rnd);
 	}
 
+	/**
+	 * Checks whether a household member takes part in the contacts of the day, i.e. has a relevant status and is not in full quarantine.
+	 * Participation in home activities is always assumed by the home contact engine.
+	 */
+	protected final boolean householdMemberRelevant(EpisimPerson person) {
+		return personHasRelevantStatus(person) && person.getQuarantineStatus() != EpisimPerson.QuarantineStatus.full;
+	}
+
+	/**
+	 * Whether the contacts of a household can be skipped, analogous to {@link EpisimConfigGroup#getContagiousOptimization()} during the replay.
+	 */
+	protected final boolean skipHousehold(HouseholdContacts.Household household) {
+		if (iteration == 0 || household.size() < 2)
+			return true;
+
+		if (episimConfig.getContagiousOptimization() == EpisimConfigGroup.ContagiousOptimization.no)
+			return false;
+
+		for (int i = 0; i < household.size(); i++) {
+			if (household.getMember(i).infectedButNotSerious())
+				return false;
+		}
+
+		return true;
+	}
+
 	/**
 	 * Calculate the joint time persons have been in a container.
 	 * This takes possible closing hours into account.
 	 */
 	protected double calculateJointTimeInContainer(double now, EpisimConfigGroup.InfectionParams act, double containerEnterTimeOfPersonLeaving, double containerEnterTimeOfOtherPerson) {
-		Restriction r = getRestrictions().get(act.getContainerName());
+		RestrictionTable table = getRestrictionTable(getRestrictions());
 
 		double max = Math.max(containerEnterTimeOfPersonLeaving, containerEnterTimeOfOtherPerson);
 
 		// no closing hour set, or no compliance
-		if (!r.hasClosingHours() || curfewCompliance == 0) {
+		if (!table.hasClosingHours(act) || curfewCompliance == 0) {
 			return now - max;
 		} else if (episimConfig.getCalibrationParameter() != 1 && rnd.nextDouble() >= curfewCompliance) {
 			return now - max;
 		}
 
-		double overlap = r.overlapWithClosingHour(max, now);
+		double overlap = table.getRestriction(act).overlapWithClosingHour(max, now);
 		if (overlap > 0) {
 			double jointTime = now - max - overlap;
 			// joint time can now be negative and will be set to 0
@@ -357,6 +371,7 @@ public abstract class AbstractContactModel implements ContactModel {
 		this.iteration = iteration;
 		this.day = EpisimUtils.getDayOfWeek(episimConfig, iteration);
 		this.restrictions = restrictions;
+		this.restrictionTable = RestrictionTable.compile(restrictionTable, restrictions, episimConfig, districts);
 		this.infectionModel.setIteration(iteration);
 		this.curfewCompliance = EpisimUtils.findValidEntry(episimConfig.getCurfewCompliance(), 1.0,
 				episimConfig.getStartDate().plusDays(iteration - 1));
@@ -367,11 +382,51 @@ public abstract class AbstractContactModel implements ContactModel {
 		return numContacts;
 	}
 
+	@Override
+	public void setInfectionBuffer(InfectionBuffer buffer) {
+		this.infectionBuffer = buffer;
+	}
+
+	/**
+	 * Set the collector of contacts of contagious persons, see {@link RecordingContactModel}.
+	 */
+	public void setContactStatistics(ContactStatistics statistics) {
+		this.contactStatistics = statistics;
+	}
+
+	/**
+	 * Record a contact for the calibration of the compartment model, if any of both persons is contagious.
+	 */
+	protected final void recordContact(EpisimPerson person, EpisimPerson contactPerson, EpisimConfigGroup.InfectionParams params,
+	                                   EpisimConfigGroup.InfectionParams contactParams, String infectionType, EpisimContainer<?> container,
+	                                   int groupSize, double contactIntensity, double jointTime, double now) {
+		if (contactStatistics == null)
+			return;
+
+		if (isContagious(person))
+			contactStatistics.add(person, contactPerson, params, contactParams, infectionType, container, groupSize, contactIntensity, jointTime, now);
+
+		if (isContagious(contactPerson))
+			contactStatistics.add(contactPerson, person, contactParams, params, infectionType, container, groupSize, contactIntensity, jointTime, now);
+	}
+
+	private static boolean isContagious(EpisimPerson person) {
+		return person.getDiseaseStatus() == EpisimPerson.DiseaseStatus.contagious || person.getDiseaseStatus() == EpisimPerson.DiseaseStatus.showingSymptoms;
+	}
+
 	/**
 	 * Sets the infection status of a person and reports the event.
 	 */
-	protected void infectPerson(EpisimPerson personWrapper, EpisimPerson infector, double now, StringBuilder infectionType,
+	protected void infectPerson(EpisimPerson personWrapper, EpisimPerson infector, double now, String infectionType,
 								double prob, EpisimContainer<?> container) {
+		infectPerson(personWrapper, infector, now, infectionType, prob, container, container.getPersons().size());
+	}
+
+	/**
+	 * Sets the infection status of a person, with the group size given explicitly for containers that do not store their persons.
+	 */
+	protected void infectPerson(EpisimPerson personWrapper, EpisimPerson infector, double now, String infectionType,
+								double prob, EpisimContainer<?> container, int groupSize) {
 
 		if (personWrapper.getDiseaseStatus() != EpisimPerson.DiseaseStatus.susceptible) {
 			throw new IllegalStateException("Person to be infected is not susceptible. Status is=" + personWrapper.getDiseaseStatus());
@@ -396,30 +451,41 @@ public abstract class AbstractContactModel implements ContactModel {
 			now = EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), 24 * 60 * 60 - 1, iteration);
 		}
 
-		personWrapper.possibleInfection(
-				new EpisimInfectionEvent(now, personWrapper.getPersonId(), infector.getPersonId(),
-						container.getContainerId(), infectionType.toString(), container.getPersons().size(), infector.getVirusStrain(), prob,
-						personWrapper.getAntibodies(infector.getVirusStrain()), personWrapper.getMaxAntibodies(infector.getVirusStrain()), personWrapper.getNumVaccinations())
-		);
+		EpisimInfectionEvent event = new EpisimInfectionEvent(now, personWrapper.getPersonId(), infector.getPersonId(),
+				container.getContainerId(), infectionType, groupSize, infector.getVirusStrain(), prob,
+				personWrapper.getAntibodies(infector.getVirusStrain()), personWrapper.getMaxAntibodies(infector.getVirusStrain()), personWrapper.getNumVaccinations());
 
-		// check infection immediately if there is only one thread
-		if (episimConfig.getThreads() == 1)
+		// check infection immediately if there is only one thread and events are replayed chronologically
+		if (episimConfig.getThreads() == 1 && !episimConfig.isOccupancyIndex()) {
+			personWrapper.possibleInfection(event);
 			reporting.reportInfection(personWrapper.checkInfection());
+		} else if (infectionBuffer != null)
+			infectionBuffer.addInfection(personWrapper, event);
+		else
+			personWrapper.possibleInfection(event);
 
 	}
 
-	protected void potentialInfection(EpisimPerson personWrapper, EpisimPerson infector, double now, StringBuilder infectionType,
+	protected void potentialInfection(EpisimPerson personWrapper, EpisimPerson infector, double now, String infectionType,
 	                                  double prob, EpisimContainer<?> container, double probUnVac, double rnd) {
+		potentialInfection(personWrapper, infector, now, infectionType, prob, container, container.getPersons().size(), probUnVac, rnd);
+	}
+
+	protected void potentialInfection(EpisimPerson personWrapper, EpisimPerson infector, double now, String infectionType,
+	                                  double prob, EpisimContainer<?> container, int groupSize, double probUnVac, double rnd) {
 
 		// for now, only filter vaccinated persons
 		if (personWrapper.getVaccinationStatus() == EpisimPerson.VaccinationStatus.no)
 			return;
 
-		personWrapper.potentialInfection(
-				new EpisimPotentialInfectionEvent(now, personWrapper.getPersonId(), infector.getPersonId(),
-						container.getContainerId(), infectionType.toString(), container.getPersons().size(), infector.getVirusStrain(), prob, probUnVac,
-						personWrapper.getAntibodies(infector.getVirusStrain()), rnd)
-		);
+		EpisimPotentialInfectionEvent event = new EpisimPotentialInfectionEvent(now, personWrapper.getPersonId(), infector.getPersonId(),
+				container.getContainerId(), infectionType, groupSize, infector.getVirusStrain(), prob, probUnVac,
+				personWrapper.getAntibodies(infector.getVirusStrain()), rnd);
+
+		if (infectionBuffer != null)
+			infectionBuffer.addPotentialInfection(event);
+		else
+			personWrapper.potentialInfection(event);
 
 	}
 
@@ -428,6 +494,14 @@ public abstract class AbstractContactModel implements ContactModel {
 		return restrictions;
 	}
 
+	/**
+	 * Compiled table of the given restrictions, which are usually the ones of the current iteration.
+	 */
+	protected final RestrictionTable getRestrictionTable(Map<String, Restriction> restrictions) {
+		restrictionTable = RestrictionTable.compile(restrictionTable, restrictions, episimConfig, districts);
+		return restrictionTable;
+	}
+
 	@Override
 	public void notifyEnterVehicle(EpisimPerson personEnteringVehicle, EpisimVehicle vehicle, double now) {
 	}
@@ -1,7 +1,5 @@
 package org.matsim.episim.model;
 
-import it.unimi.dsi.fastutil.objects.Object2LongMap;
-import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.episim.EpisimConfigGroup;
@@ -15,6 +13,7 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.Arrays;
 import java.util.SplittableRandom;
 
 /**
@@ -23,15 +22,26 @@ import java.util.SplittableRandom;
  */
 abstract class AbstractProgressionModel implements ProgressionModel, Externalizable {
 
+	/**
+	 * Version of the snapshot format. Snapshots without version start directly with the number of entries.
+	 */
+	private static final int SNAPSHOT_VERSION = 1;
+
 	protected final SplittableRandom rnd;
 	protected final EpisimConfigGroup episimConfig;
 
 	/**
 	 * Stores the next state and after which day. (int & int) = 64bit
+	 * Indexed by {@link Id#index()} of the person, 0 is an empty transition.
 	 */
-	private final Object2LongMap<Id<Person>> nextStateAndDay = new Object2LongOpenHashMap<>();
+	private long[] nextStateAndDay = new long[0];
 	private final DiseaseStatusTransitionModel statusTransitionModel;
 
+	/**
+	 * Instance storing the transitions, which is another one if this instance only updates a partition of the persons.
+	 */
+	private AbstractProgressionModel transitions = this;
+
 	@Inject
 	AbstractProgressionModel(SplittableRandom rnd, EpisimConfigGroup episimConfig, DiseaseStatusTransitionModel statusTransitionModel) {
 		this.rnd = rnd;
@@ -39,6 +49,40 @@ abstract class AbstractProgressionModel implements ProgressionModel, Externaliza
 		this.statusTransitionModel = statusTransitionModel;
 	}
 
+	/**
+	 * Pre-size the state for a number of persons.
+	 */
+	protected final void ensureCapacity(int persons) {
+		if (persons > nextStateAndDay.length)
+			nextStateAndDay = Arrays.copyOf(nextStateAndDay, persons);
+	}
+
+	/**
+	 * Store transitions in the given instance instead of this one. Partitions may then be updated concurrently,
+	 * as long as the shared instance has capacity for all persons.
+	 */
+	protected final void shareTransitions(AbstractProgressionModel shared) {
+		this.transitions = shared;
+	}
+
+	/**
+	 * Next state and day of a person, or 0 if there is no transition.
+	 */
+	private long getNextStateAndDay(Id<Person> id) {
+		long[] nextStateAndDay = transitions.nextStateAndDay;
+		int idx = id.index();
+		return idx < nextStateAndDay.length ? nextStateAndDay[idx] : 0;
+	}
+
+	private void setNextStateAndDay(Id<Person> id, long value) {
+		AbstractProgressionModel t = transitions;
+		int idx = id.index();
+		if (idx >= t.nextStateAndDay.length)
+			t.ensureCapacity(Math.max(idx + 1, t.nextStateAndDay.length + (t.nextStateAndDay.length >> 1)));
+
+		t.nextStateAndDay[idx] = value;
+	}
+
 	/**
 	 * Stores two ints in one long value.
 	 */
@@ -66,7 +110,7 @@ abstract class AbstractProgressionModel implements ProgressionModel, Externaliza
 		}
 
 		// 0 is empty transition
-		long value = nextStateAndDay.getOrDefault(id, 0);
+		long value = getNextStateAndDay(id);
 
 		if (value != 0) {
 
@@ -99,14 +143,14 @@ abstract class AbstractProgressionModel implements ProgressionModel, Externaliza
 
 		// clear transition
 		if (from == EpisimPerson.DiseaseStatus.susceptible) {
-			nextStateAndDay.removeLong(id);
+			setNextStateAndDay(id, 0);
 			return false;
 		}
 
 		EpisimPerson.DiseaseStatus next = statusTransitionModel.decideNextState(person, person.getDiseaseStatus(), day);
 		int nextTransitionDay = decideTransitionDay(person, from, next);
 
-		nextStateAndDay.put(id, compoundLong(next.ordinal(), nextTransitionDay));
+		setNextStateAndDay(id, compoundLong(next.ordinal(), nextTransitionDay));
 
 		// allow multiple updates on the same day
 		return nextTransitionDay == 0;
@@ -126,14 +170,14 @@ abstract class AbstractProgressionModel implements ProgressionModel, Externaliza
 
 	@Override
 	public EpisimPerson.DiseaseStatus getNextDiseaseStatus(Id<Person> personId) {
-		long value = nextStateAndDay.getOrDefault(personId, 0);
+		long value = getNextStateAndDay(personId);
 		int nextState = (int) (value >> 32);
 		return EpisimPerson.DiseaseStatus.values()[nextState];
 	}
 
 	@Override
 	public int getNextTransitionDays(Id<Person> personId) {
-		long value = nextStateAndDay.getOrDefault(personId, 0);
+		long value = getNextStateAndDay(personId);
 		if (value == 0)
 			return -1;
 
@@ -147,19 +191,41 @@ abstract class AbstractProgressionModel implements ProgressionModel, Externaliza
 
 	@Override
 	public void writeExternal(ObjectOutput out) throws IOException {
-		out.writeInt(nextStateAndDay.size());
-		for (Object2LongMap.Entry<Id<Person>> entry : nextStateAndDay.object2LongEntrySet()) {
-			EpisimUtils.writeChars(out, entry.getKey().toString());
-			out.writeLong(entry.getLongValue());
+
+		// indices are not stable between runs, so ids are written
+		out.writeInt(-SNAPSHOT_VERSION);
+
+		int n = 0;
+		for (long value : nextStateAndDay) {
+			if (value != 0)
+				n++;
+		}
+
+		out.writeInt(n);
+		for (int i = 0; i < nextStateAndDay.length; i++) {
+			if (nextStateAndDay[i] != 0) {
+				EpisimUtils.writeChars(out, Id.get(i, Person.class).toString());
+				out.writeLong(nextStateAndDay[i]);
+			}
 		}
 	}
 
 	@Override
 	public void readExternal(ObjectInput in) throws IOException {
 		int n = in.readInt();
+
+		// version is written as negative number
+		if (n < 0) {
+			int version = -n;
+			if (version > SNAPSHOT_VERSION)
+				throw new IOException("Unsupported snapshot version " + version);
+
+			n = in.readInt();
+		}
+
 		for (int i = 0; i < n; i++) {
 			Id<Person> key = Id.createPersonId(EpisimUtils.readChars(in));
-			nextStateAndDay.put(key, in.readLong());
+			setNextStateAndDay(key, in.readLong());
 		}
 	}
 }
@@ -0,0 +1,179 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim.model;
+
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import org.matsim.episim.EpisimConfigGroup;
+import org.matsim.episim.EpisimContainer;
+import org.matsim.episim.InfectionEventHandler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Assigns a dense id to each {@link EpisimConfigGroup.InfectionParams} and precomputes the string based interaction rules
+ * between activities, so that they don't need to be evaluated for each contact.
+ */
+final class ActivityRegistry {
+
+	/**
+	 * Infection type used for all contacts in vehicles.
+	 */
+	static final String VEHICLE = "pt";
+
+	private final Reference2IntMap<EpisimConfigGroup.InfectionParams> ids = new Reference2IntOpenHashMap<>();
+
+	/**
+	 * Whether the activity is performed at home, determined by its container name.
+	 */
+	private final boolean[] home;
+
+	/**
+	 * Whether persons performing two activities in the same facility can have contact.
+	 */
+	private final boolean[][] interaction;
+
+	/**
+	 * Whether contacts between two activities are traced.
+	 */
+	private final boolean[][] traced;
+
+	/**
+	 * Infection type of contacts in facilities, as used in events.
+	 */
+	private final String[][] infectionTypes;
+
+	/**
+	 * Create registry for all given params.
+	 *
+	 * @param params           all defined infection params
+	 * @param qhParams         params of home quarantine, which is named as home in infection types
+	 * @param ignoredTracing   activities that are not traced
+	 */
+	ActivityRegistry(Collection<EpisimConfigGroup.InfectionParams> params, EpisimConfigGroup.InfectionParams qhParams,
+	                 Collection<String> ignoredTracing) {
+
+		ids.defaultReturnValue(-1);
+
+		List<String> names = new ArrayList<>();
+		for (EpisimConfigGroup.InfectionParams p : params) {
+			if (ids.containsKey(p))
+				continue;
+
+			ids.put(p, names.size());
+			names.add(p == qhParams ? "home" : p.getContainerName());
+		}
+
+		int n = names.size();
+		home = new boolean[n];
+		interaction = new boolean[n][n];
+		traced = new boolean[n][n];
+		infectionTypes = new String[n][n];
+
+		for (EpisimConfigGroup.InfectionParams p : params)
+			home[ids.getInt(p)] = p.getContainerName().startsWith("home");
+
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				String leaving = names.get(i);
+				String other = names.get(j);
+				String type = (leaving + "_" + other).intern();
+
+				infectionTypes[i][j] = type;
+				interaction[i][j] = canInteract(type, leaving, other);
+				traced[i][j] = isTraced(type, ignoredTracing);
+			}
+		}
+	}
+
+	/**
+	 * Home can only interact with home, leisure or work. Edu can only interact with work or edu.
+	 */
+	private static boolean canInteract(String infectionType, String leaving, String other) {
+
+		if (infectionType.contains("home") && !infectionType.contains("leis") && !infectionType.contains("work")
+				&& !(leaving.startsWith("home") && other.startsWith("home")))
+			return false;
+
+		return !infectionType.contains("edu") || infectionType.contains("work") || (leaving.startsWith("edu") && other.startsWith("edu"));
+	}
+
+	private static boolean isTraced(String infectionType, Collection<String> ignoredTracing) {
+
+		if (infectionType.contains(VEHICLE) || infectionType.contains("shop"))
+			return false;
+
+		for (String act : ignoredTracing) {
+			if (infectionType.contains(act))
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Id of the given params.
+	 *
+	 * @throws IllegalArgumentException if the params were not known when creating the registry
+	 */
+	int getId(EpisimConfigGroup.InfectionParams params) {
+		int id = ids.getInt(params);
+		if (id == -1)
+			throw new IllegalArgumentException("Unknown infection params: " + params.getContainerName());
+
+		return id;
+	}
+
+	/**
+	 * Whether an activity is performed at home.
+	 */
+	boolean isHome(int act) {
+		return home[act];
+	}
+
+	/**
+	 * Whether persons leaving {@code leaving} can have contact with persons performing {@code other} in the same facility.
+	 */
+	boolean canInteract(int leaving, int other) {
+		return interaction[leaving][other];
+	}
+
+	/**
+	 * Whether contacts between these activities are traced.
+	 */
+	boolean isTraced(int leaving, int other) {
+		return traced[leaving][other];
+	}
+
+	/**
+	 * Infection type of a contact in a container.
+	 */
+	String getInfectionType(EpisimContainer<?> container, int leaving, int other) {
+		if (container instanceof InfectionEventHandler.EpisimFacility)
+			return infectionTypes[leaving][other];
+		else if (container instanceof InfectionEventHandler.EpisimVehicle)
+			return VEHICLE;
+		else
+			throw new RuntimeException("Infection situation is unknown");
+	}
+}
@@ -36,6 +36,10 @@ public final class AgeAndProgressionDependentInfectionModelWithSeasonality imple
 	 */
 	private final double scale;
 
+	/**
+	 * Compiled restrictions of the current iteration.
+	 */
+	private RestrictionTable restrictionTable;
 	private double outdoorFactor;
 	private int iteration;
 	private double lastUnVac;
@@ -76,8 +80,10 @@ public final class AgeAndProgressionDependentInfectionModelWithSeasonality imple
 										   EpisimConfigGroup.InfectionParams act1, EpisimConfigGroup.InfectionParams act2,
 										   double contactIntensity, double jointTimeInContainer) {
 
+		restrictionTable = RestrictionTable.compile(restrictionTable, restrictions, episimConfig);
+
 		//noinspection ConstantConditions 		// ci corr can not be null, because sim is initialized with non null value
-		double ciCorrection = Math.min(restrictions.get(act1.getContainerName()).getCiCorrection(), restrictions.get(act2.getContainerName()).getCiCorrection());
+		double ciCorrection = Math.min(restrictionTable.getCiCorrection(act1), restrictionTable.getCiCorrection(act2));
 
 		double susceptibility = this.susceptibility.get(infector.getVirusStrain())[target.getAge()];
 		double infectivity = this.infectivity.get(infector.getVirusStrain())[infector.getAge()];
@@ -87,8 +93,8 @@ public final class AgeAndProgressionDependentInfectionModelWithSeasonality imple
 		susceptibility *= Math.min(getVaccinationEffectiveness(strain, target, vaccinationConfig, iteration), getImmunityEffectiveness(strain, target, vaccinationConfig, iteration));
 
 		double indoorOutdoorFactor = InfectionModelWithSeasonality.getIndoorOutdoorFactor(outdoorFactor, rnd, act1, act2);
-		double shedding = maskModel.getWornMask(infector, act2, restrictions.get(act2.getContainerName())).shedding;
-		double intake = maskModel.getWornMask(target, act1, restrictions.get(act1.getContainerName())).intake;
+		double shedding = maskModel.getWornMask(infector, act2, restrictionTable).shedding;
+		double intake = maskModel.getWornMask(target, act1, restrictionTable).intake;
 
 		lastUnVac = calcUnVacInfectionProbability(target, infector, restrictions, act1, act2, contactIntensity, jointTimeInContainer, indoorOutdoorFactor, shedding, intake);
 
@@ -106,7 +112,7 @@ public final class AgeAndProgressionDependentInfectionModelWithSeasonality imple
 	private double calcUnVacInfectionProbability(EpisimPerson target, EpisimPerson infector, Map<String, Restriction> restrictions, EpisimConfigGroup.InfectionParams act1, EpisimConfigGroup.InfectionParams act2, double contactIntensity, double jointTimeInContainer,
 	                                            double indoorOutdoorFactor, double shedding, double intake) {
 		//noinspection ConstantConditions 		// ci corr can not be null, because sim is initialized with non null value
-		double ciCorrection = Math.min(restrictions.get(act1.getContainerName()).getCiCorrection(), restrictions.get(act2.getContainerName()).getCiCorrection());
+		double ciCorrection = Math.min(restrictionTable.getCiCorrection(act1), restrictionTable.getCiCorrection(act2));
 
 		double susceptibility = this.susceptibility.get(infector.getVirusStrain())[target.getAge()];
 		double infectivity = this.infectivity.get(infector.getVirusStrain())[infector.getAge()];
@@ -27,6 +27,10 @@ public final class AgeDependentInfectionModelWithSeasonality implements Infectio
 	private final Map<VirusStrain, double[]> susceptibility = new EnumMap<>(VirusStrain.class);
 	private final Map<VirusStrain, double[]> infectivity = new EnumMap<>(VirusStrain.class);
 
+	/**
+	 * Compiled restrictions of the current iteration.
+	 */
+	private RestrictionTable restrictionTable;
 	private double outdoorFactor;
 	private int iteration;
 
@@ -77,8 +81,10 @@ public final class AgeDependentInfectionModelWithSeasonality implements Infectio
 										   EpisimConfigGroup.InfectionParams act1, EpisimConfigGroup.InfectionParams act2,
 										   double contactIntensity, double jointTimeInContainer) {
 
+		restrictionTable = RestrictionTable.compile(restrictionTable, restrictions, episimConfig);
+
 		//noinspection ConstantConditions 		// ci corr can not be null, because sim is initialized with non null value
-		double ciCorrection = Math.min(restrictions.get(act1.getContainerName()).getCiCorrection(), restrictions.get(act2.getContainerName()).getCiCorrection());
+		double ciCorrection = Math.min(restrictionTable.getCiCorrection(act1), restrictionTable.getCiCorrection(act2));
 
 		double susceptibility = this.susceptibility.get(infector.getVirusStrain())[target.getAge()];
 		double infectivity = this.infectivity.get(infector.getVirusStrain())[infector.getAge()];
@@ -93,8 +99,8 @@ public final class AgeDependentInfectionModelWithSeasonality implements Infectio
 				* getVaccinationInfectivity(infector, params, vaccinationConfig, iteration)
 				* target.getSusceptibility()
 				* params.getInfectiousness()
-				* maskModel.getWornMask(infector, act2, restrictions.get(act2.getContainerName())).shedding
-				* maskModel.getWornMask(target, act1, restrictions.get(act1.getContainerName())).intake
+				* maskModel.getWornMask(infector, act2, restrictionTable).shedding
+				* maskModel.getWornMask(target, act1, restrictionTable).intake
 				* indoorOutdoorFactor
 		);
 	}
@@ -15,11 +15,21 @@ public interface AntibodyModel {
 
 	/**
 	 * Executed each day in order to update the antibody level of a person.
+	 * Models that decay lazily (see {@link #getDailyDecay()}) are only called on the day after a vaccination or infection and
+	 * must only modify the given person.
 	 * @param person person to update.
 	 * @param day current day / iteration
 	 */
 	void updateAntibodies(EpisimPerson person, int day);
 
+	/**
+	 * Factor by which antibody levels decay each day, which is then evaluated lazily by the persons.
+	 * NaN by default, in which case the model is called for all persons each day and decays levels itself.
+	 */
+	default double getDailyDecay() {
+		return Double.NaN;
+	}
+
 	/**
 	 * Create a new antibody config with default values.
 	 */
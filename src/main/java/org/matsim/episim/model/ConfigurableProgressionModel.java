@@ -2,6 +2,7 @@ package org.matsim.episim.model;
 
 import com.google.inject.Inject;
 import com.typesafe.config.Config;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ObjectIterator;
@@ -91,14 +92,15 @@ public class ConfigurableProgressionModel extends AbstractProgressionModel {
 	private final Object2IntMap<Id<ActivityFacility>> locations = new Object2IntOpenHashMap<>();
 
 	/**
-	 * Person ids already traced.
+	 * Persons already traced, by {@link Id#index()}.
 	 */
-	private final Set<Id<Person>> traced = Collections.newSetFromMap(new IdentityHashMap<>());
+	private final BitSet traced = new BitSet();
 
 	/**
-	 * Persons marked for contact tracing.
+	 * Persons marked for contact tracing, by {@link Id#index()}. The order of marking is kept in {@link #tracingOrder}.
 	 */
-	private final Set<Id<Person>> tracingQueue = new LinkedHashSet<>();
+	private final BitSet tracingQueue = new BitSet();
+	private final IntArrayList tracingOrder = new IntArrayList();
 
 	/**
 	 * Tracing capacity left for the day.
@@ -136,6 +138,16 @@ public class ConfigurableProgressionModel extends AbstractProgressionModel {
 	 */
 	private long prevShowingSymptoms;
 
+	/**
+	 * Instance performing the tracing, if this instance only updates a partition of the persons.
+	 */
+	private ConfigurableProgressionModel shared;
+
+	/**
+	 * Tracing collected while updating a partition, in order of occurrence.
+	 */
+	private final List<Tracing> collected = new ArrayList<>();
+
 	@Inject
 	public ConfigurableProgressionModel(SplittableRandom rnd, EpisimConfigGroup episimConfig, TracingConfigGroup tracingConfig,
 	                                    VaccinationConfigGroup vaccinationConfig, DiseaseStatusTransitionModel statusTransitionModel) {
@@ -202,6 +214,34 @@ public class ConfigurableProgressionModel extends AbstractProgressionModel {
 
 	}
 
+	@Override
+	public boolean collectTracing(ProgressionModel shared) {
+		if (!(shared instanceof ConfigurableProgressionModel))
+			return false;
+
+		this.shared = (ConfigurableProgressionModel) shared;
+		shareTransitions(this.shared);
+		return true;
+	}
+
+	@Override
+	public void commitTracing(ProgressionModel shared) {
+
+		ConfigurableProgressionModel model = (ConfigurableProgressionModel) shared;
+
+		for (Tracing t : collected) {
+			model.performTracing(t.person, t.now, t.day);
+		}
+
+		collected.clear();
+
+		for (Object2IntMap.Entry<Id<ActivityFacility>> e : locations.object2IntEntrySet()) {
+			model.locations.mergeInt(e.getKey(), e.getIntValue(), Integer::sum);
+		}
+
+		locations.clear();
+	}
+
 	@Override
 	public final void afterStateUpdates(Map<Id<Person>, EpisimPerson> persons, int day) {
 		double now = EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), 0, day);
@@ -263,6 +303,9 @@ public class ConfigurableProgressionModel extends AbstractProgressionModel {
 	@Override
 	public final void beforeStateUpdates(Map<Id<Person>, EpisimPerson> persons, int day, EpisimReporting.InfectionReport report) {
 
+		// partitions store transitions concurrently, therefore all persons need to fit
+		ensureCapacity(Math.max(persons.size(), Id.getNumberOfIds(Person.class)));
+
 		double now = EpisimUtils.getCorrectedTime(episimConfig.getStartOffset(), 0, day);
 
 		// perform the location based tracing
@@ -302,14 +345,15 @@ public class ConfigurableProgressionModel extends AbstractProgressionModel {
 
 		if (tracingConfig.getStrategy() == TracingConfigGroup.Strategy.IDENTIFY_SOURCE) {
 
-			// Persons that will be traced for the day
-			Queue<Id<Person>> queue = new ArrayDeque<>(tracingQueue);
+			// Persons that will be traced for the day, persons marked while tracing are appended after them
+			int n = tracingOrder.size();
+			int i = 0;
 
-			while (tracingCapacity > 0 && !queue.isEmpty()) {
+			while (tracingCapacity > 0 && i < n) {
 
-				Id<Person> id = queue.poll();
-				EpisimPerson person = persons.get(id);
-				tracingQueue.remove(id);
+				int idx = tracingOrder.getInt(i++);
+				EpisimPerson person = persons.get(Id.get(idx, Person.class));
+				tracingQueue.clear(idx);
 
 				// Assume that each contact got tested
 				// if the test is positive contacts will be quarantined as well and also tested at the next day
@@ -318,6 +362,8 @@ public class ConfigurableProgressionModel extends AbstractProgressionModel {
 				}
 			}
 
+			tracingOrder.removeElements(0, i);
+
 		} else if (tracingConfig.getStrategy() == TracingConfigGroup.Strategy.RANDOM) {
 
 			double newCases = report.nShowingSymptomsCumulative - prevShowingSymptoms;
@@ -352,6 +398,11 @@ public class ConfigurableProgressionModel extends AbstractProgressionModel {
 	 */
 	private void performTracing(EpisimPerson person, double now, int day) {
 
+		if (shared != null) {
+			collected.add(new Tracing(person, now, day));
+			return;
+		}
+
 		if (day < tracingConfig.getPutTraceablePersonsInQuarantineAfterDay()
 				|| tracingConfig.getStrategy() == TracingConfigGroup.Strategy.RANDOM
 				|| tracingConfig.getStrategy() == TracingConfigGroup.Strategy.NONE) {
@@ -411,7 +462,33 @@ public class ConfigurableProgressionModel extends AbstractProgressionModel {
 				p.setQuarantineStatus(status, day);
 
 			if (tracingConfig.getStrategy() == TracingConfigGroup.Strategy.IDENTIFY_SOURCE)
-				tracingQueue.add(p.getPersonId());
+				markForTracing(p.getPersonId().index());
+		}
+	}
+
+	/**
+	 * Add a person to the end of the tracing queue, if it is not already contained.
+	 */
+	private void markForTracing(int idx) {
+		if (!tracingQueue.get(idx)) {
+			tracingQueue.set(idx);
+			tracingOrder.add(idx);
+		}
+	}
+
+	/**
+	 * Tracing of a person, which is performed later.
+	 */
+	private static final class Tracing {
+
+		private final EpisimPerson person;
+		private final double now;
+		private final int day;
+
+		private Tracing(EpisimPerson person, double now, int day) {
+			this.person = person;
+			this.now = now;
+			this.day = day;
 		}
 	}
 
@@ -430,13 +507,13 @@ public class ConfigurableProgressionModel extends AbstractProgressionModel {
 		n = in.readInt();
 		for (int i = 0; i < n; i++) {
 			Id<Person> id = Id.createPersonId(readChars(in));
-			tracingQueue.add(id);
+			markForTracing(id.index());
 		}
 
 		n = in.readInt();
 		for (int i = 0; i < n; i++) {
 			Id<Person> id = Id.createPersonId(readChars(in));
-			traced.add(id);
+			traced.set(id.index());
 		}
 	}
 
@@ -452,14 +529,14 @@ public class ConfigurableProgressionModel extends AbstractProgressionModel {
 			out.writeInt(e.getIntValue());
 		}
 
-		out.writeInt(tracingQueue.size());
-		for (Id<Person> personId : tracingQueue) {
-			writeChars(out, personId.toString());
+		out.writeInt(tracingOrder.size());
+		for (int i = 0; i < tracingOrder.size(); i++) {
+			writeChars(out, Id.get(tracingOrder.getInt(i), Person.class).toString());
 		}
 
-		out.writeInt(traced.size());
-		for (Id<Person> personId : traced) {
-			writeChars(out, personId.toString());
+		out.writeInt(traced.cardinality());
+		for (int i = traced.nextSetBit(0); i >= 0; i = traced.nextSetBit(i + 1)) {
+			writeChars(out, Id.get(i, Person.class).toString());
 		}
 	}
 }
@@ -21,6 +21,7 @@
 package org.matsim.episim.model;
 
 import org.matsim.episim.EpisimPerson;
+import org.matsim.episim.InfectionBuffer;
 import org.matsim.episim.InfectionEventHandler;
 import org.matsim.episim.policy.Restriction;
 
@@ -55,5 +56,11 @@ public interface ContactModel {
 	 */
 	int getNumContacts();
 
+	/**
+	 * Set the buffer where infections of this instance are collected during parallel replay.
+	 * If not set, infections are stored at the persons directly.
+	 */
+	default void setInfectionBuffer(InfectionBuffer buffer) {}
+
 
 }
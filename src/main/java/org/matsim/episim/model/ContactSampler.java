@@ -0,0 +1,89 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim.model;
+
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+
+import java.util.SplittableRandom;
+
+/**
+ * Draws distinct indices from {@code [0, n)} without replacement, using a partial Fisher-Yates shuffle.
+ * <p>
+ * Only swapped positions are stored in a sparse table, so drawing {@code k} indices needs {@code O(k)} time and memory
+ * independent of {@code n}. Instances are reused and not thread-safe.
+ */
+final class ContactSampler {
+
+	/**
+	 * Positions of the virtual array whose value differs from the identity.
+	 */
+	private final Int2IntMap swapped = new Int2IntOpenHashMap();
+
+	private int n;
+	private int drawn;
+
+	ContactSampler() {
+		swapped.defaultReturnValue(-1);
+	}
+
+	/**
+	 * Start drawing from a new population of size {@code n}.
+	 */
+	void reset(int n) {
+		this.n = n;
+		this.drawn = 0;
+		swapped.clear();
+	}
+
+	/**
+	 * Whether there are indices left that have not been drawn yet.
+	 */
+	boolean hasNext() {
+		return drawn < n;
+	}
+
+	/**
+	 * Draw the next index, which is different from all previously drawn ones since the last {@link #reset(int)}.
+	 */
+	int next(SplittableRandom rnd) {
+
+		if (drawn >= n)
+			throw new IllegalStateException("All " + n + " indices have already been drawn");
+
+		int j = drawn + rnd.nextInt(n - drawn);
+
+		int result = get(j);
+		if (j != drawn)
+			swapped.put(j, get(drawn));
+
+		// position drawn is never accessed again
+		swapped.remove(drawn);
+		drawn++;
+
+		return result;
+	}
+
+	private int get(int i) {
+		int v = swapped.get(i);
+		return v == -1 ? i : v;
+	}
+}
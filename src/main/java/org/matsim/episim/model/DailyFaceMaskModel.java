@@ -0,0 +1,146 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim.model;
+
+import com.google.inject.Inject;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import org.matsim.episim.EpisimConfigGroup;
+import org.matsim.episim.EpisimPerson;
+import org.matsim.episim.policy.Restriction;
+
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Mask model where each person decides once per day and activity type which mask to wear, according to the current {@link Restriction}.
+ * The masks are stored in one slot per activity type in the {@link EpisimPerson}, so that looking them up during contacts does not
+ * need any random numbers. Masks are assigned for all activity types a person can have contacts in, i.e. the performed activities,
+ * the vehicles and home quarantine if the person has a home activity.
+ */
+public class DailyFaceMaskModel implements FaceMaskModel {
+
+	private static final FaceMask[] MASKS = FaceMask.values();
+
+	/**
+	 * Marker for activity types without assigned mask.
+	 */
+	private static final byte UNASSIGNED = -1;
+
+	private final SplittableRandom rnd;
+
+	/**
+	 * All activity types and their slot in the worn masks of a person.
+	 */
+	private final List<EpisimConfigGroup.InfectionParams> params;
+	private final Reference2IntMap<EpisimConfigGroup.InfectionParams> ids = new Reference2IntOpenHashMap<>();
+
+	/**
+	 * Params used by the contact models instead of the performed activity, see {@link AbstractContactModel#getInfectionParams}.
+	 */
+	private final EpisimConfigGroup.InfectionParams trParams;
+	private final EpisimConfigGroup.InfectionParams qhParams;
+
+	private RestrictionTable restrictions;
+
+	@Inject
+	public DailyFaceMaskModel(SplittableRandom rnd, EpisimConfigGroup episimConfig) {
+		this.rnd = rnd;
+		this.params = new ArrayList<>(episimConfig.getInfectionParams());
+		this.trParams = episimConfig.selectInfectionParams("tr");
+		this.qhParams = episimConfig.selectInfectionParams(AbstractContactModel.QUARANTINE_HOME);
+
+		ids.defaultReturnValue(-1);
+		for (int i = 0; i < params.size(); i++)
+			ids.put(params.get(i), i);
+	}
+
+	@Override
+	public int getMaskSlots() {
+		return params.size();
+	}
+
+	@Override
+	public void setRestrictionsForIteration(int iteration, RestrictionTable restrictions) {
+		this.restrictions = restrictions;
+	}
+
+	@Override
+	public void assignMasks(EpisimPerson person, DayOfWeek day) {
+
+		if (person.getMaskSlots() != params.size())
+			return;
+
+		person.clearWornMasks();
+
+		boolean home = false;
+		for (EpisimPerson.PerformedActivity act : person.getActivities(day)) {
+			assign(person, act.params);
+			home |= act.params.getContainerName().equals("home");
+		}
+
+		assign(person, trParams);
+
+		// quarantine can start after the assignment, when tests are committed
+		if (home)
+			assign(person, qhParams);
+	}
+
+	private void assign(EpisimPerson person, EpisimConfigGroup.InfectionParams act) {
+		int i = ids.getInt(act);
+		if (i >= 0 && person.getWornMask(i) == UNASSIGNED)
+			person.setWornMask(i, (byte) restrictions.determineMask(act, rnd).ordinal());
+	}
+
+	/**
+	 * Mask of the current day, or -1 if there is none.
+	 */
+	private int getAssigned(EpisimPerson person, EpisimConfigGroup.InfectionParams act) {
+		int i = ids.getInt(act);
+		if (i < 0 || person.getMaskSlots() != params.size())
+			return UNASSIGNED;
+
+		return person.getWornMask(i);
+	}
+
+	@Override
+	public FaceMask getWornMask(EpisimPerson person, EpisimConfigGroup.InfectionParams act, Restriction restriction) {
+		int mask = getAssigned(person, act);
+
+		// persons without assignment draw a new mask each time, same as the default model
+		if (mask == UNASSIGNED)
+			return restriction.determineMask(rnd);
+
+		return MASKS[mask];
+	}
+
+	@Override
+	public FaceMask getWornMask(EpisimPerson person, EpisimConfigGroup.InfectionParams act, RestrictionTable restrictions) {
+		int mask = getAssigned(person, act);
+
+		if (mask == UNASSIGNED)
+			return restrictions.determineMask(act, rnd);
+
+		return MASKS[mask];
+	}
+}
@@ -2,6 +2,8 @@ package org.matsim.episim.model;
 
 
 import com.google.inject.Inject;
+import it.unimi.dsi.fastutil.ints.IntAVLTreeSet;
+import it.unimi.dsi.fastutil.ints.IntSortedSet;
 import org.matsim.episim.EpisimConfigGroup;
 import org.matsim.episim.EpisimPerson;
 import org.matsim.episim.EpisimUtils;
@@ -11,8 +13,16 @@ import java.util.SplittableRandom;
 
 public class DefaultAntibodyModel implements AntibodyModel {
 
+	/**
+	 * Half life of antibodies, the decay itself is evaluated lazily by {@link EpisimPerson#getAntibodies(VirusStrain)}.
+	 */
 	public static final double HALF_LIFE_DAYS = 60; // todo: would 40 work better?
 
+	/**
+	 * Daily decay factor of antibodies.
+	 */
+	public static final double DAILY_DECAY = Math.pow(0.5, 1 / HALF_LIFE_DAYS);
+
 	private final AntibodyModel.Config antibodyConfig;
 	private final SplittableRandom localRnd;
 
@@ -28,6 +38,11 @@ public class DefaultAntibodyModel implements AntibodyModel {
 
 	}
 
+	@Override
+	public double getDailyDecay() {
+		return DAILY_DECAY;
+	}
+
 	@Override
 	public void init(Collection<EpisimPerson> persons, int iteration) {
 
@@ -58,18 +73,41 @@ public class DefaultAntibodyModel implements AntibodyModel {
 				person.setAntibodies(strain, 0.0);
 			}
 
-			// recalculate antibodies from immune history
-			for (int it = 1; it < iteration; it++) {
-				updateAntibodies(person, it);
-
+			// recalculate antibodies from immune history, decay in between is evaluated lazily
+			for (int day : immunityEventDays(person, iteration)) {
+				updateAntibodies(person, day);
 			}
+
+			person.decayAntibodies(iteration - 1);
+		}
+	}
+
+	/**
+	 * Sorted days before iteration, on which an immunity event of the person is handled.
+	 */
+	private static int[] immunityEventDays(EpisimPerson person, int iteration) {
+
+		IntSortedSet days = new IntAVLTreeSet();
+
+		for (int vaccinationIndex = 0; vaccinationIndex < person.getNumVaccinations(); vaccinationIndex++) {
+			int day = iteration - person.daysSinceVaccination(vaccinationIndex, iteration) + 1;
+			if (day >= 1 && day < iteration)
+				days.add(day);
+		}
+
+		for (int infectionIndex = 0; infectionIndex < person.getNumInfections(); infectionIndex++) {
+			int day = iteration - person.daysSinceInfection(infectionIndex, iteration) + 1;
+			if (day >= 1 && day < iteration)
+				days.add(day);
 		}
+
+		return days.toIntArray();
 	}
 
 	/**
 	 * Updates the antibody levels for person. If an immunity event occurs (vaccination or infection) on the previous
 	 * day, antibodies will increase. If not, they will decrease. This method was designed to also recalculate antibodies
-	 * when the simulation is started from snapshot.
+	 * when the simulation is started from snapshot. The decay itself is evaluated lazily with {@link #DAILY_DECAY}.
 	 *
 	 * @param person person whose antibodies to update
 	 * @param day    current day / iteration
@@ -78,31 +116,29 @@ public class DefaultAntibodyModel implements AntibodyModel {
 	public void updateAntibodies(EpisimPerson person, int day) {
 
 		//handle vaccination
-		if (person.getVaccinationDates().contains(day - 1)) {
-			int vaccinationIndex = person.getVaccinationDates().indexOf(day - 1);
-			VaccinationType vaccinationType = person.getVaccinationType(vaccinationIndex);
-			handleImmunization(person, vaccinationType);
-			return;
+		for (int vaccinationIndex = 0; vaccinationIndex < person.getNumVaccinations(); vaccinationIndex++) {
+			if (person.daysSinceVaccination(vaccinationIndex, day) == 1) {
+				VaccinationType vaccinationType = person.getVaccinationType(vaccinationIndex);
+				handleImmunization(person, vaccinationType, day);
+				return;
+			}
 		}
 
 		// handle infection
 		for (int infectionIndex = 0; infectionIndex < person.getNumInfections(); infectionIndex++) {
 			if (person.daysSinceInfection(infectionIndex, day) == 1) {
 				VirusStrain virusStrain = person.getVirusStrain(infectionIndex);
-				handleImmunization(person, virusStrain);
+				handleImmunization(person, virusStrain, day);
 				return;
 			}
 		}
 
-		// if no immunity event: exponential decay, day by day:
-		for (VirusStrain strain : VirusStrain.values()) {
-			double oldAntibodyLevel = person.getAntibodies(strain);
-			person.setAntibodies(strain, oldAntibodyLevel * Math.pow(0.5, 1 / HALF_LIFE_DAYS));
-		}
+		// if no immunity event: exponential decay, which is evaluated lazily
+		person.decayAntibodies(day);
 
 	}
 
-	private void handleImmunization(EpisimPerson person, ImmunityEvent immunityEventType) {
+	private void handleImmunization(EpisimPerson person, ImmunityEvent immunityEventType, int day) {
 
 		boolean firstImmunization = checkFirstImmunization(person);
 		// 1st immunization:
@@ -113,7 +149,7 @@ public class DefaultAntibodyModel implements AntibodyModel {
 
 				antibodies = Math.min(150., antibodies * person.getImmuneResponseMultiplier());
 
-				person.setAntibodies(strain2, antibodies);
+				person.setAntibodies(strain2, antibodies, day);
 
 				// if antibodies against a strain2 are higher than previous maximum, replace maximum
 				// should always be the case for initial immunization
@@ -122,11 +158,18 @@ public class DefaultAntibodyModel implements AntibodyModel {
 
 
 		} else {
-			for (VirusStrain strain2 : VirusStrain.values()) {
+
+			// antibodies before refresh, decayed until the previous day
+			VirusStrain[] strains = VirusStrain.values();
+			double[] previous = new double[strains.length];
+			for (VirusStrain strain2 : strains) {
+				previous[strain2.ordinal()] = person.getAntibodies(strain2, day - 1);
+			}
+
+			for (VirusStrain strain2 : strains) {
 				double refreshFactor = antibodyConfig.antibodyRefreshFactors.get(immunityEventType).get(strain2);
 
-				// antibodies before refresh
-				double antibodies = person.getAntibodies(strain2);
+				double antibodies = previous[strain2.ordinal()];
 
 				// refresh antibodies
 				antibodies = antibodies * refreshFactor;
@@ -138,7 +181,7 @@ public class DefaultAntibodyModel implements AntibodyModel {
 				// check that new antibody level is at most 150
 				antibodies = Math.min(150., antibodies);
 
-				person.setAntibodies(strain2, antibodies);
+				person.setAntibodies(strain2, antibodies, day);
 
 				// if antibodies against a strain2 are higher than previous maximum, replace maximum
 				person.updateMaxAntibodies(strain2, antibodies);
@@ -147,14 +190,7 @@ public class DefaultAntibodyModel implements AntibodyModel {
 	}
 
 	private boolean checkFirstImmunization(EpisimPerson person) {
-		boolean firstImmunization = true;
-		for (double abLevel : person.getAntibodies().values()) {
-			if (abLevel > 0) {
-				firstImmunization = false;
-				break;
-			}
-		}
-		return firstImmunization;
+		return !person.hasAntibodies();
 	}
 
 }
@@ -28,7 +28,6 @@ import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.episim.*;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.SplittableRandom;
 
@@ -38,7 +37,7 @@ import static org.matsim.episim.EpisimPerson.DiseaseStatus;
  * Default contact model executed, when a person ends his activity.
  * Infections probabilities calculations are delegated to a {@link InfectionModel}.
  */
-public final class DefaultContactModel extends AbstractContactModel {
+public final class DefaultContactModel extends AbstractContactModel implements HouseholdContactModel, RecordingContactModel {
 
 	private static final Logger log = LogManager.getLogger(DefaultContactModel.class);
 
@@ -48,14 +47,9 @@ public final class DefaultContactModel extends AbstractContactModel {
 	private final int trackingAfterDay;
 
 	/**
-	 * In order to avoid recreating a the list of other persons in the container every time it is stored as instance variable.
+	 * Draws contact persons directly from the container, without copying its person list.
 	 */
-	List<EpisimPerson> otherPersonsInContainer = new ArrayList<>();
-
-	/**
-	 * This buffer is used to store the infection type.
-	 */
-	private final StringBuilder buffer = new StringBuilder();
+	private final ContactSampler sampler = new ContactSampler();
 
 	@Inject
 	/* package */
@@ -81,6 +75,82 @@ public final class DefaultContactModel extends AbstractContactModel {
 		infectionDynamicsGeneralized(personLeavingFacility, facility, now);
 	}
 
+	/**
+	 * Evaluates every pair of household members once with their joint time of the day.
+	 * Households are usually smaller than the maximum number of contacts, which is therefore not applied.
+	 */
+	@Override
+	public void infectionDynamicsHousehold(HouseholdContacts.Household household, double now) {
+
+		if (skipHousehold(household))
+			return;
+
+		boolean trackingEnabled = iteration >= trackingAfterDay;
+		InfectionEventHandler.EpisimFacility facility = household.getFacility();
+
+		for (int i = 0; i < household.size(); i++) {
+
+			EpisimPerson person = household.getMember(i);
+			if (!householdMemberRelevant(person))
+				continue;
+
+			EpisimConfigGroup.InfectionParams params = getInfectionParams(facility, person, household.getActivity(i));
+			int act = activities.getId(params);
+
+			for (int j = i + 1; j < household.size(); j++) {
+
+				EpisimPerson contactPerson = household.getMember(j);
+				if (!householdMemberRelevant(contactPerson))
+					continue;
+
+				if (!trackingEnabled && !AbstractContactModel.personsCanInfectEachOther(person, contactPerson))
+					continue;
+
+				double jointTime = household.getJointTime(i, j);
+				if (jointTime <= 0)
+					continue;
+
+				EpisimConfigGroup.InfectionParams contactParams = getInfectionParams(facility, contactPerson, household.getActivity(j));
+				int otherAct = activities.getId(contactParams);
+
+				if (!activities.canInteract(act, otherAct))
+					continue;
+
+				String infectionType = activities.getInfectionType(facility, act, otherAct);
+
+				if (trackingEnabled)
+					trackContactPerson(person, contactPerson, now, jointTime, act, otherAct);
+
+				reporting.reportContact(now, person, contactPerson, facility, infectionType, jointTime);
+
+				double contactIntensity = Math.min(params.getContactIntensity(), contactParams.getContactIntensity());
+
+				recordContact(person, contactPerson, params, contactParams, infectionType, facility, household.size(), contactIntensity, jointTime, now);
+
+				if (!AbstractContactModel.personsCanInfectEachOther(person, contactPerson))
+					continue;
+
+				if ((person.hadDiseaseStatus(DiseaseStatus.contagious) &&
+						person.daysSince(DiseaseStatus.contagious, iteration) > episimConfig.getDaysInfectious())
+						|| (contactPerson.hadDiseaseStatus(DiseaseStatus.contagious) &&
+						contactPerson.daysSince(DiseaseStatus.contagious, iteration) > episimConfig.getDaysInfectious()))
+					continue;
+
+				if (person.getDiseaseStatus() == DiseaseStatus.susceptible) {
+					double prob = infectionModel.calcInfectionProbability(person, contactPerson, getRestrictions(),
+							params, contactParams, contactIntensity, jointTime);
+					if (rnd.nextDouble() < prob)
+						infectPerson(person, contactPerson, now, infectionType, prob, facility, household.size());
+				} else {
+					double prob = infectionModel.calcInfectionProbability(contactPerson, person, getRestrictions(),
+							contactParams, params, contactIntensity, jointTime);
+					if (rnd.nextDouble() < prob)
+						infectPerson(contactPerson, person, now, infectionType, prob, facility, household.size());
+				}
+			}
+		}
+	}
+
 	private void infectionDynamicsGeneralized(EpisimPerson personLeavingContainer, EpisimContainer<?> container, double now) {
 
 		// no infection possible if there is only one person
@@ -95,23 +165,27 @@ public final class DefaultContactModel extends AbstractContactModel {
 		// start tracking late as possible because of computational costs
 		boolean trackingEnabled = iteration >= trackingAfterDay;
 
-		otherPersonsInContainer.addAll(container.getPersons());
-		otherPersonsInContainer.remove(personLeavingContainer);
+		List<EpisimPerson> personsInContainer = container.getPersons();
+		sampler.reset(personsInContainer.size());
 
 		// For the time being, will just assume that the first 10 persons are the ones we interact with.  Note that because of
 		// shuffle, those are 10 different persons every day.
 
 		// persons are scaled to number of agents with sample size, but at least 3 for the small development scenarios
 //		int contactWith = Math.min(otherPersonsInContainer.size(), Math.max((int) (episimConfig.getSampleSize() * 10), 3));
-		int contactWith = Math.min(otherPersonsInContainer.size(), (int)episimConfig.getMaxContacts());
+		int contactWith = Math.min(personsInContainer.size() - 1, (int)episimConfig.getMaxContacts());
 		for (int ii = 0; ii < contactWith; ii++) {
 
 			// we are essentially looking at the situation when the person leaves the container.  Interactions with other persons who have
 			// already left the container were treated then.  In consequence, we have some "circle of persons around us" (yyyy which should
 			//  depend on the density), and then a probability of infection in either direction.
 
-			// Draw the contact person and remove it -> we don't want to draw it multiple times
-			EpisimPerson contactPerson = otherPersonsInContainer.remove(rnd.nextInt(otherPersonsInContainer.size()));
+			// Draw the contact person without replacement -> we don't want to draw it multiple times
+			EpisimPerson contactPerson = personsInContainer.get(sampler.next(rnd));
+
+			// the leaving person itself is skipped, there is always another person left in that case
+			if (contactPerson == personLeavingContainer)
+				contactPerson = personsInContainer.get(sampler.next(rnd));
 
 
 			if (!personRelevantForTrackingOrInfectionDynamics(now, contactPerson, container, getRestrictions(), rnd)) {
@@ -135,10 +209,10 @@ public final class DefaultContactModel extends AbstractContactModel {
 			EpisimConfigGroup.InfectionParams leavingParams = getInfectionParams(container, personLeavingContainer,  container.getPerformedActivity(personLeavingContainer.getPersonId()));
 			EpisimConfigGroup.InfectionParams contactParams = getInfectionParams(container, contactPerson,  container.getPerformedActivity(contactPerson.getPersonId()));
 
-			String leavingPersonsActivity = leavingParams == qhParams ? "home" : leavingParams.getContainerName();
-			String otherPersonsActivity = contactParams == qhParams ? "home" : contactParams.getContainerName();
+			int leavingAct = activities.getId(leavingParams);
+			int otherAct = activities.getId(contactParams);
 
-			StringBuilder infectionType = getInfectionType(buffer, container, leavingPersonsActivity, otherPersonsActivity);
+			String infectionType = activities.getInfectionType(container, leavingAct, otherAct);
 
 			double containerEnterTimeOfPersonLeaving = container.getContainerEnteringTime(personLeavingContainer.getPersonId());
 			double containerEnterTimeOfOtherPerson = container.getContainerEnteringTime(contactPerson.getPersonId());
@@ -146,16 +220,12 @@ public final class DefaultContactModel extends AbstractContactModel {
 
 			//forbid certain cross-activity interactions, keep track of contacts
 			if (container instanceof InfectionEventHandler.EpisimFacility) {
-				//home can only interact with home, leisure or work
-				if (infectionType.indexOf("home") >= 0 && infectionType.indexOf("leis") == -1 && infectionType.indexOf("work") == -1
-						&& !(leavingPersonsActivity.startsWith("home") && otherPersonsActivity.startsWith("home"))) {
-					continue;
-				} else if (infectionType.indexOf("edu") >= 0 && infectionType.indexOf("work") == -1 && !(leavingPersonsActivity.startsWith("edu") && otherPersonsActivity.startsWith("edu"))) {
-					//edu can only interact with work or edu
+				//home can only interact with home, leisure or work, edu can only interact with work or edu
+				if (!activities.canInteract(leavingAct, otherAct)) {
 					continue;
 				}
 				if (trackingEnabled) {
-					trackContactPerson(personLeavingContainer, contactPerson, now, jointTimeInContainer, infectionType);
+					trackContactPerson(personLeavingContainer, contactPerson, now, jointTimeInContainer, leavingAct, otherAct);
 				}
 
 				// Only a subset of contacts are reported at the moment
@@ -163,6 +233,11 @@ public final class DefaultContactModel extends AbstractContactModel {
 				reporting.reportContact(now, personLeavingContainer, contactPerson, container, infectionType, jointTimeInContainer);
 			}
 
+			double contactIntensity = Math.min(leavingParams.getContactIntensity(), contactParams.getContactIntensity());
+
+			recordContact(personLeavingContainer, contactPerson, leavingParams, contactParams, infectionType, container,
+					personsInContainer.size(), contactIntensity, jointTimeInContainer, now);
+
 			if (!AbstractContactModel.personsCanInfectEachOther(personLeavingContainer, contactPerson)) {
 				continue;
 			}
@@ -190,8 +265,6 @@ public final class DefaultContactModel extends AbstractContactModel {
 				throw new IllegalStateException("joint time in container is not plausible for personLeavingContainer=" + personLeavingContainer.getPersonId() + " and contactPerson=" + contactPerson.getPersonId() + ". Joint time is=" + jointTimeInContainer);
 			}
 
-			double contactIntensity = Math.min(leavingParams.getContactIntensity(), contactParams.getContactIntensity());
-
 			// need to differentiate which person might be the infector
 			if (personLeavingContainer.getDiseaseStatus() == DiseaseStatus.susceptible) {
 
@@ -208,9 +281,6 @@ public final class DefaultContactModel extends AbstractContactModel {
 					infectPerson(contactPerson, personLeavingContainer, now, infectionType, prob, container);
 			}
 		}
-
-		// Clear cached container
-		otherPersonsInContainer.clear();
 	}
 
 }
@@ -24,4 +24,9 @@ public class DefaultFaceMaskModel implements FaceMaskModel {
 	public FaceMask getWornMask(EpisimPerson person, EpisimConfigGroup.InfectionParams act, Restriction restriction) {
 		return restriction.determineMask(rnd);
 	}
+
+	@Override
+	public FaceMask getWornMask(EpisimPerson person, EpisimConfigGroup.InfectionParams act, RestrictionTable restrictions) {
+		return restrictions.determineMask(act, rnd);
+	}
 }
@@ -23,6 +23,10 @@ public final class DefaultInfectionModel implements InfectionModel {
 	private final EpisimConfigGroup episimConfig;
 	private final VaccinationConfigGroup vaccinationConfig;
 	private final VirusStrainConfigGroup virusStrainConfig;
+	/**
+	 * Compiled restrictions of the current iteration.
+	 */
+	private RestrictionTable restrictionTable;
 	private int iteration;
 
 	@Inject
@@ -44,8 +48,10 @@ public final class DefaultInfectionModel implements InfectionModel {
 	                                       EpisimConfigGroup.InfectionParams act1, EpisimConfigGroup.InfectionParams act2,
 	                                       double contactIntensity, double jointTimeInContainer) {
 
+		restrictionTable = RestrictionTable.compile(restrictionTable, restrictions, episimConfig);
+
 		// ci corr can not be null, because sim is initialized with non null value
-		double ciCorrection = Math.min(restrictions.get(act1.getContainerName()).getCiCorrection(), restrictions.get(act2.getContainerName()).getCiCorrection());
+		double ciCorrection = Math.min(restrictionTable.getCiCorrection(act1), restrictionTable.getCiCorrection(act2));
 
 		// note that for 1pct runs, calibParam is of the order of one, which means that for typical times of 100sec or more,
 		// exp( - 1 * 1 * 100 ) \approx 0, and thus the infection proba becomes 1.  Which also means that changes in contactIntensity has
@@ -58,8 +64,8 @@ public final class DefaultInfectionModel implements InfectionModel {
 				* target.getSusceptibility()
 				* susceptibility
 				* strain.getInfectiousness()
-				* maskModel.getWornMask(infector, act2, restrictions.get(act2.getContainerName())).shedding
-				* maskModel.getWornMask(target, act1, restrictions.get(act1.getContainerName())).intake
+				* maskModel.getWornMask(infector, act2, restrictionTable).shedding
+				* maskModel.getWornMask(target, act1, restrictionTable).intake
 		);
 	}
 
@@ -4,6 +4,8 @@ import org.matsim.episim.EpisimConfigGroup;
 import org.matsim.episim.EpisimPerson;
 import org.matsim.episim.policy.Restriction;
 
+import java.time.DayOfWeek;
+
 /**
  * Model which decides which mask a person is wearing during activity.
  */
@@ -14,4 +16,31 @@ public interface FaceMaskModel {
 	 */
 	FaceMask getWornMask(EpisimPerson person, EpisimConfigGroup.InfectionParams act, Restriction restriction);
 
+	/**
+	 * Return the mask a person is wearing for specific activity, using the compiled restrictions.
+	 */
+	default FaceMask getWornMask(EpisimPerson person, EpisimConfigGroup.InfectionParams act, RestrictionTable restrictions) {
+		return getWornMask(person, act, restrictions.getRestriction(act));
+	}
+
+	/**
+	 * Number of masks each person can store for the current day, see {@link EpisimPerson#getWornMask(int)}.
+	 * Zero by default, in which case no masks are stored.
+	 */
+	default int getMaskSlots() {
+		return 0;
+	}
+
+	/**
+	 * Called at the start of each day, before {@link #assignMasks(EpisimPerson, DayOfWeek)}.
+	 */
+	default void setRestrictionsForIteration(int iteration, RestrictionTable restrictions) {
+	}
+
+	/**
+	 * Called once per person at the start of each day. Models can decide here which masks are worn during the whole day.
+	 */
+	default void assignMasks(EpisimPerson person, DayOfWeek day) {
+	}
+
 }
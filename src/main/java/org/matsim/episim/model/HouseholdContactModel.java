@@ -0,0 +1,38 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim.model;
+
+import org.matsim.episim.HouseholdContacts;
+
+/**
+ * Contact model that can evaluate the contacts of whole households at once, which is required by the home contact engine.
+ *
+ * @see org.matsim.episim.EpisimConfigGroup#isHomeContactEngine()
+ */
+public interface HouseholdContactModel extends ContactModel {
+
+	/**
+	 * This method is called once per day at {@code now} for each household, when the home contact engine is used.
+	 * All pairs of members are in contact for their joint time of the day.
+	 */
+	void infectionDynamicsHousehold(HouseholdContacts.Household household, double now);
+
+}
@@ -8,9 +8,8 @@ import org.matsim.core.config.ConfigUtils;
 import org.matsim.episim.*;
 import org.matsim.episim.policy.Restriction;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumMap;
-import java.util.List;
 import java.util.Map;
 import java.util.SplittableRandom;
 
@@ -19,6 +18,12 @@ import java.util.SplittableRandom;
  */
 public final class InfectionModelWithAntibodies implements InfectionModel {
 
+	/**
+	 * Number of strains for which the terms of a target are cached per day. Contacts of one person are usually with infectors
+	 * of very few strains, other strains are computed again when they are needed.
+	 */
+	private static final int SLOTS = 2;
+
 	private final FaceMaskModel maskModel;
 	private final ProgressionModel progression;
 	private final EpisimConfigGroup episimConfig;
@@ -31,15 +36,51 @@ public final class InfectionModelWithAntibodies implements InfectionModel {
 	private final Map<VirusStrain, double[]> infectivity = new EnumMap<>(VirusStrain.class);
 	private final RealDistribution distribution;
 
+	/**
+	 * Terms of the infection probability that change at most once per day. Target terms are indexed by person index * {@link #SLOTS} + slot,
+	 * the strain of each slot is stored in {@link #targetStrain}. Infector terms are indexed by person index.
+	 * All caches are filled lazily and are only valid if the stamp of the person equals {@link #stamp}.
+	 */
+	private double[] susceptibilityCache = new double[0];
+	private double[] immunityCache = new double[0];
+	private byte[] targetStrain = new byte[0];
+	private int[] targetStamp = new int[0];
+	private double[] infectivityCache = new double[0];
+	private int[] infectorStamp = new int[0];
+
+	/**
+	 * Incremented in {@link #setIteration(int)}, which invalidates all cached entries.
+	 */
+	private int stamp = 1;
+
+	/**
+	 * Reused buffer for the last infection in each lineage.
+	 */
+	private int[] lastInfectionInLineage;
+
 	/**
 	 * Scale infectivity to 1.0
 	 */
 	private final double scale;
 
+	/**
+	 * Compiled restrictions of the current iteration.
+	 */
+	private RestrictionTable restrictionTable;
 	private double outdoorFactor;
 	private int iteration;
 	private double lastUnVac;
 
+	/**
+	 * Lineages of the IgA cross protection, see {@link VirusStrainConfigGroup#getLineages(boolean)}.
+	 */
+	private boolean[][] lineages;
+
+	/**
+	 * Divisor of the exposure for a person without antibodies.
+	 */
+	private double unVacImmunity;
+
 	@Inject
 	InfectionModelWithAntibodies(FaceMaskModel faceMaskModel, ProgressionModel progression,
 															Config config, EpisimReporting reporting, SplittableRandom rnd) {
@@ -56,12 +97,23 @@ public final class InfectionModelWithAntibodies implements InfectionModel {
 		// based on https://arxiv.org/abs/2007.06602
 		distribution = new NormalDistribution(0.5, 2.6);
 		scale = 1 / distribution.density(distribution.getNumericalMean());
+
+		lineages = VirusStrainConfigGroup.getLineages(vaccinationConfig.getUseIgA());
+		lastInfectionInLineage = new int[lineages.length];
+		unVacImmunity = 1.0 + Math.pow(0.0, vaccinationConfig.getBeta());
 	}
 
 	@Override
 	public void setIteration(int iteration) {
 		this.outdoorFactor = InfectionModelWithSeasonality.interpolateOutdoorFraction(episimConfig, iteration);
 		this.iteration = iteration;
+		this.lineages = VirusStrainConfigGroup.getLineages(vaccinationConfig.getUseIgA());
+		this.unVacImmunity = 1.0 + Math.pow(0.0, vaccinationConfig.getBeta());
+
+		if (lastInfectionInLineage.length != lineages.length)
+			lastInfectionInLineage = new int[lineages.length];
+
+		stamp++;
 		reporting.reportOutdoorFraction(this.outdoorFactor, iteration);
 
 	}
@@ -76,160 +128,144 @@ public final class InfectionModelWithAntibodies implements InfectionModel {
 										   EpisimConfigGroup.InfectionParams act1, EpisimConfigGroup.InfectionParams act2,
 										   double contactIntensity, double jointTimeInContainer) {
 
+		restrictionTable = RestrictionTable.compile(restrictionTable, restrictions, episimConfig);
+
 		//noinspection ConstantConditions 		// ci corr can not be null, because sim is initialized with non null value
-		double ciCorrection = Math.min(restrictions.get(act1.getContainerName()).getCiCorrection(), restrictions.get(act2.getContainerName()).getCiCorrection());
+		double ciCorrection = Math.min(restrictionTable.getCiCorrection(act1), restrictionTable.getCiCorrection(act2));
+
+		VirusStrain strain = infector.getVirusStrain();
+		int key = targetSlot(target, strain);
 
-		double susceptibility = this.susceptibility.get(infector.getVirusStrain())[target.getAge()];
-		double infectivity = this.infectivity.get(infector.getVirusStrain())[infector.getAge()];
+		double susceptibility = susceptibilityCache[key];
+		double immunityFactor = immunityCache[key];
 
-		VirusStrainConfigGroup.StrainParams strain = virusStrainConfig.getParams(infector.getVirusStrain());
+		int infectorKey = infector.getPersonId().index();
+		if (infectorKey >= infectorStamp.length)
+			growInfectorCache(infectorKey);
+
+		if (infectorStamp[infectorKey] != stamp) {
+			infectivityCache[infectorKey] = calcInfectivity(infector);
+			infectorStamp[infectorKey] = stamp;
+		}
 
-		double relativeAntibodyLevelTarget = target.getAntibodies(infector.getVirusStrain());
+		double infectivity = infectivityCache[infectorKey];
 
 		double indoorOutdoorFactor = InfectionModelWithSeasonality.getIndoorOutdoorFactor(outdoorFactor, rnd, act1, act2);
-		double shedding = maskModel.getWornMask(infector, act2, restrictions.get(act2.getContainerName())).shedding;
-		double intake = maskModel.getWornMask(target, act1, restrictions.get(act1.getContainerName())).intake;
+		double shedding = maskModel.getWornMask(infector, act2, restrictionTable).shedding;
+		double intake = maskModel.getWornMask(target, act1, restrictionTable).intake;
 
-		//reduced infectivity if infector has antibodies
-		double immunityFactorInfector = 1.0 / (1.0 + Math.pow(infector.getAntibodyLevelAtInfection(), vaccinationConfig.getBeta()));
-		infectivity *= (1.0 - (0.25 * (1.0 - immunityFactorInfector)));
-
-		{
-			double igaFactor = 0.0;
-			double igaTimePeriod = vaccinationConfig.getTimePeriodIgA();
-			if (target.hadStrain(infector.getVirusStrain())) {
-
-				int lastInfectionWithStrain = 0;
-				for (int ii = 0; ii < target.getNumInfections();  ii++) {
-					if (target.getVirusStrain(ii) == infector.getVirusStrain()) {
-						lastInfectionWithStrain = ii;
-					}
-				}
-//				igaFactor = Math.exp( - target.daysSinceInfection(lastInfectionWithStrain, iteration) / 120.0);
-				igaFactor = 1.0 / (1.0 + Math.exp(-2.0 * (1.0 - target.daysSinceInfection(lastInfectionWithStrain, iteration) / igaTimePeriod)));
-
-			}  
-			
-			ArrayList<VirusStrain> strainsLineA = new ArrayList<VirusStrain>();
-			strainsLineA.add(VirusStrain.OMICRON_BA1);
-			strainsLineA.add(VirusStrain.OMICRON_BA2);
-			strainsLineA.add(VirusStrain.OMICRON_BA5);
-			strainsLineA.add(VirusStrain.STRAIN_A);
-			strainsLineA.add(VirusStrain.STRAIN_B);
-
-			ArrayList<VirusStrain> strainsLineB = new ArrayList<VirusStrain>();
-			strainsLineB.add(VirusStrain.OMICRON_BA1);
-			strainsLineB.add(VirusStrain.OMICRON_BA2);
-			strainsLineB.add(VirusStrain.OMICRON_BA5);
-			strainsLineB.add(VirusStrain.STRAIN_A);
-			strainsLineB.add(VirusStrain.STRAIN_B);
-			
-			if (vaccinationConfig.getUseIgA()) {
-				
-				for (VirusStrain str : VirusStrain.values()) {
-					if (str.toString().startsWith("A_"))
-						strainsLineA.add(str);
-				}
-				for (VirusStrain str : VirusStrain.values()) {
-					if (str.toString().startsWith("B_"))
-						strainsLineB.add(str);
-				}
-			}
-			
-//			if (vaccinationConfig.getUseIgA()) {
-
-				if(strainsLineA.contains(infector.getVirusStrain())){
-					int lastInfectionWithStrain = 0;
-					boolean targetHadStrain = false;
-					for (int ii = 0; ii < target.getNumInfections();  ii++) {
-						if (strainsLineA.contains(target.getVirusStrain(ii))){
-							targetHadStrain = true;
-							lastInfectionWithStrain = ii;
-						}
-					}
-
-					if (targetHadStrain) {
-						double fac = 1.0 / (1.0 + Math.exp(-2.0 * (1.0 - target.daysSinceInfection(lastInfectionWithStrain, iteration) / igaTimePeriod)));
-						fac = fac / 1.4;
-						igaFactor = Math.max(fac, igaFactor);
-					}
-				}
-				
-				if(strainsLineB.contains(infector.getVirusStrain())){
-					int lastInfectionWithStrain = 0;
-					boolean targetHadStrain = false;
-					for (int ii = 0; ii < target.getNumInfections();  ii++) {
-						if (strainsLineB.contains(target.getVirusStrain(ii))){
-							targetHadStrain = true;
-							lastInfectionWithStrain = ii;
-						}
-					}
-
-					if (targetHadStrain) {
-						double fac = 1.0 / (1.0 + Math.exp(-2.0 * (1.0 - target.daysSinceInfection(lastInfectionWithStrain, iteration) / igaTimePeriod)));
-						fac = fac / 1.4;
-						igaFactor = Math.max(fac, igaFactor);
-					}
-				}
-				
-//				if(strainsLineA.contains(infector.getVirusStrain()) || strainsLineB.contains(infector.getVirusStrain())){
-//					int lastInfectionWithStrain = 0;
-//					boolean targetHadStrain = false;
-//					for (int ii = 0; ii < target.getNumInfections();  ii++) {
-//						if (strainsLineA.contains(target.getVirusStrain(ii)) || strainsLineB.contains(target.getVirusStrain(ii))){
-//							targetHadStrain = true;
-//							lastInfectionWithStrain = ii;
-//						}
-//					}
-//
-//					if (targetHadStrain) {
-//						double fac = 1.0 / (1.0 + Math.exp(-2.0 * (1.0 - target.daysSinceInfection(lastInfectionWithStrain, iteration) / igaTimePeriod)));
-//						fac = fac / 1.4 / 1.4;
-//						igaFactor = Math.max(fac, igaFactor);
-//					}
-//				}
-				
-				susceptibility = susceptibility * (1.0 - igaFactor);
-//			}	
+		double exposure = episimConfig.getCalibrationParameter() * susceptibility * infectivity * contactIntensity * jointTimeInContainer * ciCorrection
+				* shedding
+				* intake
+				* indoorOutdoorFactor;
+
+		lastUnVac = 1 - Math.exp(-exposure / unVacImmunity);
+
+		return 1 - Math.exp(-exposure * immunityFactor);
+	}
+
+	/**
+	 * Index of the cached target terms for a strain, which are computed if they are not present for the current day.
+	 * If all slots are used by other strains, the last one is replaced.
+	 */
+	private int targetSlot(EpisimPerson target, VirusStrain strain) {
+
+		int index = target.getPersonId().index();
+		if (index >= targetStamp.length)
+			growTargetCache(index);
+
+		int key = index * SLOTS;
+		if (targetStamp[index] != stamp) {
+			Arrays.fill(targetStrain, key, key + SLOTS, (byte) -1);
+			targetStamp[index] = stamp;
 		}
 
+		byte ordinal = (byte) strain.ordinal();
+		for (int end = key + SLOTS - 1; key < end; key++) {
+			if (targetStrain[key] == ordinal || targetStrain[key] == -1)
+				break;
+		}
 
+		if (targetStrain[key] != ordinal) {
+			susceptibilityCache[key] = calcSusceptibility(target, strain);
 
-		lastUnVac = calcInfectionProbabilityWoImmunity(target, infector, restrictions, act1, act2, contactIntensity, jointTimeInContainer, indoorOutdoorFactor, shedding, intake, infectivity, susceptibility);
-		// remaining risk --> lower val, lower risk, max risk at 1
-		double immunityFactor = 1.0 / (1.0 + Math.pow(relativeAntibodyLevelTarget, vaccinationConfig.getBeta()));
+			// remaining risk --> lower val, lower risk, max risk at 1
+			immunityCache[key] = 1.0 / (1.0 + Math.pow(target.getAntibodies(strain), vaccinationConfig.getBeta()));
+			targetStrain[key] = ordinal;
+		}
 
-		return 1 - Math.exp(-episimConfig.getCalibrationParameter() * susceptibility * infectivity * contactIntensity * jointTimeInContainer * ciCorrection
-				* target.getSusceptibility()
-				* getInfectivity(infector)
-				* strain.getInfectiousness()
-				* shedding
-				* intake
-				* indoorOutdoorFactor
-				* immunityFactor
-		);
+		return key;
 	}
 
-	private double calcInfectionProbabilityWoImmunity(EpisimPerson target, EpisimPerson infector, Map<String, Restriction> restrictions, EpisimConfigGroup.InfectionParams act1, EpisimConfigGroup.InfectionParams act2, double contactIntensity, double jointTimeInContainer,
-	                                            double indoorOutdoorFactor, double shedding, double intake, double infectivity, double susceptibility) {
+	private void growTargetCache(int index) {
+		int size = Math.max(index + 1, targetStamp.length + (targetStamp.length >> 1));
+		susceptibilityCache = Arrays.copyOf(susceptibilityCache, size * SLOTS);
+		immunityCache = Arrays.copyOf(immunityCache, size * SLOTS);
+		targetStrain = Arrays.copyOf(targetStrain, size * SLOTS);
+		targetStamp = Arrays.copyOf(targetStamp, size);
+	}
 
-		//noinspection ConstantConditions 		// ci corr can not be null, because sim is initialized with non null value
-		double ciCorrection = Math.min(restrictions.get(act1.getContainerName()).getCiCorrection(), restrictions.get(act2.getContainerName()).getCiCorrection());
+	private void growInfectorCache(int key) {
+		int size = Math.max(key + 1, infectorStamp.length + (infectorStamp.length >> 1));
+		infectivityCache = Arrays.copyOf(infectivityCache, size);
+		infectorStamp = Arrays.copyOf(infectorStamp, size);
+	}
 
-		VirusStrainConfigGroup.StrainParams strain = virusStrainConfig.getParams(infector.getVirusStrain());
+	/**
+	 * Susceptibility of the target towards a strain, which is reduced by IgA after infections with the same strain or strains of the same lineage.
+	 * Only depends on the infection history and therefore does not change during a day.
+	 */
+	private double calcSusceptibility(EpisimPerson target, VirusStrain strain) {
 
-		double relativeAntibodyLevel = 0.0;
+		double igaTimePeriod = vaccinationConfig.getTimePeriodIgA();
 
-		return 1 - Math.exp(-episimConfig.getCalibrationParameter() * susceptibility * infectivity * contactIntensity * jointTimeInContainer * ciCorrection
-				* target.getSusceptibility()
-				* getInfectivity(infector)
-				* strain.getInfectiousness()
-				* shedding
-				* intake
-				* indoorOutdoorFactor
-				/ (1.0 + Math.pow(relativeAntibodyLevel, vaccinationConfig.getBeta()))
+		// index of the last infection with the same strain and with any strain of each lineage
+		int lastInfectionWithStrain = -1;
+		int[] lastInfectionInLineage = this.lastInfectionInLineage;
+		Arrays.fill(lastInfectionInLineage, -1);
+
+		for (int ii = 0; ii < target.getNumInfections(); ii++) {
+			VirusStrain previous = target.getVirusStrain(ii);
+			if (previous == strain)
+				lastInfectionWithStrain = ii;
 
-		);
+			for (int l = 0; l < lineages.length; l++) {
+				if (lineages[l][previous.ordinal()])
+					lastInfectionInLineage[l] = ii;
+			}
+		}
+
+		double igaFactor = 0.0;
+		if (lastInfectionWithStrain >= 0) {
+//			igaFactor = Math.exp( - target.daysSinceInfection(lastInfectionWithStrain, iteration) / 120.0);
+			igaFactor = 1.0 / (1.0 + Math.exp(-2.0 * (1.0 - target.daysSinceInfection(lastInfectionWithStrain, iteration) / igaTimePeriod)));
+		}
+
+		for (int l = 0; l < lineages.length; l++) {
+			if (lineages[l][strain.ordinal()] && lastInfectionInLineage[l] >= 0) {
+				double fac = 1.0 / (1.0 + Math.exp(-2.0 * (1.0 - target.daysSinceInfection(lastInfectionInLineage[l], iteration) / igaTimePeriod)));
+				fac = fac / 1.4;
+				igaFactor = Math.max(fac, igaFactor);
+			}
+		}
+
+		return this.susceptibility.get(strain)[target.getAge()] * (1.0 - igaFactor) * target.getSusceptibility();
+	}
+
+	/**
+	 * Infectivity of the infector, including the progression of the disease and the reduction if the infector had antibodies.
+	 * Only depends on the disease status and therefore does not change during a day.
+	 */
+	private double calcInfectivity(EpisimPerson infector) {
+
+		VirusStrain strain = infector.getVirusStrain();
+
+		//reduced infectivity if infector has antibodies
+		double immunityFactorInfector = 1.0 / (1.0 + Math.pow(infector.getAntibodyLevelAtInfection(), vaccinationConfig.getBeta()));
+
+		return this.infectivity.get(strain)[infector.getAge()] * (1.0 - (0.25 * (1.0 - immunityFactorInfector)))
+				* getInfectivity(infector)
+				* virusStrainConfig.getParams(strain).getInfectiousness();
 	}
 
 	/**
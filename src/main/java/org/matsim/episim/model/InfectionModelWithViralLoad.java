@@ -26,6 +26,11 @@ public final class InfectionModelWithViralLoad implements InfectionModel {
 	private final EpisimConfigGroup episimConfig;
 	private final VirusStrainConfigGroup virusStrainConfig;
 
+	/**
+	 * Compiled restrictions of the current iteration.
+	 */
+	private RestrictionTable restrictionTable;
+
 	@Inject
 	public InfectionModelWithViralLoad(FaceMaskModel faceMaskModel, Config config) {
 		this.maskModel = faceMaskModel;
@@ -39,8 +44,10 @@ public final class InfectionModelWithViralLoad implements InfectionModel {
 										   EpisimConfigGroup.InfectionParams act1, EpisimConfigGroup.InfectionParams act2,
 										   double contactIntensity, double jointTimeInContainer) {
 
+		restrictionTable = RestrictionTable.compile(restrictionTable, restrictions, episimConfig);
+
 		// ci corr can not be null, because sim is initialized with non null value
-		double ciCorrection = Math.min(restrictions.get(act1.getContainerName()).getCiCorrection(), restrictions.get(act2.getContainerName()).getCiCorrection());
+		double ciCorrection = Math.min(restrictionTable.getCiCorrection(act1), restrictionTable.getCiCorrection(act2));
 
 		// note that for 1pct runs, calibParam is of the order of one, which means that for typical times of 100sec or more, exp( - 1 * 1 * 100 ) \approx 0, and
 		// thus the infection proba becomes 1.  Which also means that changes in contactIntensity has no effect.  kai, mar'20
@@ -51,8 +58,8 @@ public final class InfectionModelWithViralLoad implements InfectionModel {
 		return 1 - Math.exp(-episimConfig.getCalibrationParameter() * susceptibility * infectability * contactIntensity * jointTimeInContainer * ciCorrection
 				* target.getSusceptibility()
 				* virusStrainConfig.getParams(infector.getVirusStrain()).getInfectiousness()
-				* maskModel.getWornMask(infector, act2, restrictions.get(act2.getContainerName())).shedding
-				* maskModel.getWornMask(target, act1, restrictions.get(act1.getContainerName())).intake
+				* maskModel.getWornMask(infector, act2, restrictionTable).shedding
+				* maskModel.getWornMask(target, act1, restrictionTable).intake
 		);
 	}
 }
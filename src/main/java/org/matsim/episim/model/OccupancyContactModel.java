@@ -0,0 +1,38 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim.model;
+
+import org.matsim.episim.OccupancyIndex;
+
+/**
+ * Contact model that can evaluate contacts from the sweep over an occupancy index, which is required when the index replaces the replay.
+ *
+ * @see org.matsim.episim.EpisimConfigGroup#isOccupancyIndex()
+ */
+public interface OccupancyContactModel extends ContactModel {
+
+	/**
+	 * This method is called when a person leaves a facility or vehicle at {@code now}, when the occupancy index is used instead of the replay.
+	 * The persons present at that time are given by the sweep, including the leaving person at position {@code leaving}.
+	 */
+	void infectionDynamicsOccupancy(OccupancyIndex.Sweep sweep, int leaving, double now);
+
+}
@@ -54,6 +54,26 @@ public interface ProgressionModel {
 	 */
 	default void afterStateUpdates(Map<Id<Person>, EpisimPerson> persons, int day) {}
 
+	/**
+	 * Use this instance to update one partition of the persons, when persons are updated in several partitions with separate
+	 * model instances. Transitions are stored in the shared instance and tracing is collected instead of performed.
+	 * Collected tracing is performed by {@link #commitTracing(ProgressionModel)}.
+	 *
+	 * @param shared instance holding the state and tracing capacity of all partitions
+	 * @return whether the model supports this, otherwise all persons are updated serially by the shared instance
+	 */
+	default boolean collectTracing(ProgressionModel shared) {
+		return false;
+	}
+
+	/**
+	 * Perform the collected tracing as long as the shared instance has tracing capacity left.
+	 * Instances are committed in partition order, so that capacity is granted deterministically.
+	 *
+	 * @param shared instance holding the tracing capacity of all partitions
+	 */
+	default void commitTracing(ProgressionModel shared) {}
+
 	
 	/**
 	 * Checks whether any state transitions are possible. Otherwise the simulation will end.
@@ -0,0 +1,37 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim.model;
+
+import org.matsim.episim.ContactStatistics;
+
+/**
+ * Contact model that records the contacts of contagious persons, which are needed to calibrate the compartment model of the hybrid mode.
+ *
+ * @see org.matsim.episim.EpisimConfigGroup#getHybridThreshold()
+ */
+public interface RecordingContactModel extends ContactModel {
+
+	/**
+	 * Set the collector of contacts of contagious persons, only used to calibrate the compartment model.
+	 */
+	void setContactStatistics(ContactStatistics statistics);
+
+}
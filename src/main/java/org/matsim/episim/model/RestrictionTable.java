@@ -0,0 +1,256 @@
+/*-
+ * #%L
+ * MATSim Episim
+ * %%
+ * Copyright (C) 2020 matsim-org
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.matsim.episim.model;
+
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import org.matsim.api.core.v01.Id;
+import org.matsim.episim.DistrictIndex;
+import org.matsim.episim.EpisimConfigGroup;
+import org.matsim.episim.policy.Restriction;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Restrictions of one iteration compiled into primitive arrays, indexed by the infection params of an activity.
+ * <p>
+ * Restrictions don't change during an iteration, so the table is a snapshot that is built once and only read afterwards.
+ * It is immutable and can be shared between threads. Infection params that were unknown when compiling are looked up in the
+ * original restriction map.
+ */
+public final class RestrictionTable {
+
+	/**
+	 * Map the table was compiled from.
+	 */
+	private final Map<String, Restriction> restrictions;
+
+	/**
+	 * Districts used for the location based remaining fractions, may be null.
+	 */
+	@Nullable
+	private final DistrictIndex districts;
+
+	private final Reference2IntMap<EpisimConfigGroup.InfectionParams> ids = new Reference2IntOpenHashMap<>();
+
+	private final Restriction[] restriction;
+	private final double[] remainingFraction;
+
+	/**
+	 * Remaining fraction for each district, null if there are no location based restrictions.
+	 */
+	private final double[][] locationBasedRf;
+	private final double[] ciCorrection;
+
+	/**
+	 * Group sizes, -1 if not set.
+	 */
+	private final int[] maxGroupSize;
+	private final int[] reducedGroupSize;
+
+	private final boolean[] closingHours;
+
+	/**
+	 * Mask types and their cumulative probabilities.
+	 */
+	private final FaceMask[][] masks;
+	private final double[][] maskCdf;
+
+	private RestrictionTable(Map<String, Restriction> restrictions, EpisimConfigGroup config, @Nullable DistrictIndex districts) {
+		this.restrictions = restrictions;
+		this.districts = districts;
+
+		ids.defaultReturnValue(-1);
+		for (EpisimConfigGroup.InfectionParams params : config.getInfectionParams()) {
+			if (restrictions.containsKey(params.getContainerName()) && !ids.containsKey(params))
+				ids.put(params, ids.size());
+		}
+
+		int n = ids.size();
+		restriction = new Restriction[n];
+		remainingFraction = new double[n];
+		locationBasedRf = new double[n][];
+		ciCorrection = new double[n];
+		maxGroupSize = new int[n];
+		reducedGroupSize = new int[n];
+		closingHours = new boolean[n];
+		masks = new FaceMask[n][];
+		maskCdf = new double[n][];
+
+		for (Reference2IntMap.Entry<EpisimConfigGroup.InfectionParams> e : ids.reference2IntEntrySet()) {
+			int i = e.getIntValue();
+			Restriction r = restrictions.get(e.getKey().getContainerName());
+
+			restriction[i] = r;
+			remainingFraction[i] = r.getRemainingFraction() != null ? r.getRemainingFraction() : Double.NaN;
+			ciCorrection[i] = r.getCiCorrection() != null ? r.getCiCorrection() : Double.NaN;
+			maxGroupSize[i] = r.getMaxGroupSize() != null ? r.getMaxGroupSize() : -1;
+			reducedGroupSize[i] = r.getReducedGroupSize() != null ? r.getReducedGroupSize() : -1;
+			closingHours[i] = r.hasClosingHours();
+
+			Map<String, Double> rf = r.getLocationBasedRf();
+			if (districts != null && rf != null && !rf.isEmpty()) {
+				locationBasedRf[i] = new double[districts.size()];
+				Arrays.fill(locationBasedRf[i], remainingFraction[i]);
+				for (Map.Entry<String, Double> d : rf.entrySet()) {
+					int district = districts.indexOf(d.getKey());
+					if (district != DistrictIndex.NONE)
+						locationBasedRf[i][district] = d.getValue();
+				}
+			}
+
+			Map<FaceMask, Double> usage = r.getMaskUsage();
+			masks[i] = usage.keySet().toArray(new FaceMask[0]);
+			maskCdf[i] = usage.values().stream().mapToDouble(Double::doubleValue).toArray();
+		}
+	}
+
+	/**
+	 * Return a table for the given restrictions, which reuses {@code current} if it was compiled from the same map.
+	 *
+	 * @param current table of the previous call, may be null
+	 */
+	public static RestrictionTable compile(@Nullable RestrictionTable current, Map<String, Restriction> restrictions, EpisimConfigGroup config) {
+		return compile(current, restrictions, config, null);
+	}
+
+	/**
+	 * Same as {@link #compile(RestrictionTable, Map, EpisimConfigGroup)}, but additionally compiles the location based remaining
+	 * fractions for all districts.
+	 */
+	public static RestrictionTable compile(@Nullable RestrictionTable current, Map<String, Restriction> restrictions, EpisimConfigGroup config,
+	                                       @Nullable DistrictIndex districts) {
+		if (current != null && current.restrictions == restrictions && current.districts == districts)
+			return current;
+
+		return new RestrictionTable(restrictions, config, districts);
+	}
+
+	/**
+	 * Original restriction of an activity.
+	 */
+	public Restriction getRestriction(EpisimConfigGroup.InfectionParams params) {
+		int i = ids.getInt(params);
+		return i >= 0 ? restriction[i] : restrictions.get(params.getContainerName());
+	}
+
+	public double getRemainingFraction(EpisimConfigGroup.InfectionParams params) {
+		int i = ids.getInt(params);
+		return i >= 0 ? remainingFraction[i] : restrictions.get(params.getContainerName()).getRemainingFraction();
+	}
+
+	/**
+	 * Remaining fraction in a district, which falls back to the global value if there is no location based restriction for it.
+	 *
+	 * @param district index of the district in the {@link DistrictIndex} given when compiling, or {@link DistrictIndex#NONE}
+	 */
+	public double getRemainingFraction(EpisimConfigGroup.InfectionParams params, int district) {
+		int i = ids.getInt(params);
+		if (i >= 0) {
+			double[] rf = locationBasedRf[i];
+			return rf != null && district >= 0 ? rf[district] : remainingFraction[i];
+		}
+
+		Restriction r = restrictions.get(params.getContainerName());
+		if (districts != null && district >= 0 && r.getLocationBasedRf() != null) {
+			Double rf = r.getLocationBasedRf().get(districts.getName(district));
+			if (rf != null)
+				return rf;
+		}
+
+		return r.getRemainingFraction();
+	}
+
+	public double getCiCorrection(EpisimConfigGroup.InfectionParams params) {
+		int i = ids.getInt(params);
+		return i >= 0 ? ciCorrection[i] : restrictions.get(params.getContainerName()).getCiCorrection();
+	}
+
+	/**
+	 * Max group size or -1 if not set.
+	 */
+	public int getMaxGroupSize(EpisimConfigGroup.InfectionParams params) {
+		int i = ids.getInt(params);
+		if (i >= 0)
+			return maxGroupSize[i];
+
+		Integer size = restrictions.get(params.getContainerName()).getMaxGroupSize();
+		return size != null ? size : -1;
+	}
+
+	/**
+	 * Reduced group size or -1 if not set.
+	 */
+	public int getReducedGroupSize(EpisimConfigGroup.InfectionParams params) {
+		int i = ids.getInt(params);
+		if (i >= 0)
+			return reducedGroupSize[i];
+
+		Integer size = restrictions.get(params.getContainerName()).getReducedGroupSize();
+		return size != null ? size : -1;
+	}
+
+	/**
+	 * @see Restriction#hasClosingHours()
+	 */
+	public boolean hasClosingHours(EpisimConfigGroup.InfectionParams params) {
+		int i = ids.getInt(params);
+		return i >= 0 ? closingHours[i] : restrictions.get(params.getContainerName()).hasClosingHours();
+	}
+
+	/**
+	 * @see Restriction#isClosed(Id)
+	 */
+	public boolean isClosed(EpisimConfigGroup.InfectionParams params, Id<?> containerId) {
+		return getRestriction(params).isClosed(containerId);
+	}
+
+	/**
+	 * Draw the worn mask, same as {@link Restriction#determineMask(SplittableRandom)}.
+	 */
+	public FaceMask determineMask(EpisimConfigGroup.InfectionParams params, SplittableRandom rnd) {
+
+		int i = ids.getInt(params);
+		if (i < 0)
+			return restrictions.get(params.getContainerName()).determineMask(rnd);
+
+		FaceMask[] m = masks[i];
+		double[] cdf = maskCdf[i];
+
+		if (m.length == 0) return FaceMask.NONE;
+
+		double p = Double.NaN;
+		for (int j = 0; j < m.length; j++) {
+
+			if (cdf[j] == 1d) return m[j];
+			else if (Double.isNaN(p))
+				p = rnd.nextDouble();
+
+			if (p < cdf[j])
+				return m[j];
+		}
+
+		throw new IllegalStateException("Could not determine mask. Probabilities are likely wrong.");
+	}
+}
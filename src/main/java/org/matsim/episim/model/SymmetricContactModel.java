@@ -27,6 +27,7 @@ import org.matsim.api.core.v01.Scenario;
 import org.matsim.core.config.Config;
 import org.matsim.episim.*;
 
+import java.util.List;
 import java.util.SplittableRandom;
 
 import static org.matsim.episim.EpisimPerson.DiseaseStatus;
@@ -34,7 +35,7 @@ import static org.matsim.episim.EpisimPerson.DiseaseStatus;
 /**
  * Variant of the {@link DefaultContactModel} with symmetric interactions.
  */
-public final class SymmetricContactModel extends AbstractContactModel {
+public final class SymmetricContactModel extends AbstractContactModel implements HouseholdContactModel, OccupancyContactModel, RecordingContactModel {
 
 	private static final Logger log = LogManager.getLogger(SymmetricContactModel.class);
 
@@ -48,11 +49,6 @@ public final class SymmetricContactModel extends AbstractContactModel {
 	 */
 	private final boolean traceSusceptible;
 
-	/**
-	 * This buffer is used to store the infection type.
-	 */
-	private final StringBuilder buffer = new StringBuilder();
-
 	@Inject
 		/* package */
 	SymmetricContactModel(SplittableRandom rnd, Config config, TracingConfigGroup tracingConfig,
@@ -73,6 +69,100 @@ public final class SymmetricContactModel extends AbstractContactModel {
 		infectionDynamicsGeneralized(personLeavingFacility, facility, now);
 	}
 
+	/**
+	 * Evaluates every pair of household members once with their joint time of the day, as each pair also only interacts once during the replay.
+	 */
+	@Override
+	public void infectionDynamicsHousehold(HouseholdContacts.Household household, double now) {
+
+		if (skipHousehold(household))
+			return;
+
+		boolean trackingEnabled = iteration >= trackingAfterDay;
+		InfectionEventHandler.EpisimFacility facility = household.getFacility();
+
+		double nSpacesPerFacility = facility.getNumSpaces();
+		int maxPersonsInContainer = (int) (facility.getMaxGroupSize() * episimConfig.getSampleSize());
+
+		for (int i = 0; i < household.size(); i++) {
+
+			EpisimPerson person = household.getMember(i);
+			if (!householdMemberRelevant(person))
+				continue;
+
+			EpisimConfigGroup.InfectionParams params = getInfectionParams(facility, person, household.getActivity(i));
+			int act = activities.getId(params);
+
+			for (int j = i + 1; j < household.size(); j++) {
+
+				// other person needs to be in the same space
+				if (nSpacesPerFacility > 1 && rnd.nextDouble() >= 1 / nSpacesPerFacility)
+					continue;
+
+				EpisimPerson contactPerson = household.getMember(j);
+				if (!householdMemberRelevant(contactPerson))
+					continue;
+
+				double jointTime = household.getJointTime(i, j);
+				if (jointTime <= 0)
+					continue;
+
+				numContacts++;
+
+				if (!trackingEnabled) {
+					if (!AbstractContactModel.personsCanInfectEachOther(person, contactPerson))
+						continue;
+				} else if (!traceSusceptible && person.getDiseaseStatus() == DiseaseStatus.susceptible
+						&& contactPerson.getDiseaseStatus() == DiseaseStatus.susceptible)
+					continue;
+
+				EpisimConfigGroup.InfectionParams contactParams = getInfectionParams(facility, contactPerson, household.getActivity(j));
+				int otherAct = activities.getId(contactParams);
+
+				if (!activities.canInteract(act, otherAct))
+					continue;
+
+				String infectionType = activities.getInfectionType(facility, act, otherAct);
+
+				if (trackingEnabled)
+					trackContactPerson(person, contactPerson, now, jointTime, act, otherAct);
+
+				reporting.reportContact(now, person, contactPerson, facility, infectionType, jointTime);
+
+				double contactIntensity = Math.min(
+						params.getContactIntensity() / (maxPersonsInContainer / params.getSpacesPerFacility()),
+						contactParams.getContactIntensity() / (maxPersonsInContainer / nSpacesPerFacility)
+				);
+
+				recordContact(person, contactPerson, params, contactParams, infectionType, facility, household.size(), contactIntensity, jointTime, now);
+
+				if (!AbstractContactModel.personsCanInfectEachOther(person, contactPerson))
+					continue;
+
+				if ((person.hadDiseaseStatus(DiseaseStatus.contagious) &&
+						person.daysSince(DiseaseStatus.contagious, iteration) > episimConfig.getDaysInfectious())
+						|| (contactPerson.hadDiseaseStatus(DiseaseStatus.contagious) &&
+						contactPerson.daysSince(DiseaseStatus.contagious, iteration) > episimConfig.getDaysInfectious()))
+					continue;
+
+				EpisimPerson target = person.getDiseaseStatus() == DiseaseStatus.susceptible ? person : contactPerson;
+				EpisimPerson infector = target == person ? contactPerson : person;
+
+				double prob = target == person ?
+						infectionModel.calcInfectionProbability(person, contactPerson, getRestrictions(), params, contactParams, contactIntensity, jointTime) :
+						infectionModel.calcInfectionProbability(contactPerson, person, getRestrictions(), contactParams, params, contactIntensity, jointTime);
+
+				double probUnVac = infectionModel.getLastUnVacInfectionProbability();
+				double dbl = rnd.nextDouble();
+
+				potentialInfection(target, infector, now, infectionType, prob, facility, household.size(), probUnVac, dbl);
+
+				if (dbl < prob)
+					infectPerson(target, infector, now, infectionType, prob, facility, household.size());
+			}
+		}
+	}
+
 	private void infectionDynamicsGeneralized(EpisimPerson personLeavingContainer, EpisimContainer<?> container, double now) {
 
 		// no infection possible if there is only one person
@@ -87,32 +177,24 @@ public final class SymmetricContactModel extends AbstractContactModel {
 		// start tracking late as possible because of computational costs
 		boolean trackingEnabled = iteration >= trackingAfterDay;
 
-		for (EpisimPerson contactPerson : container.getPersons()) {
+		List<EpisimPerson> persons = getContactCandidates(personLeavingContainer, container, trackingEnabled);
+		double nSpacesPerFacility = container.getNumSpaces();
+
+		// probability that the other person is in another space, on log scale
+		double logOtherSpace = nSpacesPerFacility > 1 ? Math.log(1 - 1. / nSpacesPerFacility) : Double.NEGATIVE_INFINITY;
+
+		int maxPersonsInContainer = getMaxPersonsInContainer(container);
+
+		// persons in other spaces are skipped directly, the leaving person itself takes part in the draws but is skipped afterwards
+		for (int i = nextInSameSpace(-1, logOtherSpace, rnd); i < persons.size(); i = nextInSameSpace(i, logOtherSpace, rnd)) {
+
+			EpisimPerson contactPerson = persons.get(i);
 
 			// no contact with self, especially no tracing
 			if (personLeavingContainer == contactPerson) {
 				continue;
 			}
 
-			int maxPersonsInContainer = (int) (container.getMaxGroupSize() * episimConfig.getSampleSize());
-			// typical size is undefined if no vehicle file is used
-			if (container instanceof InfectionEventHandler.EpisimVehicle && container.getTypicalCapacity() > -1) {
-				maxPersonsInContainer = (int) (container.getTypicalCapacity() * episimConfig.getSampleSize());
-//				if ( container.getMaxGroupSize() > container.getTypicalCapacity() ) {
-//					log.warn("yyyyyy: vehicleId={}: maxGroupSize={} is larger than typicalCapacity={}; need to find organized answer to this.",
-//							container.getContainerId(), container.getMaxGroupSize(), container.getTypicalCapacity() );
-//				}
-//				log.warn("containerId={}; typical capacity={}; maxPersonsInContainer={}" , container.getContainerId(), container.getTypicalCapacity(), maxPersonsInContainer );
-			}
-
-			// it may happen that persons enter and leave an container at the same time
-			// effectively they have a joint time of 0 and will not count towards maximum group size
-			// still the size of the list of persons in the container may be larger than max group size
-			if (maxPersonsInContainer <= 1) {
-				log.debug("maxPersonsInContainer is={} even though there are {} persons in container={}", maxPersonsInContainer, container.getPersons().size(), container.getContainerId());
-				// maxPersonsInContainer = container.getPersons().size();
-			}
-
 			/*
 			if (ReplayEventsTask.getThreadRnd(rnd).nextDouble() >= episimConfig.getMaxContacts()/(maxPersonsInContainer-1) ) {
 				continue;
@@ -122,11 +204,6 @@ public final class SymmetricContactModel extends AbstractContactModel {
 
 			*/
 
-			double nSpacesPerFacility = container.getNumSpaces();
-			if (rnd.nextDouble() > 1. / nSpacesPerFacility) { // i.e. other person is in other space
-				continue;
-			}
-
 			if (!personRelevantForTrackingOrInfectionDynamics(now, contactPerson, container, getRestrictions(), rnd)) {
 				continue;
 			}
@@ -134,118 +211,247 @@ public final class SymmetricContactModel extends AbstractContactModel {
 			// counted as contact
 			numContacts++;
 
-			// we have thrown the random numbers, so we can bail out in some cases if we are not tracking:
-			if (!trackingEnabled) {
-				if (personLeavingContainer.getDiseaseStatus() == DiseaseStatus.infectedButNotContagious) {
-					continue;
-				}
-				if (contactPerson.getDiseaseStatus() == DiseaseStatus.infectedButNotContagious) {
-					continue;
-				}
-				if (personLeavingContainer.getDiseaseStatus() == contactPerson.getDiseaseStatus()) {
-					continue;
-				}
-			} else if (!traceSusceptible && personLeavingContainer.getDiseaseStatus() == DiseaseStatus.susceptible
-					&& contactPerson.getDiseaseStatus() == DiseaseStatus.susceptible)
+			if (skipContact(personLeavingContainer, contactPerson, trackingEnabled))
 				continue;
 
-			// activity params of the contact person and leaving person
-			EpisimConfigGroup.InfectionParams leavingParams = getInfectionParams(container, personLeavingContainer,  container.getPerformedActivity(personLeavingContainer.getPersonId()));
-			EpisimConfigGroup.InfectionParams contactParams = getInfectionParams(container, contactPerson,  container.getPerformedActivity(contactPerson.getPersonId()));
+			contact(personLeavingContainer, container.getPerformedActivity(personLeavingContainer.getPersonId()), container.getContainerEnteringTime(personLeavingContainer.getPersonId()),
+					contactPerson, container.getPerformedActivity(contactPerson.getPersonId()), container.getContainerEnteringTime(contactPerson.getPersonId()),
+					container, container.getPersons().size(), maxPersonsInContainer, trackingEnabled, now);
+		}
+	}
 
-			String leavingPersonsActivity = leavingParams == qhParams ? "home" : leavingParams.getContainerName();
-			String otherPersonsActivity = contactParams == qhParams ? "home" : contactParams.getContainerName();
+	/**
+	 * Same as the replay, but with the persons present in the container given by the sweep.
+	 */
+	@Override
+	public void infectionDynamicsOccupancy(OccupancyIndex.Sweep sweep, int leaving, double now) {
 
-			StringBuilder infectionType = getInfectionType(buffer, container, leavingPersonsActivity, otherPersonsActivity);
+		EpisimContainer<?> container = sweep.getContainer();
 
-			double containerEnterTimeOfPersonLeaving = container.getContainerEnteringTime(personLeavingContainer.getPersonId());
-			double containerEnterTimeOfOtherPerson = container.getContainerEnteringTime(contactPerson.getPersonId());
-			double jointTimeInContainer = calculateJointTimeInContainer(now, leavingParams, containerEnterTimeOfPersonLeaving, containerEnterTimeOfOtherPerson);
+		// no infection possible if there is only one person
+		if (iteration == 0 || sweep.size() == 1) {
+			return;
+		}
 
-			//forbid certain cross-activity interactions, keep track of contacts
-			if (container instanceof InfectionEventHandler.EpisimFacility) {
-				//home can only interact with home, leisure or work
-				if (infectionType.indexOf("home") >= 0 && infectionType.indexOf("leis") == -1 && infectionType.indexOf("work") == -1
-						&& !(leavingPersonsActivity.startsWith("home") && otherPersonsActivity.startsWith("home"))) {
-					// yyyyyy we need to move out of these string convention based rules in code.  kai, aug'20
-					continue;
-				} else if (infectionType.indexOf("edu") >= 0 && infectionType.indexOf("work") == -1 && !(leavingPersonsActivity.startsWith("edu") && otherPersonsActivity.startsWith("edu"))) {
-					//edu can only interact with work or edu
-					// yyyyyy we need to move out of these string convention based rules in code.  kai, aug'20
-					continue;
-				}
-				if (trackingEnabled) {
-					trackContactPerson(personLeavingContainer, contactPerson, now, jointTimeInContainer, infectionType);
-				}
-
-				// Only a subset of contacts are reported at the moment
-				// tracking has to be enabled to report more contacts
-				reporting.reportContact(now, personLeavingContainer, contactPerson, container, infectionType, jointTimeInContainer);
-			}
+		EpisimPerson personLeavingContainer = sweep.getPerson(leaving);
+		if (!personRelevantForTrackingOrInfectionDynamics(now, personLeavingContainer, container, getRestrictions(), rnd)) {
+			return;
+		}
+
+		boolean trackingEnabled = iteration >= trackingAfterDay;
+		double nSpacesPerFacility = container.getNumSpaces();
+		double logOtherSpace = nSpacesPerFacility > 1 ? Math.log(1 - 1. / nSpacesPerFacility) : Double.NEGATIVE_INFINITY;
+
+		int maxPersonsInContainer = getMaxPersonsInContainer(container);
+
+		for (int i = nextInSameSpace(-1, logOtherSpace, rnd); i < sweep.size(); i = nextInSameSpace(i, logOtherSpace, rnd)) {
 
-			if (!AbstractContactModel.personsCanInfectEachOther(personLeavingContainer, contactPerson)) {
+			if (i == leaving)
+				continue;
+
+			EpisimPerson contactPerson = sweep.getPerson(i);
+			if (!personRelevantForTrackingOrInfectionDynamics(now, contactPerson, container, getRestrictions(), rnd)) {
 				continue;
 			}
 
-			// person can only infect others x days after being contagious
-			if ((personLeavingContainer.hadDiseaseStatus(DiseaseStatus.contagious) &&
-					personLeavingContainer.daysSince(DiseaseStatus.contagious, iteration) > episimConfig.getDaysInfectious())
-					|| (contactPerson.hadDiseaseStatus(DiseaseStatus.contagious) &&
-					contactPerson.daysSince(DiseaseStatus.contagious, iteration) > episimConfig.getDaysInfectious()))
+			numContacts++;
+
+			if (skipContact(personLeavingContainer, contactPerson, trackingEnabled))
 				continue;
 
-			// persons leaving their first-ever activity have no starting time for that activity.  Need to hedge against that.  Since all persons
-			// start healthy (the first seeds are set at enterVehicle), we can make some assumptions.
-			if (containerEnterTimeOfPersonLeaving < 0 && containerEnterTimeOfOtherPerson < 0) {
-				throw new IllegalStateException("should not happen");
-				// should only happen at first activity.  However, at first activity all persons are susceptible.  So the only way we
-				// can get here is if an infected person entered the container and is now leaving again, while the other person has been in the
-				// container from the beginning.  ????  kai, mar'20
+			contact(personLeavingContainer, sweep.getActivity(leaving), sweep.getEnterTime(leaving),
+					contactPerson, sweep.getActivity(i), sweep.getEnterTime(i),
+					container, sweep.size(), maxPersonsInContainer, trackingEnabled, now);
+		}
+	}
+
+	/**
+	 * Maximum number of persons in a container, used for the contact intensity.
+	 */
+	private int getMaxPersonsInContainer(EpisimContainer<?> container) {
+
+		int maxPersonsInContainer = (int) (container.getMaxGroupSize() * episimConfig.getSampleSize());
+		// typical size is undefined if no vehicle file is used
+		if (container instanceof InfectionEventHandler.EpisimVehicle && container.getTypicalCapacity() > -1) {
+			maxPersonsInContainer = (int) (container.getTypicalCapacity() * episimConfig.getSampleSize());
+//			if ( container.getMaxGroupSize() > container.getTypicalCapacity() ) {
+//				log.warn("yyyyyy: vehicleId={}: maxGroupSize={} is larger than typicalCapacity={}; need to find organized answer to this.",
+//						container.getContainerId(), container.getMaxGroupSize(), container.getTypicalCapacity() );
+//			}
+//			log.warn("containerId={}; typical capacity={}; maxPersonsInContainer={}" , container.getContainerId(), container.getTypicalCapacity(), maxPersonsInContainer );
+		}
+
+		// it may happen that persons enter and leave an container at the same time
+		// effectively they have a joint time of 0 and will not count towards maximum group size
+		// still the size of the list of persons in the container may be larger than max group size
+		if (maxPersonsInContainer <= 1) {
+			log.debug("maxPersonsInContainer is={} even though there are {} persons in container={}", maxPersonsInContainer, container.getPersons().size(), container.getContainerId());
+			// maxPersonsInContainer = container.getPersons().size();
+		}
+
+		return maxPersonsInContainer;
+	}
+
+	/**
+	 * Whether a contact can be skipped after the random numbers have been drawn, because it is neither tracked nor can lead to an infection.
+	 */
+	private boolean skipContact(EpisimPerson personLeavingContainer, EpisimPerson contactPerson, boolean trackingEnabled) {
+
+		// we have thrown the random numbers, so we can bail out in some cases if we are not tracking:
+		if (!trackingEnabled) {
+			if (personLeavingContainer.getDiseaseStatus() == DiseaseStatus.infectedButNotContagious) {
+				return true;
+			}
+			if (contactPerson.getDiseaseStatus() == DiseaseStatus.infectedButNotContagious) {
+				return true;
 			}
+			return personLeavingContainer.getDiseaseStatus() == contactPerson.getDiseaseStatus();
+		}
+
+		return !traceSusceptible && personLeavingContainer.getDiseaseStatus() == DiseaseStatus.susceptible
+				&& contactPerson.getDiseaseStatus() == DiseaseStatus.susceptible;
+	}
+
+	/**
+	 * Evaluates the contact of the leaving person with one other person in the container.
+	 *
+	 * @param groupSize number of persons in the container
+	 */
+	private void contact(EpisimPerson personLeavingContainer, EpisimPerson.PerformedActivity leavingActivity, double containerEnterTimeOfPersonLeaving,
+	                     EpisimPerson contactPerson, EpisimPerson.PerformedActivity contactActivity, double containerEnterTimeOfOtherPerson,
+	                     EpisimContainer<?> container, int groupSize, int maxPersonsInContainer, boolean trackingEnabled, double now) {
+
+		double nSpacesPerFacility = container.getNumSpaces();
+
+		// activity params of the contact person and leaving person
+		EpisimConfigGroup.InfectionParams leavingParams = getInfectionParams(container, personLeavingContainer, leavingActivity);
+		EpisimConfigGroup.InfectionParams contactParams = getInfectionParams(container, contactPerson, contactActivity);
+
+		int leavingAct = activities.getId(leavingParams);
+		int otherAct = activities.getId(contactParams);
 
-			if (jointTimeInContainer < 0 || jointTimeInContainer > 86400 * 18) {
-				log.warn(containerEnterTimeOfPersonLeaving);
-				log.warn(containerEnterTimeOfOtherPerson);
-				log.warn(now);
-				throw new IllegalStateException("joint time in container is not plausible for personLeavingContainer=" + personLeavingContainer.getPersonId() + " and contactPerson=" + contactPerson.getPersonId() + ". Joint time is=" + jointTimeInContainer);
+		String infectionType = activities.getInfectionType(container, leavingAct, otherAct);
+
+		double jointTimeInContainer = calculateJointTimeInContainer(now, leavingParams, containerEnterTimeOfPersonLeaving, containerEnterTimeOfOtherPerson);
+
+		//forbid certain cross-activity interactions, keep track of contacts
+		if (container instanceof InfectionEventHandler.EpisimFacility) {
+			//home can only interact with home, leisure or work, edu can only interact with work or edu
+			if (!activities.canInteract(leavingAct, otherAct)) {
+				return;
+			}
+			if (trackingEnabled) {
+				trackContactPerson(personLeavingContainer, contactPerson, now, jointTimeInContainer, leavingAct, otherAct);
 			}
 
-			// (same computation as above; could just memorize)
-			// this is currently 1 / (sqmPerPerson * airExchangeRate).  Need to multiply sqmPerPerson with maxPersonsInSpace to obtain room size:
-			double contactIntensity = Math.min(
-					leavingParams.getContactIntensity() / (maxPersonsInContainer / leavingParams.getSpacesPerFacility()),
-					contactParams.getContactIntensity() / (maxPersonsInContainer / nSpacesPerFacility)
-			);
+			// Only a subset of contacts are reported at the moment
+			// tracking has to be enabled to report more contacts
+			reporting.reportContact(now, personLeavingContainer, contactPerson, container, infectionType, jointTimeInContainer);
+		}
 
-			// need to differentiate which person might be the infector
-			if (personLeavingContainer.getDiseaseStatus() == DiseaseStatus.susceptible) {
+		// (same computation as above; could just memorize)
+		// this is currently 1 / (sqmPerPerson * airExchangeRate).  Need to multiply sqmPerPerson with maxPersonsInSpace to obtain room size:
+		double contactIntensity = Math.min(
+				leavingParams.getContactIntensity() / (maxPersonsInContainer / leavingParams.getSpacesPerFacility()),
+				contactParams.getContactIntensity() / (maxPersonsInContainer / nSpacesPerFacility)
+		);
 
-				double prob = infectionModel.calcInfectionProbability(personLeavingContainer, contactPerson, getRestrictions(),
-						leavingParams, contactParams, contactIntensity, jointTimeInContainer);
+		recordContact(personLeavingContainer, contactPerson, leavingParams, contactParams, infectionType, container,
+				groupSize, contactIntensity, jointTimeInContainer, now);
 
-				double probUnVac = infectionModel.getLastUnVacInfectionProbability();
+		if (!AbstractContactModel.personsCanInfectEachOther(personLeavingContainer, contactPerson)) {
+			return;
+		}
 
-				double dbl = rnd.nextDouble();
+		// person can only infect others x days after being contagious
+		if ((personLeavingContainer.hadDiseaseStatus(DiseaseStatus.contagious) &&
+				personLeavingContainer.daysSince(DiseaseStatus.contagious, iteration) > episimConfig.getDaysInfectious())
+				|| (contactPerson.hadDiseaseStatus(DiseaseStatus.contagious) &&
+				contactPerson.daysSince(DiseaseStatus.contagious, iteration) > episimConfig.getDaysInfectious()))
+			return;
 
-				potentialInfection(personLeavingContainer, contactPerson, now, infectionType, prob, container, probUnVac, dbl);
+		// persons leaving their first-ever activity have no starting time for that activity.  Need to hedge against that.  Since all persons
+		// start healthy (the first seeds are set at enterVehicle), we can make some assumptions.
+		if (containerEnterTimeOfPersonLeaving < 0 && containerEnterTimeOfOtherPerson < 0) {
+			throw new IllegalStateException("should not happen");
+			// should only happen at first activity.  However, at first activity all persons are susceptible.  So the only way we
+			// can get here is if an infected person entered the container and is now leaving again, while the other person has been in the
+			// container from the beginning.  ????  kai, mar'20
+		}
 
-				if (dbl < prob)
-					infectPerson(personLeavingContainer, contactPerson, now, infectionType, prob, container);
+		if (jointTimeInContainer < 0 || jointTimeInContainer > 86400 * 18) {
+			log.warn(containerEnterTimeOfPersonLeaving);
+			log.warn(containerEnterTimeOfOtherPerson);
+			log.warn(now);
+			throw new IllegalStateException("joint time in container is not plausible for personLeavingContainer=" + personLeavingContainer.getPersonId() + " and contactPerson=" + contactPerson.getPersonId() + ". Joint time is=" + jointTimeInContainer);
+		}
 
-			} else {
-				double prob = infectionModel.calcInfectionProbability(contactPerson, personLeavingContainer, getRestrictions(),
-						contactParams, leavingParams, contactIntensity, jointTimeInContainer);
+		// need to differentiate which person might be the infector
+		if (personLeavingContainer.getDiseaseStatus() == DiseaseStatus.susceptible) {
 
-				double probUnVac = infectionModel.getLastUnVacInfectionProbability();
+			double prob = infectionModel.calcInfectionProbability(personLeavingContainer, contactPerson, getRestrictions(),
+					leavingParams, contactParams, contactIntensity, jointTimeInContainer);
 
-				double dbl = rnd.nextDouble();
+			double probUnVac = infectionModel.getLastUnVacInfectionProbability();
 
-				potentialInfection(contactPerson, personLeavingContainer, now, infectionType, prob, container, probUnVac, dbl);
+			double dbl = rnd.nextDouble();
 
-				if (dbl < prob)
-					infectPerson(contactPerson, personLeavingContainer, now, infectionType, prob, container);
-			}
+			potentialInfection(personLeavingContainer, contactPerson, now, infectionType, prob, container, groupSize, probUnVac, dbl);
+
+			if (dbl < prob)
+				infectPerson(personLeavingContainer, contactPerson, now, infectionType, prob, container, groupSize);
+
+		} else {
+			double prob = infectionModel.calcInfectionProbability(contactPerson, personLeavingContainer, getRestrictions(),
+					contactParams, leavingParams, contactIntensity, jointTimeInContainer);
+
+			double probUnVac = infectionModel.getLastUnVacInfectionProbability();
+
+			double dbl = rnd.nextDouble();
+
+			potentialInfection(contactPerson, personLeavingContainer, now, infectionType, prob, container, groupSize, probUnVac, dbl);
+
+			if (dbl < prob)
+				infectPerson(contactPerson, personLeavingContainer, now, infectionType, prob, container, groupSize);
 		}
 	}
 
+	/**
+	 * Persons that are considered as contacts of the leaving person. If only infections are relevant and status lists are enabled,
+	 * these are only the persons with the opposite status.
+	 */
+	private List<EpisimPerson> getContactCandidates(EpisimPerson personLeavingContainer, EpisimContainer<?> container, boolean trackingEnabled) {
+
+		if (!episimConfig.isStatusPartitionedContacts() || trackingEnabled)
+			return container.getPersons();
+
+		DiseaseStatus status = personLeavingContainer.getDiseaseStatus();
+		if (status == DiseaseStatus.susceptible)
+			return container.getContagiousPersons();
+		else if (status == DiseaseStatus.contagious || status == DiseaseStatus.showingSymptoms)
+			return container.getSusceptiblePersons();
+
+		return List.of();
+	}
+
+	/**
+	 * Index of the next person in the same space after index {@code i}.
+	 * Each person is in the same space independently with probability {@code 1 - exp(logOtherSpace)}, so the number of skipped persons
+	 * follows a geometric distribution and only one random number is needed per contact.
+	 *
+	 * @param logOtherSpace log of the probability that a person is in another space
+	 * @return next index, may be larger than the number of persons
+	 */
+	static int nextInSameSpace(int i, double logOtherSpace, SplittableRandom rnd) {
+
+		if (logOtherSpace == Double.NEGATIVE_INFINITY)
+			return i + 1;
+
+		double skip = Math.floor(Math.log(1 - rnd.nextDouble()) / logOtherSpace);
+		if (skip >= Integer.MAX_VALUE - i - 1)
+			return Integer.MAX_VALUE;
+
+		return i + 1 + (int) skip;
+	}
+
 }
@@ -2,14 +2,16 @@ package org.matsim.episim.model.activity;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.inject.Inject;
-import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
+import org.matsim.episim.DistrictIndex;
 import org.matsim.episim.EpisimConfigGroup;
 import org.matsim.episim.EpisimPerson;
+import org.matsim.episim.model.RestrictionTable;
 import org.matsim.episim.policy.Restriction;
-import org.matsim.facilities.ActivityFacility;
 
-import java.util.*;
+import java.util.BitSet;
+import java.util.List;
+import java.util.SplittableRandom;
 
 /**
  * Location based participation model restricts activity participation by the local remaining fraction corresponding
@@ -19,12 +21,12 @@ public class LocationBasedParticipationModel implements ActivityParticipationMod
 
 	private final SplittableRandom rnd;
 	private final EpisimConfigGroup episimConfig;
-	private ImmutableMap<String, Restriction> im;
+	private RestrictionTable restrictions;
 
 	/**
-	 * Map of each ActivityFacility with the corresponding subdistrict
+	 * Districts of facilities for location based restrictions.
 	 */
-	private final Map<String, String> subdistrictFacilities;
+	private final DistrictIndex districts;
 
 	@Inject
 	public LocationBasedParticipationModel(SplittableRandom rnd, EpisimConfigGroup episimConfig, Scenario scenario) {
@@ -38,41 +40,21 @@ public class LocationBasedParticipationModel implements ActivityParticipationMod
 			throw new IllegalStateException("LocationBasedParticipationModel can only be used if location based restrictions are used");
 		}
 
-		subdistrictFacilities = new HashMap<>();
-		if (scenario != null && !scenario.getActivityFacilities().getFacilities().isEmpty()) {
-			for (ActivityFacility facility : scenario.getActivityFacilities().getFacilities().values()) {
-				String subdistrictAttributeName = episimConfig.getDistrictLevelRestrictionsAttribute();
-				String subdistrict = (String) facility.getAttributes().getAttribute(subdistrictAttributeName);
-				if (subdistrict != null) {
-					this.subdistrictFacilities.put(facility.getId().toString(), subdistrict);
-				}
-			}
-		}
+		districts = DistrictIndex.of(scenario, episimConfig);
 	}
 
 	@Override
 	public void setRestrictionsForIteration(int iteration, ImmutableMap<String, Restriction> im) {
-		this.im = im;
+		this.restrictions = RestrictionTable.compile(restrictions, im, episimConfig, districts);
 	}
 
 	@Override
 	public void updateParticipation(EpisimPerson person, BitSet trajectory, int offset, List<EpisimPerson.PerformedActivity> activities) {
 		for (int i = 0; i < activities.size(); i++) {
-			String context = activities.get(i).params.getContainerName();
-			Id<ActivityFacility> facilityId = activities.get(i).getFacilityId();
-
-			Restriction restriction = im.get(context);
-			double remainingFraction = restriction.getRemainingFraction();
+			EpisimPerson.PerformedActivity act = activities.get(i);
 
 			// Replaces global remaining fraction with local one, if applicable
-			if (facilityId != null) {
-				if (subdistrictFacilities.containsKey(facilityId.toString())) {
-					String subdistrict = subdistrictFacilities.get(facilityId.toString());
-					if (restriction.getLocationBasedRf().containsKey(subdistrict)) {
-						remainingFraction = restriction.getLocationBasedRf().get(subdistrict);
-					}
-				}
-			}
+			double remainingFraction = restrictions.getRemainingFraction(act.params, districts.getDistrict(act));
 
 			if (remainingFraction == 1.0)
 				trajectory.set(offset + i, true);
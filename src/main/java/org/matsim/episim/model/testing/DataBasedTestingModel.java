@@ -95,6 +95,18 @@ public final class DataBasedTestingModel extends DefaultTestingModel {
 		}
 	}
 
+	@Override
+	protected boolean hasCapacity(TestType type, String pool) {
+		return super.hasCapacity(type, pool) && (pool == null || forDay.getInt(pool) > 0);
+	}
+
+	@Override
+	protected void decreaseCapacity(TestType type, String pool) {
+		super.decreaseCapacity(type, pool);
+		if (pool != null)
+			forDay.mergeInt(pool, -1, Integer::sum);
+	}
+
 	@Override
 	public void performTesting(EpisimPerson person, int day) {
 
@@ -116,24 +128,27 @@ public final class DataBasedTestingModel extends DefaultTestingModel {
 		if (forDay.values().stream().allMatch(i -> i <= 0))
 			return;
 
-		// update is run at end of day, the test needs to be for the next day
-		DayOfWeek dow = EpisimUtils.getDayOfWeek(episimConfig, day + 1);
-
-		String act = person.matchActivities(dow, testingConfig.getActivities(), this::chooseActivity, null);
+		String act = choosePool(person, day);
 
 		if (act != null) {
 
 			// testing rate can be reduced to introduce more randomness
 			// otherwise always the same persons are tested
-			boolean tested = testAndQuarantine(person, day, params, params.getTestingRate());
-
-			if (tested)
-				forDay.mergeInt(act, -1, Integer::sum);
+			testAndQuarantine(person, day, params, params.getTestingRate(), act);
 
 		}
 
 	}
 
+	@Override
+	protected String choosePool(EpisimPerson person, int day) {
+
+		// update is run at end of day, the test needs to be for the next day
+		DayOfWeek dow = EpisimUtils.getDayOfWeek(episimConfig, day + 1);
+
+		return person.matchActivities(dow, testingConfig.getActivities(), this::chooseActivity, null);
+	}
+
 	/**
 	 * Choose from which pool test capacity will be drawn.
 	 *
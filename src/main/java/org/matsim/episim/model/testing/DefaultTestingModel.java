@@ -11,6 +11,7 @@ import org.matsim.episim.model.VirusStrain;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * Testing model that provides some default testing capabilities and helper functions.
@@ -55,6 +56,11 @@ public class DefaultTestingModel implements TestingModel {
 	 */
 	private boolean withOutBooster;
 
+	/**
+	 * Tests that still need to be granted capacity, null if tests are applied directly.
+	 */
+	private List<PendingTest> pendingTests;
+
 	@Inject
 	DefaultTestingModel(SplittableRandom rnd, Config config, TestingConfigGroup testingConfig, VaccinationConfigGroup vaccinationConfig, EpisimConfigGroup episimConfig) {
 		this.rnd = rnd;
@@ -84,6 +90,62 @@ public class DefaultTestingModel implements TestingModel {
 		}
 	}
 
+	@Override
+	public void collectTests() {
+		pendingTests = new ArrayList<>();
+	}
+
+	@Override
+	public void commitTests(TestingModel shared, Consumer<EpisimPerson> tested) {
+
+		DefaultTestingModel capacity = (DefaultTestingModel) shared;
+
+		for (PendingTest test : pendingTests) {
+			TestType type = test.params.getType();
+
+			// pool is chosen again against the shared capacity, as the serial update would have done
+			String pool = test.pool == null ? null : capacity.choosePool(test.person, test.day);
+			if (test.pool != null && pool == null)
+				continue;
+
+			if (capacity.hasCapacity(type, pool)) {
+				capacity.decreaseCapacity(type, pool);
+				applyTest(test.person, test.day, test.status);
+				tested.accept(test.person);
+			}
+		}
+
+		pendingTests.clear();
+	}
+
+	/**
+	 * Whether there is capacity left for a test.
+	 *
+	 * @param pool capacity pool the test is drawn from, may be null
+	 */
+	protected boolean hasCapacity(TestType type, String pool) {
+		return testingCapacity.get(type) > 0;
+	}
+
+	/**
+	 * Choose the capacity pool for a test of a person, based on the capacity left in this instance.
+	 * Only called for tests that have been performed with a pool.
+	 *
+	 * @return chosen pool or null if no pool has capacity left
+	 */
+	protected String choosePool(EpisimPerson person, int day) {
+		throw new IllegalStateException("Testing model " + getClass().getSimpleName() + " does not use capacity pools.");
+	}
+
+	/**
+	 * Use up capacity for one test.
+	 *
+	 * @param pool capacity pool the test is drawn from, may be null
+	 */
+	protected void decreaseCapacity(TestType type, String pool) {
+		testingCapacity.merge(type, -1, Integer::sum);
+	}
+
 	@Override
 	public void beforeStateUpdates(Map<Id<Person>, EpisimPerson> personMap, int iteration, EpisimReporting.InfectionReport report) {
 
@@ -184,6 +246,16 @@ public class DefaultTestingModel implements TestingModel {
 	 * @return true if the person was tested (test result does not matter)
 	 */
 	protected boolean testAndQuarantine(EpisimPerson person, int day, TestingConfigGroup.TestingParams params, double testingRate) {
+		return testAndQuarantine(person, day, params, testingRate, null);
+	}
+
+	/**
+	 * Perform testing and quarantine person, using capacity of a specific pool.
+	 *
+	 * @return true if the person was tested, or the test was collected when tests are committed later
+	 * @see #testAndQuarantine(EpisimPerson, int, TestingConfigGroup.TestingParams, double)
+	 */
+	protected boolean testAndQuarantine(EpisimPerson person, int day, TestingConfigGroup.TestingParams params, double testingRate, String pool) {
 
 		if (testingRate == 0)
 			return false;
@@ -194,9 +266,11 @@ public class DefaultTestingModel implements TestingModel {
 		if (testingRate != 1d && rnd.nextDouble() >= testingRate)
 			return false;
 
+		// status stays unchanged if null
+		EpisimPerson.TestStatus testStatus = null;
+
 		if (params.getType().shouldDetectNegative(person, day)) {
-			EpisimPerson.TestStatus testStatus = rnd.nextDouble() >= params.getFalsePositiveRate() ? EpisimPerson.TestStatus.negative : EpisimPerson.TestStatus.positive;
-			person.setTestStatus(testStatus, day);
+			testStatus = rnd.nextDouble() >= params.getFalsePositiveRate() ? EpisimPerson.TestStatus.negative : EpisimPerson.TestStatus.positive;
 
 		} else if (params.getType().canDetectPositive(person, day)) {
 
@@ -213,17 +287,30 @@ public class DefaultTestingModel implements TestingModel {
 				rate = 0.5;
 			}
 
-			EpisimPerson.TestStatus testStatus = rnd.nextDouble() >= rate ? EpisimPerson.TestStatus.positive : EpisimPerson.TestStatus.negative;
-			person.setTestStatus(testStatus, day);
+			testStatus = rnd.nextDouble() >= rate ? EpisimPerson.TestStatus.positive : EpisimPerson.TestStatus.negative;
+		}
+
+		if (pendingTests != null) {
+			pendingTests.add(new PendingTest(person, day, params, testStatus, pool));
+			return true;
 		}
 
+		applyTest(person, day, testStatus);
+		decreaseCapacity(params.getType(), pool);
+		return true;
+	}
+
+	/**
+	 * Set test result and quarantine person if it is positive.
+	 */
+	private void applyTest(EpisimPerson person, int day, EpisimPerson.TestStatus testStatus) {
+
+		if (testStatus != null)
+			person.setTestStatus(testStatus, day);
 
 		if (person.getTestStatus() == EpisimPerson.TestStatus.positive) {
 			quarantinePerson(person, day);
 		}
-
-		testingCapacity.merge(params.getType(), -1, Integer::sum);
-		return true;
 	}
 
 	private void quarantinePerson(EpisimPerson p, int day) {
@@ -234,4 +321,24 @@ public class DefaultTestingModel implements TestingModel {
 		}
 	}
 
+	/**
+	 * Test that has been performed, but not yet been granted capacity.
+	 */
+	private static final class PendingTest {
+
+		private final EpisimPerson person;
+		private final int day;
+		private final TestingConfigGroup.TestingParams params;
+		private final EpisimPerson.TestStatus status;
+		private final String pool;
+
+		private PendingTest(EpisimPerson person, int day, TestingConfigGroup.TestingParams params, EpisimPerson.TestStatus status, String pool) {
+			this.person = person;
+			this.day = day;
+			this.params = params;
+			this.status = status;
+			this.pool = pool;
+		}
+	}
+
 }
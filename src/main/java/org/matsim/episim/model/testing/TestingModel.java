@@ -6,6 +6,7 @@ import org.matsim.episim.EpisimPerson;
 import org.matsim.episim.EpisimReporting;
 
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * Model to determine which persons are tested at the start of the day.
@@ -17,6 +18,22 @@ public interface TestingModel {
 	 */
 	default void setIteration(int day) {}
 
+	/**
+	 * Collect the tests performed by this instance instead of applying them, when persons are tested in several partitions
+	 * with separate model instances. Collected tests are applied by {@link #commitTests(TestingModel, Consumer)}.
+	 */
+	default void collectTests() {}
+
+	/**
+	 * Apply the collected tests as long as the shared instance has testing capacity left.
+	 * Capacity pools of the tests are chosen again against the capacity left in the shared instance.
+	 * Instances are committed in partition order, so that capacity is granted deterministically.
+	 *
+	 * @param shared instance holding the testing capacity of all partitions
+	 * @param tested called for each person that has been tested
+	 */
+	default void commitTests(TestingModel shared, Consumer<EpisimPerson> tested) {}
+
 	/**
 	 * Perform testing on the person and update state if necessary.
 	 */
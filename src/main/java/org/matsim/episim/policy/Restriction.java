@@ -628,8 +628,11 @@ public final class Restriction {
 		return reducedGroupSize;
 	}
 
-	Map<FaceMask, Double> getMaskUsage() {
-		return maskUsage;
+	/**
+	 * Cumulative probabilities of wearing each mask type, as used by {@link #determineMask(SplittableRandom)}.
+	 */
+	public Map<FaceMask, Double> getMaskUsage() {
+		return Collections.unmodifiableMap(maskUsage);
 	}
 
 	@Nullable
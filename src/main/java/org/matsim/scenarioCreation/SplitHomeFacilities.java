@@ -11,17 +11,20 @@ import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.events.ActivityEndEvent;
 import org.matsim.api.core.v01.events.ActivityStartEvent;
 import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.PersonEntersVehicleEvent;
+import org.matsim.api.core.v01.events.PersonLeavesVehicleEvent;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.api.internal.HasPersonId;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.events.EventsUtils;
 import org.matsim.core.events.algorithms.EventWriterXML;
+import org.matsim.core.events.handler.BasicEventHandler;
 import org.matsim.core.population.PopulationUtils;
 import org.matsim.core.scenario.ScenarioUtils;
 import org.matsim.core.utils.geometry.geotools.MGC;
 import org.matsim.core.utils.gis.ShapeFileReader;
-import org.matsim.episim.EpisimConfigGroup;
 import org.matsim.episim.ReplayHandler;
 import org.matsim.facilities.ActivityFacility;
 import org.matsim.utils.objectattributes.attributable.Attributes;
@@ -31,7 +34,6 @@ import picocli.CommandLine;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.time.DayOfWeek;
 import java.util.*;
 import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
@@ -99,8 +101,6 @@ public class SplitHomeFacilities implements Callable<Integer> {
 		Config config = ConfigUtils.createConfig();
 		config.plans().setInputFile(population.toString());
 
-		EpisimConfigGroup episimConfig = ConfigUtils.addOrGetModule(config, EpisimConfigGroup.class);
-
 		if (!Files.exists(population)) {
 			log.error("Input population file {} does not exists", population);
 			return 1;
@@ -220,29 +220,44 @@ public class SplitHomeFacilities implements Callable<Integer> {
 
 			log.info("Processing event file {}", events);
 
-			episimConfig.setInputEventsFile(events.toString());
-			ReplayHandler replay = new ReplayHandler(episimConfig, null);
 			EventsManager manager = EventsUtils.createEventsManager();
 
 			String eventName = events.getFileName().toString().replace(".xml.gz", "") + "_split.xml.gz";
 			EventWriterXML writer = new EventWriterXML(output.resolve(eventName).toString());
 			manager.addHandler(writer);
 
-			// create new events if the activity id has changed
-			for (Event event : replay.getEvents().get(DayOfWeek.MONDAY)) {
-
-				if (event instanceof ActivityStartEvent) {
-					ActivityStartEvent ev = (ActivityStartEvent) event;
-					manager.processEvent(new ActivityStartEvent(ev.getTime(), ev.getPersonId(), ev.getLinkId(),
-							getNewFacilityId(ev.getPersonId(), ev.getFacilityId(), ev.getActType()), ev.getActType(), ev.getCoord()));
+			// events are read directly, because the compact replay events do not keep coordinates
+			EventsManager reader = EventsUtils.createEventsManager();
+			reader.addHandler(new BasicEventHandler() {
+				@Override
+				public void handleEvent(Event event) {
+
+					// create new events if the activity id has changed
+					if (event instanceof ActivityStartEvent) {
+						ActivityStartEvent ev = (ActivityStartEvent) event;
+						if (!ReplayHandler.shouldHandleActivityEvent(ev, ev.getActType()))
+							return;
+
+						manager.processEvent(new ActivityStartEvent(ev.getTime(), ev.getPersonId(), ev.getLinkId(),
+								getNewFacilityId(ev.getPersonId(), ev.getFacilityId(), ev.getActType()), ev.getActType(), ev.getCoord()));
+
+					} else if (event instanceof ActivityEndEvent) {
+						ActivityEndEvent ev = (ActivityEndEvent) event;
+						if (!ReplayHandler.shouldHandleActivityEvent(ev, ev.getActType()))
+							return;
+
+						manager.processEvent(new ActivityEndEvent(ev.getTime(), ev.getPersonId(), ev.getLinkId(),
+								getNewFacilityId(ev.getPersonId(), ev.getFacilityId(), ev.getActType()), ev.getActType()));
+					} else if (event instanceof PersonEntersVehicleEvent || event instanceof PersonLeavesVehicleEvent) {
+						if (ReplayHandler.shouldHandlePersonEvent((HasPersonId) event))
+							manager.processEvent(event);
+					} else
+						manager.processEvent(event);
+				}
+			});
 
-				} else if (event instanceof ActivityEndEvent) {
-					ActivityEndEvent ev = (ActivityEndEvent) event;
-					manager.processEvent(new ActivityEndEvent(ev.getTime(), ev.getPersonId(), ev.getLinkId(),
-							getNewFacilityId(ev.getPersonId(), ev.getFacilityId(), ev.getActType()), ev.getActType()));
-				} else
-					manager.processEvent(event);
-			}
+			EventsUtils.readEvents(reader, events.toString());
+			reader.finishProcessing();
 
 			// Close event file
 			writer.closeFile();
@@ -56,7 +56,7 @@ public class BenchmarkIteration {
 		// benchmark with event writing
 		// injector.getInstance(EventsManager.class).addHandler(reporting);
 
-		handler.init(replay.getEvents());
+		handler.init(replay.getDayEvents());
 	}
 
 	@Benchmark
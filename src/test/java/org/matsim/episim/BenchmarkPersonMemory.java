@@ -0,0 +1,205 @@
+package org.matsim.episim;
+
+import com.google.inject.Guice;
+import com.google.inject.util.Modules;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.doubles.DoubleList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.objects.Object2DoubleLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
+import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.episim.events.EpisimPotentialInfectionEvent;
+import org.matsim.episim.model.VaccinationType;
+import org.matsim.episim.model.VirusStrain;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.run.modules.SnzBerlinProductionScenario;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+
+import java.util.*;
+
+/**
+ * Measures the retained heap of the persons of the Berlin 25% scenario, once with the per object layout of the person state used before
+ * the {@link PersonStore} and once with the shared store. The old layout is reproduced by {@link ObjectPerson}.
+ * Run with a fixed heap to get reproducible numbers, e.g.:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.matsim.episim.BenchmarkPersonMemory
+ * </pre>
+ * with {@code MAVEN_OPTS="-Xms8g -Xmx8g -XX:+UseSerialGC"}. A number as argument uses as many synthetic persons instead of the scenario.
+ */
+public class BenchmarkPersonMemory {
+
+	public static void main(String[] args) {
+
+		// ids and attributes are shared by both layouts and not part of the measurement
+		List<Id<Person>> ids = new ArrayList<>();
+		List<Attributes> attrs = new ArrayList<>();
+
+		if (args.length > 0) {
+			int n = Integer.parseInt(args[0]);
+			for (int i = 0; i < n; i++) {
+				ids.add(Id.createPersonId("memory" + i));
+				Attributes a = new Attributes();
+				a.putAttribute("age", i % 100);
+				attrs.add(a);
+			}
+		} else {
+			Scenario scenario = Guice.createInjector(Modules.override(new EpisimModule())
+					.with(new SnzBerlinProductionScenario.Builder().setSample(25).build()))
+					.getInstance(Scenario.class);
+
+			for (Person person : scenario.getPopulation().getPersons().values()) {
+				ids.add(person.getId());
+				attrs.add(person.getAttributes());
+			}
+		}
+
+		int n = ids.size();
+
+		long before = usedMemory();
+		List<ObjectPerson> objects = createObjectPersons(ids, attrs);
+		long objectBytes = usedMemory() - before;
+
+		System.out.printf("Per object layout: %d persons, %d bytes retained, %.1f bytes per person%n",
+				objects.size(), objectBytes, (double) objectBytes / n);
+
+		objects = null;
+
+		before = usedMemory();
+		PersonStore store = new PersonStore(n);
+		List<EpisimPerson> persons = createPersons(ids, attrs, store);
+		long storeBytes = usedMemory() - before;
+
+		System.out.printf("Person store: %d persons, %d bytes retained, %.1f bytes per person, %d bytes estimated by the store%n",
+				persons.size(), storeBytes, (double) storeBytes / n, store.getMemoryUsage());
+	}
+
+	/**
+	 * Create persons sharing one store, with a fixed set of vaccinations, infections and antibodies.
+	 */
+	private static List<EpisimPerson> createPersons(List<Id<Person>> ids, List<Attributes> attrs, PersonStore store) {
+
+		SplittableRandom rnd = new SplittableRandom(1);
+		EpisimReporting reporting = EpisimTestUtils.getReporting();
+
+		List<EpisimPerson> persons = new ArrayList<>(ids.size());
+		for (int i = 0; i < ids.size(); i++) {
+
+			EpisimPerson p = new EpisimPerson(ids.get(i), attrs.get(i), true, reporting, store);
+
+			if (rnd.nextDouble() < 0.6)
+				p.setVaccinationStatus(EpisimPerson.VaccinationStatus.yes, VaccinationType.mRNA, 10);
+
+			if (rnd.nextDouble() < 0.3) {
+				EpisimTestUtils.infectPerson(p, VirusStrain.DELTA, 20 * EpisimUtils.DAY);
+				p.setAntibodies(VirusStrain.DELTA, 10);
+			}
+
+			persons.add(p);
+		}
+
+		return persons;
+	}
+
+	/**
+	 * Same as {@link #createPersons(List, List, PersonStore)} with the per object layout.
+	 */
+	private static List<ObjectPerson> createObjectPersons(List<Id<Person>> ids, List<Attributes> attrs) {
+
+		SplittableRandom rnd = new SplittableRandom(1);
+
+		List<ObjectPerson> persons = new ArrayList<>(ids.size());
+		for (int i = 0; i < ids.size(); i++) {
+
+			ObjectPerson p = new ObjectPerson(ids.get(i), attrs.get(i));
+
+			if (rnd.nextDouble() < 0.6) {
+				p.vaccinations.add(VaccinationType.mRNA);
+				p.vaccinationDates.add(10);
+			}
+
+			if (rnd.nextDouble() < 0.3) {
+				p.status = EpisimPerson.DiseaseStatus.infectedButNotContagious;
+				p.statusChanges.put(EpisimPerson.DiseaseStatus.infectedButNotContagious, 20. * EpisimUtils.DAY);
+				p.infectionDates.add(20. * EpisimUtils.DAY);
+				p.virusStrains.add(VirusStrain.DELTA);
+				p.antibodies.put(VirusStrain.DELTA, 10);
+				p.maxAntibodies.put(VirusStrain.DELTA, 10);
+			}
+
+			persons.add(p);
+		}
+
+		return persons;
+	}
+
+	/**
+	 * Used heap after garbage collection.
+	 */
+	private static long usedMemory() {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+	/**
+	 * Instance fields of {@link EpisimPerson} before its state was moved into the {@link PersonStore}, all allocated eagerly as before.
+	 */
+	@SuppressWarnings({"unused", "unchecked"})
+	private static final class ObjectPerson {
+
+		private final Id<Person> personId;
+		private final EpisimReporting reporting = EpisimTestUtils.getReporting();
+		private final Attributes attributes;
+		private final List<EpisimPerson.PerformedActivity> trajectory = new ArrayList<>();
+		private final int[] startOfDay = new int[7];
+		private final int[] endOfDay = new int[7];
+		private final Id<ActivityFacility>[] firstFacilityId = new Id[7];
+		private final Id<ActivityFacility>[] lastFacilityId = new Id[7];
+		private final boolean[] staysInContainer = new boolean[7];
+		private final Object2DoubleMap<EpisimPerson> traceableContactPersons = new Object2DoubleLinkedOpenHashMap<>(4);
+		private final EnumMap<EpisimPerson.DiseaseStatus, Double> statusChanges = new EnumMap<>(EpisimPerson.DiseaseStatus.class);
+		private final Object2DoubleMap<String> spentTime = new Object2DoubleOpenHashMap<>(4);
+		private BitSet activityParticipation;
+		private byte[] wornMasks;
+		private Object earliestInfection = null;
+		private final List<EpisimPotentialInfectionEvent> potentialInfectionEvents = new ArrayList<>();
+		private Id<ActivityFacility> infectionContainer = null;
+		private String infectionType = null;
+		private EpisimPerson.DiseaseStatus status = EpisimPerson.DiseaseStatus.susceptible;
+		private EpisimPerson.QuarantineStatus quarantineStatus = EpisimPerson.QuarantineStatus.no;
+		private EpisimPerson.TestStatus testStatus = EpisimPerson.TestStatus.untested;
+		private int quarantineDate = Integer.MIN_VALUE;
+		private int testDate = -1;
+		private final int age;
+		private boolean traceable = true;
+		private boolean vaccinable = true;
+		private double susceptibility = 1;
+		private final List<VaccinationType> vaccinations = new ArrayList<>();
+		private final IntList vaccinationDates = new IntArrayList();
+		private final DoubleList infectionDates = new DoubleArrayList();
+		private final List<VirusStrain> virusStrains = new ArrayList<>();
+		private final Object2DoubleMap<VirusStrain> antibodies = new Object2DoubleOpenHashMap<>();
+		private final Object2DoubleMap<VirusStrain> maxAntibodies = new Object2DoubleOpenHashMap<>();
+		private double antibodyLevelAtInfection = 0.;
+		private double immuneResponseMultiplier = 1.0;
+
+		private ObjectPerson(Id<Person> personId, Attributes attributes) {
+			this.personId = personId;
+			this.attributes = attributes;
+			Object age = attributes.getAttribute("age");
+			this.age = age == null ? -1 : Integer.parseInt(age.toString());
+		}
+	}
+}
@@ -0,0 +1,176 @@
+package org.matsim.episim;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.episim.events.EpisimInfectionEvent;
+import org.matsim.episim.model.VirusStrain;
+
+import java.time.DayOfWeek;
+import java.util.HashMap;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class CompartmentModelTest {
+
+	private EpisimPerson infector;
+	private EpisimPerson child;
+	private CompartmentModel model;
+	private InfectionEventHandler.EpisimFacility facility;
+	private EpisimConfigGroup.InfectionParams params;
+
+	@Before
+	public void setup() {
+
+		infector = EpisimTestUtils.createPerson(true, 35);
+		EpisimTestUtils.infectPerson(infector, VirusStrain.SARS_CoV_2, 0);
+		EpisimTestUtils.CONTAGIOUS.accept(infector);
+
+		child = EpisimTestUtils.createPerson(true, 5);
+
+		model = new CompartmentModel(EpisimTestUtils.TEST_CONFIG, (target, inf, restrictions, act1, act2, contactIntensity, jointTime) -> 1,
+				new SplittableRandom(1));
+
+		facility = EpisimTestUtils.createFacility();
+		params = EpisimTestUtils.TEST_CONFIG.selectInfectionParams("home");
+
+		census(infector, child);
+	}
+
+	/**
+	 * Count the given persons, as done during the state update.
+	 */
+	private void census(EpisimPerson... persons) {
+		CompartmentModel.Census census = model.createCensus();
+		for (EpisimPerson person : persons)
+			census.add(person);
+
+		model.setCensus(List.of(census));
+	}
+
+	@Test
+	public void ageGroup() {
+
+		assertThat(CompartmentModel.ageGroup(5)).isEqualTo(0);
+		assertThat(CompartmentModel.ageGroup(35)).isEqualTo(3);
+		assertThat(CompartmentModel.ageGroup(79)).isEqualTo(7);
+		assertThat(CompartmentModel.ageGroup(95)).isEqualTo(8);
+		assertThat(CompartmentModel.ageGroup(-1)).isEqualTo(CompartmentModel.AGE_GROUPS - 1);
+
+	}
+
+	@Test
+	public void poisson() {
+
+		double sum = 0;
+		for (int i = 0; i < 10000; i++)
+			sum += model.poisson(2.5);
+
+		assertThat(sum / 10000).isCloseTo(2.5, within(0.1));
+		assertThat(model.poisson(0)).isEqualTo(0);
+	}
+
+	@Test
+	public void calibrate() {
+
+		ContactStatistics statistics = model.createStatistics(0);
+		for (int i = 0; i < 3; i++)
+			statistics.add(infector, child, params, params, "home_home", facility, 2, 1, 3600, 7200);
+
+		assertThat(model.isCalibrated()).isFalse();
+
+		model.calibrate(DayOfWeek.MONDAY, List.of(statistics));
+
+		assertThat(model.getContactRate(DayOfWeek.MONDAY, 3, 0)).isEqualTo(3);
+		assertThat(model.getContactRate(DayOfWeek.MONDAY, 3, 3)).isEqualTo(0);
+
+		// not observed days use all weekdays
+		assertThat(model.getContactRate(DayOfWeek.TUESDAY, 3, 0)).isEqualTo(3);
+
+		// collected contacts have been cleared
+		assertThat(statistics.seen[CompartmentModel.pair(3, 0)]).isEqualTo(0);
+
+		for (DayOfWeek day : DayOfWeek.values()) {
+			if (day != DayOfWeek.MONDAY)
+				model.calibrate(day, List.of(statistics));
+		}
+
+		assertThat(model.isCalibrated()).isTrue();
+	}
+
+	@Test
+	public void notCalibratedWithoutContacts() {
+
+		ContactStatistics statistics = model.createStatistics(0);
+
+		for (DayOfWeek day : DayOfWeek.values())
+			model.calibrate(day, List.of(statistics));
+
+		assertThat(model.isCalibrated()).isFalse();
+	}
+
+	@Test
+	public void stratum() {
+
+		assertThat(model.getStratum(infector)).isNotEqualTo(-1);
+		assertThat(model.getAgeGroup(model.getStratum(child))).isEqualTo(0);
+
+		// persons created after the model are not part of any stratum
+		assertThat(model.getStratum(EpisimTestUtils.createPerson(true, 35))).isEqualTo(-1);
+	}
+
+	@Test
+	public void quarantineAfterCensus() {
+
+		ContactStatistics statistics = model.createStatistics(0);
+		for (int i = 0; i < 20; i++)
+			statistics.add(infector, child, params, params, "home_home", facility, 2, 1, 3600, 7200);
+
+		model.calibrate(DayOfWeek.MONDAY, List.of(statistics));
+
+		// e.g. after a positive test has been committed
+		EpisimTestUtils.HOME_QUARANTINE.accept(infector);
+
+		InfectionBuffer buffer = new InfectionBuffer();
+		assertThat(model.step(1, DayOfWeek.MONDAY, new HashMap<>(), buffer)).isEqualTo(0);
+		assertThat(InfectionBuffer.merge(List.of(buffer))).isEmpty();
+	}
+
+	@Test
+	public void quarantinedInfector() {
+
+		EpisimTestUtils.HOME_QUARANTINE.accept(infector);
+
+		assertThat(CompartmentModel.isInfector(infector)).isFalse();
+
+		// contacts at home are not used for the contact rates
+		ContactStatistics statistics = model.createStatistics(0);
+		statistics.add(infector, child, params, params, "home_home", facility, 2, 1, 3600, 7200);
+
+		assertThat(statistics.seen[CompartmentModel.pair(3, 0)]).isEqualTo(0);
+	}
+
+	@Test
+	public void step() {
+
+		ContactStatistics statistics = model.createStatistics(0);
+		for (int i = 0; i < 20; i++)
+			statistics.add(infector, child, params, params, "home_home", facility, 2, 1, 3600, 7200);
+
+		model.calibrate(DayOfWeek.MONDAY, List.of(statistics));
+
+		InfectionBuffer buffer = new InfectionBuffer();
+		int contacts = model.step(1, DayOfWeek.MONDAY, new HashMap<>(), buffer);
+
+		assertThat(contacts).isGreaterThan(0);
+
+		List<Event> infections = InfectionBuffer.merge(List.of(buffer));
+
+		assertThat(infections).hasSize(1);
+		assertThat(((EpisimInfectionEvent) infections.get(0)).getInfectorId()).isEqualTo(infector.getPersonId());
+		assertThat(child.getDiseaseStatus()).isEqualTo(EpisimPerson.DiseaseStatus.infectedButNotContagious);
+	}
+}
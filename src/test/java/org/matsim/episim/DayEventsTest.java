@@ -0,0 +1,107 @@
+package org.matsim.episim;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.*;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.vehicles.Vehicle;
+
+import java.time.DayOfWeek;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DayEventsTest {
+
+	private final Id<Person> person = Id.createPersonId("p1");
+	private final Id<Link> link = Id.createLinkId("l1");
+	private final Id<ActivityFacility> facility = Id.create("f1", ActivityFacility.class);
+	private final Id<Vehicle> vehicle = Id.createVehicleId("v1");
+
+	private List<Event> createEvents() {
+		return List.of(
+				new ActivityEndEvent(100, person, link, facility, "home"),
+				new PersonEntersVehicleEvent(200, person, vehicle),
+				new PersonLeavesVehicleEvent(300, person, vehicle),
+				new ActivityStartEvent(400, person, link, facility, "work", null)
+		);
+	}
+
+	@Test
+	public void columns() {
+
+		DayEvents store = DayEvents.of(createEvents());
+
+		assertThat(store.size()).isEqualTo(4);
+
+		assertThat(store.getKind(0)).isEqualTo(DayEvents.ACTIVITY_END);
+		assertThat(store.getKind(1)).isEqualTo(DayEvents.ENTERS_VEHICLE);
+		assertThat(store.getKind(2)).isEqualTo(DayEvents.LEAVES_VEHICLE);
+		assertThat(store.getKind(3)).isEqualTo(DayEvents.ACTIVITY_START);
+
+		assertThat(store.getTime(2)).isEqualTo(300);
+		assertThat(store.getPersonId(1)).isSameAs(person);
+		assertThat(store.getFacilityId(0)).isSameAs(facility);
+		assertThat(store.getVehicleId(2)).isSameAs(vehicle);
+		assertThat(store.getActType(3)).isSameAs("work");
+	}
+
+	@Test
+	public void adapter() {
+
+		List<Event> events = createEvents();
+		List<Event> view = DayEvents.of(events).asList();
+
+		assertThat(view).hasSize(events.size());
+
+		for (int i = 0; i < events.size(); i++) {
+			assertThat(view.get(i).getAttributes())
+					.isEqualTo(events.get(i).getAttributes());
+		}
+	}
+
+	@Test
+	public void sharedDays() {
+
+		List<Event> events = createEvents();
+		Map<DayOfWeek, DayEvents> store = DayEvents.of(Map.of(
+				DayOfWeek.MONDAY, events,
+				DayOfWeek.TUESDAY, events,
+				DayOfWeek.SUNDAY, List.of()
+		));
+
+		assertThat(store.get(DayOfWeek.MONDAY)).isSameAs(store.get(DayOfWeek.TUESDAY));
+		assertThat(store.get(DayOfWeek.SUNDAY).size()).isZero();
+
+		Map<DayOfWeek, List<Event>> lists = DayEvents.asLists(store);
+		assertThat(lists.get(DayOfWeek.MONDAY)).isSameAs(lists.get(DayOfWeek.TUESDAY));
+	}
+
+	@Test
+	public void coordinates() {
+
+		Network network = NetworkUtils.createNetwork();
+		NetworkFactory f = network.getFactory();
+		Node from = f.createNode(Id.createNodeId("n1"), new Coord(0, 0));
+		Node to = f.createNode(Id.createNodeId("n2"), new Coord(100, 200));
+		network.addNode(from);
+		network.addNode(to);
+		network.addLink(f.createLink(link, from, to));
+
+		DayEvents store = DayEvents.of(createEvents());
+
+		// without network no coordinate is known
+		assertThat(((ActivityStartEvent) store.getEvent(3)).getCoord()).isNull();
+
+		store.setNetwork(network);
+		assertThat(((ActivityStartEvent) store.getEvent(3)).getCoord()).isEqualTo(new Coord(100, 200));
+	}
+}
@@ -0,0 +1,90 @@
+package org.matsim.episim;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.episim.model.RestrictionTable;
+import org.matsim.episim.policy.Restriction;
+import org.matsim.episim.policy.RestrictionTest;
+import org.matsim.facilities.ActivityFacilitiesFactory;
+import org.matsim.facilities.ActivityFacility;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DistrictIndexTest {
+
+	private EpisimConfigGroup episimConfig;
+	private Scenario scenario;
+
+	@Before
+	public void setup() {
+
+		Config config = EpisimTestUtils.createTestConfig();
+		episimConfig = ConfigUtils.addOrGetModule(config, EpisimConfigGroup.class);
+		episimConfig.setDistrictLevelRestrictions(EpisimConfigGroup.DistrictLevelRestrictions.yes);
+		episimConfig.setDistrictLevelRestrictionsAttribute("subdistrict");
+
+		scenario = ScenarioUtils.loadScenario(config);
+		ActivityFacilitiesFactory factory = scenario.getActivityFacilities().getFactory();
+
+		for (String district : new String[]{"Queens", "Bronx", "Queens", null}) {
+			ActivityFacility facility = factory.createActivityFacility(
+					Id.create("f" + scenario.getActivityFacilities().getFacilities().size(), ActivityFacility.class), new Coord(0, 0));
+			if (district != null)
+				facility.getAttributes().putAttribute("subdistrict", district);
+
+			scenario.getActivityFacilities().addActivityFacility(facility);
+		}
+	}
+
+	@Test
+	public void resolve() {
+
+		DistrictIndex districts = DistrictIndex.of(scenario, episimConfig);
+
+		assertThat(DistrictIndex.of(scenario, episimConfig)).isSameAs(districts);
+		assertThat(districts.size()).isEqualTo(2);
+		assertThat(districts.getName(0)).isEqualTo("Bronx");
+		assertThat(districts.indexOf("Queens")).isEqualTo(1);
+		assertThat(districts.indexOf("Brooklyn")).isEqualTo(DistrictIndex.NONE);
+
+		assertThat(districts.getDistrict(Id.create("f0", ActivityFacility.class))).isEqualTo(1);
+		assertThat(districts.getDistrict(Id.create("f3", ActivityFacility.class))).isEqualTo(DistrictIndex.NONE);
+
+		InfectionEventHandler.EpisimFacility facility = EpisimTestUtils.createFacility("f1");
+		assertThat(districts.getDistrict(facility)).isEqualTo(0);
+		assertThat(facility.getDistrict()).isEqualTo(0);
+
+		EpisimPerson.PerformedActivity act = new EpisimPerson.PerformedActivity(0, episimConfig.getInfectionParam("work"),
+				Id.create("f2", ActivityFacility.class));
+		assertThat(districts.getDistrict(act)).isEqualTo(1);
+
+		InfectionEventHandler.EpisimVehicle vehicle = new InfectionEventHandler.EpisimVehicle(Id.createVehicleId("f1"));
+		assertThat(districts.getDistrict(vehicle)).isEqualTo(DistrictIndex.NONE);
+	}
+
+	@Test
+	public void locationBasedRf() {
+
+		DistrictIndex districts = DistrictIndex.of(scenario, episimConfig);
+
+		Map<String, Restriction> restrictions = episimConfig.createInitialRestrictions();
+		RestrictionTest.merge(restrictions.get("work"), Restriction.of(0.5));
+		restrictions.get("work").setLocationBasedRf(Map.of("Bronx", 0.2, "Brooklyn", 0.4));
+
+		RestrictionTable table = RestrictionTable.compile(null, restrictions, episimConfig, districts);
+		EpisimConfigGroup.InfectionParams work = episimConfig.getInfectionParam("work");
+
+		assertThat(table.getRemainingFraction(work, districts.indexOf("Bronx"))).isEqualTo(0.2);
+		assertThat(table.getRemainingFraction(work, districts.indexOf("Queens"))).isEqualTo(0.5);
+		assertThat(table.getRemainingFraction(work, DistrictIndex.NONE)).isEqualTo(0.5);
+		assertThat(table.getRemainingFraction(episimConfig.getInfectionParam("leis"), 0)).isEqualTo(1.0);
+	}
+}
@@ -0,0 +1,125 @@
+package org.matsim.episim;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EpisimContainerTest {
+
+	@Test
+	public void statusLists() {
+
+		InfectionEventHandler.EpisimFacility facility = EpisimTestUtils.createFacility(3, "home", p -> {});
+		EpisimTestUtils.addPersons(facility, 2, "home", EpisimTestUtils.CONTAGIOUS);
+
+		// disabled by default
+		assertThat(facility.getSusceptiblePersons()).isEmpty();
+
+		facility.setStatusLists(true);
+
+		assertThat(facility.getSusceptiblePersons()).hasSize(3);
+		assertThat(facility.getContagiousPersons()).hasSize(2);
+
+		EpisimPerson symptoms = EpisimTestUtils.createPerson("home", null);
+		EpisimTestUtils.SYMPTOMS.accept(symptoms);
+		facility.addPerson(symptoms, 0, EpisimPerson.UNSPECIFIC_ACTIVITY);
+
+		assertThat(facility.getContagiousPersons()).hasSize(3).contains(symptoms);
+
+		EpisimPerson susceptible = facility.getSusceptiblePersons().get(0);
+		facility.removePerson(susceptible);
+		facility.removePerson(symptoms);
+
+		assertThat(facility.getSusceptiblePersons()).hasSize(2).doesNotContain(susceptible);
+		assertThat(facility.getContagiousPersons()).hasSize(2).doesNotContain(symptoms);
+
+		// infected during the day, but still in susceptible list
+		EpisimPerson infected = facility.getSusceptiblePersons().get(0);
+		infected.setDiseaseStatus(0, EpisimPerson.DiseaseStatus.infectedButNotContagious);
+		facility.removePerson(infected);
+
+		assertThat(facility.getSusceptiblePersons()).hasSize(1);
+
+		facility.getSusceptiblePersons().get(0).setDiseaseStatus(0, EpisimPerson.DiseaseStatus.contagious);
+		facility.updateStatusLists();
+
+		assertThat(facility.getSusceptiblePersons()).isEmpty();
+		assertThat(facility.getContagiousPersons()).hasSize(3);
+	}
+
+	@Test
+	public void swapRemove() {
+
+		InfectionEventHandler.EpisimFacility facility = EpisimTestUtils.createFacility();
+
+		EpisimPerson[] p = new EpisimPerson[4];
+		for (int i = 0; i < p.length; i++) {
+			p[i] = EpisimTestUtils.createPerson("work", null);
+			facility.addPerson(p[i], i * 100, EpisimPerson.UNSPECIFIC_ACTIVITY);
+		}
+
+		facility.removePerson(p[1]);
+
+		// last person takes the free slot
+		assertThat(facility.getPersons()).containsExactly(p[0], p[3], p[2]);
+		assertThat(facility.containsPerson(p[1])).isFalse();
+		assertThat(facility.getContainerEnteringTime(p[1].getPersonId())).isEqualTo(Double.NEGATIVE_INFINITY);
+		assertThat(facility.getContainerEnteringTime(p[3].getPersonId())).isEqualTo(300);
+		assertThat(facility.getPerformedActivity(p[3].getPersonId())).isSameAs(EpisimPerson.UNSPECIFIC_ACTIVITY);
+
+		facility.addPerson(p[1], 400, EpisimPerson.UNSPECIFIC_ACTIVITY);
+		assertThat(facility.getPersons()).containsExactly(p[0], p[3], p[2], p[1]);
+		assertThat(facility.getContainerEnteringTime(p[1].getPersonId())).isEqualTo(400);
+	}
+
+	@Test
+	public void statusListsSwapRemove() {
+
+		InfectionEventHandler.EpisimFacility facility = EpisimTestUtils.createFacility(6, "home", p -> {});
+		facility.setStatusLists(true);
+
+		List<EpisimPerson> persons = new ArrayList<>(facility.getSusceptiblePersons());
+
+		facility.removePerson(persons.get(1));
+		assertThat(facility.getSusceptiblePersons()).containsExactly(persons.get(0), persons.get(5), persons.get(2), persons.get(3), persons.get(4));
+
+		// moved person has to be found at its new position
+		facility.removePerson(persons.get(5));
+		facility.removePerson(persons.get(0));
+		assertThat(facility.getSusceptiblePersons()).containsExactlyInAnyOrder(persons.get(2), persons.get(3), persons.get(4));
+
+		Iterator<EpisimPerson> it = facility.getPersons().iterator();
+		while (it.hasNext()) {
+			EpisimPerson person = it.next();
+			if (person == persons.get(3))
+				facility.removePerson(person, it);
+		}
+
+		assertThat(facility.getSusceptiblePersons()).containsExactlyInAnyOrder(persons.get(2), persons.get(4));
+	}
+
+	@Test
+	public void iteratorRemove() {
+
+		InfectionEventHandler.EpisimFacility facility = EpisimTestUtils.createFacility(5, "home", p -> {});
+
+		int visited = 0;
+		Iterator<EpisimPerson> it = facility.getPersons().iterator();
+		while (it.hasNext()) {
+			EpisimPerson person = it.next();
+			visited++;
+			if (visited % 2 == 1)
+				facility.removePerson(person, it);
+		}
+
+		assertThat(visited).isEqualTo(5);
+		assertThat(facility.getPersons()).hasSize(2);
+
+		for (EpisimPerson person : facility.getPersons())
+			assertThat(facility.containsPerson(person)).isTrue();
+	}
+}
@@ -4,6 +4,7 @@ import org.matsim.api.core.v01.Id;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.episim.events.EpisimInfectionEvent;
+import org.matsim.episim.model.FaceMaskModel;
 import org.matsim.episim.model.VaccinationType;
 import org.matsim.episim.model.VirusStrain;
 import org.matsim.facilities.ActivityFacility;
@@ -142,8 +143,20 @@ public class EpisimTestUtils {
 	 * Create person with activity trajectory.
 	 */
 	public static EpisimPerson createPerson(String... activities) {
+		return addActivities(new EpisimPerson(Id.createPersonId(ID.getAndIncrement()), new Attributes(), reporting), activities);
+	}
 
-		EpisimPerson p = new EpisimPerson(Id.createPersonId(ID.getAndIncrement()), new Attributes(), reporting);
+	/**
+	 * Create a person with given activities, which can store the masks of a {@link FaceMaskModel}.
+	 */
+	public static EpisimPerson createPerson(FaceMaskModel maskModel, String... activities) {
+		PersonStore store = new PersonStore(1);
+		store.setMaskSlots(maskModel.getMaskSlots());
+
+		return addActivities(new EpisimPerson(Id.createPersonId(ID.getAndIncrement()), new Attributes(), true, reporting, store), activities);
+	}
+
+	private static EpisimPerson addActivities(EpisimPerson p, String... activities) {
 
 		Arrays.stream(DayOfWeek.values()).forEach(p::setStartOfDay);
 
@@ -174,6 +187,13 @@ public class EpisimTestUtils {
 		return new EpisimPerson(Id.createPersonId(ID.getAndIncrement()), new Attributes(), reporting);
 	}
 
+	/**
+	 * Create uninitialized person, whose antibodies decay with given daily factor.
+	 */
+	public static EpisimPerson createPerson(double antibodyDecay) {
+		return new EpisimPerson(Id.createPersonId(ID.getAndIncrement()), new Attributes(), true, reporting, new PersonStore(1, antibodyDecay));
+	}
+
 	/**
 	 * Create person with vaccinable status.
 	 */
@@ -0,0 +1,79 @@
+package org.matsim.episim;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.*;
+import org.matsim.facilities.ActivityFacility;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EventCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private DayEvents createEvents() {
+		return DayEvents.of(List.of(
+				new ActivityEndEvent(100, Id.createPersonId("p1"), Id.createLinkId("l1"), Id.create("f1", ActivityFacility.class), "home"),
+				new PersonEntersVehicleEvent(200, Id.createPersonId("p1"), Id.createVehicleId("v1")),
+				new PersonLeavesVehicleEvent(300, Id.createPersonId("p1"), Id.createVehicleId("v1")),
+				new ActivityStartEvent(400, Id.createPersonId("p1"), null, null, "work", null),
+				new ActivityStartEvent(500, Id.createPersonId("p2"), Id.createLinkId("l2"), Id.create("f2", ActivityFacility.class), "home", null)
+		));
+	}
+
+	@Test
+	public void roundTrip() throws IOException {
+
+		Path input = folder.newFile("events.xml.gz").toPath();
+		Files.writeString(input, "content");
+
+		EventCache cache = new EventCache(folder.newFolder("cache").toPath(), EpisimConfigGroup.FacilitiesHandling.snz);
+
+		String key = cache.createKey(input.toString());
+		assertThat(key).isNotNull();
+		assertThat(cache.read(key)).isNull();
+
+		DayEvents events = createEvents();
+		cache.write(key, events);
+
+		DayEvents read = cache.read(key);
+		assertThat(read).isNotNull();
+		assertThat(read.size()).isEqualTo(events.size());
+
+		for (int i = 0; i < events.size(); i++) {
+			assertThat(read.getEvent(i).getAttributes())
+					.isEqualTo(events.getEvent(i).getAttributes());
+		}
+	}
+
+	@Test
+	public void invalidation() throws IOException {
+
+		Path input = folder.newFile("events.xml.gz").toPath();
+		Files.writeString(input, "content");
+
+		EventCache cache = new EventCache(folder.newFolder("cache").toPath(), EpisimConfigGroup.FacilitiesHandling.snz);
+		String key = cache.createKey(input.toString());
+		cache.write(key, createEvents());
+
+		// changed content leads to a different key
+		Files.writeString(input, "changed");
+		String changed = cache.createKey(input.toString());
+
+		assertThat(changed).isNotEqualTo(key);
+		assertThat(cache.read(changed)).isNull();
+
+		EventCache bln = new EventCache(folder.getRoot().toPath().resolve("cache"), EpisimConfigGroup.FacilitiesHandling.bln);
+
+		assertThat(bln.createKey(input.toString())).isNotEqualTo(changed);
+		assertThat(cache.createKey(folder.getRoot().toPath().resolve("missing.xml.gz").toString())).isNull();
+	}
+}
@@ -0,0 +1,150 @@
+package org.matsim.episim;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.ActivityEndEvent;
+import org.matsim.api.core.v01.events.ActivityStartEvent;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.facilities.ActivityFacility;
+
+import java.time.DayOfWeek;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class HouseholdContactsTest {
+
+	@Test
+	public void overlap() {
+
+		assertThat(HouseholdContacts.overlap(new double[]{0, 100}, new double[]{50, 150}))
+				.isEqualTo(50);
+
+		assertThat(HouseholdContacts.overlap(new double[]{0, 100, 200, 300}, new double[]{50, 250}))
+				.isEqualTo(100);
+
+		assertThat(HouseholdContacts.overlap(new double[]{0, 100}, new double[]{100, 200}))
+				.isEqualTo(0);
+
+		assertThat(HouseholdContacts.overlap(new double[]{0, 86400}, new double[]{0, 28800, 64800, 86400}))
+				.isEqualTo(50400);
+	}
+
+	@Test
+	public void create() {
+
+		InfectionEventHandler.EpisimFacility home = EpisimTestUtils.createFacility("home");
+		InfectionEventHandler.EpisimFacility work = EpisimTestUtils.createFacility("work");
+		home.setHousehold(true);
+
+		Map<Id<ActivityFacility>, InfectionEventHandler.EpisimFacility> facilities = new LinkedHashMap<>();
+		facilities.put(home.getContainerId(), home);
+		facilities.put(work.getContainerId(), work);
+
+		EpisimPerson stays = EpisimTestUtils.createPerson("home");
+		EpisimPerson commutes = EpisimTestUtils.createPerson("home");
+		EpisimPerson works = EpisimTestUtils.createPerson("work");
+
+		Map<Id<Person>, EpisimPerson> persons = new LinkedHashMap<>();
+		for (EpisimPerson p : List.of(stays, commutes, works)) {
+			persons.put(p.getPersonId(), p);
+			p.setFirstFacilityId(p == works ? work.getContainerId() : home.getContainerId(), DayOfWeek.MONDAY);
+		}
+
+		DayEvents events = DayEvents.of(List.of(
+				new ActivityEndEvent(28800, commutes.getPersonId(), null, home.getContainerId(), "home"),
+				new ActivityStartEvent(30000, commutes.getPersonId(), null, work.getContainerId(), "work", null),
+				new ActivityEndEvent(60000, commutes.getPersonId(), null, work.getContainerId(), "work"),
+				new ActivityEndEvent(61000, works.getPersonId(), null, work.getContainerId(), "work"),
+				new ActivityStartEvent(64800, commutes.getPersonId(), null, home.getContainerId(), "home", null)
+		));
+
+		HouseholdContacts contacts = HouseholdContacts.create(events, DayOfWeek.MONDAY, persons, facilities, 2);
+
+		assertThat(contacts.size()).isEqualTo(1);
+		assertThat(contacts.getHouseholds(1)).isEmpty();
+
+		HouseholdContacts.Household household = contacts.getHouseholds(0)[0];
+
+		assertThat(household.getFacility()).isSameAs(home);
+		assertThat(household.size()).isEqualTo(2);
+		// members are ordered by the end of their first presence
+		assertThat(household.getMember(0)).isSameAs(commutes);
+		assertThat(household.getMember(1)).isSameAs(stays);
+
+		assertThat(household.getJointTime(0, 1))
+				.isEqualTo(household.getJointTime(1, 0))
+				.isCloseTo(50400, within(1e-6));
+
+		assertThat(household.getTimeSpent(0)).isCloseTo(50400, within(1e-6));
+		assertThat(household.getTimeSpent(1)).isCloseTo(86400, within(1e-6));
+	}
+
+	@Test
+	public void overNight() {
+
+		InfectionEventHandler.EpisimFacility home = EpisimTestUtils.createFacility("home");
+		InfectionEventHandler.EpisimFacility work = EpisimTestUtils.createFacility("work");
+		home.setHousehold(true);
+
+		Map<Id<ActivityFacility>, InfectionEventHandler.EpisimFacility> facilities = new LinkedHashMap<>();
+		facilities.put(home.getContainerId(), home);
+		facilities.put(work.getContainerId(), work);
+
+		EpisimPerson commutes = EpisimTestUtils.createPerson("home");
+		EpisimPerson leaves = EpisimTestUtils.createPerson("home");
+		EpisimPerson stays = EpisimTestUtils.createPerson("home");
+
+		Map<Id<Person>, EpisimPerson> persons = new LinkedHashMap<>();
+		for (EpisimPerson p : List.of(commutes, leaves, stays)) {
+			persons.put(p.getPersonId(), p);
+			p.setFirstFacilityId(home.getContainerId(), DayOfWeek.MONDAY);
+			p.setLastFacilityId(p == leaves ? work.getContainerId() : home.getContainerId(), DayOfWeek.MONDAY, true);
+		}
+
+		DayEvents events = DayEvents.of(List.of(
+				new ActivityEndEvent(28800, commutes.getPersonId(), null, home.getContainerId(), "home"),
+				new ActivityStartEvent(30000, commutes.getPersonId(), null, work.getContainerId(), "work", null),
+				new ActivityEndEvent(36000, leaves.getPersonId(), null, home.getContainerId(), "home"),
+				new ActivityStartEvent(37000, leaves.getPersonId(), null, work.getContainerId(), "work", null),
+				new ActivityEndEvent(60000, commutes.getPersonId(), null, work.getContainerId(), "work"),
+				new ActivityStartEvent(64800, commutes.getPersonId(), null, home.getContainerId(), "home", null)
+		));
+
+		HouseholdContacts.Household household = HouseholdContacts.create(events, DayOfWeek.MONDAY, persons, facilities, 1).getHouseholds(0)[0];
+
+		assertThat(household.getMember(0)).isSameAs(commutes);
+		assertThat(household.getMember(1)).isSameAs(leaves);
+		assertThat(household.getMember(2)).isSameAs(stays);
+
+		// all members stayed at home since the previous day
+		home.addPerson(commutes, 1000, commutes.getFirstActivity(DayOfWeek.MONDAY));
+		home.addPerson(leaves, 3000, leaves.getFirstActivity(DayOfWeek.MONDAY));
+		home.addPerson(stays, 2000, stays.getFirstActivity(DayOfWeek.MONDAY));
+
+		household.startDay(86400);
+
+		// time before midnight is added, time after the return is left for the next day
+		assertThat(household.getJointTime(0, 2)).isCloseTo(28800 + 86400 - 2000, within(1e-6));
+		assertThat(household.getJointTime(0, 1)).isCloseTo(28800 + 86400 - 3000, within(1e-6));
+		assertThat(household.getJointTime(1, 2)).isCloseTo(36000 + 86400 - 3000, within(1e-6));
+
+		assertThat(household.getTimeSpent(0)).isCloseTo(28800 + 86400 - 1000, within(1e-6));
+		assertThat(household.getTimeSpent(2)).isCloseTo(0, within(1e-6));
+
+		household.endDay();
+
+		assertThat(home.containsPerson(leaves)).isFalse();
+		assertThat(home.getContainerEnteringTime(commutes.getPersonId())).isEqualTo(86400 + 64800);
+		assertThat(home.getContainerEnteringTime(stays.getPersonId())).isEqualTo(2000);
+
+		household.startDay(2 * 86400);
+
+		// pair is evaluated when the commuting person leaves again
+		assertThat(household.getJointTime(0, 2)).isCloseTo(28800 + 86400 - 64800, within(1e-6));
+		assertThat(household.getJointTime(0, 1)).isCloseTo(28800, within(1e-6));
+	}
+}
@@ -0,0 +1,44 @@
+package org.matsim.episim;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.episim.events.EpisimInfectionEvent;
+import org.matsim.episim.model.VirusStrain;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InfectionBufferTest {
+
+	private static EpisimInfectionEvent infection(EpisimPerson p, EpisimPerson infector, double time) {
+		return new EpisimInfectionEvent(time, p.getPersonId(), infector.getPersonId(), null, "somewhere", 1, VirusStrain.SARS_CoV_2, 1d, -1, -1, -1);
+	}
+
+	@Test
+	public void earliestInfection() {
+
+		EpisimPerson p1 = EpisimTestUtils.createPerson();
+		EpisimPerson p2 = EpisimTestUtils.createPerson();
+		EpisimPerson infector = EpisimTestUtils.createPerson();
+
+		InfectionBuffer b1 = new InfectionBuffer();
+		InfectionBuffer b2 = new InfectionBuffer();
+
+		b1.addInfection(p1, infection(p1, infector, 500));
+		b2.addInfection(p1, infection(p1, infector, 200));
+		b2.addInfection(p2, infection(p2, infector, 300));
+
+		List<Event> events = InfectionBuffer.merge(List.of(b1, b2));
+
+		assertThat(events).hasSize(2);
+		assertThat(events.get(0).getTime()).isEqualTo(200);
+		assertThat(events.get(1).getTime()).isEqualTo(300);
+
+		assertThat(p1.getDiseaseStatus()).isEqualTo(EpisimPerson.DiseaseStatus.infectedButNotContagious);
+		assertThat(p2.getDiseaseStatus()).isEqualTo(EpisimPerson.DiseaseStatus.infectedButNotContagious);
+
+		// buffers are cleared
+		assertThat(InfectionBuffer.merge(List.of(b1, b2))).isEmpty();
+	}
+}
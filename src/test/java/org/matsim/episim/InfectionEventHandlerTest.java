@@ -4,17 +4,33 @@ import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
+import com.google.inject.Module;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
 import com.google.inject.multibindings.Multibinder;
 import com.google.inject.util.Modules;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.matsim.core.config.Config;
 import org.matsim.core.controler.OutputDirectoryLogging;
+import org.matsim.episim.model.ContactModel;
 import org.matsim.episim.model.SimulationListener;
+import org.matsim.episim.model.SymmetricContactModel;
+import org.matsim.episim.model.testing.TestType;
 import org.matsim.run.RunEpisimIntegrationTest;
 import org.matsim.testcases.MatsimTestUtils;
 
+import java.io.File;
+import java.time.DayOfWeek;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
 
 public class InfectionEventHandlerTest {
 
@@ -46,15 +62,210 @@ public class InfectionEventHandlerTest {
 
 	}
 
+	@Test
+	public void stateUpdatePartitions() {
+
+		Consumer<Injector> partitioned = injector -> {
+			injector.getInstance(EpisimConfigGroup.class).setStateUpdatePartitions(4);
+
+			// limited capacity, which is shared by all partitions
+			TestingConfigGroup testingConfig = injector.getInstance(TestingConfigGroup.class);
+			testingConfig.setStrategy(TestingConfigGroup.Strategy.ACTIVITIES);
+			testingConfig.setActivities(List.of("edu", "leisure", "work"));
+			testingConfig.getParams(TestType.RAPID_TEST).setTestingCapacity_pers_per_day(5000);
+			testingConfig.getParams(TestType.RAPID_TEST).setTestingRate(0.5);
+
+			TracingConfigGroup tracingConfig = injector.getInstance(TracingConfigGroup.class);
+			tracingConfig.setPutTraceablePersonsInQuarantineAfterDay(5);
+			tracingConfig.setTracingProbability(0.75);
+		};
+
+		String first = run("first", partitioned);
+		String second = run("second", partitioned);
+
+		// infections contain the number of persons in quarantine and tested persons
+		assertSameOutput(first, second, "infections.txt", "infectionEvents.txt");
+	}
+
+	@Test
+	public void rebalanceHouseholds() {
+
+		// containers are redistributed after every day by their measured processing time, the checker runs at the start of each day
+		run("rebalanced", injector -> {
+			households(injector);
+			injector.getInstance(EpisimConfigGroup.class).setRebalanceInterval(1);
+		}, listener(PartitionChecker.class));
+	}
+
+	@Test
+	public void rebalanceOccupancy() {
+
+		run("rebalanced", injector -> {
+			EpisimConfigGroup episimConfig = injector.getInstance(EpisimConfigGroup.class);
+			episimConfig.setActivityHandling(EpisimConfigGroup.ActivityHandling.startOfDay);
+			episimConfig.setOccupancyIndex(true);
+			episimConfig.setRebalanceInterval(1);
+		}, listener(PartitionChecker.class), new AbstractModule() {
+			@Override
+			protected void configure() {
+				bind(ContactModel.class).to(SymmetricContactModel.class).in(Singleton.class);
+			}
+		});
+	}
+
+	@Test
+	public void repartitionSameAssignment() {
+
+		String expected = run("expected", InfectionEventHandlerTest::households);
+
+		// everything derived from the task ids is rebuilt every day, but the assignment stays the same
+		String actual = run("repartitioned", InfectionEventHandlerTest::households, listener(Repartition.class));
+
+		assertSameOutput(expected, actual, "infections.txt", "infectionEvents.txt");
+	}
+
+	private static void households(Injector injector) {
+		EpisimConfigGroup episimConfig = injector.getInstance(EpisimConfigGroup.class);
+		episimConfig.setActivityHandling(EpisimConfigGroup.ActivityHandling.startOfDay);
+		episimConfig.setHomeContactEngine(true);
+	}
+
+	private static Module listener(Class<? extends SimulationListener> type) {
+		return new AbstractModule() {
+			@Override
+			protected void configure() {
+				Multibinder.newSetBinder(binder(), SimulationListener.class).addBinding().to(type);
+			}
+		};
+	}
+
+	/**
+	 * Run the test scenario with its own output directory.
+	 *
+	 * @return output directory
+	 */
+	private String run(String name, Consumer<Injector> configure, Module... modules) {
+
+		List<Module> overrides = new ArrayList<>();
+		overrides.add(new RunEpisimIntegrationTest.TestScenario(utils, 20));
+		overrides.addAll(List.of(modules));
+
+		Injector injector = Guice.createInjector(Modules.override(new EpisimModule()).with(overrides));
+
+		String output = utils.getOutputDirectory() + name + "/";
+		injector.getInstance(Config.class).controler().setOutputDirectory(output);
+		configure.accept(injector);
+
+		injector.getInstance(EpisimRunner.class).run(20);
+		return output;
+	}
+
+	/**
+	 * Check that the task partitions, event slices, households and occupancy of the handler are consistent with the current task ids
+	 * of the containers.
+	 */
+	static void assertPartitioned(InfectionEventHandler handler, Map<DayOfWeek, DayEvents> events, int threads) {
+		for (DayEvents eventsForDay : new HashSet<>(events.values())) {
+
+			OccupancyIndex occupancy = handler.getOccupancyIndex(eventsForDay);
+			int[][] slices = handler.getTaskEvents(eventsForDay);
+
+			// events are not sliced when the occupancy index is used, but the partitions still need to match them
+			if (occupancy != null)
+				slices = TaskPartition.partitionEvents(eventsForDay, threads, handler.getFacilityMap(), handler.getVehicleMap());
+
+			assertThat(slices).isNotNull();
+
+			TaskPartitionTest.assertConsistent(threads, handler.getTaskPartitions(), slices, eventsForDay,
+					handler.getFacilityMap(), handler.getVehicleMap(), handler.getPersons());
+
+			if (occupancy != null) {
+				int n = 0;
+				for (int task = 0; task < threads; task++) {
+					for (OccupancyIndex.Occupancy o : occupancy.getContainers(task)) {
+						assertThat(o.getContainer().getTaskId()).isEqualTo(task);
+						n++;
+					}
+				}
+
+				assertThat(n).isEqualTo(occupancy.size());
+			}
+
+			HouseholdContacts households = handler.getHouseholdContacts(eventsForDay);
+			if (households != null) {
+				int n = 0;
+				for (int task = 0; task < threads; task++) {
+					for (HouseholdContacts.Household h : households.getHouseholds(task)) {
+						assertThat(h.getFacility().getTaskId()).isEqualTo(task);
+						n++;
+					}
+				}
+
+				assertThat(n).isEqualTo(households.size());
+			}
+		}
+	}
+
+	private static void assertSameOutput(String expected, String actual, String... files) {
+		for (String file : files) {
+			assertThat(new File(actual, file))
+					.hasSameTextualContentAs(new File(expected, file));
+		}
+	}
+
+	/**
+	 * Checks at the start of each day, i.e. after the containers of the previous day have been rebalanced.
+	 */
+	static class PartitionChecker implements SimulationListener {
+
+		private final Provider<InfectionEventHandler> handler;
+		private final ReplayHandler replay;
+		private final EpisimConfigGroup config;
+
+		@Inject
+		PartitionChecker(Provider<InfectionEventHandler> handler, ReplayHandler replay, EpisimConfigGroup config) {
+			this.handler = handler;
+			this.replay = replay;
+			this.config = config;
+		}
+
+		@Override
+		public void onIterationStart(int iteration, LocalDate date) {
+			assertPartitioned(handler.get(), replay.getDayEvents(), config.getThreads());
+		}
+	}
+
+	/**
+	 * Rebuilds all partitions at the start of each day, without changing the task ids.
+	 */
+	static class Repartition implements SimulationListener {
+
+		private final Provider<InfectionEventHandler> handler;
+
+		@Inject
+		Repartition(Provider<InfectionEventHandler> handler) {
+			this.handler = handler;
+		}
+
+		@Override
+		public void onIterationStart(int iteration, LocalDate date) {
+			handler.get().repartition();
+		}
+	}
+
 	static class EventUpdater implements SimulationListener {
 
 		private final EpisimRunner runner;
 		private final EpisimConfigGroup config;
+		private final Provider<InfectionEventHandler> handler;
+		private final ReplayHandler replay;
 
 		@Inject
-		EventUpdater(EpisimRunner runner, EpisimConfigGroup config) {
+		EventUpdater(EpisimRunner runner, EpisimConfigGroup config, Provider<InfectionEventHandler> handler, ReplayHandler replay) {
 			this.runner = runner;
 			this.config = config;
+			this.handler = handler;
+			this.replay = replay;
 		}
 
 		@Override
@@ -64,6 +275,9 @@ public class InfectionEventHandlerTest {
 
 				// For testing reload events without changes
 				runner.updateEvents(config);
+
+				// the events are new objects, slices and partitions need to be computed for them
+				assertPartitioned(handler.get(), replay.getDayEvents(), config.getThreads());
 			}
 
 		}
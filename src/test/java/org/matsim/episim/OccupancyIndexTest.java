@@ -0,0 +1,379 @@
+package org.matsim.episim;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.events.*;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.episim.model.ContactModel;
+import org.matsim.episim.model.InfectionModel;
+import org.matsim.episim.model.SymmetricContactModel;
+import org.matsim.episim.policy.Restriction;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.vehicles.Vehicle;
+
+import java.time.DayOfWeek;
+import java.util.*;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class OccupancyIndexTest {
+
+	@Test
+	public void create() {
+
+		InfectionEventHandler.EpisimFacility home = EpisimTestUtils.createFacility("home");
+		InfectionEventHandler.EpisimFacility work = EpisimTestUtils.createFacility("work");
+		home.setHousehold(true);
+
+		Map<Id<ActivityFacility>, InfectionEventHandler.EpisimFacility> facilities = new LinkedHashMap<>();
+		facilities.put(home.getContainerId(), home);
+		facilities.put(work.getContainerId(), work);
+
+		EpisimPerson works = EpisimTestUtils.createPerson("work");
+		EpisimPerson commutes = EpisimTestUtils.createPerson("home");
+		EpisimPerson visits = EpisimTestUtils.createPerson("home");
+
+		Map<Id<Person>, EpisimPerson> persons = new LinkedHashMap<>();
+		for (EpisimPerson p : List.of(works, commutes, visits)) {
+			persons.put(p.getPersonId(), p);
+			p.setFirstFacilityId(p == works ? work.getContainerId() : home.getContainerId(), DayOfWeek.MONDAY);
+		}
+
+		DayEvents events = DayEvents.of(List.of(
+				new ActivityEndEvent(28800, commutes.getPersonId(), null, home.getContainerId(), "home"),
+				new ActivityStartEvent(30000, commutes.getPersonId(), null, work.getContainerId(), "work", null),
+				new ActivityStartEvent(40000, visits.getPersonId(), null, work.getContainerId(), "work", null),
+				new ActivityEndEvent(50000, visits.getPersonId(), null, work.getContainerId(), "work"),
+				new ActivityEndEvent(60000, commutes.getPersonId(), null, work.getContainerId(), "work"),
+				new ActivityEndEvent(61000, works.getPersonId(), null, work.getContainerId(), "work"),
+				new ActivityStartEvent(64800, commutes.getPersonId(), null, home.getContainerId(), "home", null)
+		));
+
+		Map<Id<Vehicle>, InfectionEventHandler.EpisimVehicle> vehicles = new LinkedHashMap<>();
+		OccupancyIndex index = OccupancyIndex.create(events, DayOfWeek.MONDAY, persons, facilities, vehicles, 2);
+
+		// households are left out
+		assertThat(index.size()).isEqualTo(1);
+		assertThat(index.getContainers(1)).isEmpty();
+
+		OccupancyIndex.Occupancy occupancy = index.getContainers(0)[0];
+
+		assertThat(occupancy.getContainer()).isSameAs(work);
+		assertThat(occupancy.size()).isEqualTo(3);
+
+		// intervals are sorted by start
+		assertThat(occupancy.getPerson(0)).isSameAs(works);
+		assertThat(occupancy.getKind(0)).isEqualTo(OccupancyIndex.FIRST_ACTIVITY);
+		assertThat(occupancy.getStart(0)).isEqualTo(0);
+		assertThat(occupancy.getEnd(0)).isEqualTo(61000);
+
+		assertThat(occupancy.getPerson(1)).isSameAs(commutes);
+		assertThat(occupancy.getKind(1)).isEqualTo(OccupancyIndex.ACTIVITY);
+		assertThat(occupancy.getStart(1)).isEqualTo(30000);
+		assertThat(occupancy.getEnd(1)).isEqualTo(60000);
+
+		assertThat(occupancy.getPerson(2)).isSameAs(visits);
+
+		assertThat(new int[]{occupancy.getEndOrder(0), occupancy.getEndOrder(1), occupancy.getEndOrder(2)})
+				.containsExactly(2, 1, 0);
+	}
+
+	@Test
+	public void overNight() {
+
+		InfectionEventHandler.EpisimFacility work = EpisimTestUtils.createFacility("work");
+
+		Map<Id<ActivityFacility>, InfectionEventHandler.EpisimFacility> facilities = new LinkedHashMap<>();
+		facilities.put(work.getContainerId(), work);
+
+		EpisimPerson stays = EpisimTestUtils.createPerson("work");
+		EpisimPerson leaves = EpisimTestUtils.createPerson("work");
+		EpisimPerson arrives = EpisimTestUtils.createPerson("work");
+
+		Map<Id<Person>, EpisimPerson> persons = new LinkedHashMap<>();
+		for (EpisimPerson p : List.of(stays, leaves, arrives))
+			persons.put(p.getPersonId(), p);
+
+		stays.setFirstFacilityId(work.getContainerId(), DayOfWeek.MONDAY);
+		stays.setLastFacilityId(work.getContainerId(), DayOfWeek.MONDAY, true);
+		leaves.setFirstFacilityId(work.getContainerId(), DayOfWeek.MONDAY);
+		arrives.setLastFacilityId(work.getContainerId(), DayOfWeek.MONDAY, true);
+
+		DayEvents events = DayEvents.of(List.of(
+				new ActivityEndEvent(0, leaves.getPersonId(), null, work.getContainerId(), "work"),
+				new ActivityStartEvent(79200, arrives.getPersonId(), null, work.getContainerId(), "work", null)
+		));
+
+		OccupancyIndex index = OccupancyIndex.create(events, DayOfWeek.MONDAY, persons, facilities, new LinkedHashMap<>(), 1);
+		OccupancyIndex.Occupancy occupancy = index.getContainers(0)[0];
+
+		assertThat(occupancy.size()).isEqualTo(3);
+
+		// first activity is kept without duration, the person may have stayed over night
+		assertThat(occupancy.getPerson(0)).isSameAs(leaves);
+		assertThat(occupancy.getKind(0)).isEqualTo(OccupancyIndex.FIRST_ACTIVITY);
+		assertThat(occupancy.getEnd(0)).isEqualTo(0);
+		assertThat(occupancy.isOpen(0)).isFalse();
+
+		// stays are not cut at the end of the day
+		assertThat(occupancy.getPerson(1)).isSameAs(stays);
+		assertThat(occupancy.isOpen(1)).isTrue();
+
+		assertThat(occupancy.getPerson(2)).isSameAs(arrives);
+		assertThat(occupancy.getStart(2)).isEqualTo(79200);
+		assertThat(occupancy.isOpen(2)).isTrue();
+
+		// open intervals are last in end order
+		assertThat(occupancy.getEndOrder(0)).isEqualTo(0);
+	}
+
+	@Test
+	public void sweep() {
+
+		InfectionEventHandler.EpisimFacility work = EpisimTestUtils.createFacility("work");
+		EpisimPerson a = EpisimTestUtils.createPerson();
+		EpisimPerson b = EpisimTestUtils.createPerson();
+		EpisimPerson c = EpisimTestUtils.createPerson();
+
+		OccupancyIndex.Sweep sweep = new OccupancyIndex.Sweep();
+		sweep.reset(work, 3);
+
+		sweep.add(0, a, 0, null);
+		sweep.add(1, b, 10, null);
+		sweep.add(2, c, 20, null);
+
+		assertThat(sweep.getContainer()).isSameAs(work);
+		assertThat(sweep.size()).isEqualTo(3);
+
+		sweep.remove(0);
+
+		// last person takes the position of the removed one
+		assertThat(sweep.size()).isEqualTo(2);
+		assertThat(sweep.positionOf(0)).isEqualTo(-1);
+		assertThat(sweep.positionOf(2)).isEqualTo(0);
+		assertThat(sweep.getPerson(0)).isSameAs(c);
+		assertThat(sweep.getEnterTime(0)).isEqualTo(20);
+		assertThat(sweep.getPerson(1)).isSameAs(b);
+
+		// positions are cleared for the next container
+		sweep.reset(work, 2);
+		assertThat(sweep.size()).isEqualTo(0);
+		assertThat(sweep.positionOf(1)).isEqualTo(-1);
+	}
+
+	@Test
+	public void sameAsReplay() {
+
+		for (EpisimConfigGroup.ContagiousOptimization optimization : EpisimConfigGroup.ContagiousOptimization.values()) {
+			for (EpisimConfigGroup.ReportTimeUse timeUse : EpisimConfigGroup.ReportTimeUse.values()) {
+
+				Simulation replay = new Simulation(false, optimization, timeUse);
+				Simulation sweep = new Simulation(true, optimization, timeUse);
+
+				for (int iteration = 1; iteration <= 4; iteration++) {
+
+					replay.run(iteration);
+					sweep.run(iteration);
+
+					String desc = String.format("%s, %s, iteration %d", optimization, timeUse, iteration);
+
+					assertThat(sweep.handler.getNumContacts()).as(desc).isEqualTo(replay.handler.getNumContacts());
+					assertThat(sweep.probability).as(desc).isCloseTo(replay.probability, within(1e-9));
+
+					for (EpisimPerson person : replay.persons.values()) {
+						EpisimPerson other = sweep.persons.get(person.getPersonId());
+						assertThat(other.getSpentTime()).as(desc).isEqualTo(person.getSpentTime());
+					}
+				}
+
+				assertThat(replay.probability).isGreaterThan(0);
+			}
+		}
+	}
+
+	/**
+	 * Synthetic scenario with the same events every day and persons staying over night at home, at a night shift and at a bar.
+	 * Infections are not drawn, instead the infection probabilities of all contacts are summed up.
+	 */
+	private static final class Simulation {
+
+		private final Map<Id<Person>, EpisimPerson> persons = new LinkedHashMap<>();
+		private final Map<Id<ActivityFacility>, InfectionEventHandler.EpisimFacility> facilities = new LinkedHashMap<>();
+		private final Map<Id<Vehicle>, InfectionEventHandler.EpisimVehicle> vehicles = new LinkedHashMap<>();
+		private final List<Event> events = new ArrayList<>();
+
+		private final EpisimConfigGroup episimConfig;
+		private final TrajectoryHandler handler;
+		private final TaskPartition partition;
+		private final DayEvents dayEvents;
+		private final OccupancyIndex occupancy;
+
+		private double probability;
+
+		private Simulation(boolean occupancyIndex, EpisimConfigGroup.ContagiousOptimization optimization, EpisimConfigGroup.ReportTimeUse timeUse) {
+
+			EpisimTestUtils.resetIds();
+
+			Config config = EpisimTestUtils.createTestConfig();
+			episimConfig = ConfigUtils.addOrGetModule(config, EpisimConfigGroup.class);
+			episimConfig.setActivityHandling(EpisimConfigGroup.ActivityHandling.startOfDay);
+			episimConfig.setDaysInfectious(100);
+			episimConfig.setContagiousOptimization(optimization);
+			episimConfig.setReportTimeUse(timeUse);
+			episimConfig.setOccupancyIndex(occupancyIndex);
+
+			vehicles.put(Id.createVehicleId("bus"), new InfectionEventHandler.EpisimVehicle(Id.createVehicleId("bus")));
+
+			// stay at home over night and take the bus to the office
+			EpisimPerson a = addPerson(EpisimTestUtils.CONTAGIOUS, "homeA", "home", 25200, "office", "work", 61200, "homeA", "home");
+			EpisimPerson b = addPerson(p -> {}, "homeA", "home", 24000, "office", "work", 57600, "bar", "leis", 82800, "homeA", "home");
+			addRide(a, 25300, 25700);
+			addRide(b, 24100, 25900);
+
+			// night shifts, staying at the office over night
+			addPerson(p -> {}, "office", "work", 21600, "homeB", "home", 79200, "office", "work");
+			addPerson(EpisimTestUtils.CONTAGIOUS, "office", "work", 18000, "homeB", "home", 77400, "office", "work");
+
+			// staying at the bar over night
+			addPerson(p -> {}, "bar", "leis", 7200, "homeC", "home", 70200, "bar", "leis");
+
+			// leaves the bar at midnight
+			addPerson(EpisimTestUtils.CONTAGIOUS, "homeC", "home", 64800, "bar", "leis");
+
+			// sharing a home without anyone contagious
+			addPerson(p -> {}, "homeE", "home", 30000, "office", "work", 50000, "homeE", "home");
+			addPerson(p -> {}, "homeE", "home", 32000, "bar", "leis", 60000, "homeE", "home");
+
+			// leaves the office without any duration at the start of the day
+			addPerson(p -> {}, "office", "work", 0, "homeD", "home", 72000, "office", "work");
+
+			events.sort(Comparator.comparingDouble(Event::getTime));
+			dayEvents = DayEvents.of(events);
+
+			InfectionModel infectionModel = new InfectionModel() {
+				@Override
+				public double calcInfectionProbability(EpisimPerson target, EpisimPerson infector, Map<String, Restriction> restrictions,
+				                                       EpisimConfigGroup.InfectionParams act1, EpisimConfigGroup.InfectionParams act2,
+				                                       double contactIntensity, double jointTimeInContainer) {
+					probability += 1 - Math.exp(-jointTimeInContainer / 3600);
+					return 0;
+				}
+			};
+
+			Scenario scenario = ScenarioUtils.createScenario(config);
+			ContactModel model = Guice.createInjector(new AbstractModule() {
+				@Override
+				protected void configure() {
+					bind(Config.class).toInstance(config);
+					bind(TracingConfigGroup.class).toInstance(ConfigUtils.addOrGetModule(config, TracingConfigGroup.class));
+					bind(EpisimReporting.class).toInstance(EpisimTestUtils.getReporting());
+					bind(InfectionModel.class).toInstance(infectionModel);
+					bind(Scenario.class).toInstance(scenario);
+					bind(SplittableRandom.class).toInstance(new SplittableRandom(1));
+				}
+			}).getInstance(SymmetricContactModel.class);
+
+			handler = new TrajectoryHandler(episimConfig, EpisimTestUtils.getReporting(), model, new SplittableRandom(1), persons, vehicles, facilities);
+			partition = TaskPartition.create(1, facilities.values(), vehicles.values(), persons.values(), facilities)[0];
+			occupancy = occupancyIndex ? OccupancyIndex.create(dayEvents, DayOfWeek.MONDAY, persons, facilities, vehicles, 1) : null;
+
+			// same as the initial placement of the event handler
+			for (EpisimPerson person : persons.values()) {
+				if (person.getStaysInContainer(DayOfWeek.SUNDAY))
+					facilities.get(person.getLastFacilityId(DayOfWeek.SUNDAY)).addPerson(person, 0, person.getLastActivity(DayOfWeek.SUNDAY));
+			}
+		}
+
+		/**
+		 * Creates a person visiting the given facilities, given as facility, activity and leave time.
+		 * The next facility is entered ten minutes later, the last one is not left until the next day.
+		 */
+		private EpisimPerson addPerson(Consumer<EpisimPerson> init, Object... plan) {
+
+			EpisimPerson person = EpisimTestUtils.createPerson();
+			init.accept(person);
+			persons.put(person.getPersonId(), person);
+
+			Id<ActivityFacility> first = facility((String) plan[0]);
+			Id<ActivityFacility> last = facility((String) plan[plan.length - 2]);
+
+			for (DayOfWeek day : DayOfWeek.values()) {
+				person.setStartOfDay(day);
+
+				double start = 0;
+				for (int i = 0; i < plan.length; i += 3) {
+					Id<ActivityFacility> facility = facility((String) plan[i]);
+					String act = (String) plan[i + 1];
+					person.addToTrajectory(start, EpisimTestUtils.TEST_CONFIG.selectInfectionParams(act), facility);
+
+					if (day != DayOfWeek.MONDAY)
+						continue;
+
+					if (i > 0)
+						events.add(new ActivityStartEvent(start, person.getPersonId(), null, facility, act, null));
+
+					if (i + 2 < plan.length) {
+						double end = ((Number) plan[i + 2]).doubleValue();
+						events.add(new ActivityEndEvent(end, person.getPersonId(), null, facility, act));
+						start = end + 600;
+					}
+				}
+
+				person.setEndOfDay(day);
+				person.setFirstFacilityId(first, day);
+				person.setLastFacilityId(last, day, true);
+			}
+
+			person.initParticipation();
+			return person;
+		}
+
+		private void addRide(EpisimPerson person, double enter, double leave) {
+			events.add(new PersonEntersVehicleEvent(enter, person.getPersonId(), Id.createVehicleId("bus")));
+			events.add(new PersonLeavesVehicleEvent(leave, person.getPersonId(), Id.createVehicleId("bus")));
+		}
+
+		private Id<ActivityFacility> facility(String name) {
+			Id<ActivityFacility> id = Id.create(name, ActivityFacility.class);
+			facilities.computeIfAbsent(id, InfectionEventHandler.EpisimFacility::new);
+			return id;
+		}
+
+		private void run(int iteration) {
+
+			probability = 0;
+			handler.setRestrictionsForIteration(iteration, ImmutableMap.copyOf(episimConfig.createInitialRestrictions()));
+			handler.onStartDay(partition, false);
+
+			if (occupancy != null) {
+				handler.onOccupancy(occupancy.getContainers(0), false);
+				return;
+			}
+
+			for (int i = 0; i < dayEvents.size(); i++) {
+				switch (dayEvents.getKind(i)) {
+					case DayEvents.ACTIVITY_START:
+						handler.handleActivityStart(dayEvents, i);
+						break;
+					case DayEvents.ACTIVITY_END:
+						handler.handleActivityEnd(dayEvents, i);
+						break;
+					case DayEvents.ENTERS_VEHICLE:
+						handler.handleEntersVehicle(dayEvents, i);
+						break;
+					default:
+						handler.handleLeavesVehicle(dayEvents, i);
+				}
+			}
+		}
+	}
+}
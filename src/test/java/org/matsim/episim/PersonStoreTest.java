@@ -0,0 +1,197 @@
+package org.matsim.episim;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.episim.model.DefaultAntibodyModel;
+import org.matsim.episim.model.VaccinationType;
+import org.matsim.episim.model.VirusStrain;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.within;
+
+public class PersonStoreTest {
+
+	private static EpisimPerson createPerson(PersonStore store, int age) {
+		Attributes attrs = new Attributes();
+		attrs.putAttribute("age", age);
+		return new EpisimPerson(Id.createPersonId("p" + store.size()), attrs, false, EpisimTestUtils.getReporting(), store);
+	}
+
+	@Test
+	public void grow() {
+
+		PersonStore store = new PersonStore(1);
+
+		List<EpisimPerson> persons = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			EpisimPerson p = createPerson(store, i);
+			p.setSusceptibility(i);
+			persons.add(p);
+		}
+
+		assertThat(store.size()).isEqualTo(100);
+
+		for (int i = 0; i < 100; i++) {
+			EpisimPerson p = persons.get(i);
+			assertThat(p.getIndex()).isEqualTo(i);
+			assertThat(p.getAge()).isEqualTo(i);
+			assertThat(p.getSusceptibility()).isEqualTo(i);
+			assertThat(p.getDiseaseStatus()).isEqualTo(EpisimPerson.DiseaseStatus.susceptible);
+			assertThat(p.isTraceable()).isFalse();
+			assertThat(p.isVaccinable()).isTrue();
+		}
+	}
+
+	@Test
+	public void history() {
+
+		PersonStore store = new PersonStore();
+
+		EpisimPerson p1 = createPerson(store, 30);
+		EpisimPerson p2 = createPerson(store, 40);
+
+		// entries of both persons are interleaved
+		p1.setVaccinationStatus(EpisimPerson.VaccinationStatus.yes, VaccinationType.mRNA, 10);
+		p2.setVaccinationStatus(EpisimPerson.VaccinationStatus.yes, VaccinationType.vector, 12);
+		p1.setVaccinationStatus(EpisimPerson.VaccinationStatus.yes, VaccinationType.vector, 50);
+
+		assertThat(p1.getNumVaccinations()).isEqualTo(2);
+		assertThat(p1.getVaccinationType(0)).isEqualTo(VaccinationType.mRNA);
+		assertThat(p1.getVaccinationType(1)).isEqualTo(VaccinationType.vector);
+		assertThat(p1.getVaccinationDates()).containsExactly(10, 50);
+		assertThat(p1.daysSince(EpisimPerson.VaccinationStatus.yes, 60)).isEqualTo(10);
+
+		assertThat(p2.getNumVaccinations()).isEqualTo(1);
+		assertThat(p2.getVaccinationDates()).containsExactly(12);
+		assertThat(p2.hadVaccinationType(VaccinationType.mRNA)).isFalse();
+
+		EpisimTestUtils.infectPerson(p2, VirusStrain.OMICRON_BA1, 3600);
+
+		assertThat(p1.getNumInfections()).isEqualTo(0);
+		assertThat(p2.getInfectionDates()).containsExactly(3600d);
+		assertThat(p2.getVirusStrain()).isEqualTo(VirusStrain.OMICRON_BA1);
+		assertThat(p2.hadStrain(VirusStrain.OMICRON_BA1)).isTrue();
+
+		assertThatExceptionOfType(IndexOutOfBoundsException.class)
+				.isThrownBy(() -> p1.getVaccinationType(2));
+	}
+
+	@Test
+	public void statusChanges() {
+
+		EpisimPerson p = createPerson(new PersonStore(), 20);
+
+		p.setDiseaseStatus(0, EpisimPerson.DiseaseStatus.infectedButNotContagious);
+		p.setDiseaseStatus(86400, EpisimPerson.DiseaseStatus.contagious);
+		p.setDiseaseStatus(5 * 86400, EpisimPerson.DiseaseStatus.recovered);
+
+		assertThat(p.daysSince(EpisimPerson.DiseaseStatus.contagious, 3)).isEqualTo(2);
+		assertThat(p.hadDiseaseStatus(EpisimPerson.DiseaseStatus.showingSymptoms)).isFalse();
+
+		p.setDiseaseStatus(10 * 86400, EpisimPerson.DiseaseStatus.susceptible);
+
+		assertThat(p.hadDiseaseStatus(EpisimPerson.DiseaseStatus.contagious)).isFalse();
+		assertThat(p.daysSince(EpisimPerson.DiseaseStatus.recovered, 10)).isEqualTo(5);
+	}
+
+	@Test
+	public void antibodies() {
+
+		PersonStore store = new PersonStore(1);
+		EpisimPerson p1 = createPerson(store, 30);
+		EpisimPerson p2 = createPerson(store, 40);
+
+		assertThat(p1.hasAntibodies()).isFalse();
+		assertThat(p1.getAntibodies()).isEmpty();
+
+		p1.setAntibodies(VirusStrain.DELTA, 4);
+		p2.setAntibodies(VirusStrain.DELTA, 1);
+		p2.setAntibodies(VirusStrain.OMICRON_BA1, 2);
+
+		// all strains are contained once levels are set
+		assertThat(p2.getAntibodies()).containsOnlyKeys(VirusStrain.values());
+		assertThat(p2.getAntibodies().getDouble(VirusStrain.OMICRON_BA1)).isEqualTo(2);
+		assertThat(p2.getAntibodies().getDouble(VirusStrain.SARS_CoV_2)).isEqualTo(0);
+
+		p1.updateMaxAntibodies(VirusStrain.DELTA, 3);
+		p1.updateMaxAntibodies(VirusStrain.DELTA, 1);
+
+		assertThat(p1.hasAntibodies()).isTrue();
+		assertThat(p1.getMaxAntibodies(VirusStrain.DELTA)).isEqualTo(3);
+
+		double[] sum = new double[VirusStrain.values().length];
+		p1.sumAntibodies(sum);
+		p2.sumAntibodies(sum);
+
+		assertThat(sum[VirusStrain.DELTA.ordinal()]).isEqualTo(5);
+		assertThat(sum[VirusStrain.OMICRON_BA1.ordinal()]).isEqualTo(2);
+		assertThat(sum[VirusStrain.SARS_CoV_2.ordinal()]).isEqualTo(0);
+	}
+
+	@Test
+	public void antibodyDecay() {
+
+		PersonStore store = new PersonStore();
+		EpisimPerson p = createPerson(store, 30);
+
+		store.setAntibodyDay(10);
+		p.setAntibodies(VirusStrain.DELTA, 4);
+
+		// no decay until the factor is set
+		assertThat(p.getAntibodies(VirusStrain.DELTA, 20)).isEqualTo(4);
+
+		store.setAntibodyDecay(DefaultAntibodyModel.DAILY_DECAY);
+
+		// levels halve after the half life
+		store.setAntibodyDay(10 + (int) DefaultAntibodyModel.HALF_LIFE_DAYS);
+		assertThat(p.getAntibodies(VirusStrain.DELTA)).isCloseTo(2, within(1e-9));
+		assertThat(p.getAntibodies(VirusStrain.DELTA, 10)).isEqualTo(4);
+
+		// closed form matches decay day by day
+		double level = 4;
+		for (int day = 11; day <= 2000; day++)
+			level *= DefaultAntibodyModel.DAILY_DECAY;
+
+		assertThat(p.getAntibodies(VirusStrain.DELTA, 2000)).isCloseTo(level, within(1e-12));
+
+		// setting one strain keeps decayed level of others
+		p.setAntibodies(VirusStrain.OMICRON_BA1, 1);
+		assertThat(p.getAntibodies(VirusStrain.DELTA)).isCloseTo(2, within(1e-9));
+		assertThat(p.getAntibodies(VirusStrain.OMICRON_BA1)).isEqualTo(1);
+
+		// levels set at an explicit day are evaluated from there on
+		p.setAntibodies(VirusStrain.OMICRON_BA1, 4, 100);
+		assertThat(p.getAntibodyDay()).isEqualTo(100);
+		assertThat(p.getAntibodies(VirusStrain.OMICRON_BA1, 100 + (int) DefaultAntibodyModel.HALF_LIFE_DAYS)).isCloseTo(2, within(1e-9));
+	}
+
+	@Test
+	public void immunityEvents() {
+
+		PersonStore store = new PersonStore();
+		EpisimPerson p1 = createPerson(store, 30);
+		EpisimPerson p2 = createPerson(store, 40);
+		EpisimPerson p3 = createPerson(store, 50);
+
+		p3.setVaccinationStatus(EpisimPerson.VaccinationStatus.yes, VaccinationType.mRNA, 2);
+		EpisimTestUtils.infectPerson(p2, VirusStrain.DELTA, 3 * 86400 + 100);
+		p1.setVaccinationStatus(EpisimPerson.VaccinationStatus.yes, VaccinationType.mRNA, 3);
+		p2.setVaccinationStatus(EpisimPerson.VaccinationStatus.yes, VaccinationType.mRNA, 3);
+
+		// ordered by id index and without duplicates
+		List<EpisimPerson> expected = new ArrayList<>(List.of(p1, p2));
+		expected.sort(Comparator.comparingInt(p -> p.getPersonId().index()));
+
+		assertThat(store.pollImmunityEvents(3)).containsExactlyElementsOf(expected);
+
+		// polled and earlier days are removed
+		assertThat(store.pollImmunityEvents(3)).isEmpty();
+		assertThat(store.pollImmunityEvents(2)).isEmpty();
+	}
+}
@@ -0,0 +1,58 @@
+package org.matsim.episim;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.IdMap;
+import org.matsim.api.core.v01.events.ActivityEndEvent;
+import org.matsim.api.core.v01.events.ActivityStartEvent;
+import org.matsim.api.core.v01.events.PersonEntersVehicleEvent;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.vehicles.Vehicle;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PersonVisitsTest {
+
+	@Test
+	public void activeContainers() {
+
+		EpisimPerson p1 = EpisimTestUtils.createPerson();
+		EpisimPerson p2 = EpisimTestUtils.createPerson();
+
+		Map<Id<ActivityFacility>, InfectionEventHandler.EpisimFacility> facilities = new IdMap<>(ActivityFacility.class);
+		Map<Id<Vehicle>, InfectionEventHandler.EpisimVehicle> vehicles = new IdMap<>(Vehicle.class);
+
+		Id<ActivityFacility> home = Id.create("home", ActivityFacility.class);
+		Id<ActivityFacility> work = Id.create("work", ActivityFacility.class);
+		Id<Vehicle> bus = Id.createVehicleId("bus");
+
+		facilities.put(home, new InfectionEventHandler.EpisimFacility(home));
+		facilities.put(work, new InfectionEventHandler.EpisimFacility(work));
+		vehicles.put(bus, new InfectionEventHandler.EpisimVehicle(bus));
+
+		DayEvents events = DayEvents.of(List.of(
+				new ActivityEndEvent(100, p1.getPersonId(), null, home, "home"),
+				new PersonEntersVehicleEvent(200, p1.getPersonId(), bus),
+				new ActivityStartEvent(300, p1.getPersonId(), null, work, "work", null),
+				new ActivityEndEvent(400, p2.getPersonId(), null, home, "home")
+		));
+
+		PersonVisits visits = PersonVisits.create(events, facilities, vehicles);
+		facilities.get(home).setAlwaysActive(true);
+
+		visits.setActive(p2, 1);
+
+		assertThat(facilities.get(home).isActive(1)).isTrue();
+		assertThat(facilities.get(work).isActive(1)).isFalse();
+		assertThat(vehicles.get(bus).isActive(1)).isFalse();
+
+		visits.setActive(p1, 2);
+
+		assertThat(facilities.get(work).isActive(2)).isTrue();
+		assertThat(vehicles.get(bus).isActive(2)).isTrue();
+		assertThat(vehicles.get(bus).isActive(3)).isFalse();
+	}
+}
@@ -0,0 +1,208 @@
+package org.matsim.episim;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.ActivityEndEvent;
+import org.matsim.api.core.v01.events.ActivityStartEvent;
+import org.matsim.api.core.v01.events.PersonEntersVehicleEvent;
+import org.matsim.api.core.v01.events.PersonLeavesVehicleEvent;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.vehicles.Vehicle;
+
+import java.time.DayOfWeek;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TaskPartitionTest {
+
+	private Map<Id<ActivityFacility>, InfectionEventHandler.EpisimFacility> facilities;
+	private Map<Id<Vehicle>, InfectionEventHandler.EpisimVehicle> vehicles;
+	private List<EpisimPerson> persons;
+	private DayEvents events;
+
+	@Before
+	public void setup() {
+
+		InfectionEventHandler.EpisimFacility home = EpisimTestUtils.createFacility("home");
+		InfectionEventHandler.EpisimFacility work = EpisimTestUtils.createFacility("work");
+		InfectionEventHandler.EpisimFacility school = EpisimTestUtils.createFacility("school");
+		InfectionEventHandler.EpisimFacility leisure = EpisimTestUtils.createFacility("leisure");
+		InfectionEventHandler.EpisimVehicle bus = new InfectionEventHandler.EpisimVehicle(Id.createVehicleId("bus"));
+		InfectionEventHandler.EpisimVehicle tram = new InfectionEventHandler.EpisimVehicle(Id.createVehicleId("tram"));
+
+		home.setHousehold(true);
+
+		facilities = new LinkedHashMap<>();
+		for (InfectionEventHandler.EpisimFacility f : List.of(home, work, school, leisure))
+			facilities.put(f.getContainerId(), f);
+
+		vehicles = new LinkedHashMap<>();
+		for (InfectionEventHandler.EpisimVehicle v : List.of(bus, tram))
+			vehicles.put(v.getContainerId(), v);
+
+		EpisimPerson commutes = EpisimTestUtils.createPerson("home");
+		EpisimPerson pupil = EpisimTestUtils.createPerson("home");
+		EpisimPerson nightShift = EpisimTestUtils.createPerson("work");
+
+		persons = List.of(commutes, pupil, nightShift);
+		for (DayOfWeek day : DayOfWeek.values()) {
+			commutes.setFirstFacilityId(home.getContainerId(), day);
+			pupil.setFirstFacilityId(home.getContainerId(), day);
+			nightShift.setFirstFacilityId(work.getContainerId(), day);
+		}
+
+		events = DayEvents.of(List.of(
+				new ActivityEndEvent(21600, nightShift.getPersonId(), null, work.getContainerId(), "work"),
+				new PersonEntersVehicleEvent(21700, nightShift.getPersonId(), tram.getContainerId()),
+				new ActivityEndEvent(25200, commutes.getPersonId(), null, home.getContainerId(), "home"),
+				new PersonEntersVehicleEvent(25300, commutes.getPersonId(), bus.getContainerId()),
+				new ActivityEndEvent(27000, pupil.getPersonId(), null, home.getContainerId(), "home"),
+				new PersonLeavesVehicleEvent(27000, commutes.getPersonId(), bus.getContainerId()),
+				new ActivityStartEvent(27100, commutes.getPersonId(), null, work.getContainerId(), "work", null),
+				new ActivityStartEvent(27500, pupil.getPersonId(), null, school.getContainerId(), "edu", null),
+				new PersonLeavesVehicleEvent(28000, nightShift.getPersonId(), tram.getContainerId()),
+				new ActivityStartEvent(28100, nightShift.getPersonId(), null, leisure.getContainerId(), "leisure", null),
+				new ActivityEndEvent(50000, pupil.getPersonId(), null, school.getContainerId(), "edu"),
+				new ActivityStartEvent(51000, pupil.getPersonId(), null, home.getContainerId(), "home", null)
+		));
+	}
+
+	/**
+	 * Assign containers to tasks in turn, starting with the given offset.
+	 */
+	private void assignTasks(int numTasks, int offset) {
+		int i = offset;
+		for (InfectionEventHandler.EpisimFacility f : facilities.values())
+			f.setTaskId(i++ % numTasks);
+
+		for (InfectionEventHandler.EpisimVehicle v : vehicles.values())
+			v.setTaskId(i++ % numTasks);
+	}
+
+	@Test
+	public void singleTask() {
+
+		assignTasks(1, 0);
+
+		int[][] slices = TaskPartition.partitionEvents(events, 1, facilities, vehicles);
+		TaskPartition[] partitions = TaskPartition.create(1, facilities.values(), vehicles.values(), persons, facilities);
+
+		// all events except the three at home are replayed in original order
+		assertThat(slices[0]).containsExactly(0, 1, 3, 5, 6, 7, 8, 9, 10);
+
+		assertConsistent(1, partitions, slices, events, facilities, vehicles, persons);
+	}
+
+	@Test
+	public void multipleTasks() {
+
+		assignTasks(3, 0);
+
+		int[][] slices = TaskPartition.partitionEvents(events, 3, facilities, vehicles);
+		TaskPartition[] partitions = TaskPartition.create(3, facilities.values(), vehicles.values(), persons, facilities);
+
+		// home and leisure belong to task 0, work and bus to task 1, school and tram to task 2
+		assertThat(slices[0]).containsExactly(9);
+		assertThat(slices[1]).containsExactly(0, 3, 5, 6);
+		assertThat(slices[2]).containsExactly(1, 7, 8, 10);
+
+		assertThat(partitions[0].getPersons(DayOfWeek.MONDAY)).containsExactly(persons.get(0), persons.get(1));
+		assertThat(partitions[1].getPersons(DayOfWeek.MONDAY)).containsExactly(persons.get(2));
+		assertThat(partitions[2].getPersons(DayOfWeek.MONDAY)).isEmpty();
+
+		assertConsistent(3, partitions, slices, events, facilities, vehicles, persons);
+	}
+
+	@Test
+	public void reassign() {
+
+		assignTasks(2, 0);
+
+		int[][] slices = TaskPartition.partitionEvents(events, 2, facilities, vehicles);
+		TaskPartition[] partitions = TaskPartition.create(2, facilities.values(), vehicles.values(), persons, facilities);
+
+		assertConsistent(2, partitions, slices, events, facilities, vehicles, persons);
+
+		// all containers change their task, as after a rebalancing
+		assignTasks(2, 1);
+
+		int[][] rebuilt = TaskPartition.partitionEvents(events, 2, facilities, vehicles);
+		TaskPartition[] rebuiltPartitions = TaskPartition.create(2, facilities.values(), vehicles.values(), persons, facilities);
+
+		assertThat(rebuilt[0]).containsExactly(slices[1]);
+		assertThat(rebuilt[1]).containsExactly(slices[0]);
+
+		// persons at home move with the household to the other task
+		assertThat(rebuiltPartitions[1].getPersons(DayOfWeek.SUNDAY)).contains(persons.get(0), persons.get(1));
+
+		assertConsistent(2, rebuiltPartitions, rebuilt, events, facilities, vehicles, persons);
+	}
+
+	/**
+	 * Check that every event outside of households is replayed by exactly one task, the one of its container, and in the original order.
+	 * Every container and person needs to be in the partition of its task.
+	 */
+	static void assertConsistent(int numTasks, TaskPartition[] partitions, int[][] slices, DayEvents events,
+	                             Map<Id<ActivityFacility>, InfectionEventHandler.EpisimFacility> facilities,
+	                             Map<Id<Vehicle>, InfectionEventHandler.EpisimVehicle> vehicles,
+	                             Collection<EpisimPerson> persons) {
+
+		assertThat(partitions).hasSize(numTasks);
+		assertThat(slices).hasSize(numTasks);
+
+		int[] replayed = new int[events.size()];
+		for (int task = 0; task < numTasks; task++) {
+			assertThat(slices[task]).isSorted();
+			for (int i : slices[task]) {
+				assertThat(container(events, i, facilities, vehicles).getTaskId()).isEqualTo(task);
+				replayed[i]++;
+			}
+		}
+
+		for (int i = 0; i < events.size(); i++) {
+			EpisimContainer<?> container = container(events, i, facilities, vehicles);
+			boolean household = container instanceof InfectionEventHandler.EpisimFacility && ((InfectionEventHandler.EpisimFacility) container).isHousehold();
+
+			assertThat(replayed[i]).as("Replays of event %d", i).isEqualTo(household ? 0 : 1);
+		}
+
+		Set<EpisimContainer<?>> containers = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (int task = 0; task < numTasks; task++) {
+			for (EpisimContainer<?> container : partitions[task].getFacilities()) {
+				assertThat(container.getTaskId()).isEqualTo(task);
+				assertThat(containers.add(container)).isTrue();
+			}
+
+			for (EpisimContainer<?> container : partitions[task].getVehicles()) {
+				assertThat(container.getTaskId()).isEqualTo(task);
+				assertThat(containers.add(container)).isTrue();
+			}
+		}
+
+		assertThat(containers).hasSize(facilities.size() + vehicles.size());
+
+		for (DayOfWeek day : DayOfWeek.values()) {
+			Set<EpisimPerson> started = Collections.newSetFromMap(new IdentityHashMap<>());
+			for (int task = 0; task < numTasks; task++) {
+				for (EpisimPerson person : partitions[task].getPersons(day)) {
+					assertThat(facilities.get(person.getFirstFacilityId(day)).getTaskId()).isEqualTo(task);
+					assertThat(started.add(person)).isTrue();
+				}
+			}
+
+			assertThat(started).hasSize(persons.size());
+		}
+	}
+
+	private static EpisimContainer<?> container(DayEvents events, int i,
+	                                            Map<Id<ActivityFacility>, InfectionEventHandler.EpisimFacility> facilities,
+	                                            Map<Id<Vehicle>, InfectionEventHandler.EpisimVehicle> vehicles) {
+		byte kind = events.getKind(i);
+		if (kind == DayEvents.ACTIVITY_START || kind == DayEvents.ACTIVITY_END)
+			return facilities.get(events.getFacilityId(i));
+
+		return vehicles.get(events.getVehicleId(i));
+	}
+}
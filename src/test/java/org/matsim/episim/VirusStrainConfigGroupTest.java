@@ -35,4 +35,22 @@ public class VirusStrainConfigGroupTest {
 				.isEqualTo(0.5);
 
 	}
+
+	@Test
+	public void lineages() {
+
+		boolean[][] lineages = VirusStrainConfigGroup.getLineages(false);
+
+		assertThat(lineages[VirusStrainConfigGroup.LINEAGE_A][VirusStrain.OMICRON_BA2.ordinal()]).isTrue();
+		assertThat(lineages[VirusStrainConfigGroup.LINEAGE_B][VirusStrain.STRAIN_B.ordinal()]).isTrue();
+		assertThat(lineages[VirusStrainConfigGroup.LINEAGE_A][VirusStrain.A_1.ordinal()]).isFalse();
+		assertThat(lineages[VirusStrainConfigGroup.LINEAGE_A][VirusStrain.DELTA.ordinal()]).isFalse();
+
+		lineages = VirusStrainConfigGroup.getLineages(true);
+
+		assertThat(lineages[VirusStrainConfigGroup.LINEAGE_A][VirusStrain.A_1.ordinal()]).isTrue();
+		assertThat(lineages[VirusStrainConfigGroup.LINEAGE_A][VirusStrain.B_1.ordinal()]).isFalse();
+		assertThat(lineages[VirusStrainConfigGroup.LINEAGE_B][VirusStrain.B_20.ordinal()]).isTrue();
+		assertThat(lineages[VirusStrainConfigGroup.LINEAGE_B][VirusStrain.OMICRON_BA5.ordinal()]).isTrue();
+	}
 }
@@ -0,0 +1,56 @@
+package org.matsim.episim.model;
+
+import org.junit.Test;
+import org.matsim.episim.EpisimConfigGroup;
+import org.matsim.episim.EpisimTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ActivityRegistryTest {
+
+	private final EpisimConfigGroup config = EpisimTestUtils.TEST_CONFIG;
+
+	private int id(ActivityRegistry registry, String name) {
+		return registry.getId(config.getInfectionParam(name));
+	}
+
+	@Test
+	public void rules() {
+
+		ActivityRegistry registry = new ActivityRegistry(config.getInfectionParams(),
+				config.getInfectionParam(AbstractContactModel.QUARANTINE_HOME), List.of("leis"));
+
+		int home = id(registry, "home");
+		int qh = id(registry, AbstractContactModel.QUARANTINE_HOME);
+		int leis = id(registry, "leis");
+		int work = id(registry, "work");
+		int edu = id(registry, "edu");
+		int other = id(registry, "c1.0");
+
+		assertThat(registry.isHome(home)).isTrue();
+		assertThat(registry.isHome(qh)).isFalse();
+
+		assertThat(registry.getInfectionType(EpisimTestUtils.createFacility(), qh, leis)).isEqualTo("home_leis");
+
+		assertThat(registry.canInteract(home, home)).isTrue();
+		assertThat(registry.canInteract(qh, home)).isTrue();
+		assertThat(registry.canInteract(home, leis)).isTrue();
+		assertThat(registry.canInteract(work, home)).isTrue();
+		assertThat(registry.canInteract(home, other)).isFalse();
+		assertThat(registry.canInteract(home, edu)).isFalse();
+
+		assertThat(registry.canInteract(edu, edu)).isTrue();
+		assertThat(registry.canInteract(edu, work)).isTrue();
+		assertThat(registry.canInteract(other, edu)).isFalse();
+		assertThat(registry.canInteract(other, other)).isTrue();
+
+		assertThat(registry.isTraced(home, work)).isTrue();
+		assertThat(registry.isTraced(home, leis)).isFalse();
+
+		assertThatThrownBy(() -> registry.getId(new EpisimConfigGroup().getOrAddContainerParams("unknown")))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,85 @@
+package org.matsim.episim.model;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares drawing contact persons with {@link ContactSampler} against copying the person list of the container.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class BenchmarkContactSampler {
+
+	@Param({"2", "5", "10", "50", "100", "500", "1000", "5000"})
+	private int size;
+
+	@Param({"10"})
+	private int maxContacts;
+
+	private final SplittableRandom rnd = new SplittableRandom(1);
+	private final ContactSampler sampler = new ContactSampler();
+	private final List<Object> copy = new ArrayList<>();
+
+	private List<Object> persons;
+	private Object self;
+
+	public static void main(String[] args) throws RunnerException {
+
+		Options opt = new OptionsBuilder()
+				.include(BenchmarkContactSampler.class.getSimpleName())
+				.warmupIterations(5).warmupTime(TimeValue.seconds(1))
+				.measurementIterations(10).measurementTime(TimeValue.seconds(1))
+				.forks(1)
+				.build();
+
+		new Runner(opt).run();
+	}
+
+	@Setup
+	public void setup() {
+		persons = new ArrayList<>(size);
+		for (int i = 0; i < size; i++)
+			persons.add(new Object());
+
+		self = persons.get(size / 2);
+	}
+
+	@Benchmark
+	public void copyList(Blackhole bh) {
+
+		copy.addAll(persons);
+		copy.remove(self);
+
+		int contactWith = Math.min(copy.size(), maxContacts);
+		for (int i = 0; i < contactWith; i++)
+			bh.consume(copy.remove(rnd.nextInt(copy.size())));
+
+		copy.clear();
+	}
+
+	@Benchmark
+	public void sampler(Blackhole bh) {
+
+		sampler.reset(persons.size());
+
+		int contactWith = Math.min(persons.size() - 1, maxContacts);
+		for (int i = 0; i < contactWith; i++) {
+			Object contact = persons.get(sampler.next(rnd));
+			if (contact == self)
+				contact = persons.get(sampler.next(rnd));
+
+			bh.consume(contact);
+		}
+	}
+}
@@ -10,6 +10,7 @@ import org.matsim.episim.*;
 import org.matsim.episim.EpisimPerson.DiseaseStatus;
 import org.matsim.episim.model.progression.DefaultDiseaseStatusTransitionModel;
 
+import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.SplittableRandom;
@@ -141,6 +142,43 @@ public class ConfigurableProgressionModelTest {
 		}
 	}
 
+	@Test
+	public void collectTracing() {
+
+		tracingConfig.setTracingProbability(1);
+		tracingConfig.setPutTraceablePersonsInQuarantineAfterDay(0);
+		tracingConfig.setTracingDelay_days(0);
+
+		// same seed as the shared instance, so that the person shows symptoms
+		SplittableRandom rnd = new SplittableRandom(1);
+		ProgressionModel partition = new ConfigurableProgressionModel(rnd, episimConfig, tracingConfig, vaccinationConfig,
+				new DefaultDiseaseStatusTransitionModel(rnd, vaccinationConfig, strainConfig));
+
+		assertThat(partition.collectTracing(model)).isTrue();
+
+		EpisimPerson p = EpisimTestUtils.createPerson(reporting);
+		p.setDiseaseStatus(0, DiseaseStatus.infectedButNotContagious);
+		for (int day = 0; day <= 5; day++) {
+			partition.setIteration(day);
+			partition.updateState(p, day);
+		}
+
+		// transitions are stored in the shared instance
+		assertThat(model.getNextDiseaseStatus(p.getPersonId())).isEqualTo(DiseaseStatus.showingSymptoms);
+
+		p.addTraceableContactPerson(EpisimTestUtils.createPerson(reporting), 5 * 24 * 3600);
+
+		partition.setIteration(6);
+		partition.updateState(p, 6);
+		assertThat(p.getDiseaseStatus()).isEqualTo(DiseaseStatus.showingSymptoms);
+		assertThat(p.getTraceableContactPersons(0)).allMatch(t -> t.getQuarantineStatus() == EpisimPerson.QuarantineStatus.no);
+
+		// tracing is performed when committed
+		model.setIteration(6);
+		partition.commitTracing(model);
+		assertThat(p.getTraceableContactPersons(0)).allMatch(t -> t.getQuarantineStatus() == EpisimPerson.QuarantineStatus.atHome);
+	}
+
 	@Test
 	public void tracingDelay() {
 
@@ -293,6 +331,50 @@ public class ConfigurableProgressionModelTest {
 	}
 
 
+	@Test
+	public void readWrite() throws IOException {
+
+		EpisimPerson p = EpisimTestUtils.createPerson(reporting);
+		p.setDiseaseStatus(0, DiseaseStatus.infectedButNotContagious);
+		model.updateState(p, 0);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ObjectOutputStream oout = new ObjectOutputStream(out);
+		((ConfigurableProgressionModel) model).writeExternal(oout);
+		oout.flush();
+
+		setup();
+		assertThat(model.getNextTransitionDays(p.getPersonId())).isEqualTo(-1);
+
+		((ConfigurableProgressionModel) model).readExternal(new ObjectInputStream(new ByteArrayInputStream(out.toByteArray())));
+
+		assertThat(model.getNextDiseaseStatus(p.getPersonId())).isEqualTo(DiseaseStatus.contagious);
+		assertThat(model.getNextTransitionDays(p.getPersonId())).isEqualTo(4);
+	}
+
+	@Test
+	public void readUnversioned() throws IOException {
+
+		EpisimPerson p = EpisimTestUtils.createPerson(reporting);
+
+		// snapshot format without version
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ObjectOutputStream oout = new ObjectOutputStream(out);
+		oout.writeInt(1);
+		EpisimUtils.writeChars(oout, p.getPersonId().toString());
+		oout.writeLong((((long) DiseaseStatus.contagious.ordinal()) << 32) | 4);
+		oout.writeLong(0);
+		oout.writeInt(0);
+		oout.writeInt(0);
+		oout.writeInt(0);
+		oout.flush();
+
+		((ConfigurableProgressionModel) model).readExternal(new ObjectInputStream(new ByteArrayInputStream(out.toByteArray())));
+
+		assertThat(model.getNextDiseaseStatus(p.getPersonId())).isEqualTo(DiseaseStatus.contagious);
+		assertThat(model.getNextTransitionDays(p.getPersonId())).isEqualTo(4);
+	}
+
 	@Test
 	public void transitionDay() {
 
@@ -0,0 +1,55 @@
+package org.matsim.episim.model;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ContactSamplerTest {
+
+	@Test
+	public void distinct() {
+
+		SplittableRandom rnd = new SplittableRandom(1);
+		ContactSampler sampler = new ContactSampler();
+
+		for (int n : new int[]{1, 2, 7, 100}) {
+			sampler.reset(n);
+
+			IntSet drawn = new IntOpenHashSet();
+			while (sampler.hasNext())
+				drawn.add(sampler.next(rnd));
+
+			assertThat(drawn).hasSize(n);
+			assertThat(drawn).allMatch(i -> i >= 0 && i < n);
+		}
+
+		assertThatThrownBy(() -> sampler.next(rnd))
+				.isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test
+	public void uniform() {
+
+		SplittableRandom rnd = new SplittableRandom(1);
+		ContactSampler sampler = new ContactSampler();
+
+		int n = 10;
+		int samples = 100_000;
+		int[] counts = new int[n];
+
+		for (int i = 0; i < samples; i++) {
+			sampler.reset(n);
+			counts[sampler.next(rnd)]++;
+			counts[sampler.next(rnd)]++;
+			counts[sampler.next(rnd)]++;
+		}
+
+		for (int c : counts)
+			assertThat(c).isBetween((int) (samples * 0.29), (int) (samples * 0.31));
+	}
+}
@@ -0,0 +1,132 @@
+package org.matsim.episim.model;
+
+import org.assertj.core.data.Percentage;
+import org.junit.Before;
+import org.junit.Test;
+import org.matsim.episim.EpisimConfigGroup;
+import org.matsim.episim.EpisimPerson;
+import org.matsim.episim.EpisimTestUtils;
+import org.matsim.episim.policy.Restriction;
+import org.matsim.episim.policy.RestrictionTest;
+
+import java.time.DayOfWeek;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DailyFaceMaskModelTest {
+
+	private DailyFaceMaskModel model;
+	private EpisimConfigGroup config;
+	private Map<String, Restriction> restrictions;
+
+	@Before
+	public void setUp() throws Exception {
+		// same activity params as the test persons
+		config = EpisimTestUtils.TEST_CONFIG;
+		model = new DailyFaceMaskModel(new SplittableRandom(1), config);
+
+		restrictions = config.createInitialRestrictions();
+		RestrictionTest.merge(restrictions.get("work"), Restriction.ofMask(FaceMask.CLOTH, 0.5));
+		RestrictionTest.merge(restrictions.get("leis"), Restriction.ofMask(FaceMask.N95, 1.0));
+
+		model.setRestrictionsForIteration(1, RestrictionTable.compile(null, restrictions, config));
+	}
+
+	@Test
+	public void sameMaskDuringDay() {
+
+		EpisimConfigGroup.InfectionParams work = config.selectInfectionParams("work");
+		EpisimConfigGroup.InfectionParams leis = config.selectInfectionParams("leis");
+		EpisimConfigGroup.InfectionParams home = config.selectInfectionParams("home");
+
+		double worn = 0;
+		for (int i = 0; i < 30_000; i++) {
+			EpisimPerson p = EpisimTestUtils.createPerson(model, "work", "leis");
+			model.assignMasks(p, DayOfWeek.MONDAY);
+
+			FaceMask mask = model.getWornMask(p, work, restrictions.get("work"));
+			if (mask == FaceMask.CLOTH) worn++;
+
+			for (int j = 0; j < 5; j++)
+				assertThat(model.getWornMask(p, work, restrictions.get("work"))).isEqualTo(mask);
+
+			assertThat(model.getWornMask(p, leis, restrictions.get("leis"))).isEqualTo(FaceMask.N95);
+			assertThat(model.getWornMask(p, home, restrictions.get("home"))).isEqualTo(FaceMask.NONE);
+		}
+
+		assertThat(worn / 30_000).isCloseTo(0.5, Percentage.withPercentage(2));
+	}
+
+	@Test
+	public void onlyPerformedActivities() {
+
+		EpisimPerson p = EpisimTestUtils.createPerson(model, "work", "leis", "work");
+		model.assignMasks(p, DayOfWeek.MONDAY);
+
+		// work, leisure and vehicles
+		assertThat(assigned(p)).isEqualTo(3);
+
+		// not performed activities still use the restriction
+		EpisimConfigGroup.InfectionParams edu = config.selectInfectionParams("edu");
+		assertThat(model.getWornMask(p, edu, restrictions.get("edu"))).isEqualTo(FaceMask.NONE);
+	}
+
+	@Test
+	public void reassignedEachDay() {
+
+		EpisimConfigGroup.InfectionParams work = config.selectInfectionParams("work");
+		EpisimPerson p = EpisimTestUtils.createPerson(model, "work");
+
+		model.assignMasks(p, DayOfWeek.MONDAY);
+		assertThat(model.getWornMask(p, work, restrictions.get("work"))).isIn(FaceMask.NONE, FaceMask.CLOTH);
+
+		Map<String, Restriction> next = config.createInitialRestrictions();
+		RestrictionTest.merge(next.get("work"), Restriction.ofMask(FaceMask.SURGICAL, 1.0));
+
+		model.setRestrictionsForIteration(2, RestrictionTable.compile(null, next, config));
+		model.assignMasks(p, DayOfWeek.TUESDAY);
+
+		assertThat(model.getWornMask(p, work, next.get("work"))).isEqualTo(FaceMask.SURGICAL);
+	}
+
+	@Test
+	public void quarantineAtHome() {
+
+		EpisimPerson p = EpisimTestUtils.createPerson(model, "home", "work");
+		model.assignMasks(p, DayOfWeek.MONDAY);
+
+		// home, work, vehicles and home quarantine
+		assertThat(assigned(p)).isEqualTo(4);
+
+		// looking up masks of the contact models must not draw random numbers
+		RestrictionTable table = RestrictionTable.compile(null, restrictions, config);
+		SplittableRandom assignOnly = new SplittableRandom(1);
+		SplittableRandom withLookup = new SplittableRandom(1);
+
+		DailyFaceMaskModel a = new DailyFaceMaskModel(assignOnly, config);
+		DailyFaceMaskModel b = new DailyFaceMaskModel(withLookup, config);
+		a.setRestrictionsForIteration(1, table);
+		b.setRestrictionsForIteration(1, table);
+
+		a.assignMasks(EpisimTestUtils.createPerson(a, "home", "work"), DayOfWeek.MONDAY);
+
+		EpisimPerson q = EpisimTestUtils.createPerson(b, "home", "work");
+		b.assignMasks(q, DayOfWeek.MONDAY);
+		for (String act : List.of("home", "work", "tr", AbstractContactModel.QUARANTINE_HOME))
+			b.getWornMask(q, config.selectInfectionParams(act), table);
+
+		assertThat(withLookup.nextLong()).isEqualTo(assignOnly.nextLong());
+	}
+
+	private int assigned(EpisimPerson p) {
+		int assigned = 0;
+		for (int i = 0; i < p.getMaskSlots(); i++) {
+			if (p.getWornMask(i) >= 0) assigned++;
+		}
+
+		return assigned;
+	}
+}
@@ -79,7 +79,7 @@ public class DefaultAntibodyModelTest {
 		// initialize population
 		List<EpisimPerson> episimPeople = new ArrayList<>();
 		for (int i = 0; i < 100000; i++) {
-			EpisimPerson person = EpisimTestUtils.createPerson();
+			EpisimPerson person = EpisimTestUtils.createPerson(DefaultAntibodyModel.DAILY_DECAY);
 			person.setImmuneResponseMultiplier(0.22222); // dummy value that will be overwritten
 			episimPeople.add(person);
 		}
@@ -139,6 +139,31 @@ public class DefaultAntibodyModelTest {
 	}
 
 
+	/**
+	 * Antibodies recalculated after a snapshot should match the ones updated every day.
+	 */
+	@Test
+	public void testRecalculateAfterSnapshot() {
+
+		EpisimPerson daily = EpisimTestUtils.createPerson(DefaultAntibodyModel.DAILY_DECAY);
+		EpisimPerson restored = EpisimTestUtils.createPerson(DefaultAntibodyModel.DAILY_DECAY);
+
+		for (EpisimPerson person : List.of(daily, restored)) {
+			person.setVaccinationStatus(EpisimPerson.VaccinationStatus.yes, VaccinationType.mRNA, 5);
+			EpisimTestUtils.infectPerson(person, VirusStrain.DELTA, 40 * 24 * 60 * 60);
+		}
+
+		for (int day = 1; day <= 100; day++) {
+			model.updateAntibodies(daily, day);
+		}
+
+		model.recalculateAntibodiesAfterSnapshot(List.of(restored), 101);
+
+		for (VirusStrain strain : VirusStrain.values()) {
+			assertThat(restored.getAntibodies(strain)).isGreaterThan(0).isCloseTo(daily.getAntibodies(strain), Offset.offset(1e-9));
+		}
+	}
+
 	/**
 	 * Tests when there are no immunity events. Antibodies should remain 0.
 	 */
@@ -146,7 +171,7 @@ public class DefaultAntibodyModelTest {
 	public void testNoImmunityEvents() {
 
 		// create person; antibodies map is empty
-		EpisimPerson person = EpisimTestUtils.createPerson();
+		EpisimPerson person = EpisimTestUtils.createPerson(DefaultAntibodyModel.DAILY_DECAY);
 
 		assertTrue(person.getAntibodies().isEmpty());
 
@@ -184,7 +209,7 @@ public class DefaultAntibodyModelTest {
 //		List<ImmunityEvent> immunityEvents = List.of(VaccinationType.mRNA);
 //		IntList immunityEventDays = IntList.of(1);
 
-		EpisimPerson person = EpisimTestUtils.createPerson();
+		EpisimPerson person = EpisimTestUtils.createPerson(DefaultAntibodyModel.DAILY_DECAY);
 		person.setImmuneResponseMultiplier(0.1);
 
 		Int2ObjectMap<Object2DoubleMap<VirusStrain>> antibodyLevels = simulateAntibodyLevels(immunityEvents, immunityEventDays, 1000, person);
@@ -260,12 +285,12 @@ public class DefaultAntibodyModelTest {
 		IntList immunityEventDays = IntList.of(1, secondImmunityEvent, thirdImmunityEvent);
 
 		// Person with normal immune response to immunity events
-		EpisimPerson personNormal = EpisimTestUtils.createPerson();
+		EpisimPerson personNormal = EpisimTestUtils.createPerson(DefaultAntibodyModel.DAILY_DECAY);
 		personNormal.setImmuneResponseMultiplier(1);
 		Int2ObjectMap<Object2DoubleMap<VirusStrain>> antibodyLevelsNormal = simulateAntibodyLevels(immunityEvents, immunityEventDays, thirdImmunityEvent + 1, personNormal);
 
 		// Person with high immune response to immunity events (2x as much as normal person)
-		EpisimPerson personHigh = EpisimTestUtils.createPerson();
+		EpisimPerson personHigh = EpisimTestUtils.createPerson(DefaultAntibodyModel.DAILY_DECAY);
 		personHigh.setImmuneResponseMultiplier(2);
 		Int2ObjectMap<Object2DoubleMap<VirusStrain>> antibodyLevelsHigh = simulateAntibodyLevels(immunityEvents, immunityEventDays, thirdImmunityEvent + 1, personHigh);
 
@@ -321,7 +346,7 @@ public class DefaultAntibodyModelTest {
 		// gather results from antibody model
 		List<ImmunityEvent> immunityEvents = List.of(VirusStrain.OMICRON_BA1);
 		IntList immunityEventDays = IntList.of(0);
-		Int2ObjectMap<Object2DoubleMap<VirusStrain>> antibodyLevels = simulateAntibodyLevels(immunityEvents, immunityEventDays, 600, EpisimTestUtils.createPerson());
+		Int2ObjectMap<Object2DoubleMap<VirusStrain>> antibodyLevels = simulateAntibodyLevels(immunityEvents, immunityEventDays, 600, EpisimTestUtils.createPerson(DefaultAntibodyModel.DAILY_DECAY));
 
 		for (int ii = 0; ii < 600; ii++) {
 			Object2DoubleMap<VirusStrain> strainToAntibodyMap = antibodyLevels.get(ii);
@@ -411,10 +436,10 @@ public class DefaultAntibodyModelTest {
 		List<EpisimPerson> episimPeople = new ArrayList<>();
 		int popSize = 10000;
 		for (int i = 0; i < popSize; i++) {
-			episimPeople.add(EpisimTestUtils.createPerson());
+			episimPeople.add(EpisimTestUtils.createPerson(DefaultAntibodyModel.DAILY_DECAY));
 		}
 
-//		Int2ObjectMap<Object2DoubleMap<VirusStrain>> antibodyLevelsAvg = simulateAntibodyLevels(immunityEvents, immunityEventDays, 600, EpisimTestUtils.createPerson());
+//		Int2ObjectMap<Object2DoubleMap<VirusStrain>> antibodyLevelsAvg = simulateAntibodyLevels(immunityEvents, immunityEventDays, 600, EpisimTestUtils.createPerson(DefaultAntibodyModel.DAILY_DECAY));
 
 		antibodyConfig.setImmuneReponseSigma(3.);
 		model.init(episimPeople, 0);
@@ -465,7 +490,7 @@ public class DefaultAntibodyModelTest {
 		}
 
 		{
-			EpisimPerson personMin = EpisimTestUtils.createPerson();
+			EpisimPerson personMin = EpisimTestUtils.createPerson(DefaultAntibodyModel.DAILY_DECAY);
 			personMin.setImmuneResponseMultiplier(0.1);
 			Int2ObjectMap<Object2DoubleMap<VirusStrain>> antibodyLevelsMin = simulateAntibodyLevels(immunityEvents, immunityEventDays, 600, personMin);
 
@@ -490,7 +515,7 @@ public class DefaultAntibodyModelTest {
 		}
 
 		{
-			EpisimPerson personMax = EpisimTestUtils.createPerson();
+			EpisimPerson personMax = EpisimTestUtils.createPerson(DefaultAntibodyModel.DAILY_DECAY);
 			personMax.setImmuneResponseMultiplier(10);
 			Int2ObjectMap<Object2DoubleMap<VirusStrain>> antibodyLevelsMax = simulateAntibodyLevels(immunityEvents, immunityEventDays, 600, personMax);
 
@@ -513,7 +538,7 @@ public class DefaultAntibodyModelTest {
 		}
 
 		{
-			EpisimPerson personMed = EpisimTestUtils.createPerson();
+			EpisimPerson personMed = EpisimTestUtils.createPerson(DefaultAntibodyModel.DAILY_DECAY);
 			personMed.setImmuneResponseMultiplier(1);
 			Int2ObjectMap<Object2DoubleMap<VirusStrain>> antibodyLevelsMax = simulateAntibodyLevels(immunityEvents, immunityEventDays, 600, personMed);
 
@@ -749,7 +774,7 @@ public class DefaultAntibodyModelTest {
 		List<ImmunityEvent> immunityEvents = List.of(VaccinationType.mRNA, VaccinationType.mRNA);
 
 		IntList immunityEventDays = IntList.of(1, 220);
-		Int2ObjectMap<Object2DoubleMap<VirusStrain>> antibodyLevels = simulateAntibodyLevels(immunityEvents, immunityEventDays, 600, EpisimTestUtils.createPerson());
+		Int2ObjectMap<Object2DoubleMap<VirusStrain>> antibodyLevels = simulateAntibodyLevels(immunityEvents, immunityEventDays, 600, EpisimTestUtils.createPerson(DefaultAntibodyModel.DAILY_DECAY));
 
 
 		// antibodies from DefaultAntibodyModel, converted to vaccine efficiency (for beta = 1 and beta = 3)
@@ -913,13 +938,13 @@ public class DefaultAntibodyModelTest {
 			{
 				List<ImmunityEvent> immunityEvents = List.of(VaccinationType.mRNA);
 				IntList immunityEventDays = IntList.of(0);
-				nAbBase = simulateAntibodyLevels(immunityEvents, immunityEventDays, 100, EpisimTestUtils.createPerson()).get(100).get(VirusStrain.SARS_CoV_2);
+				nAbBase = simulateAntibodyLevels(immunityEvents, immunityEventDays, 100, EpisimTestUtils.createPerson(DefaultAntibodyModel.DAILY_DECAY)).get(100).get(VirusStrain.SARS_CoV_2);
 			}
 
 			// only vaccinated:
 			List<ImmunityEvent> immunityEvents = List.of(VaccinationType.mRNA);
 			IntList immunityEventDays = IntList.of(0);
-			Int2ObjectMap<Object2DoubleMap<VirusStrain>> abLevels = simulateAntibodyLevels(immunityEvents, immunityEventDays, 100, EpisimTestUtils.createPerson());
+			Int2ObjectMap<Object2DoubleMap<VirusStrain>> abLevels = simulateAntibodyLevels(immunityEvents, immunityEventDays, 100, EpisimTestUtils.createPerson(DefaultAntibodyModel.DAILY_DECAY));
 
 			{
 				VirusStrain strain = VirusStrain.SARS_CoV_2;
@@ -954,7 +979,7 @@ public class DefaultAntibodyModelTest {
 
 				immunityEvents = List.of(VaccinationType.mRNA, VaccinationType.mRNA);
 				immunityEventDays = IntList.of(0, 200);
-				abLevels = simulateAntibodyLevels(immunityEvents, immunityEventDays, 300, EpisimTestUtils.createPerson());
+				abLevels = simulateAntibodyLevels(immunityEvents, immunityEventDays, 300, EpisimTestUtils.createPerson(DefaultAntibodyModel.DAILY_DECAY));
 
 				strain = VirusStrain.DELTA;
 				log.warn("triple vaccination against " + strain.name() + "=" + abLevels.get(300).get(strain));
@@ -977,14 +1002,14 @@ public class DefaultAntibodyModelTest {
 			{
 				List<ImmunityEvent> immunityEvents = List.of(VaccinationType.mRNA, VirusStrain.OMICRON_BA1);
 				IntList immunityEventDays = IntList.of(0, 50);
-				EpisimPerson person = EpisimTestUtils.createPerson();
+				EpisimPerson person = EpisimTestUtils.createPerson(DefaultAntibodyModel.DAILY_DECAY);
 				nAbBase = simulateAntibodyLevels(immunityEvents, immunityEventDays, 100, person).get(100).get(VirusStrain.SARS_CoV_2);
 			}
 
 			// Fig.1 A (vaccinated + omicron):
 			List<ImmunityEvent> immunityEvents = List.of(VaccinationType.mRNA, VirusStrain.OMICRON_BA1);
 			IntList immunityEventDays = IntList.of(0, 50);
-			Int2ObjectMap<Object2DoubleMap<VirusStrain>> abLevels = simulateAntibodyLevels(immunityEvents, immunityEventDays, 100, EpisimTestUtils.createPerson());
+			Int2ObjectMap<Object2DoubleMap<VirusStrain>> abLevels = simulateAntibodyLevels(immunityEvents, immunityEventDays, 100, EpisimTestUtils.createPerson(DefaultAntibodyModel.DAILY_DECAY));
 
 			{
 				VirusStrain strain = VirusStrain.SARS_CoV_2;
@@ -1010,7 +1035,7 @@ public class DefaultAntibodyModelTest {
 			// Fig1 B (only omicron):
 			immunityEvents = List.of(VirusStrain.OMICRON_BA1);
 			immunityEventDays = IntList.of(50);
-			abLevels = simulateAntibodyLevels(immunityEvents, immunityEventDays, 100, EpisimTestUtils.createPerson());
+			abLevels = simulateAntibodyLevels(immunityEvents, immunityEventDays, 100, EpisimTestUtils.createPerson(DefaultAntibodyModel.DAILY_DECAY));
 
 			{
 				VirusStrain strain = VirusStrain.SARS_CoV_2;
@@ -1035,7 +1060,7 @@ public class DefaultAntibodyModelTest {
 
 			// Fig1 C (vaccinated + delta + omicron):
 			// (not plausible that these come out lower than without the delta infection in between)
-			//			person = EpisimTestUtils.createPerson();
+			//			person = EpisimTestUtils.createPerson(DefaultAntibodyModel.DAILY_DECAY);
 			//			person.setVaccinationStatus( EpisimPerson.VaccinationStatus.yes, VaccinationType.mRNA, 0 );
 			//			person.possibleInfection(
 			//					new EpisimInfectionEvent( 33 * 3600 * 24., person.getPersonId(), infector.getPersonId(), null, "dummy", 2, VirusStrain.DELTA, 1. ) );
@@ -1071,7 +1096,7 @@ public class DefaultAntibodyModelTest {
 			// Fig1 D (delta + omicron):
 			immunityEvents = List.of(VirusStrain.DELTA, VirusStrain.OMICRON_BA1);
 			immunityEventDays = IntList.of(0, 50);
-			abLevels = simulateAntibodyLevels(immunityEvents, immunityEventDays, 100, EpisimTestUtils.createPerson());
+			abLevels = simulateAntibodyLevels(immunityEvents, immunityEventDays, 100, EpisimTestUtils.createPerson(DefaultAntibodyModel.DAILY_DECAY));
 			{
 				VirusStrain strain = VirusStrain.SARS_CoV_2;
 				double nAb = abLevels.get(100).get(strain);
@@ -1109,13 +1134,13 @@ public class DefaultAntibodyModelTest {
 			{
 				List<ImmunityEvent> immunityEvents = List.of(VaccinationType.mRNA);
 				IntList immunityEventDays = IntList.of(0);
-				nAbBase = simulateAntibodyLevels(immunityEvents, immunityEventDays, 100, EpisimTestUtils.createPerson()).get(100).get(VirusStrain.ALPHA);
+				nAbBase = simulateAntibodyLevels(immunityEvents, immunityEventDays, 100, EpisimTestUtils.createPerson(DefaultAntibodyModel.DAILY_DECAY)).get(100).get(VirusStrain.ALPHA);
 			}
 
 			// Fig.1 A (vaccinated with mRNA):
 			List<ImmunityEvent> immunityEvents = List.of(VaccinationType.mRNA);
 			IntList immunityEventDays = IntList.of(0);
-			Int2ObjectMap<Object2DoubleMap<VirusStrain>> abLevels = simulateAntibodyLevels(immunityEvents, immunityEventDays, 100, EpisimTestUtils.createPerson());
+			Int2ObjectMap<Object2DoubleMap<VirusStrain>> abLevels = simulateAntibodyLevels(immunityEvents, immunityEventDays, 100, EpisimTestUtils.createPerson(DefaultAntibodyModel.DAILY_DECAY));
 
 			{
 				VirusStrain strain = VirusStrain.ALPHA;
@@ -1136,7 +1161,7 @@ public class DefaultAntibodyModelTest {
 			// Fig.1 B (vaccinated with vector):
 			immunityEvents = List.of(VaccinationType.vector);
 			immunityEventDays = IntList.of(0);
-			abLevels = simulateAntibodyLevels(immunityEvents, immunityEventDays, 100, EpisimTestUtils.createPerson());
+			abLevels = simulateAntibodyLevels(immunityEvents, immunityEventDays, 100, EpisimTestUtils.createPerson(DefaultAntibodyModel.DAILY_DECAY));
 
 			{
 				VirusStrain strain = VirusStrain.ALPHA;
@@ -1157,7 +1182,7 @@ public class DefaultAntibodyModelTest {
 			// Fig.1 E (infected with Alpha):
 			immunityEvents = List.of(VirusStrain.ALPHA);
 			immunityEventDays = IntList.of(0);
-			abLevels = simulateAntibodyLevels(immunityEvents, immunityEventDays, 100, EpisimTestUtils.createPerson());
+			abLevels = simulateAntibodyLevels(immunityEvents, immunityEventDays, 100, EpisimTestUtils.createPerson(DefaultAntibodyModel.DAILY_DECAY));
 
 			{
 				VirusStrain strain = VirusStrain.ALPHA;
@@ -1178,7 +1203,7 @@ public class DefaultAntibodyModelTest {
 			// Fig.1 G (infected with Delta):
 			immunityEvents = List.of(VirusStrain.DELTA);
 			immunityEventDays = IntList.of(0);
-			abLevels = simulateAntibodyLevels(immunityEvents, immunityEventDays, 100, EpisimTestUtils.createPerson());
+			abLevels = simulateAntibodyLevels(immunityEvents, immunityEventDays, 100, EpisimTestUtils.createPerson(DefaultAntibodyModel.DAILY_DECAY));
 
 			{
 				VirusStrain strain = VirusStrain.ALPHA;
@@ -1199,7 +1224,7 @@ public class DefaultAntibodyModelTest {
 			// Fig.1 H (infected + vaccinated):
 			immunityEvents = List.of(VirusStrain.DELTA, VaccinationType.vector);
 			immunityEventDays = IntList.of(0, 50);
-			abLevels = simulateAntibodyLevels(immunityEvents, immunityEventDays, 100, EpisimTestUtils.createPerson());
+			abLevels = simulateAntibodyLevels(immunityEvents, immunityEventDays, 100, EpisimTestUtils.createPerson(DefaultAntibodyModel.DAILY_DECAY));
 
 /*			{
 				VirusStrain strain = VirusStrain.DELTA;
@@ -0,0 +1,64 @@
+package org.matsim.episim.model;
+
+import org.junit.Test;
+import org.matsim.episim.EpisimConfigGroup;
+import org.matsim.episim.EpisimTestUtils;
+import org.matsim.episim.policy.Restriction;
+import org.matsim.episim.policy.RestrictionTest;
+
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RestrictionTableTest {
+
+	private final EpisimConfigGroup config = EpisimTestUtils.TEST_CONFIG;
+
+	@Test
+	public void compile() {
+
+		Map<String, Restriction> restrictions = config.createInitialRestrictions();
+
+		RestrictionTest.merge(restrictions.get("work"), Restriction.of(0.5, 0.8));
+		RestrictionTest.merge(restrictions.get("work"), Restriction.ofGroupSize(20));
+		RestrictionTest.merge(restrictions.get("edu"), Restriction.ofClosingHours(0, 7));
+
+		RestrictionTable table = RestrictionTable.compile(null, restrictions, config);
+
+		EpisimConfigGroup.InfectionParams work = config.getInfectionParam("work");
+		EpisimConfigGroup.InfectionParams edu = config.getInfectionParam("edu");
+
+		assertThat(table.getRemainingFraction(work)).isEqualTo(0.5);
+		assertThat(table.getCiCorrection(work)).isEqualTo(0.8);
+		assertThat(table.getMaxGroupSize(work)).isEqualTo(20);
+		assertThat(table.getReducedGroupSize(work)).isEqualTo(-1);
+		assertThat(table.hasClosingHours(work)).isFalse();
+		assertThat(table.hasClosingHours(edu)).isTrue();
+		assertThat(table.getRestriction(edu)).isSameAs(restrictions.get("edu"));
+
+		assertThat(RestrictionTable.compile(table, restrictions, config)).isSameAs(table);
+		assertThat(RestrictionTable.compile(table, Map.copyOf(restrictions), config)).isNotSameAs(table);
+	}
+
+	@Test
+	public void masks() {
+
+		Map<String, Restriction> restrictions = config.createInitialRestrictions();
+		RestrictionTest.merge(restrictions.get("leis"), Restriction.ofMask(Map.of(FaceMask.CLOTH, 0.3, FaceMask.SURGICAL, 0.5)));
+		RestrictionTest.merge(restrictions.get("work"), Restriction.ofMask(FaceMask.N95, 1));
+
+		RestrictionTable table = RestrictionTable.compile(null, restrictions, config);
+
+		for (String act : new String[]{"leis", "work", "home"}) {
+
+			SplittableRandom r1 = new SplittableRandom(1);
+			SplittableRandom r2 = new SplittableRandom(1);
+
+			for (int i = 0; i < 1000; i++) {
+				assertThat(table.determineMask(config.getInfectionParam(act), r1))
+						.isEqualTo(restrictions.get(act).determineMask(r2));
+			}
+		}
+	}
+}
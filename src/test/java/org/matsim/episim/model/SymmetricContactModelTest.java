@@ -0,0 +1,38 @@
+package org.matsim.episim.model;
+
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class SymmetricContactModelTest {
+
+	@Test
+	public void nextInSameSpace() {
+
+		SplittableRandom rnd = new SplittableRandom(1);
+
+		// single space, every person is a contact
+		assertThat(SymmetricContactModel.nextInSameSpace(-1, Double.NEGATIVE_INFINITY, rnd)).isEqualTo(0);
+		assertThat(SymmetricContactModel.nextInSameSpace(5, Double.NEGATIVE_INFINITY, rnd)).isEqualTo(6);
+
+		int n = 1_000_000;
+
+		for (double spaces : new double[]{2, 10, 100}) {
+
+			double log = Math.log(1 - 1 / spaces);
+			int contacts = 0;
+			int last = -1;
+			for (int i = SymmetricContactModel.nextInSameSpace(-1, log, rnd); i < n; i = SymmetricContactModel.nextInSameSpace(i, log, rnd)) {
+				assertThat(i).isGreaterThan(last);
+				last = i;
+				contacts++;
+			}
+
+			// same as independent draws with probability 1 / spaces for each person
+			assertThat((double) contacts / n).isCloseTo(1 / spaces, within(0.002));
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package org.matsim.episim.model.testing;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.episim.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DefaultTestingModelTest {
+
+	private Config config;
+	private TestingConfigGroup testingConfig;
+
+	@Before
+	public void setUp() {
+		config = EpisimTestUtils.createTestConfig();
+		testingConfig = ConfigUtils.addOrGetModule(config, TestingConfigGroup.class);
+		testingConfig.getOrAddParams(TestType.RAPID_TEST).setTestingCapacity_pers_per_day(5);
+	}
+
+	private DefaultTestingModel createModel() {
+		DefaultTestingModel model = new DefaultTestingModel(new SplittableRandom(1), config, testingConfig,
+				ConfigUtils.addOrGetModule(config, VaccinationConfigGroup.class), ConfigUtils.addOrGetModule(config, EpisimConfigGroup.class));
+		model.setIteration(1);
+		return model;
+	}
+
+	@Test
+	public void sharedCapacity() {
+
+		TestingConfigGroup.TestingParams params = testingConfig.getParams(TestType.RAPID_TEST);
+
+		List<DefaultTestingModel> models = List.of(createModel(), createModel(), createModel());
+		List<EpisimPerson> persons = new ArrayList<>();
+
+		for (DefaultTestingModel model : models) {
+			model.collectTests();
+			for (int i = 0; i < 3; i++) {
+				EpisimPerson p = EpisimTestUtils.createPerson();
+				assertThat(model.testAndQuarantine(p, 1, params, 1.0)).isTrue();
+				persons.add(p);
+			}
+		}
+
+		// no test result is applied before commit
+		assertThat(persons).allMatch(p -> p.getTestStatus() == EpisimPerson.TestStatus.untested);
+
+		List<EpisimPerson> tested = new ArrayList<>();
+		for (DefaultTestingModel model : models) {
+			model.commitTests(models.get(0), tested::add);
+		}
+
+		// capacity is granted in partition order
+		assertThat(tested).containsExactlyElementsOf(persons.subList(0, 5));
+		assertThat(persons.subList(5, persons.size())).allMatch(p -> p.getTestStatus() == EpisimPerson.TestStatus.untested);
+		assertThat(models.get(0).hasCapacity(TestType.RAPID_TEST, null)).isFalse();
+	}
+}
@@ -0,0 +1,116 @@
+package org.matsim.run;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.util.Modules;
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.core.config.Config;
+import org.matsim.core.controler.OutputDirectoryLogging;
+import org.matsim.episim.EpisimConfigGroup;
+import org.matsim.episim.EpisimModule;
+import org.matsim.episim.EpisimRunner;
+import org.matsim.testcases.MatsimTestUtils;
+
+import java.io.File;
+import java.util.Objects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that pipelined reporting writes the same output as sequential reporting.
+ */
+public class RunEpisimPipelineReportingTest {
+
+	private static final int ITERATIONS = 30;
+
+	@Rule
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	private Config config;
+	private EpisimConfigGroup episimConfig;
+	private EpisimRunner runner;
+
+	private void setup(String outputDirectory, boolean pipeline) {
+		OutputDirectoryLogging.catchLogEntries();
+
+		Injector injector = Guice.createInjector(Modules.override(new EpisimModule())
+				.with(new RunEpisimIntegrationTest.TestScenario(utils, ITERATIONS)));
+
+		config = injector.getInstance(Config.class);
+		episimConfig = injector.getInstance(EpisimConfigGroup.class);
+		runner = injector.getInstance(EpisimRunner.class);
+
+		config.controler().setOutputDirectory(outputDirectory);
+		episimConfig.setWriteEvents(EpisimConfigGroup.WriteEvents.episim);
+		episimConfig.setPipelineReporting(pipeline);
+	}
+
+	private String outputDirectory(String name) {
+		return utils.getOutputDirectory() + name + "/";
+	}
+
+	@Test
+	public void sameOutput() {
+
+		String sequential = outputDirectory("sequential");
+		setup(sequential, false);
+		runner.run(ITERATIONS);
+
+		String pipelined = outputDirectory("pipelined");
+		setup(pipelined, true);
+		runner.run(ITERATIONS);
+
+		assertSameOutput(sequential, pipelined);
+	}
+
+	@Test
+	public void fromSnapshot() {
+
+		String sequential = outputDirectory("sequential");
+		setup(sequential, false);
+		episimConfig.setSnapshotInterval(15);
+		runner.run(ITERATIONS);
+
+		// run 1: save snapshot with pipelined reporting
+		String withSnapshot = outputDirectory("withSnapshot");
+		setup(withSnapshot, true);
+		episimConfig.setSnapshotInterval(15);
+		runner.run(ITERATIONS);
+
+		// run 2: continue from snapshot, output files are opened again in append mode
+		String fromSnapshot = outputDirectory("fromSnapshot");
+		setup(fromSnapshot, true);
+		episimConfig.setStartFromSnapshot(withSnapshot + String.format("episim-snapshot-%03d-%s.zip", 15,
+				episimConfig.getStartDate().plusDays(14).toString()));
+		runner.run(ITERATIONS);
+
+		assertSameOutput(sequential, withSnapshot);
+		assertSameOutput(sequential, fromSnapshot);
+	}
+
+	/**
+	 * Compare all report files, except the ones containing time measurements or binary data.
+	 */
+	private static void assertSameOutput(String expected, String actual) {
+
+		File[] files = Objects.requireNonNull(new File(expected).listFiles());
+		assertThat(files).isNotEmpty();
+
+		for (File file : files) {
+
+			if (file.getName().equals("events")) {
+				for (File event : Objects.requireNonNull(file.listFiles())) {
+					assertThat(event)
+							.hasSameBinaryContentAs(new File(actual, "events/" + event.getName()));
+				}
+			}
+
+			if (file.isDirectory() || file.getName().endsWith(".zip") || file.getName().endsWith(".xml") || file.getName().endsWith(".gz") || file.getName().endsWith(".tar")
+					|| file.getName().endsWith("cputime.tsv")) continue;
+
+			assertThat(file)
+					.hasSameTextualContentAs(new File(actual, file.getName()));
+		}
+	}
+}